@@ -611,6 +611,21 @@ public class XenonMath {
         return r;
     }
 
+    /**
+     * <p>
+     * Resto della divisione arrotondata per difetto, come {@link #floorDiv(int, int)}: ha sempre il segno del divisore.
+     * Ad esempio {@code floorMod(-1, 3) == 2}, mentre {@code (-1 % 3) == -1}.
+     * </p>
+     *
+     * @param x the dividend
+     * @param y the divisor
+     * @return {@code x - floorDiv(x, y) * y}
+     * @throws ArithmeticException if the divisor {@code y} is zero
+     */
+    public static int floorMod(int x, int y) {
+        return x - floorDiv(x, y) * y;
+    }
+
     /**
      * Minimo valore
      *
@@ -0,0 +1,503 @@
+package com.abubusoft.xenon.mesh.tiledmaps;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.abubusoft.xenon.math.XenonMath;
+import com.abubusoft.xenon.mesh.tiledmaps.tmx.loader.TMXException;
+import com.abubusoft.xenon.mesh.tiledmaps.tmx.loader.TMXLayerHelper;
+
+import android.util.SparseArray;
+
+/**
+ * <p>
+ * Celle di un {@link TiledLayer} di una mappa infinita. Nel tmx le celle sono divise in chunk: ogni chunk resta compresso con zlib
+ * o gzip, oppure decodificato nel file mappato della cache binaria, e viene decodificato solo quando serve una sua cella.
+ * </p>
+ *
+ * <p>
+ * I chunk decodificati sono tenuti in una cache LRU di al massimo {@link #getCacheSize()} chunk, che dipende solo dalla parte
+ * della mappa che viene disegnata. Un chunk eliminato dalla cache viene decodificato di nuovo alla prima cella richiesta. Nello
+ * heap resta la versione compressa di tutti i chunk, a meno che le celle non vengano lette dalla cache binaria: in questo caso
+ * stanno nel file mappato e lo heap contiene solo i chunk decodificati.
+ * </p>
+ *
+ * <p>
+ * I chunk mantengono le coordinate del tmx, che possono essere anche negative. Una volta caricati tutti i chunk della mappa,
+ * {@link #setBounds(int, int, int, int)} indica quale cella del tmx corrisponde alla cella (0, 0) del layer e le dimensioni del
+ * layer. Le celle che non cadono in nessun chunk sono vuote.
+ * </p>
+ *
+ * @see TiledLayer#getTile(int, int)
+ */
+public class ChunkedCells {
+
+	/**
+	 * numero di chunk decodificati tenuti in memoria, se non diversamente indicato
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 64;
+
+	/**
+	 * <p>
+	 * Chunk di celle, nella forma in cui è stato caricato.
+	 * </p>
+	 */
+	public static class Chunk {
+
+		/**
+		 * colonna della prima cella del chunk, nel tmx
+		 */
+		public final int column;
+
+		/**
+		 * riga della prima cella del chunk, nel tmx
+		 */
+		public final int row;
+
+		/**
+		 * colonne del chunk
+		 */
+		public final int width;
+
+		/**
+		 * righe del chunk
+		 */
+		public final int height;
+
+		/**
+		 * celle già decodificate, o <code>null</code>
+		 */
+		private final IntBuffer cells;
+
+		/**
+		 * celle compresse, se {@link #cells} è <code>null</code>
+		 */
+		private final byte[] data;
+
+		/**
+		 * compressione di {@link #data}
+		 */
+		private final String compression;
+
+		Chunk(int column, int row, int width, int height, IntBuffer cells, byte[] data, String compression) {
+			this.column = column;
+			this.row = row;
+			this.width = width;
+			this.height = height;
+			this.cells = cells;
+			this.data = data;
+			this.compression = compression;
+		}
+
+		/**
+		 * <p>
+		 * Decodifica le celle del chunk, per righe.
+		 * </p>
+		 *
+		 * @param target
+		 *            array di almeno <code>width*height</code> elementi
+		 */
+		public void decode(int[] target) {
+			if (cells != null) {
+				cells.duplicate().get(target, 0, width * height);
+			} else {
+				TMXLayerHelper.decompressCells(data, compression, target, width * height);
+			}
+		}
+	}
+
+	/**
+	 * colonna del tmx corrispondente alla colonna 0 del layer
+	 */
+	private int originColumn;
+
+	/**
+	 * riga del tmx corrispondente alla riga 0 del layer
+	 */
+	private int originRow;
+
+	/**
+	 * colonne del layer
+	 */
+	private int tileColumns;
+
+	/**
+	 * righe del layer
+	 */
+	private int tileRows;
+
+	/**
+	 * colonne di un chunk, impostate dal primo chunk
+	 */
+	private int chunkWidth;
+
+	/**
+	 * righe di un chunk, impostate dal primo chunk
+	 */
+	private int chunkHeight;
+
+	/**
+	 * colonna, in chunk, del primo chunk del layer
+	 */
+	private int originChunkColumn;
+
+	/**
+	 * riga, in chunk, del primo chunk del layer
+	 */
+	private int originChunkRow;
+
+	/**
+	 * numero di chunk per riga del layer, 0 finché non sono impostati i limiti del layer
+	 */
+	private int chunkColumns;
+
+	/**
+	 * chunk caricati, nell'ordine del tmx
+	 */
+	private final ArrayList<Chunk> list = new ArrayList<Chunk>();
+
+	/**
+	 * chunk caricati, per <code>chunkRow * chunkColumns + chunkColumn</code> a partire da {@link #originChunkColumn} e
+	 * {@link #originChunkRow}
+	 */
+	private final SparseArray<Chunk> chunks = new SparseArray<Chunk>();
+
+	/**
+	 * numero massimo di chunk decodificati
+	 */
+	private int cacheSize = DEFAULT_CACHE_SIZE;
+
+	/**
+	 * celle del chunk eliminato per ultimo dalla cache, da riusare per il prossimo chunk da decodificare
+	 */
+	private int[] recycled;
+
+	/**
+	 * chiave dell'ultimo chunk usato, -1 se non valida
+	 */
+	private int lastKey = -1;
+
+	/**
+	 * celle dell'ultimo chunk usato, <code>null</code> se il chunk non esiste
+	 */
+	private int[] lastCells;
+
+	/**
+	 * chunk decodificati, dal meno recente
+	 */
+	private final LinkedHashMap<Integer, int[]> decoded = new LinkedHashMap<Integer, int[]>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+			if (size() <= cacheSize) {
+				return false;
+			}
+
+			if (eldest.getKey() == lastKey) {
+				lastKey = -1;
+			}
+			recycled = eldest.getValue();
+			return true;
+		}
+	};
+
+	/**
+	 * numero di chunk decodificati dalla creazione
+	 */
+	public int decodeCounter;
+
+	/**
+	 * <p>
+	 * Aggiunge un chunk con le celle già decodificate.
+	 * </p>
+	 */
+	public void addChunk(int column, int row, int width, int height, IntBuffer cells) {
+		addChunk(new Chunk(column, row, width, height, cells, null, null));
+	}
+
+	/**
+	 * <p>
+	 * Aggiunge un chunk con le celle compresse, come nel tmx ma senza base64.
+	 * </p>
+	 */
+	public void addChunk(int column, int row, int width, int height, byte[] data, String compression) {
+		addChunk(new Chunk(column, row, width, height, null, data, compression));
+	}
+
+	private void addChunk(Chunk chunk) {
+		if (chunkWidth == 0) {
+			chunkWidth = chunk.width;
+			chunkHeight = chunk.height;
+		} else if (chunk.width != chunkWidth || chunk.height != chunkHeight) {
+			throw new TMXException("All chunks must be " + chunkWidth + "x" + chunkHeight);
+		}
+
+		if (XenonMath.floorMod(chunk.column, chunkWidth) != 0 || XenonMath.floorMod(chunk.row, chunkHeight) != 0) {
+			throw new TMXException("Chunk (" + chunk.column + ", " + chunk.row + ") is not aligned to chunk size");
+		}
+
+		list.add(chunk);
+	}
+
+	/**
+	 * <p>
+	 * Sostituisce un chunk con le stesse celle già decodificate, ad esempio lette dal file mappato della cache binaria appena
+	 * scritta.
+	 * </p>
+	 *
+	 * @param index
+	 *            indice tra 0 e {@link #getChunkCount()}
+	 * @param cells
+	 *            celle del chunk, per righe
+	 */
+	public void replaceChunk(int index, IntBuffer cells) {
+		Chunk old = list.get(index);
+		Chunk chunk = new Chunk(old.column, old.row, old.width, old.height, cells, null, null);
+
+		list.set(index, chunk);
+		if (chunkColumns > 0) {
+			chunks.put(key(chunk.column, chunk.row), chunk);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Imposta i limiti del layer, dopo aver aggiunto tutti i chunk. Tutti i chunk devono cadere nel rettangolo indicato.
+	 * </p>
+	 *
+	 * @param originColumn
+	 *            colonna del tmx corrispondente alla colonna 0 del layer
+	 * @param originRow
+	 *            riga del tmx corrispondente alla riga 0 del layer
+	 * @param columns
+	 *            colonne del layer
+	 * @param rows
+	 *            righe del layer
+	 */
+	public void setBounds(int originColumn, int originRow, int columns, int rows) {
+		this.originColumn = originColumn;
+		this.originRow = originRow;
+		this.tileColumns = columns;
+		this.tileRows = rows;
+
+		chunks.clear();
+		decoded.clear();
+		lastKey = -1;
+		chunkColumns = 0;
+		if (chunkWidth == 0) {
+			return;
+		}
+
+		originChunkColumn = XenonMath.floorDiv(originColumn, chunkWidth);
+		originChunkRow = XenonMath.floorDiv(originRow, chunkHeight);
+		chunkColumns = XenonMath.floorDiv(originColumn + columns - 1, chunkWidth) - originChunkColumn + 1;
+
+		for (int i = 0; i < list.size(); i++) {
+			Chunk chunk = list.get(i);
+			if (chunk.column < originColumn || chunk.row < originRow || chunk.column + chunk.width > originColumn + columns || chunk.row + chunk.height > originRow + rows) {
+				throw new TMXException("Chunk (" + chunk.column + ", " + chunk.row + ") is outside the layer bounds");
+			}
+			chunks.put(key(chunk.column, chunk.row), chunk);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Chiave di un chunk.
+	 * </p>
+	 *
+	 * @param column
+	 *            colonna del tmx
+	 * @param row
+	 *            riga del tmx
+	 * @return chiave del chunk che contiene la cella
+	 */
+	private int key(int column, int row) {
+		return (XenonMath.floorDiv(row, chunkHeight) - originChunkRow) * chunkColumns + XenonMath.floorDiv(column, chunkWidth) - originChunkColumn;
+	}
+
+	/**
+	 * <p>
+	 * Valore di una cella.
+	 * </p>
+	 *
+	 * @param column
+	 *            colonna della cella
+	 * @param row
+	 *            riga della cella
+	 * @return valore della cella, 0 se non cade in un chunk
+	 */
+	public int get(int column, int row) {
+		if (chunkColumns == 0 || column < 0 || row < 0 || column >= tileColumns || row >= tileRows) {
+			return 0;
+		}
+
+		column += originColumn;
+		row += originRow;
+		int key = key(column, row);
+		if (key != lastKey) {
+			lastCells = load(key);
+			lastKey = key;
+		}
+
+		return lastCells == null ? 0 : lastCells[XenonMath.floorMod(row, chunkHeight) * chunkWidth + XenonMath.floorMod(column, chunkWidth)];
+	}
+
+	/**
+	 * <p>
+	 * Copia i valori di un rettangolo di celle, per righe. Ogni chunk che cade nel rettangolo viene letto una sola volta.
+	 * </p>
+	 *
+	 * @param column
+	 *            colonna della prima cella
+	 * @param row
+	 *            riga della prima cella
+	 * @param columns
+	 *            colonne del rettangolo, che deve essere contenuto nel layer
+	 * @param rows
+	 *            righe del rettangolo
+	 * @param target
+	 *            array di almeno <code>columns*rows</code> elementi, riempito con <code>target[r*columns+c]</code>
+	 */
+	public void getCells(int column, int row, int columns, int rows, int[] target) {
+		if (chunkColumns == 0) {
+			Arrays.fill(target, 0, columns * rows, 0);
+			return;
+		}
+
+		// rettangolo nelle coordinate del tmx, estremi esclusi
+		int firstColumn = column + originColumn;
+		int firstRow = row + originRow;
+		int lastColumn = firstColumn + columns;
+		int lastRow = firstRow + rows;
+
+		for (int chunkRow = XenonMath.floorDiv(firstRow, chunkHeight); chunkRow * chunkHeight < lastRow; chunkRow++) {
+			int top = Math.max(firstRow, chunkRow * chunkHeight);
+			int bottom = Math.min(lastRow, (chunkRow + 1) * chunkHeight);
+
+			for (int chunkColumn = XenonMath.floorDiv(firstColumn, chunkWidth); chunkColumn * chunkWidth < lastColumn; chunkColumn++) {
+				int left = Math.max(firstColumn, chunkColumn * chunkWidth);
+				int right = Math.min(lastColumn, (chunkColumn + 1) * chunkWidth);
+
+				int[] cells = load((chunkRow - originChunkRow) * chunkColumns + chunkColumn - originChunkColumn);
+				for (int i = top; i < bottom; i++) {
+					int offset = (i - firstRow) * columns + left - firstColumn;
+					if (cells == null) {
+						Arrays.fill(target, offset, offset + right - left, 0);
+					} else {
+						System.arraycopy(cells, (i - chunkRow * chunkHeight) * chunkWidth + left - chunkColumn * chunkWidth, target, offset, right - left);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Celle decodificate di un chunk.
+	 * </p>
+	 *
+	 * @return celle, o <code>null</code> se il chunk non esiste
+	 */
+	private int[] load(int key) {
+		int[] cells = decoded.get(key);
+		if (cells == null) {
+			Chunk chunk = chunks.get(key);
+			if (chunk == null) {
+				return null;
+			}
+
+			cells = recycled != null ? recycled : new int[chunkWidth * chunkHeight];
+			recycled = null;
+			chunk.decode(cells);
+
+			decoded.put(key, cells);
+			decodeCounter++;
+		}
+
+		return cells;
+	}
+
+	/**
+	 * <p>
+	 * Numero massimo di chunk decodificati tenuti in memoria.
+	 * </p>
+	 *
+	 * @return numero di chunk
+	 */
+	public int getCacheSize() {
+		return cacheSize;
+	}
+
+	/**
+	 * <p>
+	 * Imposta il numero massimo di chunk decodificati tenuti in memoria. Deve essere almeno il numero di chunk che cadono nella
+	 * finestra, altrimenti i chunk vengono decodificati ad ogni scroll.
+	 * </p>
+	 *
+	 * @param value
+	 *            numero di chunk
+	 */
+	public void setCacheSize(int value) {
+		cacheSize = Math.max(value, 1);
+
+		while (decoded.size() > cacheSize) {
+			Integer eldest = decoded.keySet().iterator().next();
+			if (eldest == lastKey) {
+				lastKey = -1;
+			}
+			decoded.remove(eldest);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Numero di chunk decodificati al momento in memoria.
+	 * </p>
+	 *
+	 * @return numero di chunk
+	 */
+	public int getDecodedCount() {
+		return decoded.size();
+	}
+
+	/**
+	 * <p>
+	 * Altezza in righe dei chunk, 0 se non è stato caricato alcun chunk.
+	 * </p>
+	 *
+	 * @return righe di un chunk
+	 */
+	public int getChunkHeight() {
+		return chunkHeight;
+	}
+
+	/**
+	 * <p>
+	 * Numero di chunk caricati.
+	 * </p>
+	 *
+	 * @return numero di chunk
+	 */
+	public int getChunkCount() {
+		return list.size();
+	}
+
+	/**
+	 * <p>
+	 * Chunk caricato.
+	 * </p>
+	 *
+	 * @param index
+	 *            indice tra 0 e {@link #getChunkCount()}
+	 * @return chunk
+	 */
+	public Chunk getChunk(int index) {
+		return list.get(index);
+	}
+
+}
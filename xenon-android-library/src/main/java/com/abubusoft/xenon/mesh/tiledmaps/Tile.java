@@ -9,6 +9,11 @@ import com.abubusoft.kripton.annotation.BindType;
  * Rappresenta la singola tile
  * </p>
  * 
+ * <p>
+ * Le tile di un {@link TiledLayer} sono condivise da tutte le celle con lo stesso gid e gli stessi flag di ribaltamento, vedi
+ * {@link TiledLayer#palette}: per queste {@link #layerColumn} e {@link #layerRow} non sono impostati.
+ * </p>
+ * 
  * @author Francesco Benincasa
  * 
  */
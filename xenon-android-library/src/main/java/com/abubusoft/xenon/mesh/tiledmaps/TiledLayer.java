@@ -8,17 +8,19 @@ import com.abubusoft.xenon.mesh.tiledmaps.tmx.LayerAttributes;
 import com.abubusoft.xenon.mesh.tiledmaps.tmx.loader.SAXUtil;
 import org.xml.sax.Attributes;
 
+import android.util.SparseArray;
+
 public class TiledLayer extends Layer {
 
 	/**
-	 * colonne del layer
+	 * colonne del layer. Per le mappe infinite coincide con {@link TiledMap#tileColumns}, calcolato alla fine del caricamento.
 	 */
-	public final int tileColumns;
+	public int tileColumns;
 
 	/**
-	 * righe del layer
+	 * righe del layer. Per le mappe infinite coincide con {@link TiledMap#tileRows}, calcolato alla fine del caricamento.
 	 */
-	public final int tileRows;
+	public int tileRows;
 
 	/**
 	 * Indica se è visualizzabile o meno
@@ -34,6 +36,31 @@ public class TiledLayer extends Layer {
 		}
 	}
 
+	/**
+	 * flag di {@link #cells}: la tile va ribaltata in orizzontale
+	 */
+	public static final int FLIPPED_HORIZONTALLY_FLAG = 0x80000000;
+
+	/**
+	 * flag di {@link #cells}: la tile va ribaltata in verticale
+	 */
+	public static final int FLIPPED_VERTICALLY_FLAG = 0x40000000;
+
+	/**
+	 * flag di {@link #cells}: la tile va ribaltata sulla diagonale, scambiando gli assi della texture
+	 */
+	public static final int FLIPPED_DIAGONALLY_FLAG = 0x20000000;
+
+	/**
+	 * maschera del gid in un elemento di {@link #cells}
+	 */
+	public static final int GID_MASK = ~(FLIPPED_HORIZONTALLY_FLAG | FLIPPED_VERTICALLY_FLAG | FLIPPED_DIAGONALLY_FLAG);
+
+	/**
+	 * righe lette alla volta da {@link #getCellBandRows()} per i layer che non sono divisi in chunk
+	 */
+	private static final int CELL_BAND_ROWS = 16;
+
 	/**
 	 * <p>
 	 * Mappa delle tile. Le tile vengono memorizzate in orizzontale, ovvero:
@@ -46,8 +73,29 @@ public class TiledLayer extends Layer {
 	 * </p>
 	 * 
 	 * <code>tile[row*colSize+col]</code>
+	 * 
+	 * <p>
+	 * Ogni cella è un int come nel file tmx: il gid con i flag di ribaltamento {@link #FLIPPED_HORIZONTALLY_FLAG},
+	 * {@link #FLIPPED_VERTICALLY_FLAG} e {@link #FLIPPED_DIAGONALLY_FLAG}, 0 se vuota. Le coordinate della texture e gli offset
+	 * sono in {@link #palette}, una volta sola per ogni valore diverso.
+	 * </p>
+	 */
+	public final int[] cells;
+
+	/**
+	 * <p>
+	 * Celle divise in chunk, per i layer di una mappa infinita. In questo caso {@link #cells} è vuoto e le celle vanno lette
+	 * con {@link #getTile(int, int)} o con gli altri metodi di accesso.
+	 * </p>
+	 */
+	public final ChunkedCells chunkedCells;
+
+	/**
+	 * <p>
+	 * Tile condivise dalle celle del layer, per valore delle celle. La tile vuota ha chiave 0.
+	 * </p>
 	 */
-	public final Tile[] tiles;
+	public final SparseArray<Tile> palette;
 
 	/**
 	 * contatore dei tile presenti. Serve a tener traccia di quante tile sono state inserite fino a questo momento.
@@ -71,10 +119,6 @@ public class TiledLayer extends Layer {
 	 */
 	public Tile tileToDraw;
 
-	public int oldStartLayerColumn;
-
-	public int oldStartLayerRow;
-
 	/**
 	 * <p>Rendering offset for this layer in pixels. Defaults to 0. (since 0.14)</p>
 	 * 
@@ -92,18 +136,25 @@ public class TiledLayer extends Layer {
 	public TiledLayer(TiledMap tiledMap, Attributes atts) {
 		super(LayerType.TILED, tiledMap, atts);
 
-		this.tileColumns = SAXUtil.getInt(atts, LayerAttributes.WIDTH);
-		this.tileRows = SAXUtil.getInt(atts, LayerAttributes.HEIGHT);
-
 		//this.tileOffsetX = SAXUtil.getInt(atts, LayerAttributes.OFFSET_X, 0);
 		//this.tileOffsetY = SAXUtil.getInt(atts, LayerAttributes.OFFSET_Y, 0);
-		
-		this.tiles = new Tile[tileRows * tileColumns];
+
+		if (tiledMap.infinite) {
+			// le celle arrivano a chunk e occupano la mappa, le dimensioni vengono impostate con setBounds
+			this.tileColumns = tiledMap.tileColumns;
+			this.tileRows = tiledMap.tileRows;
+			this.cells = new int[0];
+			this.chunkedCells = new ChunkedCells();
+		} else {
+			this.tileColumns = SAXUtil.getInt(atts, LayerAttributes.WIDTH);
+			this.tileRows = SAXUtil.getInt(atts, LayerAttributes.HEIGHT);
+			this.cells = new int[tileRows * tileColumns];
+			this.chunkedCells = null;
+		}
+		this.palette = new SparseArray<Tile>();
+		this.palette.put(0, Tile.getEmptyTile(0, 0));
 		this.animationOwnerIndex = -1;
 
-		oldStartLayerColumn = -1;
-		oldStartLayerRow = -1;
-		
 		drawOffsetUnique=true;
 		drawOffsetX=0f;
 		drawOffsetY=0f;
@@ -142,6 +193,168 @@ public class TiledLayer extends Layer {
 	 */
 	public boolean drawOffsetUnique=true;
 
+	/**
+	 * <p>
+	 * Gid della tile di una cella, senza i flag di ribaltamento.
+	 * </p>
+	 * 
+	 * @param index
+	 *            <code>row*tileColumns+col</code>
+	 * @return gid, 0 se la cella è vuota
+	 */
+	public int getGid(int index) {
+		return getCell(index) & GID_MASK;
+	}
+
+	/**
+	 * <p>
+	 * Indica se la cella è vuota.
+	 * </p>
+	 * 
+	 * @param index
+	 *            <code>row*tileColumns+col</code>
+	 * @return true se la cella è vuota
+	 */
+	public boolean isEmpty(int index) {
+		return isEmptyCell(getCell(index));
+	}
+
+	/**
+	 * <p>
+	 * Indica se un valore di cella, letto ad esempio con {@link #getCells(int, int, int, int, int[])}, corrisponde ad una cella
+	 * vuota.
+	 * </p>
+	 * 
+	 * @param value
+	 *            valore della cella, con i flag di ribaltamento
+	 * @return true se la cella è vuota
+	 */
+	public boolean isEmptyCell(int value) {
+		return value == 0 || palette.get(value).gid == 0;
+	}
+
+	/**
+	 * <p>
+	 * Tile di una cella. La tile è condivisa con le altre celle dello stesso valore: non va modificata, e non ha la posizione nel
+	 * layer.
+	 * </p>
+	 * 
+	 * @param index
+	 *            <code>row*tileColumns+col</code>
+	 * @return tile, vuota se la cella è vuota
+	 */
+	public Tile getTile(int index) {
+		return palette.get(getCell(index));
+	}
+
+	/**
+	 * <p>
+	 * Tile di una cella, come {@link #getTile(int)}. Per i layer di una mappa infinita evita di ricavare riga e colonna
+	 * dall'indice.
+	 * </p>
+	 * 
+	 * @param column
+	 *            colonna della cella
+	 * @param row
+	 *            riga della cella
+	 * @return tile, vuota se la cella è vuota
+	 */
+	public Tile getTile(int column, int row) {
+		return palette.get(getCell(column, row));
+	}
+
+	/**
+	 * <p>
+	 * Valore di una cella, con i flag di ribaltamento.
+	 * </p>
+	 * 
+	 * @param column
+	 *            colonna della cella
+	 * @param row
+	 *            riga della cella
+	 * @return valore della cella, 0 se vuota
+	 */
+	public int getCell(int column, int row) {
+		if (chunkedCells != null) {
+			return chunkedCells.get(column, row);
+		}
+		return cells[row * tileColumns + column];
+	}
+
+	/**
+	 * <p>
+	 * Valore di una cella, con i flag di ribaltamento.
+	 * </p>
+	 * 
+	 * @param index
+	 *            <code>row*tileColumns+col</code>
+	 * @return valore della cella, 0 se vuota
+	 */
+	public int getCell(int index) {
+		if (chunkedCells != null) {
+			return chunkedCells.get(index % tileColumns, index / tileColumns);
+		}
+		return cells[index];
+	}
+
+	/**
+	 * <p>
+	 * Copia i valori di un rettangolo di celle, per righe. Per i layer di una mappa infinita i chunk vengono letti uno alla
+	 * volta, quindi è da preferire a {@link #getCell(int)} quando si devono leggere molte celle, ad esempio tutto il layer.
+	 * </p>
+	 * 
+	 * @param column
+	 *            colonna della prima cella
+	 * @param row
+	 *            riga della prima cella
+	 * @param columns
+	 *            colonne del rettangolo, che deve essere contenuto nel layer
+	 * @param rows
+	 *            righe del rettangolo
+	 * @param target
+	 *            array di almeno <code>columns*rows</code> elementi, riempito con <code>target[r*columns+c]</code>
+	 */
+	public void getCells(int column, int row, int columns, int rows, int[] target) {
+		if (chunkedCells != null) {
+			chunkedCells.getCells(column, row, columns, rows, target);
+			return;
+		}
+
+		for (int i = 0; i < rows; i++) {
+			System.arraycopy(cells, (row + i) * tileColumns + column, target, i * columns, columns);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Numero di righe da leggere alla volta con {@link #getCells(int, int, int, int, int[])} per scorrere tutto il layer senza
+	 * copiarlo in un unico array. Per i layer di una mappa infinita è l'altezza dei chunk, così ogni fascia di righe decodifica
+	 * i propri chunk una sola volta.
+	 * </p>
+	 * 
+	 * @return righe di una fascia, almeno 1
+	 */
+	public int getCellBandRows() {
+		if (chunkedCells != null && chunkedCells.getChunkHeight() > 0) {
+			return chunkedCells.getChunkHeight();
+		}
+		return CELL_BAND_ROWS;
+	}
+
+	/**
+	 * <p>
+	 * Imposta le dimensioni del layer di una mappa infinita.
+	 * </p>
+	 * 
+	 * @see TiledMap#setInfiniteBounds(int, int, int, int)
+	 * @see ChunkedCells#setBounds(int, int, int, int)
+	 */
+	void setBounds(int originColumn, int originRow, int columns, int rows) {
+		this.tileColumns = columns;
+		this.tileRows = rows;
+		chunkedCells.setBounds(originColumn, originRow, columns, rows);
+	}
+
 	/*
 	 * public int getColumns() { return this.tileColumns; }
 	 * 
@@ -157,6 +370,9 @@ public class TiledLayer extends Layer {
 	 */
 	@Override
 	public void onBuildView(TiledMapView view) {
+		if (chunkedCells != null) {
+			chunkedCells.setCacheSize(view.chunkCacheSize);
+		}
 		handler.onBuildView(view);		
 	}
 
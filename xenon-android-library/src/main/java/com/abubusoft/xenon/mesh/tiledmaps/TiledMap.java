@@ -99,14 +99,38 @@ public class TiledMap extends PropertiesCollector {
     public final Point2 positionInMap;
 
     /**
-     * numero di colonne di tiles
+     * numero di colonne di tiles. Per le mappe infinite è calcolato dai chunk dei layer alla fine del caricamento.
      */
-    public final int tileColumns;
+    public int tileColumns;
 
     /**
-     * numero di righe di tiles
+     * numero di righe di tiles. Per le mappe infinite è calcolato dai chunk dei layer alla fine del caricamento.
      */
-    public final int tileRows;
+    public int tileRows;
+
+    /**
+     * <p>
+     * Colonna del tmx che corrisponde alla colonna 0 della mappa. Vale 0 tranne che per le mappe infinite con chunk a sinistra
+     * dell'origine del tmx.
+     * </p>
+     */
+    public int originColumn;
+
+    /**
+     * <p>
+     * Riga del tmx che corrisponde alla riga 0 della mappa. Vale 0 tranne che per le mappe infinite con chunk sopra l'origine
+     * del tmx.
+     * </p>
+     */
+    public int originRow;
+
+    /**
+     * <p>
+     * Indica se la mappa è infinita: le celle dei tiled layer sono divise in chunk, caricati solo quando servono. Vedi
+     * {@link ChunkedCells}.
+     * </p>
+     */
+    public final boolean infinite;
 
     /**
      * <p>
@@ -328,6 +352,7 @@ public class TiledMap extends PropertiesCollector {
         this.tileRows = SAXUtil.getInt(atts, MapAttributes.HEIGHT);
         this.tileWidth = SAXUtil.getInt(atts, MapAttributes.TILE_WIDTH);
         this.tileHeight = SAXUtil.getInt(atts, MapAttributes.TILE_HEIGHT);
+        this.infinite = SAXUtil.getInt(atts, MapAttributes.INFINITE, 0) == 1;
 
         int bgColor=Color.parseColor(SAXUtil.getString(atts, MapAttributes.BACKGROUND_COLOR, "#000000FF"));
 
@@ -346,6 +371,59 @@ public class TiledMap extends PropertiesCollector {
         resetScrollAreas();
     }
 
+    /**
+     * <p>
+     * Imposta le dimensioni di una mappa infinita, dopo aver caricato tutti i layer. Le dimensioni della mappa vengono
+     * ricalcolate dall'handler, i tiled layer ricevono le stesse dimensioni e gli oggetti vengono spostati in modo che la cella
+     * <code>(originColumn, originRow)</code> del tmx diventi la cella (0, 0).
+     * </p>
+     *
+     * @param originColumnValue colonna del tmx che diventa la colonna 0
+     * @param originRowValue    riga del tmx che diventa la riga 0
+     * @param columns           colonne della mappa
+     * @param rows              righe della mappa
+     */
+    public void setInfiniteBounds(int originColumnValue, int originRowValue, int columns, int rows) {
+        this.originColumn = originColumnValue;
+        this.originRow = originRowValue;
+        this.tileColumns = columns;
+        this.tileRows = rows;
+        handler.computeMapSize();
+
+        for (int i = 0; i < layers.size(); i++) {
+            Layer item = layers.get(i);
+            if (item.type == LayerType.TILED && ((TiledLayer) item).chunkedCells != null) {
+                ((TiledLayer) item).setBounds(originColumn, originRow, tileColumns, tileRows);
+            }
+        }
+
+        // spostamento degli oggetti, nelle coordinate del tmx
+        float dx;
+        float dy;
+        switch (orientation) {
+            case ISOMETRIC:
+                dx = originColumn * tileHeight;
+                dy = originRow * tileHeight;
+                break;
+            case STAGGERED:
+                dx = originColumn * tileWidth;
+                dy = originRow * tileHeight * 0.5f;
+                break;
+            default:
+                dx = originColumn * tileWidth;
+                dy = originRow * tileHeight;
+                break;
+        }
+
+        for (int i = 0; i < objectLayers.size(); i++) {
+            ArrayList<ObjDefinition> objects = objectLayers.get(i).getObjects();
+            for (int j = 0; j < objects.size(); j++) {
+                objects.get(j).x -= dx;
+                objects.get(j).y -= dy;
+            }
+        }
+    }
+
     /**
      * <p>
      * Aggiunge il layer group al set di group object e alla lista di layers.
@@ -424,11 +502,11 @@ public class TiledMap extends PropertiesCollector {
                 case TILED: {
                     TiledLayer currentTiledLayer = (TiledLayer) currentLayer;
 
-                    // per ogni tile presente nel layer
-                    int numTiles = currentTiledLayer.tileRows * currentTiledLayer.tileColumns;
+                    // per ogni tile diversa presente nel layer: le celle con lo stesso valore la condividono
+                    int numTiles = currentTiledLayer.palette.size();
 
                     for (int i = 0; i < numTiles; i++) {
-                        currentTile = currentTiledLayer.tiles[i];
+                        currentTile = currentTiledLayer.palette.valueAt(i);
                         currentGid = currentTile.gid;
 
                         currentTexture = getTextureByGID(currentGid);
@@ -754,6 +832,8 @@ public class TiledMap extends PropertiesCollector {
         scrollHorizontalLocked = options.scrollHorizontalLocked;
 
         // invochiamo l'evento onWindowCreate per tutti i layer
+        view.staticChunkSize = options.staticChunkSize;
+        view.chunkCacheSize = options.chunkCacheSize;
         int n = layers.size();
         for (int i = 0; i < n; i++) {
             layers.get(i).onBuildView(view);
@@ -2,6 +2,7 @@ package com.abubusoft.xenon.mesh.tiledmaps;
 
 import java.io.IOException;
 
+import com.abubusoft.xenon.mesh.tiledmaps.tmx.loader.TMXBinaryCache;
 import com.abubusoft.xenon.mesh.tiledmaps.tmx.loader.TMXException;
 import com.abubusoft.xenon.mesh.tiledmaps.tmx.loader.TMXLoaderHandler;
 import com.abubusoft.xenon.mesh.tiledmaps.tmx.loader.TMXLoaderType;
@@ -27,8 +28,23 @@ public abstract class TiledMapFactory {
 	 * @throws TMXException
 	 */
 	public static TiledMap loadFromResources(Context context, String resourceName, TextureFilterType textureFilter) throws TMXException {
+		return loadFromResources(context, resourceName, textureFilter, false);
+	}
+
+	/**
+	 * Carica da una resource
+	 * 
+	 * @param context
+	 * @param resourceName
+	 * @param textureFilter
+	 * @param binaryCache
+	 *            se <code>true</code> usa una cache binaria nella cache dell'applicazione, vedi {@link TMXBinaryCache}
+	 * @return
+	 * @throws TMXException
+	 */
+	public static TiledMap loadFromResources(Context context, String resourceName, TextureFilterType textureFilter, boolean binaryCache) throws TMXException {
 		int resId = ResourceUtility.resolveAddress(context, resourceName);
-		TiledMap tiledMap = loadFromResources(context, resId, textureFilter);
+		TiledMap tiledMap = loadFromResources(context, resId, textureFilter, binaryCache);
 		
 		// creaiamo shader
 		tiledMap.init(context);
@@ -45,9 +61,24 @@ public abstract class TiledMapFactory {
 	 * @throws TMXException
 	 */
 	public static TiledMap loadFromAsset(Context context, String filename, TextureFilterType textureFilter) throws TMXException {
+		return loadFromAsset(context, filename, textureFilter, false);
+	}
+
+	/**
+	 * Carica da un asset
+	 * 
+	 * @param context
+	 * @param filename
+	 * @param textureFilter
+	 * @param binaryCache
+	 *            se <code>true</code> usa una cache binaria nella cache dell'applicazione, vedi {@link TMXBinaryCache}
+	 * @return
+	 * @throws TMXException
+	 */
+	public static TiledMap loadFromAsset(Context context, String filename, TextureFilterType textureFilter, boolean binaryCache) throws TMXException {
 		try {
 			TMXLoaderHandler loader = new TMXLoaderHandler();
-			TiledMap tiledMap = loader.load(context, context.getAssets().open(filename), TMXLoaderType.ASSET_LOADER, textureFilter);
+			TiledMap tiledMap = loader.load(context, context.getAssets().open(filename), TMXLoaderType.ASSET_LOADER, textureFilter, binaryCache ? context.getCacheDir() : null);
 			
 			// creaiamo shader
 			tiledMap.init(context);
@@ -68,10 +99,25 @@ public abstract class TiledMapFactory {
 	 * @throws TMXException
 	 */
 	public static TiledMap loadFromResources(Context context, int sourceId, TextureFilterType textureFilter) throws TMXException {
+		return loadFromResources(context, sourceId, textureFilter, false);
+	}
+
+	/**
+	 * Carica da una resource
+	 *
+	 * @param context
+	 * @param sourceId
+	 * @param textureFilter
+	 * @param binaryCache
+	 *            se <code>true</code> usa una cache binaria nella cache dell'applicazione, vedi {@link TMXBinaryCache}
+	 * @return
+	 * @throws TMXException
+	 */
+	public static TiledMap loadFromResources(Context context, int sourceId, TextureFilterType textureFilter, boolean binaryCache) throws TMXException {
 		try {
 			TMXLoaderHandler loader = new TMXLoaderHandler();
 
-			TiledMap tiledMap = loader.load(context, context.getResources().openRawResource(sourceId), TMXLoaderType.RES_LOADER, textureFilter);
+			TiledMap tiledMap = loader.load(context, context.getResources().openRawResource(sourceId), TMXLoaderType.RES_LOADER, textureFilter, binaryCache ? context.getCacheDir() : null);
 			
 			// creaiamo shader
 			tiledMap.init(context);
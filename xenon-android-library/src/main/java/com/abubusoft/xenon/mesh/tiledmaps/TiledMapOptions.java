@@ -51,6 +51,27 @@ public class TiledMapOptions {
 	 */
 	public float visiblePercentage = 1.0f;
 
+	/**
+	 * <p>
+	 * Se maggiore di 0, i tiled layer che non fanno parte di un'animazione vengono divisi in chunk di <code>staticChunkSize x staticChunkSize</code>
+	 * tile, caricati una volta sola in vbo statici durante la costruzione della view. Il disegno del layer si riduce a disegnare i chunk
+	 * visibili, senza lavoro sui vertici ad ogni frame. Al massimo 128.
+	 * </p>
+	 * 
+	 * <p>
+	 * Nelle mappe isometriche e isometriche sfalsate vengono divisi solo i layer con tile non più grandi della cella della mappa:
+	 * le tile più alte si sovrappongono alle righe precedenti e l'ordine di disegno non reggerebbe ai bordi dei chunk.
+	 * </p>
+	 */
+	public int staticChunkSize = 0;
+
+	/**
+	 * <p>
+	 * Per le mappe infinite, numero di chunk decodificati tenuti in memoria per ogni tiled layer. Vedi {@link ChunkedCells}.
+	 * </p>
+	 */
+	public int chunkCacheSize = ChunkedCells.DEFAULT_CACHE_SIZE;
+
 	/**
 	 * build della configurazione di base.
 	 * 
@@ -62,6 +83,8 @@ public class TiledMapOptions {
 	 * <li><b>startPosition</b>: {@link TiledMapPositionType#MIDDLE_CENTER}</li>
 	 * <li><b>visibileTiles</b>: 0 - Numero di tile visibili per dimensione. Viene utilizzato solo se fillScreenType è definito come {@link TiledMapFillScreenType#FILL_CUSTOM}</li>
 	 * <li><b>visiblePercentage</b>: 1 - questa percentuale indica quanto della dimensione è resa visibile sullo schermo.</li>
+	 * <li><b>staticChunkSize</b>: 0 - i tiled layer non vengono divisi in chunk statici</li>
+	 * <li><b>chunkCacheSize</b>: {@link ChunkedCells#DEFAULT_CACHE_SIZE} - chunk decodificati per layer delle mappe infinite</li>
 	 * </ul>
 	 * 
 	 * @return
@@ -125,6 +148,44 @@ public class TiledMapOptions {
 		return this;
 	}
 
+	/**
+	 * <p>
+	 * Dimensione in tile dei chunk statici in cui dividere i tiled layer che non fanno parte di un'animazione. Con 0 i layer vengono
+	 * disegnati mediante la finestra che scorre sulla mappa. Valori tipici sono 16 o 32, al massimo 128.
+	 * </p>
+	 * 
+	 * @param value
+	 *            lato del chunk, in tile
+	 * @return this
+	 */
+	public TiledMapOptions staticChunkSize(int value) {
+		if (value < 0 || value > 128) {
+			throw new IllegalArgumentException("staticChunkSize must be between 0 and 128");
+		}
+		staticChunkSize = value;
+
+		return this;
+	}
+
+	/**
+	 * <p>
+	 * Numero di chunk decodificati tenuti in memoria per ogni tiled layer di una mappa infinita. Deve coprire almeno i chunk che
+	 * cadono nella finestra.
+	 * </p>
+	 * 
+	 * @param value
+	 *            numero di chunk
+	 * @return this
+	 */
+	public TiledMapOptions chunkCacheSize(int value) {
+		if (value < 1) {
+			throw new IllegalArgumentException("chunkCacheSize must be at least 1");
+		}
+		chunkCacheSize = value;
+
+		return this;
+	}
+
 	/**
 	 * Se true consente di creare un controller.
 	 * 
@@ -65,6 +65,10 @@ public abstract class AbstractMapHandler<E extends AbstractMapController> implem
 		// aggiorniamo il frame marker per gli oggetti
 		ObjDefinition.updateGlobalFrameMarker();
 
+		// contatori del frame
+		map.view().chunksDrawn = 0;
+		map.view().bytesUploaded = 0;
+
 		ShaderTiledMap shader = map.shader;
 		Layer item;
 		// offset
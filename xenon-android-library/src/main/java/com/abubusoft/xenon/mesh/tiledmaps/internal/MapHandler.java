@@ -62,6 +62,12 @@ public interface MapHandler {
 	 */
 	public void draw(long deltaTime, Matrix4x4 modelViewProjection);
 
+	/**
+	 * Calcola {@link TiledMap#mapWidth} e {@link TiledMap#mapHeight} a partire da righe e colonne della mappa. Viene invocato
+	 * alla creazione dell'handler e quando cambiano le dimensioni di una mappa infinita.
+	 */
+	void computeMapSize();
+
 	/**
 	 * Effettua il build della view. La sua implentazione cambia in base al tipo di orientamento della mappa.
 	 * 
@@ -0,0 +1,62 @@
+package com.abubusoft.xenon.mesh.tiledmaps.internal;
+
+import java.nio.FloatBuffer;
+
+import com.abubusoft.xenon.vbo.IndexBuffer;
+import com.abubusoft.xenon.vbo.TextureBuffer;
+import com.abubusoft.xenon.vbo.VertexBuffer;
+
+/**
+ * <p>
+ * Blocco di tile di un tiled layer, caricato una volta sola in vbo statici. Contiene solo i quad delle tile non vuote, con le
+ * posizioni riferite all'origine del layer.
+ * </p>
+ *
+ * @see TiledLayerHandler
+ */
+public class TiledLayerChunk {
+
+	/**
+	 * vertici dei quad
+	 */
+	public final VertexBuffer vertexBuffer;
+
+	/**
+	 * coordinate texture dei quad
+	 */
+	public final TextureBuffer textureBuffer;
+
+	/**
+	 * indici dei quad
+	 */
+	public final IndexBuffer indexBuffer;
+
+	/**
+	 * selettori di texture dei vertici, <code>null</code> se il layer usa una sola texture
+	 */
+	public final FloatBuffer textureIndex;
+
+	/**
+	 * numero di quad
+	 */
+	public final int quadCount;
+
+	TiledLayerChunk(VertexBuffer vertexBuffer, TextureBuffer textureBuffer, IndexBuffer indexBuffer, FloatBuffer textureIndex, int quadCount) {
+		this.vertexBuffer = vertexBuffer;
+		this.textureBuffer = textureBuffer;
+		this.indexBuffer = indexBuffer;
+		this.textureIndex = textureIndex;
+		this.quadCount = quadCount;
+	}
+
+	/**
+	 * <p>
+	 * Byte occupati in video memory dai vbo del chunk.
+	 * </p>
+	 *
+	 * @return byte
+	 */
+	public int getSize() {
+		return (vertexBuffer.capacity + textureBuffer.capacity) * VertexBuffer.BYTES_PER_FLOAT + indexBuffer.capacity * 2;
+	}
+}
@@ -4,10 +4,16 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 
+import com.abubusoft.kripton.android.Logger;
 import com.abubusoft.xenon.math.Matrix4x4;
+import com.abubusoft.xenon.math.XenonMath;
+import com.abubusoft.xenon.mesh.MeshDrawModeType;
+import com.abubusoft.xenon.mesh.modifiers.IndexQuadModifier;
+import com.abubusoft.xenon.mesh.modifiers.TextureQuadModifier;
 import com.abubusoft.xenon.mesh.tiledmaps.ObjClass;
 import com.abubusoft.xenon.mesh.tiledmaps.Tile;
 import com.abubusoft.xenon.mesh.tiledmaps.TiledLayer;
+import com.abubusoft.xenon.opengl.XenonGL;
 import com.abubusoft.xenon.shader.ShaderTiledMap;
 import com.abubusoft.xenon.vbo.BufferAllocationType;
 import com.abubusoft.xenon.vbo.BufferManager;
@@ -15,8 +21,45 @@ import com.abubusoft.xenon.vbo.IndexBuffer;
 import com.abubusoft.xenon.vbo.TextureBuffer;
 import com.abubusoft.xenon.vbo.VertexBuffer;
 
+import android.opengl.GLES20;
+
+/**
+ * <p>
+ * Handler dei layer di tile. La finestra di tile disegnata è un ring buffer toroidale: la tile della riga <code>row</code> e
+ * della colonna <code>column</code> del layer occupa sempre il quad <code>(row mod windowTileRows, column mod windowTileColumns)</code>.
+ * Quando la finestra scorre di una colonna (o di una riga) vengono riscritti e caricati in video memory solo i quad della colonna
+ * (o della riga) che entra nella finestra, al posto della finestra intera.
+ * </p>
+ * 
+ * <p>
+ * Per questo ogni layer ha un suo vertex buffer: la posizione di un quad dipende dalla tile che contiene, rispetto ad un'origine
+ * fissata all'ultima ricostruzione completa della finestra (vedi {@link #originColumn} e {@link #originRow}). La matrice di
+ * disegno trasla poi tutto della distanza tra l'origine e la prima tile della finestra.
+ * </p>
+ * 
+ * <p>
+ * I quad sono disegnati nell'ordine degli indici. Se le tile possono sovrapporsi, come nelle mappe isometriche, l'ordine deve
+ * essere quello delle righe della finestra: vedi {@link #isDrawnByRows()}. In questo caso gli indici non seguono il ring buffer
+ * ma vengono riscritti per righe ogni volta che la finestra si sposta.
+ * </p>
+ * 
+ * <p>
+ * Se {@link TiledMapView#staticChunkSize} è maggiore di 0, i layer che non fanno parte di un'animazione non usano la finestra:
+ * vengono divisi in {@link TiledLayerChunk} caricati una volta sola in vbo statici e ad ogni frame si disegnano solo i chunk che
+ * cadono nella finestra. Restano nella finestra i layer le cui tile possono sovrapporsi ai bordi dei chunk: vedi
+ * {@link #isBakeable()}.
+ * </p>
+ */
 public abstract class TiledLayerHandler extends AbstractLayerHandler<TiledLayer> {
 
+	/**
+	 * <p>
+	 * Distanza massima, in tile, tra l'origine e la finestra. Oltre questa distanza la finestra viene ricostruita con una nuova
+	 * origine, in modo che le coordinate dei vertici restino piccole.
+	 * </p>
+	 */
+	private static final int MAX_ORIGIN_DISTANCE = 1024;
+
 	public TiledLayerHandler(TiledLayer layer) {
 		super(layer);
 	}
@@ -46,6 +89,51 @@ public abstract class TiledLayerHandler extends AbstractLayerHandler<TiledLayer>
 	 * array delle texture selezionate
 	 */
 	public FloatBuffer textureIndex;
+
+	/**
+	 * colonna del layer della prima tile della finestra, senza modulo sulle dimensioni del layer
+	 */
+	protected int windowColumn;
+
+	/**
+	 * riga del layer della prima tile della finestra, senza modulo sulle dimensioni del layer
+	 */
+	protected int windowRow;
+
+	/**
+	 * colonna del layer usata come origine per le posizioni dei quad
+	 */
+	protected int originColumn;
+
+	/**
+	 * riga del layer usata come origine per le posizioni dei quad
+	 */
+	protected int originRow;
+
+	/**
+	 * <code>false</code> se la finestra deve essere ricostruita per intero al prossimo disegno
+	 */
+	protected boolean windowValid;
+
+	/**
+	 * quad del ring buffer che contengono una tile vuota, solo se i quad vanno disegnati per righe
+	 */
+	protected boolean[] emptyQuads;
+
+	/**
+	 * chunk statici del layer, per righe, o <code>null</code> se il layer usa la finestra. I chunk senza tile sono <code>null</code>.
+	 */
+	protected TiledLayerChunk[] chunks;
+
+	/**
+	 * numero di colonne di chunk
+	 */
+	protected int chunkColumns;
+
+	/**
+	 * numero di righe di chunk
+	 */
+	protected int chunkRows;
 	
 	/* (non-Javadoc)
 	 * @see com.abubusoft.xenon.mesh.tiledmaps.internal.AbstractLayerHandler#onBuildView(com.abubusoft.xenon.mesh.tiledmaps.internal.TiledMapView)
@@ -53,17 +141,538 @@ public abstract class TiledLayerHandler extends AbstractLayerHandler<TiledLayer>
 	@Override
 	public void onBuildView(TiledMapView view) {
 		super.onBuildView(view);
-		
-		vertexBuffer=view.windowVerticesBuffer;
+
+		// i layer che non fanno parte di un'animazione vengono caricati una volta per tutte, tranne quelli delle mappe infinite
+		// che devono restare in memoria solo per la parte visibile
+		if (view.staticChunkSize > 0 && layer.animationOwnerIndex == -1 && layer.chunkedCells == null && isBakeable()) {
+			bakeChunks(view.staticChunkSize);
+			return;
+		}
+		chunks = null;
 		
 		// definiamo questi buffer per ogni tiledlayer perchè così non devono essere ripuliti ogni volta. Se
-		// stiamo fermi, questi qua vanno già bene.
+		// stiamo fermi, questi qua vanno già bene. Anche il vertex buffer è del layer, dato che i quad si spostano insieme
+		// alle tile del ring buffer.
+		vertexBuffer = BufferManager.instance().createVertexBuffer(view.windowTileColumns * view.windowTileRows * VertexBuffer.VERTEX_IN_QUAD_TILE, BufferAllocationType.STREAM);
 		indexBuffer = BufferManager.instance().createIndexBuffer(view.windowTileColumns * view.windowTileRows * IndexBuffer.INDEX_IN_QUAD_TILE, BufferAllocationType.STREAM);
 		textureBuffer = BufferManager.instance().createTextureBuffer(view.windowTileColumns * view.windowTileRows * VertexBuffer.VERTEX_IN_QUAD_TILE, BufferAllocationType.STREAM);				
 
-		textureSelector = new float[view.windowTileColumns * view.windowTileRows];
-		textureIndex = ByteBuffer.allocateDirect(view.windowTileColumns * view.windowTileRows * VertexBuffer.BYTES_PER_FLOAT).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		textureSelector = new float[view.windowTileColumns * view.windowTileRows * VertexBuffer.VERTEX_IN_QUAD_TILE];
+		textureIndex = ByteBuffer.allocateDirect(view.windowTileColumns * view.windowTileRows * VertexBuffer.VERTEX_IN_QUAD_TILE * VertexBuffer.BYTES_PER_FLOAT).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		emptyQuads = isDrawnByRows() ? new boolean[view.windowTileColumns * view.windowTileRows] : null;
+
+		windowValid = false;
+	}
+
+	/**
+	 * <p>
+	 * Divide il layer in chunk di <code>size x size</code> tile e li carica in vbo statici.
+	 * </p>
+	 * 
+	 * @param size
+	 *            lato del chunk, in tile
+	 */
+	protected void bakeChunks(int size) {
+		chunkColumns = (layer.tileColumns + size - 1) / size;
+		chunkRows = (layer.tileRows + size - 1) / size;
+		chunks = new TiledLayerChunk[chunkColumns * chunkRows];
+
+		final int rowShift = getChunkRowShift();
+		int count = 0;
+		int bytes = 0;
+		for (int chunkRow = 0; chunkRow < chunkRows; chunkRow++) {
+			int firstRow = chunkRow * size;
+			int lastRow = Math.min(firstRow + size, layer.tileRows);
+
+			for (int chunkColumn = 0; chunkColumn < chunkColumns; chunkColumn++) {
+				int firstColumn = chunkColumn * size;
+				int lastColumn = Math.min(firstColumn + size, layer.tileColumns);
+
+				// i quad sono solo quelli delle tile non vuote
+				int quadCount = 0;
+				for (int row = firstRow; row < lastRow; row++) {
+					for (int column = firstColumn; column < lastColumn; column++) {
+						if (!layer.isEmpty(row * layer.tileColumns + column)) {
+							quadCount++;
+						}
+					}
+				}
+				if (quadCount == 0) {
+					continue;
+				}
+
+				VertexBuffer vertices = BufferManager.instance().createVertexBuffer(quadCount * VertexBuffer.VERTEX_IN_QUAD_TILE, BufferAllocationType.STATIC);
+				TextureBuffer textures = BufferManager.instance().createTextureBuffer(quadCount * VertexBuffer.VERTEX_IN_QUAD_TILE, BufferAllocationType.STATIC);
+				IndexBuffer indexes = BufferManager.instance().createIndexBuffer(quadCount * IndexBuffer.INDEX_IN_QUAD_TILE, BufferAllocationType.STATIC);
+				FloatBuffer selectors = null;
+				if (!layer.tiledMap.onlyOneTexture4Layer) {
+					selectors = ByteBuffer.allocateDirect(quadCount * VertexBuffer.VERTEX_IN_QUAD_TILE * VertexBuffer.BYTES_PER_FLOAT).order(ByteOrder.nativeOrder()).asFloatBuffer();
+				}
+
+				int quad = 0;
+				for (int row = firstRow; row < lastRow; row++) {
+					for (int column = firstColumn; column < lastColumn; column++) {
+						layer.tileToDraw = layer.getTile(row * layer.tileColumns + column);
+						if (layer.tileToDraw.gid == 0) {
+							continue;
+						}
+
+						setQuadPosition(vertices, quad, column, row + rowShift);
+						TextureQuadModifier.setTextureCoords(textures, quad, layer.tileToDraw, false);
+
+						indexes.cursor = quad * IndexBuffer.INDEX_IN_QUAD_TILE;
+						IndexQuadModifier.setIndexes(indexes, indexes.cursor, quad, false);
+
+						if (selectors != null) {
+							for (int i = 0; i < VertexBuffer.VERTEX_IN_QUAD_TILE; i++) {
+								selectors.put(layer.tileToDraw.textureSelector);
+							}
+						}
+						quad++;
+					}
+				}
+
+				vertices.update();
+				textures.update();
+				indexes.update();
+				if (selectors != null) {
+					selectors.position(0);
+				}
+
+				TiledLayerChunk chunk = new TiledLayerChunk(vertices, textures, indexes, selectors, quadCount);
+				chunks[chunkRow * chunkColumns + chunkColumn] = chunk;
+				count++;
+				bytes += chunk.getSize();
+			}
+		}
+
+		if (XenonGL.openGLDebug) {
+			Logger.info("XENON - layer %s: %s static chunks of %sx%s tiles, %s bytes", layer.name, count, size, size, bytes);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Indica se il layer può essere diviso in chunk statici. I chunk vengono disegnati uno dopo l'altro: se i quad vanno disegnati
+	 * per righe (vedi {@link #isDrawnByRows()}) e le tile sono più grandi della cella, una tile alta di un chunk verrebbe coperta
+	 * dalle righe precedenti del chunk accanto.
+	 * </p>
+	 * 
+	 * @return <code>true</code> se le tile del layer non possono sovrapporsi ai bordi dei chunk
+	 */
+	protected boolean isBakeable() {
+		return !isDrawnByRows() || (layer.tileWidthMax <= layer.tiledMap.tileWidth && layer.tileHeightMax <= layer.tiledMap.tileHeight);
+	}
+
+	/**
+	 * <p>
+	 * Disegna i chunk statici che cadono nella finestra. Il layer si ripete come nella finestra: i chunk di una ripetizione
+	 * vengono traslati della sua distanza dall'origine.
+	 * </p>
+	 * 
+	 * @param shader
+	 *            shader
+	 * @param startLayerColumn
+	 *            colonna del layer della prima tile della finestra, senza modulo sulle dimensioni del layer
+	 * @param startLayerRow
+	 *            riga del layer della prima tile della finestra, senza modulo sulle dimensioni del layer
+	 * @param offsetX
+	 *            offset x dello scroll
+	 * @param offsetY
+	 *            offset y dello scroll
+	 * @param modelview
+	 *            matrice di proiezione
+	 */
+	protected void drawChunks(ShaderTiledMap shader, int startLayerColumn, int startLayerRow, int offsetX, int offsetY, Matrix4x4 modelview) {
+		final int size = view.staticChunkSize;
+
+		// righe e colonne del layer che cadono nella finestra
+		int firstRow = startLayerRow - getChunkRowShift();
+		int lastRow = firstRow + view.windowTileRows - 1;
+		int firstColumn = startLayerColumn;
+		int lastColumn = firstColumn + view.windowTileColumns - 1;
+
+		int firstRowRepeat = 0;
+		int lastRowRepeat = 0;
+		if (isRowWrapped()) {
+			firstRowRepeat = XenonMath.floorDiv(firstRow, layer.tileRows);
+			lastRowRepeat = XenonMath.floorDiv(lastRow, layer.tileRows);
+		}
+		int firstColumnRepeat = XenonMath.floorDiv(firstColumn, layer.tileColumns);
+		int lastColumnRepeat = XenonMath.floorDiv(lastColumn, layer.tileColumns);
+
+		shader.setOpacity(layer.opacity);
+
+		for (int rowRepeat = firstRowRepeat; rowRepeat <= lastRowRepeat; rowRepeat++) {
+			int rowBase = rowRepeat * layer.tileRows;
+			if (lastRow < rowBase || firstRow >= rowBase + layer.tileRows) {
+				continue;
+			}
+			int firstChunkRow = Math.max(firstRow - rowBase, 0) / size;
+			int lastChunkRow = Math.min(lastRow - rowBase, layer.tileRows - 1) / size;
+
+			for (int columnRepeat = firstColumnRepeat; columnRepeat <= lastColumnRepeat; columnRepeat++) {
+				int columnBase = columnRepeat * layer.tileColumns;
+				int firstChunkColumn = Math.max(firstColumn - columnBase, 0) / size;
+				int lastChunkColumn = Math.min(lastColumn - columnBase, layer.tileColumns - 1) / size;
+
+				// i quad del chunk sono posizionati rispetto all'origine del layer
+				buildDrawMatrix(startLayerColumn - columnBase, startLayerRow - rowBase, offsetX, offsetY);
+				matrix.multiply(modelview, matrix);
+
+				for (int chunkRow = firstChunkRow; chunkRow <= lastChunkRow; chunkRow++) {
+					for (int chunkColumn = firstChunkColumn; chunkColumn <= lastChunkColumn; chunkColumn++) {
+						TiledLayerChunk chunk = chunks[chunkRow * chunkColumns + chunkColumn];
+						if (chunk != null) {
+							drawChunk(shader, chunk);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Disegna un chunk con la matrice corrente.
+	 * </p>
+	 * 
+	 * @param shader
+	 *            shader
+	 * @param chunk
+	 *            chunk da disegnare
+	 */
+	private void drawChunk(ShaderTiledMap shader, TiledLayerChunk chunk) {
+		shader.setVertexCoordinatesArray(chunk.vertexBuffer);
+		shader.setModelViewProjectionMatrix(matrix.asFloatBuffer());
+
+		// Se abbiamo più di una texture dobbiamo impostare il selettore di
+		// texture
+		if (chunk.textureIndex != null) {
+			shader.setTextureSelectorArray(chunk.textureIndex);
+		}
+
+		shader.setTextureCoordinatesArray(0, chunk.textureBuffer);
+
+		shader.setIndexBuffer(chunk.indexBuffer);
+		GLES20.glDrawElements(MeshDrawModeType.INDEXED_TRIANGLES.value, chunk.indexBuffer.capacity, GLES20.GL_UNSIGNED_SHORT, 0);
+		shader.unsetIndexBuffer(chunk.indexBuffer);
+
+		view.chunksDrawn++;
+	}
+
+	/**
+	 * <p>
+	 * Righe di cui spostare le tile del layer nei chunk statici, rispetto alla finestra.
+	 * </p>
+	 * 
+	 * @return righe di spostamento
+	 */
+	protected int getChunkRowShift() {
+		return 0;
+	}
+
+	/**
+	 * <p>
+	 * Indica se le righe del layer si ripetono come le colonne.
+	 * </p>
+	 * 
+	 * @return <code>true</code> se le righe si ripetono
+	 */
+	protected boolean isRowWrapped() {
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Porta la finestra sulla tile <code>(startLayerColumn, startLayerRow)</code>. Se la finestra si è spostata di meno della sua
+	 * dimensione, vengono riscritti solo i quad delle righe e delle colonne entrate, altrimenti viene ricostruita per intero.
+	 * </p>
+	 * 
+	 * @param startLayerColumn
+	 *            colonna del layer della prima tile della finestra, senza modulo sulle dimensioni del layer
+	 * @param startLayerRow
+	 *            riga del layer della prima tile della finestra, senza modulo sulle dimensioni del layer
+	 */
+	protected void scrollWindow(int startLayerColumn, int startLayerRow) {
+		boolean moved = !windowValid || startLayerColumn != windowColumn || startLayerRow != windowRow;
+
+		moveWindow(startLayerColumn, startLayerRow);
+
+		// dopo lo spostamento la prima riga della finestra non e' piu' all'inizio del ring buffer
+		if (moved && emptyQuads != null) {
+			writeIndexesByRows();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Riscrive i quad entrati nella finestra, vedi {@link #scrollWindow(int, int)}.
+	 * </p>
+	 * 
+	 * @param startLayerColumn
+	 *            colonna del layer della prima tile della finestra, senza modulo sulle dimensioni del layer
+	 * @param startLayerRow
+	 *            riga del layer della prima tile della finestra, senza modulo sulle dimensioni del layer
+	 */
+	private void moveWindow(int startLayerColumn, int startLayerRow) {
+		final int windowColumns = view.windowTileColumns;
+		final int windowRows = view.windowTileRows;
+
+		int deltaColumns = startLayerColumn - windowColumn;
+		int deltaRows = startLayerRow - windowRow;
+
+		if (!windowValid || Math.abs(deltaColumns) >= windowColumns || Math.abs(deltaRows) >= windowRows || !isScrollable(deltaColumns, deltaRows)
+				|| Math.abs(startLayerColumn - originColumn) > MAX_ORIGIN_DISTANCE || Math.abs(startLayerRow - originRow) > MAX_ORIGIN_DISTANCE) {
+			windowColumn = originColumn = startLayerColumn;
+			windowRow = originRow = startLayerRow;
+
+			for (int row = startLayerRow; row < startLayerRow + windowRows; row++) {
+				for (int column = startLayerColumn; column < startLayerColumn + windowColumns; column++) {
+					fillQuad(getQuad(column, row), column, row);
+				}
+			}
+			updateQuads(0, windowColumns * windowRows);
+
+			windowValid = true;
+			return;
+		}
+
+		windowColumn = startLayerColumn;
+		windowRow = startLayerRow;
+
+		// righe entrate nella finestra: ognuna occupa una riga intera del ring buffer
+		int firstNewRow = deltaRows > 0 ? startLayerRow + windowRows - deltaRows : startLayerRow;
+		int lastNewRow = firstNewRow + Math.abs(deltaRows);
+		for (int row = firstNewRow; row < lastNewRow; row++) {
+			for (int column = startLayerColumn; column < startLayerColumn + windowColumns; column++) {
+				fillQuad(getQuad(column, row), column, row);
+			}
+			updateQuads(XenonMath.floorMod(row, windowRows) * windowColumns, windowColumns);
+		}
+
+		if (deltaColumns == 0) {
+			return;
+		}
+
+		// colonne entrate nella finestra, per le righe non ancora riscritte
+		int firstNewColumn = deltaColumns > 0 ? startLayerColumn + windowColumns - deltaColumns : startLayerColumn;
+		int newColumns = Math.abs(deltaColumns);
+		int firstSlot = XenonMath.floorMod(firstNewColumn, windowColumns);
+		for (int row = startLayerRow; row < startLayerRow + windowRows; row++) {
+			if (row >= firstNewRow && row < lastNewRow) {
+				continue;
+			}
+
+			for (int column = firstNewColumn; column < firstNewColumn + newColumns; column++) {
+				fillQuad(getQuad(column, row), column, row);
+			}
+
+			// le colonne possono tornare all'inizio della riga del ring buffer
+			int base = XenonMath.floorMod(row, windowRows) * windowColumns;
+			int count = Math.min(newColumns, windowColumns - firstSlot);
+			updateQuads(base + firstSlot, count);
+			if (count < newColumns) {
+				updateQuads(base, newColumns - count);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Scrive gli indici dei quad nell'ordine delle righe della finestra, a partire dalla prima tile, e li carica in video memory.
+	 * I quad delle tile vuote hanno indici degeneri.
+	 * </p>
+	 */
+	protected void writeIndexesByRows() {
+		final int windowColumns = view.windowTileColumns;
+		final int windowRows = view.windowTileRows;
+
+		indexBuffer.cursor = 0;
+		for (int row = windowRow; row < windowRow + windowRows; row++) {
+			for (int column = windowColumn; column < windowColumn + windowColumns; column++) {
+				int quad = getQuad(column, row);
+				if (emptyQuads[quad]) {
+					short vertex = (short) (quad * VertexBuffer.VERTEX_IN_QUAD_TILE);
+					for (int i = 0; i < IndexBuffer.INDEX_IN_QUAD_TILE; i++) {
+						indexBuffer.values[indexBuffer.cursor + i] = vertex;
+					}
+				} else {
+					IndexQuadModifier.setIndexes(indexBuffer, indexBuffer.cursor, quad, false);
+				}
+				indexBuffer.cursor += IndexBuffer.INDEX_IN_QUAD_TILE;
+			}
+		}
+		indexBuffer.update();
+
+		view.bytesUploaded += windowColumns * windowRows * IndexBuffer.INDEX_IN_QUAD_TILE * 2;
+	}
+
+	/**
+	 * <p>
+	 * Indica se i quad vanno disegnati nell'ordine delle righe della finestra, invece che nell'ordine del ring buffer. Serve quando
+	 * le tile possono sovrapporsi: la tile di una riga deve coprire quelle delle righe precedenti.
+	 * </p>
+	 * 
+	 * @return <code>true</code> se gli indici vanno riscritti per righe ad ogni spostamento della finestra
+	 */
+	protected boolean isDrawnByRows() {
+		return false;
+	}
+
+	/**
+	 * <p>
+	 * Indica se la finestra può scorrere in modo incrementale dello spostamento indicato, senza essere ricostruita.
+	 * </p>
+	 * 
+	 * @param deltaColumns
+	 *            colonne di spostamento
+	 * @param deltaRows
+	 *            righe di spostamento
+	 * @return <code>true</code> se basta riscrivere le righe e le colonne entrate
+	 */
+	protected boolean isScrollable(int deltaColumns, int deltaRows) {
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Quad del ring buffer che contiene la tile del layer.
+	 * </p>
+	 * 
+	 * @param column
+	 *            colonna del layer, senza modulo
+	 * @param row
+	 *            riga del layer, senza modulo
+	 * @return indice del quad
+	 */
+	protected int getQuad(int column, int row) {
+		return XenonMath.floorMod(row, view.windowTileRows) * view.windowTileColumns + XenonMath.floorMod(column, view.windowTileColumns);
+	}
+
+	/**
+	 * <p>
+	 * Scrive nel quad la tile del layer: posizione, coordinate texture, selettore di texture ed indici. Il quad di una tile vuota
+	 * ha indici degeneri, in modo che gli indici di ogni quad restino sempre nella stessa posizione del buffer.
+	 * </p>
+	 * 
+	 * <p>
+	 * La tile scritta resta in {@link TiledLayer#tileToDraw}. Se i quad vanno disegnati per righe, gli indici vengono scritti
+	 * dopo da {@link #writeIndexesByRows()}.
+	 * </p>
+	 * 
+	 * @param quad
+	 *            indice del quad
+	 * @param column
+	 *            colonna del layer, senza modulo
+	 * @param row
+	 *            riga del layer, senza modulo
+	 */
+	protected void fillQuad(int quad, int column, int row) {
+		layer.tileToDraw = getWindowTile(column, row);
+
+		setQuadPosition(vertexBuffer, quad, column - originColumn, row - originRow);
+
+		if (emptyQuads != null) {
+			emptyQuads[quad] = layer.tileToDraw.gid == 0;
+		}
+
+		indexBuffer.cursor = quad * IndexBuffer.INDEX_IN_QUAD_TILE;
+		if (layer.tileToDraw.gid != 0) {
+			// Se abbiamo più di una texture dobbiamo impostare il
+			// selettore di texture
+			if (!layer.tiledMap.onlyOneTexture4Layer) {
+				setTextureSelector(quad, layer.tileToDraw);
+			}
+
+			TextureQuadModifier.setTextureCoords(textureBuffer, quad, layer.tileToDraw, false);
+			if (emptyQuads == null) {
+				IndexQuadModifier.setIndexes(indexBuffer, indexBuffer.cursor, quad, false);
+			}
+		} else if (emptyQuads == null) {
+			short vertex = (short) (quad * VertexBuffer.VERTEX_IN_QUAD_TILE);
+			for (int i = 0; i < IndexBuffer.INDEX_IN_QUAD_TILE; i++) {
+				indexBuffer.values[indexBuffer.cursor + i] = vertex;
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Carica in video memory i quad indicati dei buffer del layer.
+	 * </p>
+	 * 
+	 * @param firstQuad
+	 *            primo quad
+	 * @param quadCount
+	 *            numero di quad consecutivi
+	 */
+	protected void updateQuads(int firstQuad, int quadCount) {
+		view.bytesUploaded += quadCount * VertexBuffer.VERTEX_IN_QUAD_TILE * (VertexBuffer.POSITION_DIMENSIONS + TextureBuffer.TEXTURE_DIMENSIONS) * VertexBuffer.BYTES_PER_FLOAT;
+
+		vertexBuffer.update(firstQuad * VertexBuffer.VERTEX_IN_QUAD_TILE * VertexBuffer.POSITION_DIMENSIONS, quadCount * VertexBuffer.VERTEX_IN_QUAD_TILE * VertexBuffer.POSITION_DIMENSIONS);
+		textureBuffer.update(firstQuad * VertexBuffer.VERTEX_IN_QUAD_TILE * TextureBuffer.TEXTURE_DIMENSIONS, quadCount * VertexBuffer.VERTEX_IN_QUAD_TILE * TextureBuffer.TEXTURE_DIMENSIONS);
+
+		// gli indici per righe vengono caricati tutti insieme da writeIndexesByRows
+		if (emptyQuads == null) {
+			view.bytesUploaded += quadCount * IndexBuffer.INDEX_IN_QUAD_TILE * 2;
+			indexBuffer.update(firstQuad * IndexBuffer.INDEX_IN_QUAD_TILE, quadCount * IndexBuffer.INDEX_IN_QUAD_TILE);
+		}
+
+		// Se abbiamo più di una texture dobbiamo impostare il selettore di
+		// texture
+		if (!layer.tiledMap.onlyOneTexture4Layer) {
+			int offset = firstQuad * VertexBuffer.VERTEX_IN_QUAD_TILE;
+			textureIndex.position(offset);
+			textureIndex.put(textureSelector, offset, quadCount * VertexBuffer.VERTEX_IN_QUAD_TILE).position(0);
+		}
 	}
+
+	/**
+	 * <p>
+	 * Tile del layer da disegnare nella posizione indicata della finestra.
+	 * </p>
+	 * 
+	 * @param column
+	 *            colonna del layer, senza modulo
+	 * @param row
+	 *            riga del layer, senza modulo
+	 * @return tile
+	 */
+	protected abstract Tile getWindowTile(int column, int row);
+
+	/**
+	 * <p>
+	 * Imposta i vertici del quad.
+	 * </p>
+	 * 
+	 * @param vertices
+	 *            vertex buffer da aggiornare
+	 * @param quad
+	 *            indice del quad
+	 * @param column
+	 *            colonna della tile rispetto all'origine
+	 * @param row
+	 *            riga della tile rispetto all'origine
+	 */
+	protected abstract void setQuadPosition(VertexBuffer vertices, int quad, int column, int row);
+
+	/**
+	 * <p>
+	 * Imposta in {@link #matrix} la traslazione per disegnare i quad, quando la prima tile della finestra dista
+	 * <code>(deltaColumns, deltaRows)</code> dall'origine dei quad.
+	 * </p>
+	 * 
+	 * @param deltaColumns
+	 *            colonne tra l'origine e la prima tile della finestra
+	 * @param deltaRows
+	 *            righe tra l'origine e la prima tile della finestra
+	 * @param offsetX
+	 *            offset x dello scroll
+	 * @param offsetY
+	 *            offset y dello scroll
+	 */
+	protected abstract void buildDrawMatrix(int deltaColumns, int deltaRows, int offsetX, int offsetY);
 	
 	/**
 	 * Per una tile, imposta la texture associata
@@ -119,4 +119,33 @@ public class TiledMapView {
 
 	public float tiledWindowHeight;
 
+	/**
+	 * <p>
+	 * Lato in tile dei chunk statici dei tiled layer, 0 se non usati. Viene da {@link com.abubusoft.xenon.mesh.tiledmaps.TiledMapOptions#staticChunkSize}.
+	 * </p>
+	 */
+	public int staticChunkSize;
+
+	/**
+	 * <p>
+	 * Numero di chunk decodificati tenuti in memoria per ogni tiled layer di una mappa infinita. Viene da
+	 * {@link com.abubusoft.xenon.mesh.tiledmaps.TiledMapOptions#chunkCacheSize}.
+	 * </p>
+	 */
+	public int chunkCacheSize;
+
+	/**
+	 * <p>
+	 * Numero di chunk statici disegnati nell'ultimo frame.
+	 * </p>
+	 */
+	public int chunksDrawn;
+
+	/**
+	 * <p>
+	 * Byte caricati in video memory nell'ultimo frame per disegnare i tiled layer.
+	 * </p>
+	 */
+	public int bytesUploaded;
+
 }
@@ -107,9 +107,7 @@ public class IsometricMapHandler extends AbstractMapHandler<IsometricMapControll
 		// sulla mappa isometrica le dimensioni delle tile sono dimezzate, quindi la larghezza della mappa cambia
 		isoTileSize = map.tileHeight;
 
-		// dimensioni map nel sistema di coordinate della mappa
-		map.mapWidth = (int) (map.tileColumns * isoTileSize);
-		map.mapHeight = (int) (map.tileRows * isoTileSize);
+		computeMapSize();
 
 		// creiamo, se serve il mask mesh
 		// if (maskMesh == null) {
@@ -121,6 +119,13 @@ public class IsometricMapHandler extends AbstractMapHandler<IsometricMapControll
 		maskShader = ShaderManager.instance().createShaderTexture();
 	}
 
+	@Override
+	public void computeMapSize() {
+		// dimensioni map nel sistema di coordinate della mappa
+		map.mapWidth = (int) (map.tileColumns * isoTileSize);
+		map.mapHeight = (int) (map.tileRows * isoTileSize);
+	}
+
 	/**
 	 * <p>
 	 * Calcola la mappa e la disegna. Tra le varie cose aggiorna anche il frame marker
@@ -4,19 +4,23 @@
 package com.abubusoft.xenon.mesh.tiledmaps.isometric;
 
 import com.abubusoft.xenon.math.Matrix4x4;
+import com.abubusoft.xenon.math.XenonMath;
 import com.abubusoft.xenon.mesh.MeshDrawModeType;
 import com.abubusoft.xenon.mesh.MeshGrid;
 import com.abubusoft.xenon.mesh.modifiers.AttributeQuadModifier;
-import com.abubusoft.xenon.mesh.modifiers.IndexQuadModifier;
-import com.abubusoft.xenon.mesh.modifiers.TextureQuadModifier;
+import com.abubusoft.xenon.mesh.modifiers.VertexQuadModifier;
 import com.abubusoft.xenon.mesh.tiledmaps.ObjClass;
+import com.abubusoft.xenon.mesh.tiledmaps.Tile;
 import com.abubusoft.xenon.mesh.tiledmaps.TiledLayer;
 import com.abubusoft.xenon.mesh.tiledmaps.internal.TiledLayerHandler;
 import com.abubusoft.xenon.mesh.tiledmaps.internal.TiledMapView;
 import com.abubusoft.xenon.shader.ShaderTiledMap;
 import com.abubusoft.xenon.vbo.AttributeBuffer;
+import com.abubusoft.xenon.vbo.AttributeBuffer.AttributeDimensionType;
 import com.abubusoft.xenon.vbo.BufferAllocationType;
+import com.abubusoft.xenon.vbo.BufferManager;
 import com.abubusoft.xenon.vbo.IndexBuffer;
+import com.abubusoft.xenon.vbo.VertexBuffer;
 
 import android.opengl.GLES20;
 
@@ -79,7 +83,7 @@ public class IsometricTiledLayerHandler extends TiledLayerHandler {
             for (int j = 0; j < clazz.shapeColSize; j++) {
 
                 // prende dalla definizione del layer il tile da disegnare
-                layer.tileToDraw = layer.tiles[layerCurrentRow * layer.tileColumns + layerCurrentColumn];
+                layer.tileToDraw = layer.getTile(layerCurrentRow * layer.tileColumns + layerCurrentColumn);
 
                 // aggiungiamo coordinate solo se necessario (tile valida,
                 // ovvero gid !=0)
@@ -151,111 +155,18 @@ public class IsometricTiledLayerHandler extends TiledLayerHandler {
      * @see com.abubusoft.xenon.mesh.tiledmaps.LayerDrawer#drawLayer(org.abubu.argon .shader.TiledMapShader, long, int, int, int, int, com.abubusoft.xenon.math.Matrix4x4)
      */
     public void drawLayer(ShaderTiledMap shader, long deltaTime, int startLayerColumn, int startLayerRow, int offsetX, int offsetY, Matrix4x4 modelview) {
-        // MeshGrid shape = windowMesh;
-
-        // la griglia
-        int windowColumns = view.windowTileColumns;
-        int windowRows = view.windowTileRows;
-
-        int layerCurrentRow;
-        int layerCurrentColumn;
-
-        startLayerRow -= view.windowBorder;
         startLayerColumn -= view.windowBorder;
+        startLayerRow -= view.windowBorder;
 
-        // facciamo in modo di avere sempre indici positivi e compresi tra 0 e
-        // rows/columns
-        // se è negativo --> row - (modulo), se positivo --> 0 + modulo
-        startLayerRow = (startLayerRow < 0 ? layer.tileRows : 0) + (startLayerRow % layer.tileRows);
-        startLayerColumn = (startLayerColumn < 0 ? layer.tileColumns : 0) + (startLayerColumn % layer.tileColumns);
-
-        // posizione della tile sullo schermo in base al sistema di origine in
-        // mezzo allo schermo
-        // int sceneX;
-        // int sceneY;
-
-        if (layer.oldStartLayerColumn != startLayerColumn || layer.oldStartLayerRow != startLayerRow) {
-            // resettiamo cursore
-            // shape.cursorReset();
-
-            indexBuffer.cursorReset();
-            textureBuffer.cursorReset();
-
-            if (!layer.drawOffsetUnique) {
-                offsetBuffer.cursorReset();
-            }
-
-            // ciclo per disegnare
-            layerCurrentRow = startLayerRow % layer.tileRows;
-
-            layer.oldStartLayerColumn = startLayerColumn;
-            layer.oldStartLayerRow = startLayerRow;
-
-            for (int i = 0; i < windowRows; i++) {
-
-                // se siamo oltre le dimensioni del layer, resettiamo la colonna
-                layerCurrentColumn = startLayerColumn;
-                if (layerCurrentColumn >= layer.tileColumns)
-                    layerCurrentColumn = 0;
-
-                for (int j = 0; j < windowColumns; j++) {
-
-                    // prende dalla definizione del layer il tile da disegnare
-                    layer.tileToDraw = layer.tiles[layerCurrentRow * layer.tileColumns + layerCurrentColumn];
-
-                    // aggiungiamo coordinate solo se necessario (tile valida,
-                    // ovvero gid !=0)
-                    if (layer.tileToDraw.gid != 0) {
-                        // sceneX = j * tileToDraw.width;
-                        // sceneY = i * tileToDraw.height;
-
-                        // old sistema
-                        // -------------------------
-                        // shape.setVertexCoordsOnCursor(sceneX, -sceneY, tileToDraw);
-                        // ottimizzazione (texture index=0)
-                        // shape.setTextureCoordsOnCursor(0, tileToDraw);
-
-                        // Se abbiamo più di una texture dobbiamo impostare il
-                        // selettore di texture
-                        if (!layer.tiledMap.onlyOneTexture4Layer) {
-                            setTextureSelector(i * windowColumns + j, layer.tileToDraw);
-                        }
-
-                        // ci posizioniamo sul prossimo tile da disegnare
-                        // shape.cursorMove();
-                        // -------------------------
-
-                        // new sistema
-                        TextureQuadModifier.setTextureCoords(textureBuffer, i * windowColumns + j, layer.tileToDraw, false);
-
-                        IndexQuadModifier.setIndexes(indexBuffer, indexBuffer.cursor, i * windowColumns + j, false);
-                        indexBuffer.cursorMove(IndexBuffer.INDEX_IN_QUAD_TILE);
-
-                        if (!layer.drawOffsetUnique)
-                            AttributeQuadModifier.setVertexAttributes2(offsetBuffer, i * windowColumns + j, layer.tileToDraw.drawOffsetX, layer.tileToDraw.drawOffsetY, false);
-                        // textureBuffer.cursorMove(VertexBuffer.VERTEX_IN_QUAD_TILE);
-                    }
-
-                    layerCurrentColumn = (layerCurrentColumn + 1) % layer.tileColumns;
-                }
-
-                layerCurrentRow = (layerCurrentRow + 1) % layer.tileRows;
-
-            }
-
-            indexBuffer.update();
-            textureBuffer.update();
+        // layer caricato in chunk statici
+        if (chunks != null) {
+            drawChunks(shader, startLayerColumn, startLayerRow, offsetX, offsetY, modelview);
+            return;
+        }
 
-            if (!layer.drawOffsetUnique) {
-                offsetBuffer.update();
-            }
-            // Se abbiamo più di una texture dobbiamo impostare il selettore di
-            // texture
-            if (!layer.tiledMap.onlyOneTexture4Layer) {
-                textureIndex.put(textureSelector).position(0);
-            }
+        // riscriviamo solo le righe e le colonne entrate nella finestra
+        scrollWindow(startLayerColumn, startLayerRow);
 
-        }
         // con la definizione in vertex array abbiamo posizionato le tile
         // corrette
         // con gli offset andiamo a spostarli anche dei pixel subtile che
@@ -272,8 +183,7 @@ public class IsometricTiledLayerHandler extends TiledLayerHandler {
         //matrix.buildTranslationMatrix(-screenOffsetX, screenOffsetY, 0);
 
         // tentativo X
-        // la camera punta già al centro della window.
-        matrix.buildTranslationMatrix(-offsetX, -offsetY, 0);
+        buildDrawMatrix(windowColumn - originColumn, windowRow - originRow, offsetX, offsetY);
 
         if (layer.drawOffsetUnique) {
             //matrix.translate(layer.drawOffsetX, layer.drawOffsetY, 0f);
@@ -303,42 +213,102 @@ public class IsometricTiledLayerHandler extends TiledLayerHandler {
         // GLES20.glDrawArrays(shape.drawStyle.value, 0, shape.readCursor());
         shader.setIndexBuffer(indexBuffer);
 
+        // il ring buffer ha sempre tutti i quad: quelli delle tile vuote sono degeneri. Gli indici sono per righe della
+        // finestra, dalla prima all'ultima, anche dopo che il ring buffer e' scorso
         if (indexBuffer.allocation == BufferAllocationType.CLIENT) {
-            GLES20.glDrawElements(MeshDrawModeType.INDEXED_TRIANGLES.value, indexBuffer.cursor, GLES20.GL_UNSIGNED_SHORT, indexBuffer.buffer);
+            GLES20.glDrawElements(MeshDrawModeType.INDEXED_TRIANGLES.value, indexBuffer.capacity, GLES20.GL_UNSIGNED_SHORT, indexBuffer.buffer);
         } else {
-            GLES20.glDrawElements(MeshDrawModeType.INDEXED_TRIANGLES.value, indexBuffer.cursor, GLES20.GL_UNSIGNED_SHORT, 0);
+            GLES20.glDrawElements(MeshDrawModeType.INDEXED_TRIANGLES.value, indexBuffer.capacity, GLES20.GL_UNSIGNED_SHORT, 0);
         }
 
         shader.unsetIndexBuffer(indexBuffer);
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.abubusoft.xenon.mesh.tiledmaps.internal.TiledLayerHandler#isDrawnByRows()
+     */
+    @Override
+    protected boolean isDrawnByRows() {
+        // i quad hanno le dimensioni di tileWidthMax x tileHeightMax: le tile alte coprono quelle delle righe precedenti
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.abubusoft.xenon.mesh.tiledmaps.internal.TiledLayerHandler#getWindowTile(int, int)
+     */
     @Override
-    public void onBuildView(TiledMapView view) {
-        super.onBuildView(view);
+    protected Tile getWindowTile(int column, int row) {
+        // il layer si ripete in entrambe le direzioni
+        return layer.getTile(XenonMath.floorMod(column, layer.tileColumns), XenonMath.floorMod(row, layer.tileRows));
+    }
 
-        if (layer.tileWidthMax != layer.tiledMap.tileWidth || layer.tileHeightMax != layer.tiledMap.tileHeight) {
-            // le dimensioni delle tile tra map e layer non coincidono, quindi il layer avrà bisogno
-            // di un suo vertex buffer
-            // creiamo il vertici del vertex buffer della tiled map. Questo buffer viene condiviso ed utilizzato da tutti
-            // i layer che hanno come dimensione delle tile le stesse di default.
-            /*
-			 * float sceneX; float sceneY; vertexBuffer = BufferManager.instance().createVertexBuffer(view.windowTileColumns * view.windowTileRows * VertexBuffer.VERTEX_IN_QUAD_TILE, BufferAllocationType.STATIC); for (int i = 0; i <
-			 * view.windowTileRows; i++) { for (int j = 0; j < view.windowTileColumns; j++) { sceneX = (j - i) * layer.tiledMap.tileWidth * .5f - layer.tiledMap.tileWidth * .5f; sceneY = (j + i) * layer.tiledMap.tileHeight * .5f;
-			 * 
-			 * VertexQuadModifier.setVertexCoords(vertexBuffer, i * view.windowTileColumns + j, sceneX, -sceneY, layer.tileWidthMax, layer.tileHeightMax, false); } }
-			 */
-            vertexBuffer = IsometricHelper.buildDiamondVertexBuffer(view.windowTileRows, view.windowTileColumns, layer.tiledMap.tileWidth * .5f, layer.tiledMap.tileHeight * .5f, layer.tileWidthMax, layer.tileHeightMax);
-            // lo impostiamo una volta per tutte, tanto non verrà mai cambiato
-            vertexBuffer.update();
-
-            if (!layer.drawOffsetUnique) {
-                offsetBuffer = IsometricHelper.buildDiamondOffsetAttributeBuffer(view.windowTileColumns, view.windowTileRows);
-            }
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.abubusoft.xenon.mesh.tiledmaps.internal.TiledLayerHandler#buildDrawMatrix(int, int, int, int)
+     */
+    @Override
+    protected void buildDrawMatrix(int deltaColumns, int deltaRows, int offsetX, int offsetY) {
+        // la camera punta già al centro della window. I quad sono posizionati rispetto all'origine, quindi
+        // spostiamo anche della distanza tra l'origine e la prima tile della finestra.
+        matrix.buildTranslationMatrix(-offsetX - (deltaColumns - deltaRows) * layer.tiledMap.tileWidth * .5f, -offsetY + (deltaColumns + deltaRows) * layer.tiledMap.tileHeight * .5f, 0);
+    }
 
-            // abbiamo più di un tileset in questo layer, quindi
-            if (this.layer.textureList.size() > 1) {
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.abubusoft.xenon.mesh.tiledmaps.internal.TiledLayerHandler#setQuadPosition(com.abubusoft.xenon.vbo.VertexBuffer, int, int, int)
+     */
+    @Override
+    protected void setQuadPosition(VertexBuffer vertices, int quad, int column, int row) {
+        // stessa disposizione a rombo di IsometricHelper.buildDiamondVertexBuffer
+        float stepWidth = layer.tiledMap.tileWidth * .5f;
+        float stepHeight = layer.tiledMap.tileHeight * .5f;
+        float baseY = view.windowTileRows * stepHeight;
 
-            }
+        VertexQuadModifier.setVertexCoords(vertices, quad, (column - row) * stepWidth - stepWidth, baseY - (column + row) * stepHeight, layer.tileWidthMax, layer.tileHeightMax, false);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.abubusoft.xenon.mesh.tiledmaps.internal.TiledLayerHandler#fillQuad(int, int, int)
+     */
+    @Override
+    protected void fillQuad(int quad, int column, int row) {
+        super.fillQuad(quad, column, row);
+
+        if (!layer.drawOffsetUnique && layer.tileToDraw.gid != 0) {
+            AttributeQuadModifier.setVertexAttributes2(offsetBuffer, quad, layer.tileToDraw.drawOffsetX, layer.tileToDraw.drawOffsetY, false);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.abubusoft.xenon.mesh.tiledmaps.internal.TiledLayerHandler#updateQuads(int, int)
+     */
+    @Override
+    protected void updateQuads(int firstQuad, int quadCount) {
+        super.updateQuads(firstQuad, quadCount);
+
+        if (!layer.drawOffsetUnique) {
+            offsetBuffer.update(firstQuad * VertexBuffer.VERTEX_IN_QUAD_TILE * AttributeDimensionType.DIM_2.value, quadCount * VertexBuffer.VERTEX_IN_QUAD_TILE * AttributeDimensionType.DIM_2.value);
+        }
+    }
+
+    @Override
+    public void onBuildView(TiledMapView view) {
+        super.onBuildView(view);
+
+        // il vertex buffer del layer viene riempito insieme al ring buffer, con le dimensioni delle tile del layer: qua
+        // serve solo il buffer degli offset. I chunk statici non lo usano.
+        if (!layer.drawOffsetUnique && chunks == null) {
+            offsetBuffer = BufferManager.instance().createAttributeBuffer(view.windowTileColumns * view.windowTileRows * VertexBuffer.VERTEX_IN_QUAD_TILE, AttributeDimensionType.DIM_2, BufferAllocationType.STREAM);
         }
 
         // MeshOptions options=MeshOptions.build();//.bufferAllocation(BufferAllocationType.STATIC).textureEnabled(false).colorEnabled(false);
@@ -121,10 +121,14 @@ public class ISSMapHandler extends AbstractMapHandler<ISSMapController> {
         // sulla mappa isometrica le dimensioni delle tile sono dimezzate, quindi la larghezza della mappa cambia
         isoTileSize = map.tileHeight;
 
+        computeMapSize();
+    }
+
+    @Override
+    public void computeMapSize() {
         // dimensioni map nel sistema di coordinate della mappa
         map.mapWidth = (map.tileColumns * map.tileWidth);
         map.mapHeight = (int) (map.tileRows * isoTileSize);
-
     }
 
     /**
@@ -8,16 +8,19 @@ import com.abubusoft.xenon.math.XenonMath;
 import com.abubusoft.xenon.mesh.MeshDrawModeType;
 import com.abubusoft.xenon.mesh.MeshGrid;
 import com.abubusoft.xenon.mesh.modifiers.AttributeQuadModifier;
-import com.abubusoft.xenon.mesh.modifiers.IndexQuadModifier;
-import com.abubusoft.xenon.mesh.modifiers.TextureQuadModifier;
+import com.abubusoft.xenon.mesh.modifiers.VertexQuadModifier;
 import com.abubusoft.xenon.mesh.tiledmaps.ObjClass;
+import com.abubusoft.xenon.mesh.tiledmaps.Tile;
 import com.abubusoft.xenon.mesh.tiledmaps.TiledLayer;
 import com.abubusoft.xenon.mesh.tiledmaps.internal.TiledLayerHandler;
 import com.abubusoft.xenon.mesh.tiledmaps.internal.TiledMapView;
 import com.abubusoft.xenon.shader.ShaderTiledMap;
 import com.abubusoft.xenon.vbo.AttributeBuffer;
+import com.abubusoft.xenon.vbo.AttributeBuffer.AttributeDimensionType;
 import com.abubusoft.xenon.vbo.BufferAllocationType;
+import com.abubusoft.xenon.vbo.BufferManager;
 import com.abubusoft.xenon.vbo.IndexBuffer;
+import com.abubusoft.xenon.vbo.VertexBuffer;
 
 import android.opengl.GLES20;
 
@@ -80,7 +83,7 @@ public class ISSTiledLayerHandler extends TiledLayerHandler {
             for (int j = 0; j < clazz.shapeColSize; j++) {
 
                 // prende dalla definizione del layer il tile da disegnare
-                layer.tileToDraw = layer.tiles[layerCurrentRow * layer.tileColumns + layerCurrentColumn];
+                layer.tileToDraw = layer.getTile(layerCurrentRow * layer.tileColumns + layerCurrentColumn);
 
                 // aggiungiamo coordinate solo se necessario (tile valida,
                 // ovvero gid !=0)
@@ -152,98 +155,20 @@ public class ISSTiledLayerHandler extends TiledLayerHandler {
      * @see com.abubusoft.xenon.mesh.tiledmaps.LayerDrawer#drawLayer(org.abubu.argon .shader.TiledMapShader, long, int, int, int, int, com.abubusoft.xenon.math.Matrix4x4)
      */
     public void drawLayer(ShaderTiledMap shader, long deltaTime, int startLayerColumn, int startLayerRow, int offsetX, int offsetY, Matrix4x4 modelview) {
-        // la griglia
-        int windowColumns = view.windowTileColumns;
-        int windowRows = view.windowTileRows;
-
-        int layerCurrentRow;
-        int layerCurrentColumn;
-        int row;
-
         startLayerRow = (startLayerRow >= 0 ? startLayerRow : 0);
         startLayerColumn = (startLayerColumn >= 0 ? startLayerColumn : 0);
 
-        if (layer.oldStartLayerColumn != startLayerColumn || layer.oldStartLayerRow != startLayerRow) {
-            // resettiamo cursore
-            // shape.cursorReset();
-
-            indexBuffer.cursorReset();
-            textureBuffer.cursorReset();
-
-            if (!layer.drawOffsetUnique) {
-                offsetBuffer.cursorReset();
-            }
-
-            // ciclo per disegnare
-            layerCurrentRow = startLayerRow % layer.tileRows;
-
-            layer.oldStartLayerColumn = startLayerColumn;
-            layer.oldStartLayerRow = startLayerRow;
-
-            for (int i = 0; i < windowRows; i++) {
-
-                // se siamo oltre le dimensioni del layer, resettiamo la colonna
-                layerCurrentColumn = startLayerColumn;
-                if (layerCurrentColumn >= layer.tileColumns)
-                    layerCurrentColumn = 0;
-
-                // row corrente non può essere più piccolo di 0, anche se negativo
-                row = XenonMath.clampI(layerCurrentRow - view.tileRowOffset,0, layer.tileRows-1);
-               /* if (row < 0) {
-                    row = 0;
-                }*/
-                //row = layerCurrentRow;
-
-                for (int j = 0; j < windowColumns; j++) {
-
-                    // prende dalla definizione del layer il tile da disegnare
-                    layer.tileToDraw = layer.tiles[row * layer.tileColumns + layerCurrentColumn];
-
-                    // aggiungiamo coordinate solo se necessario (tile valida,
-                    // ovvero gid !=0)
-                    if (layer.tileToDraw.gid != 0) {
-                        // Se abbiamo più di una texture dobbiamo impostare il
-                        // selettore di texture
-                        if (!layer.tiledMap.onlyOneTexture4Layer) {
-                            setTextureSelector(i * windowColumns + j, layer.tileToDraw);
-                        }
-
-                        // new sistema
-                        TextureQuadModifier.setTextureCoords(textureBuffer, i * windowColumns + j, layer.tileToDraw, false);
-
-                        IndexQuadModifier.setIndexes(indexBuffer, indexBuffer.cursor, i * windowColumns + j, false);
-                        indexBuffer.cursorMove(IndexBuffer.INDEX_IN_QUAD_TILE);
-
-                        if (!layer.drawOffsetUnique)
-                            AttributeQuadModifier.setVertexAttributes2(offsetBuffer, i * windowColumns + j, layer.tileToDraw.drawOffsetX, layer.tileToDraw.drawOffsetY, false);
-                    }
-
-                    layerCurrentColumn = (layerCurrentColumn + 1) % layer.tileColumns;
-                }
-
-                // incremento, rimanendo comunque entro il limite di tileRows
-                layerCurrentRow++;
-                //if (layerCurrentRow > layer.tileRows-1) layerCurrentRow = layer.tileRows-1;
-
-
-            }
-
-            indexBuffer.update();
-            textureBuffer.update();
+        // layer caricato in chunk statici
+        if (chunks != null) {
+            drawChunks(shader, startLayerColumn, startLayerRow, offsetX, offsetY, modelview);
+            return;
+        }
 
-            if (!layer.drawOffsetUnique) {
-                offsetBuffer.update();
-            }
-            // Se abbiamo più di una texture dobbiamo impostare il selettore di
-            // texture
-            if (!layer.tiledMap.onlyOneTexture4Layer) {
-                textureIndex.put(textureSelector).position(0);
-            }
+        // riscriviamo solo le righe e le colonne entrate nella finestra
+        scrollWindow(startLayerColumn, startLayerRow);
 
-        }
         // tentativo X
-        // la camera punta già al centro della window.
-        matrix.buildTranslationMatrix(-offsetX, -offsetY, 0);
+        buildDrawMatrix(windowColumn - originColumn, windowRow - originRow, offsetX, offsetY);
 
         if (layer.drawOffsetUnique) {
             //matrix.translate(layer.drawOffsetX, layer.drawOffsetY, 0f);
@@ -273,36 +198,137 @@ public class ISSTiledLayerHandler extends TiledLayerHandler {
         // GLES20.glDrawArrays(shape.drawStyle.value, 0, shape.readCursor());
         shader.setIndexBuffer(indexBuffer);
 
+        // il ring buffer ha sempre tutti i quad: quelli delle tile vuote sono degeneri. Gli indici sono per righe della
+        // finestra, dalla prima all'ultima, anche dopo che il ring buffer e' scorso
         if (indexBuffer.allocation == BufferAllocationType.CLIENT) {
-            GLES20.glDrawElements(MeshDrawModeType.INDEXED_TRIANGLES.value, indexBuffer.cursor, GLES20.GL_UNSIGNED_SHORT, indexBuffer.buffer);
+            GLES20.glDrawElements(MeshDrawModeType.INDEXED_TRIANGLES.value, indexBuffer.capacity, GLES20.GL_UNSIGNED_SHORT, indexBuffer.buffer);
         } else {
-            GLES20.glDrawElements(MeshDrawModeType.INDEXED_TRIANGLES.value, indexBuffer.cursor, GLES20.GL_UNSIGNED_SHORT, 0);
+            GLES20.glDrawElements(MeshDrawModeType.INDEXED_TRIANGLES.value, indexBuffer.capacity, GLES20.GL_UNSIGNED_SHORT, 0);
         }
 
         shader.unsetIndexBuffer(indexBuffer);
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.abubusoft.xenon.mesh.tiledmaps.internal.TiledLayerHandler#isScrollable(int, int)
+     */
     @Override
-    public void onBuildView(TiledMapView view) {
-        super.onBuildView(view);
+    protected boolean isScrollable(int deltaColumns, int deltaRows) {
+        // le righe dispari sono sfalsate: la traslazione della finestra funziona solo per un numero pari di righe
+        return deltaRows % 2 == 0;
+    }
 
-        if (layer.tileWidthMax != layer.tiledMap.tileWidth || layer.tileHeightMax != layer.tiledMap.tileHeight) {
-            // le dimensioni delle tile tra map e layer non coincidono, quindi il layer avrà bisogno
-            // di un suo vertex buffer
-            // creiamo il vertici del vertex buffer della tiled map. Questo buffer viene condiviso ed utilizzato da tutti
-            // i layer che hanno come dimensione delle tile le stesse di default.
-            vertexBuffer = ISSHelper.buildISSVertexBuffer(view.windowDimension, view.tileRowOffset, view.windowTileRows, view.windowTileColumns, layer.tiledMap.tileWidth, layer.tiledMap.tileHeight * .5f, layer.tileWidthMax, layer.tileHeightMax);
-            // lo impostiamo una volta per tutte, tanto non verrà mai cambiato
-            vertexBuffer.update();
-
-            if (!layer.drawOffsetUnique) {
-                offsetBuffer = ISSHelper.buildDiamondOffsetAttributeBuffer(view.windowTileColumns, view.windowTileRows);
-            }
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.abubusoft.xenon.mesh.tiledmaps.internal.TiledLayerHandler#isDrawnByRows()
+     */
+    @Override
+    protected boolean isDrawnByRows() {
+        // i quad hanno le dimensioni di tileWidthMax x tileHeightMax: le tile alte coprono quelle delle righe precedenti
+        return true;
+    }
 
-            //TODO abbiamo più di un tileset in questo layer, quindi
-            if (this.layer.textureList.size() > 1) {
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.abubusoft.xenon.mesh.tiledmaps.internal.TiledLayerHandler#getWindowTile(int, int)
+     */
+    @Override
+    protected Tile getWindowTile(int column, int row) {
+        // le colonne si ripetono, le righe no: la riga corrente non può essere più piccola di 0, anche se negativa
+        row = XenonMath.clampI(row - view.tileRowOffset, 0, layer.tileRows - 1);
 
-            }
+        return layer.getTile(XenonMath.floorMod(column, layer.tileColumns), row);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.abubusoft.xenon.mesh.tiledmaps.internal.TiledLayerHandler#getChunkRowShift()
+     */
+    @Override
+    protected int getChunkRowShift() {
+        // le righe della finestra partono da tileRowOffset righe prima della mappa
+        return view.tileRowOffset;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.abubusoft.xenon.mesh.tiledmaps.internal.TiledLayerHandler#isRowWrapped()
+     */
+    @Override
+    protected boolean isRowWrapped() {
+        return false;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.abubusoft.xenon.mesh.tiledmaps.internal.TiledLayerHandler#buildDrawMatrix(int, int, int, int)
+     */
+    @Override
+    protected void buildDrawMatrix(int deltaColumns, int deltaRows, int offsetX, int offsetY) {
+        // la camera punta già al centro della window. I quad sono posizionati rispetto all'origine, quindi
+        // spostiamo anche della distanza tra l'origine e la prima tile della finestra.
+        matrix.buildTranslationMatrix(-offsetX - deltaColumns * layer.tiledMap.tileWidth, -offsetY + deltaRows * layer.tiledMap.tileHeight * .5f, 0);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.abubusoft.xenon.mesh.tiledmaps.internal.TiledLayerHandler#setQuadPosition(com.abubusoft.xenon.vbo.VertexBuffer, int, int, int)
+     */
+    @Override
+    protected void setQuadPosition(VertexBuffer vertices, int quad, int column, int row) {
+        // stessa disposizione di ISSHelper.buildISSVertexBuffer
+        float stepWidth = layer.tiledMap.tileWidth;
+        float stepHeight = layer.tiledMap.tileHeight * .5f;
+        float baseX = -layer.tileWidthMax * 0.5f - view.windowDimension / 2;
+        float baseY = view.windowDimension / 2 + view.tileRowOffset * layer.tileHeightMax * .5f;
+
+        VertexQuadModifier.setVertexCoords(vertices, quad, baseX - stepWidth * XenonMath.floorMod(row, 2) * 0.5f + column * stepWidth, baseY - row * stepHeight, layer.tileWidthMax, layer.tileHeightMax, false);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.abubusoft.xenon.mesh.tiledmaps.internal.TiledLayerHandler#fillQuad(int, int, int)
+     */
+    @Override
+    protected void fillQuad(int quad, int column, int row) {
+        super.fillQuad(quad, column, row);
+
+        if (!layer.drawOffsetUnique && layer.tileToDraw.gid != 0) {
+            AttributeQuadModifier.setVertexAttributes2(offsetBuffer, quad, layer.tileToDraw.drawOffsetX, layer.tileToDraw.drawOffsetY, false);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.abubusoft.xenon.mesh.tiledmaps.internal.TiledLayerHandler#updateQuads(int, int)
+     */
+    @Override
+    protected void updateQuads(int firstQuad, int quadCount) {
+        super.updateQuads(firstQuad, quadCount);
+
+        if (!layer.drawOffsetUnique) {
+            offsetBuffer.update(firstQuad * VertexBuffer.VERTEX_IN_QUAD_TILE * AttributeDimensionType.DIM_2.value, quadCount * VertexBuffer.VERTEX_IN_QUAD_TILE * AttributeDimensionType.DIM_2.value);
+        }
+    }
+
+    @Override
+    public void onBuildView(TiledMapView view) {
+        super.onBuildView(view);
+
+        // il vertex buffer del layer viene riempito insieme al ring buffer, con le dimensioni delle tile del layer: qua
+        // serve solo il buffer degli offset. I chunk statici non lo usano.
+        if (!layer.drawOffsetUnique && chunks == null) {
+            offsetBuffer = BufferManager.instance().createAttributeBuffer(view.windowTileColumns * view.windowTileRows * VertexBuffer.VERTEX_IN_QUAD_TILE, AttributeDimensionType.DIM_2, BufferAllocationType.STREAM);
         }
 
         // MeshOptions options=MeshOptions.build();//.bufferAllocation(BufferAllocationType.STATIC).textureEnabled(false).colorEnabled(false);
@@ -34,6 +34,11 @@ public class OrthogonalMapHandler extends AbstractMapHandler<OrthogonalMapContro
 	public OrthogonalMapHandler(TiledMap map) {
 		super(map);
 
+		computeMapSize();
+	}
+
+	@Override
+	public void computeMapSize() {
 		map.mapWidth = map.tileColumns * map.tileWidth;
 		map.mapHeight = map.tileRows * map.tileHeight;
 	}
@@ -4,16 +4,18 @@
 package com.abubusoft.xenon.mesh.tiledmaps.orthogonal;
 
 import com.abubusoft.xenon.math.Matrix4x4;
+import com.abubusoft.xenon.math.XenonMath;
 import com.abubusoft.xenon.mesh.MeshDrawModeType;
 import com.abubusoft.xenon.mesh.MeshGrid;
-import com.abubusoft.xenon.mesh.modifiers.IndexQuadModifier;
-import com.abubusoft.xenon.mesh.modifiers.TextureQuadModifier;
+import com.abubusoft.xenon.mesh.modifiers.VertexQuadModifier;
 import com.abubusoft.xenon.mesh.tiledmaps.ObjClass;
+import com.abubusoft.xenon.mesh.tiledmaps.Tile;
 import com.abubusoft.xenon.mesh.tiledmaps.TiledLayer;
 import com.abubusoft.xenon.mesh.tiledmaps.internal.TiledLayerHandler;
 import com.abubusoft.xenon.shader.ShaderTiledMap;
 import com.abubusoft.xenon.vbo.BufferAllocationType;
 import com.abubusoft.xenon.vbo.IndexBuffer;
+import com.abubusoft.xenon.vbo.VertexBuffer;
 
 import android.opengl.GLES20;
 
@@ -78,7 +80,7 @@ public class OrthogonalTiledLayerHandler extends TiledLayerHandler {
 			for (int j = 0; j < clazz.shapeColSize; j++) {
 
 				// prende dalla definizione del layer il tile da disegnare
-				layer.tileToDraw = layer.tiles[layerCurrentRow * layer.tileColumns + layerCurrentColumn];
+				layer.tileToDraw = layer.getTile(layerCurrentRow * layer.tileColumns + layerCurrentColumn);
 
 				// aggiungiamo coordinate solo se necessario (tile valida,
 				// ovvero gid !=0)
@@ -150,109 +152,24 @@ public class OrthogonalTiledLayerHandler extends TiledLayerHandler {
 	 * @see com.abubusoft.xenon.mesh.tiledmaps.LayerDrawer#drawLayer(org.abubu.argon .shader.TiledMapShader, long, int, int, int, int, com.abubusoft.xenon.math.Matrix4x4)
 	 */
 	public void drawLayer(ShaderTiledMap shader, long deltaTime, int startLayerColumn, int startLayerRow, int offsetX, int offsetY, Matrix4x4 modelview) {
-		//MeshGrid shape = layer.tiledMap.windowMesh;
+		startLayerColumn -= view.windowBorder;
+		startLayerRow -= view.windowBorder;
 
-		// la griglia
-		int windowColumns = view.windowTileColumns;
-		int windowRows = view.windowTileRows;
-
-		float screenCenterX = view.windowCenter.x;
-		float screenCenterY = view.windowCenter.y;
-
-		int layerCurrentRow;
-		int layerCurrentColumn;
-
-		startLayerRow-= view.windowBorder;
-		startLayerColumn-= view.windowBorder;
-
-		// facciamo in modo di avere sempre indici positivi e compresi tra 0 e
-		// rows/columns
-		// se è negativo --> row - (modulo), se positivo --> 0 + modulo
-		startLayerRow = (startLayerRow < 0 ? layer.tileRows : 0) + (startLayerRow % layer.tileRows);
-		startLayerColumn = (startLayerColumn < 0 ? layer.tileColumns : 0) + (startLayerColumn % layer.tileColumns);
-
-		// posizione della tile sullo schermo in base al sistema di origine in
-		// mezzo allo schermo
-		// int sceneX;
-		// int sceneY;
-
-		if (layer.oldStartLayerColumn != startLayerColumn || layer.oldStartLayerRow != startLayerRow) {
-			// resettiamo cursore
-			//shape.cursorReset();
-
-			indexBuffer.cursorReset();
-			textureBuffer.cursorReset();
-
-			// ciclo per disegnare
-			layerCurrentRow = startLayerRow % layer.tileRows;
-
-			layer.oldStartLayerColumn = startLayerColumn;
-			layer.oldStartLayerRow = startLayerRow;
-
-			for (int i = 0; i < windowRows; i++) {
-
-				// se siamo oltre le dimensioni del layer, resettiamo la colonna
-				layerCurrentColumn = startLayerColumn;
-				if (layerCurrentColumn >= layer.tileColumns)
-					layerCurrentColumn = 0;
-
-				for (int j = 0; j < windowColumns; j++) {
-
-					// prende dalla definizione del layer il tile da disegnare
-					layer.tileToDraw = layer.tiles[layerCurrentRow * layer.tileColumns + layerCurrentColumn];
-
-					// aggiungiamo coordinate solo se necessario (tile valida,
-					// ovvero gid !=0)
-					if (layer.tileToDraw.gid != 0) {
-						// sceneX = j * tileToDraw.width;
-						// sceneY = i * tileToDraw.height;
-
-						// old sistema
-						// -------------------------
-						// shape.setVertexCoordsOnCursor(sceneX, -sceneY, tileToDraw);
-						// ottimizzazione (texture index=0)
-						// shape.setTextureCoordsOnCursor(0, tileToDraw);
-
-						// Se abbiamo più di una texture dobbiamo impostare il
-						// selettore di texture
-						if (!layer.tiledMap.onlyOneTexture4Layer) {
-							setTextureSelector(i * windowColumns + j, layer.tileToDraw);
-						}
-
-						// ci posizioniamo sul prossimo tile da disegnare
-						// shape.cursorMove();
-						// -------------------------
-
-						// new sistema
-						TextureQuadModifier.setTextureCoords(textureBuffer, i * windowColumns + j, layer.tileToDraw, false);
-						IndexQuadModifier.setIndexes(indexBuffer, indexBuffer.cursor, i * windowColumns + j, false);
-
-						indexBuffer.cursorMove(IndexBuffer.INDEX_IN_QUAD_TILE);
-						// textureBuffer.cursorMove(VertexBuffer.VERTEX_IN_QUAD_TILE);
-					}
-
-					layerCurrentColumn = (layerCurrentColumn + 1) % layer.tileColumns;
-				}
-
-				layerCurrentRow = (layerCurrentRow + 1) % layer.tileRows;
-
-			}
+		// layer caricato in chunk statici
+		if (chunks != null) {
+			drawChunks(shader, startLayerColumn, startLayerRow, offsetX, offsetY, modelview);
+			return;
+		}
 
-			indexBuffer.update();
-			textureBuffer.update();
-			// Se abbiamo più di una texture dobbiamo impostare il selettore di
-			// texture
-			if (!layer.tiledMap.onlyOneTexture4Layer) {
-				textureIndex.put(textureSelector).position(0);
-			}
+		// riscriviamo solo le righe e le colonne entrate nella finestra
+		scrollWindow(startLayerColumn, startLayerRow);
 
-		}
 		// con la definizione in vertex array abbiamo posizionato le tile
 		// corrette
 		// con gli offset andiamo a spostarli anche dei pixel subtile che
 		// servono per
-		// considerare lo scroll
-		matrix.buildTranslationMatrix(-offsetX - screenCenterX, offsetY + screenCenterY, 0);
+		// considerare lo scroll.
+		buildDrawMatrix(windowColumn - originColumn, windowRow - originRow, offsetX, offsetY);
 		matrix.multiply(modelview, matrix);
 
 		// utilizziamo il cursore per aggiornare
@@ -276,13 +193,47 @@ public class OrthogonalTiledLayerHandler extends TiledLayerHandler {
 		// GLES20.glDrawArrays(shape.drawStyle.value, 0, shape.readCursor());
 		shader.setIndexBuffer(indexBuffer);
 
+		// il ring buffer ha sempre tutti i quad: quelli delle tile vuote sono degeneri
 		if (indexBuffer.allocation == BufferAllocationType.CLIENT) {
-			GLES20.glDrawElements(MeshDrawModeType.INDEXED_TRIANGLES.value, indexBuffer.cursor, GLES20.GL_UNSIGNED_SHORT, indexBuffer.buffer);
+			GLES20.glDrawElements(MeshDrawModeType.INDEXED_TRIANGLES.value, indexBuffer.capacity, GLES20.GL_UNSIGNED_SHORT, indexBuffer.buffer);
 		} else {
-			GLES20.glDrawElements(MeshDrawModeType.INDEXED_TRIANGLES.value, indexBuffer.cursor, GLES20.GL_UNSIGNED_SHORT, 0);
+			GLES20.glDrawElements(MeshDrawModeType.INDEXED_TRIANGLES.value, indexBuffer.capacity, GLES20.GL_UNSIGNED_SHORT, 0);
 		}
 
 		shader.unsetIndexBuffer(indexBuffer);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.abubusoft.xenon.mesh.tiledmaps.internal.TiledLayerHandler#getWindowTile(int, int)
+	 */
+	@Override
+	protected Tile getWindowTile(int column, int row) {
+		// il layer si ripete in entrambe le direzioni
+		return layer.getTile(XenonMath.floorMod(column, layer.tileColumns), XenonMath.floorMod(row, layer.tileRows));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.abubusoft.xenon.mesh.tiledmaps.internal.TiledLayerHandler#buildDrawMatrix(int, int, int, int)
+	 */
+	@Override
+	protected void buildDrawMatrix(int deltaColumns, int deltaRows, int offsetX, int offsetY) {
+		// I quad sono posizionati rispetto all'origine, quindi spostiamo anche della distanza tra l'origine e la prima tile della
+		// finestra.
+		matrix.buildTranslationMatrix(-offsetX - view.windowCenter.x - deltaColumns * layer.tiledMap.tileWidth, offsetY + view.windowCenter.y + deltaRows * layer.tiledMap.tileHeight, 0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.abubusoft.xenon.mesh.tiledmaps.internal.TiledLayerHandler#setQuadPosition(com.abubusoft.xenon.vbo.VertexBuffer, int, int, int)
+	 */
+	@Override
+	protected void setQuadPosition(VertexBuffer vertices, int quad, int column, int row) {
+		VertexQuadModifier.setVertexCoords(vertices, quad, column * layer.tiledMap.tileWidth, -row * layer.tiledMap.tileHeight, layer.tiledMap.tileWidth, layer.tiledMap.tileHeight, false);
+	}
+
 }
@@ -1,8 +1,5 @@
 package com.abubusoft.xenon.mesh.tiledmaps.path;
 
-import java.util.HashSet;
-
-import com.abubusoft.xenon.mesh.tiledmaps.Tile;
 import com.abubusoft.xenon.mesh.tiledmaps.TiledLayer;
 import com.abubusoft.xenon.mesh.tiledmaps.TiledMap;
 
@@ -118,31 +115,18 @@ public abstract class MovementMapFactory {
 		MovementMap mm = buildMovementMap(map);
 
 		TiledLayer layer = map.findLayer(layerName);
-		int n = layer.tiles.length;
-
-		// creiamo il set di nodi da escludere
-		HashSet<Integer> set = new HashSet<>();
-		for (int i = 0; i < n; i++) {
-			if (!Tile.isEmpty(layer.tiles[i])) {
-				// inseriamo l'elemento nel set da escludere se è diverso da 0 o non è definito
-				if (map.getTileProperty(layer.tiles[i].gid, propertyName, "0").equals("0")) {
-					set.add(i);
-				}
-			}
-		}
-
-		// ora togliamo dalla mm tutti gli elementi da escludere
-		for (int i = 0; i < n; i++) {
-			// togliamo ogni arco uscente dal nodo da escludere
-			if (set.contains(i)) {
-				for (int j = 0; j < MovementMap.DIRECTIONS_4; j++) {
-					mm.nodes[i].arcs[j] = MovementMap.INVALID_ARC;
-				}
-			} else {
-				for (int j = 0; j < MovementMap.DIRECTIONS_4; j++) {
-					if (set.contains(mm.nodes[i].arcs[j])) {
-						mm.nodes[i].arcs[j] = MovementMap.INVALID_ARC;
-					}
+		int columns = layer.tileColumns;
+		int band = layer.getCellBandRows();
+		int[] cells = new int[columns * band];
+
+		// togliamo dalla mm i nodi con la tile piena e la property uguale a 0 o non definita, una fascia di righe alla volta
+		for (int row = 0; row < layer.tileRows; row += band) {
+			int rows = Math.min(band, layer.tileRows - row);
+			layer.getCells(0, row, columns, rows, cells);
+
+			for (int i = 0; i < columns * rows; i++) {
+				if (!layer.isEmptyCell(cells[i]) && map.getTileProperty(cells[i] & TiledLayer.GID_MASK, propertyName, "0").equals("0")) {
+					removeNode(mm.nodes, row * columns + i);
 				}
 			}
 		}
@@ -164,36 +148,7 @@ public abstract class MovementMapFactory {
 	 * @return
 	 */
 	public static MovementMap buildMovementMapByExclusion(TiledMap map, String exclusionLayer) {
-		MovementMap mm = buildMovementMap(map);
-
-		TiledLayer layer = map.findLayer(exclusionLayer);
-		int n = layer.tiles.length;
-
-		// creiamo il set di nodi da escludere
-		HashSet<Integer> set = new HashSet<>();
-		for (int i = 0; i < n; i++) {
-			if (!Tile.isEmpty(layer.tiles[i])) {
-				set.add(i);
-			}
-		}
-
-		// ora togliamo dalla mm tutti gli elementi da escludere
-		for (int i = 0; i < n; i++) {
-			// togliamo ogni arco uscente dal nodo da escludere
-			if (set.contains(i)) {
-				for (int j = 0; j < MovementMap.DIRECTIONS_4; j++) {
-					mm.nodes[i].arcs[j] = MovementMap.INVALID_ARC;
-				}
-			} else {
-				for (int j = 0; j < MovementMap.DIRECTIONS_4; j++) {
-					if (set.contains(mm.nodes[i].arcs[j])) {
-						mm.nodes[i].arcs[j] = MovementMap.INVALID_ARC;
-					}
-				}
-			}
-		}
-
-		return mm;
+		return buildMovementMapByLayer(map, exclusionLayer, true);
 	}
 
 	/**
@@ -210,35 +165,66 @@ public abstract class MovementMapFactory {
 	 * @return
 	 */
 	public static MovementMap buildMovementMapByInclusion(TiledMap map, String inclusionLayer) {
+		return buildMovementMapByLayer(map, inclusionLayer, false);
+	}
+
+	/**
+	 * <p>
+	 * Toglie dalla mappa completa i nodi pieni o vuoti del layer. Il layer viene letto una fascia di righe alla volta, quindi
+	 * anche per le mappe infinite non serve un array grande quanto tutto il layer.
+	 * </p>
+	 * 
+	 * @param map
+	 * @param layerName
+	 * @param removeFilled
+	 *            se true vengono tolti i nodi pieni (esclusione), altrimenti quelli vuoti (inclusione)
+	 * @return
+	 */
+	private static MovementMap buildMovementMapByLayer(TiledMap map, String layerName, boolean removeFilled) {
 		MovementMap mm = buildMovementMap(map);
 
-		TiledLayer layer = map.findLayer(inclusionLayer);
-		int n = layer.tiles.length;
+		TiledLayer layer = map.findLayer(layerName);
+		int columns = layer.tileColumns;
+		int band = layer.getCellBandRows();
+		int[] cells = new int[columns * band];
+
+		for (int row = 0; row < layer.tileRows; row += band) {
+			int rows = Math.min(band, layer.tileRows - row);
+			layer.getCells(0, row, columns, rows, cells);
 
-		// creiamo il set di nodi da includere
-		HashSet<Integer> set = new HashSet<>();
-		for (int i = 0; i < n; i++) {
-			if (!Tile.isEmpty(layer.tiles[i])) {
-				set.add(i);
+			for (int i = 0; i < columns * rows; i++) {
+				if (layer.isEmptyCell(cells[i]) != removeFilled) {
+					removeNode(mm.nodes, row * columns + i);
+				}
 			}
 		}
 
-		// ora togliamo dalla mm tutti gli elementi da escludere
-		for (int i = 0; i < n; i++) {
-			// togliamo ogni arco uscente dal nodo da escludere
-			if (!set.contains(i)) {
-				for (int j = 0; j < MovementMap.DIRECTIONS_4; j++) {
-					mm.nodes[i].arcs[j] = MovementMap.INVALID_ARC;
-				}
-			} else {
-				for (int j = 0; j < MovementMap.DIRECTIONS_4; j++) {
-					if (!set.contains(mm.nodes[i].arcs[j])) {
-						mm.nodes[i].arcs[j] = MovementMap.INVALID_ARC;
+		return mm;
+	}
+
+	/**
+	 * <p>
+	 * Toglie un nodo dalla mappa: vengono rimossi i suoi archi uscenti e, dato che gli archi sono simmetrici, gli archi dei nodi
+	 * adiacenti che arrivano al nodo.
+	 * </p>
+	 * 
+	 * @param nodes
+	 * @param index
+	 *            indice del nodo da togliere
+	 */
+	private static void removeNode(Node[] nodes, int index) {
+		int[] arcs = nodes[index].arcs;
+
+		for (int j = 0; j < MovementMap.DIRECTIONS_4; j++) {
+			if (arcs[j] != MovementMap.INVALID_ARC) {
+				int[] neighbourArcs = nodes[arcs[j]].arcs;
+				for (int k = 0; k < MovementMap.DIRECTIONS_4; k++) {
+					if (neighbourArcs[k] == index) {
+						neighbourArcs[k] = MovementMap.INVALID_ARC;
 					}
 				}
 			}
+			arcs[j] = MovementMap.INVALID_ARC;
 		}
-
-		return mm;
 	}
 }
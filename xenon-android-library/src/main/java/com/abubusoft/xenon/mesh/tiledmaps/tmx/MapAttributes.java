@@ -72,4 +72,11 @@ public class MapAttributes {
 	 */
 	public static final String NEXT_OBJECT_ID = "nextobjectid";
 
+	/**
+	 * Whether this map is infinite. An infinite map has no fixed size and can grow in all directions. Its layer data is stored in chunks. (0 for false, 1 for true, defaults to 0)
+	 * 
+	 * @since 1.0
+	 */
+	public static final String INFINITE = "infinite";
+
 }
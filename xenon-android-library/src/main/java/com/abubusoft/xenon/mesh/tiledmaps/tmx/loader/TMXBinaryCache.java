@@ -0,0 +1,527 @@
+package com.abubusoft.xenon.mesh.tiledmaps.tmx.loader;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+import com.abubusoft.kripton.android.Logger;
+import com.abubusoft.xenon.mesh.tiledmaps.ChunkedCells;
+import com.abubusoft.xenon.mesh.tiledmaps.TiledLayer;
+
+/**
+ * <p>
+ * Cache binaria di un file tmx. Contiene il file tmx senza il contenuto dei tag <code>data</code> e, per ogni tag
+ * <code>data</code>, le celle del layer già decodificate. Dal secondo caricamento in poi si legge solo l'xml della mappa, dei
+ * tileset e degli oggetti, che è piccolo, mentre le celle si copiano dal file mappato in memoria.
+ * </p>
+ *
+ * <p>
+ * Il nome del file è ricavato da lunghezza e crc del file tmx: se il tmx cambia, si crea un'altra cache.
+ * </p>
+ *
+ * <pre>
+ * int magic, int versione, int lunghezza tmx, int crc tmx
+ * int lunghezza xml, byte xml[], padding a 4 byte
+ * int numero layer, per ogni layer: int numero celle, int celle[], int numero chunk
+ * per ogni chunk: int x, int y, int larghezza, int altezza, int celle[]
+ * </pre>
+ *
+ * <p>
+ * Tutti gli int sono little endian, come le celle nel formato base64 del tmx. I chunk delle mappe infinite restano nel file
+ * mappato: {@link ChunkedCells} li legge da lì quando servono, senza occupare heap. Anche al primo caricamento, appena scritta la
+ * cache, i chunk letti dal tmx vengono sostituiti con quelli del file mappato con {@link #bindChunks(ArrayList)}.
+ * </p>
+ *
+ * @author Francesco Benincasa
+ *
+ */
+public class TMXBinaryCache {
+
+	private static final int MAGIC = 0x58544D43;
+
+	private static final int VERSION = 2;
+
+	private static final String DATA_START = "<data";
+
+	private static final String DATA_END = "</data>";
+
+	/**
+	 * dimensione dei buffer usati per copiare il tmx e scrivere la cache
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * xml del tmx senza il contenuto dei tag data
+	 */
+	public final byte[] xml;
+
+	/**
+	 * file mappato in memoria
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * layer ancora da leggere
+	 */
+	private int layerCount;
+
+	private TMXBinaryCache(byte[] xml, ByteBuffer buffer, int layerCount) {
+		this.xml = xml;
+		this.buffer = buffer;
+		this.layerCount = layerCount;
+	}
+
+	/**
+	 * <p>
+	 * Legge le celle del prossimo layer e ne crea le tile.
+	 * </p>
+	 *
+	 * @param layer
+	 *            layer del prossimo tag data
+	 */
+	public void readLayer(TiledLayer layer) {
+		if (layerCount == 0) {
+			throw new TMXException("Binary cache has no more layers");
+		}
+		int count = buffer.getInt();
+		if (count != layer.cells.length) {
+			throw new TMXException("Binary cache layer has " + count + " cells instead of " + layer.cells.length);
+		}
+
+		buffer.asIntBuffer().get(layer.cells);
+		buffer.position(buffer.position() + count * 4);
+		TMXLayerHelper.setCells(layer);
+
+		int chunkCount = buffer.getInt();
+		if (chunkCount > 0 && layer.chunkedCells == null) {
+			throw new TMXException("Binary cache has chunks for a layer of a finite map");
+		}
+		for (int i = 0; i < chunkCount; i++) {
+			int column = buffer.getInt();
+			int row = buffer.getInt();
+			int width = buffer.getInt();
+			int height = buffer.getInt();
+
+			// il chunk resta nel file mappato
+			IntBuffer cells = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			cells.limit(width * height);
+			TMXLayerHelper.addChunk(layer, column, row, width, height, cells);
+			buffer.position(buffer.position() + width * height * 4);
+		}
+		layerCount--;
+	}
+
+	/**
+	 * <p>
+	 * Sostituisce i chunk dei layer, caricati dal tmx, con quelli del file mappato. Le celle dei layer non vengono lette.
+	 * </p>
+	 *
+	 * @param layers
+	 *            layer nell'ordine dei tag data del tmx, gli stessi usati per scrivere la cache
+	 */
+	public void bindChunks(ArrayList<TiledLayer> layers) {
+		if (layers.size() != layerCount) {
+			throw new TMXException("Binary cache has " + layerCount + " layers instead of " + layers.size());
+		}
+
+		for (TiledLayer item : layers) {
+			int count = buffer.getInt();
+			buffer.position(buffer.position() + count * 4);
+
+			int chunkCount = buffer.getInt();
+			for (int i = 0; i < chunkCount; i++) {
+				ChunkedCells.Chunk chunk = item.chunkedCells.getChunk(i);
+				if (buffer.getInt() != chunk.column || buffer.getInt() != chunk.row || buffer.getInt() != chunk.width || buffer.getInt() != chunk.height) {
+					throw new TMXException("Binary cache chunk " + i + " does not match the layer");
+				}
+
+				IntBuffer cells = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+				cells.limit(chunk.width * chunk.height);
+				item.chunkedCells.replaceChunk(i, cells);
+				buffer.position(buffer.position() + chunk.width * chunk.height * 4);
+			}
+		}
+		layerCount = 0;
+	}
+
+	/**
+	 * <p>
+	 * Copia del file tmx in un file temporaneo, con lunghezza e crc calcolati durante la copia. Il tmx non viene mai caricato
+	 * per intero nello heap: il parsing legge dal file e la rimozione dei tag data lavora sul file mappato.
+	 * </p>
+	 */
+	public static class Source {
+		/**
+		 * file temporaneo
+		 */
+		public final File file;
+
+		/**
+		 * lunghezza del tmx
+		 */
+		public final int length;
+
+		/**
+		 * crc del tmx
+		 */
+		public final int crc;
+
+		private Source(File file, int length, int crc) {
+			this.file = file;
+			this.length = length;
+			this.crc = crc;
+		}
+
+		/**
+		 * <p>
+		 * Apre uno stream sul tmx, da chiudere dopo l'uso.
+		 * </p>
+		 *
+		 * @return stream del tmx
+		 * @throws IOException
+		 */
+		public InputStream openStream() throws IOException {
+			return new BufferedInputStream(new FileInputStream(file));
+		}
+
+		/**
+		 * <p>
+		 * Elimina il file temporaneo.
+		 * </p>
+		 */
+		public void delete() {
+			if (!file.delete()) {
+				Logger.warn("Can not delete %s", file.getName());
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Copia lo stream del file tmx in un file temporaneo della cartella indicata, a blocchi di {@link #BUFFER_SIZE} byte.
+	 * </p>
+	 *
+	 * @param input
+	 *            stream del tmx
+	 * @param cacheDir
+	 *            cartella delle cache
+	 * @return copia del tmx, da eliminare con {@link Source#delete()}
+	 * @throws IOException
+	 */
+	public static Source copySource(InputStream input, File cacheDir) throws IOException {
+		File file = File.createTempFile("tmx-", ".tmp", cacheDir);
+		CRC32 crc = new CRC32();
+		long length = 0;
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			byte[] temp = new byte[BUFFER_SIZE];
+			int n;
+			while ((n = input.read(temp)) != -1) {
+				out.write(temp, 0, n);
+				crc.update(temp, 0, n);
+				length += n;
+			}
+		} catch (IOException e) {
+			out.close();
+			file.delete();
+			throw e;
+		}
+		out.close();
+
+		if (length > Integer.MAX_VALUE) {
+			file.delete();
+			throw new IOException("TMX file too large: " + length + " bytes");
+		}
+		return new Source(file, (int) length, (int) crc.getValue());
+	}
+
+	/**
+	 * <p>
+	 * File di cache del tmx indicato.
+	 * </p>
+	 *
+	 * @param cacheDir
+	 *            cartella delle cache
+	 * @param source
+	 *            copia del tmx
+	 * @return file di cache
+	 */
+	public static File getFile(File cacheDir, Source source) {
+		return new File(cacheDir, String.format("tmx-%08x-%08x.bin", source.length, source.crc));
+	}
+
+	/**
+	 * <p>
+	 * Apre la cache, se esiste ed è valida per il tmx.
+	 * </p>
+	 *
+	 * @param file
+	 *            file di cache
+	 * @param source
+	 *            copia del tmx
+	 * @return cache o <code>null</code>
+	 */
+	public static TMXBinaryCache open(File file, Source source) {
+		if (!file.exists()) {
+			return null;
+		}
+
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "r");
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != source.length || buffer.getInt() != source.crc) {
+				Logger.warn("Binary cache %s is not valid, it will be rebuilt", file.getName());
+				return null;
+			}
+
+			byte[] xml = new byte[buffer.getInt()];
+			buffer.get(xml);
+			buffer.position(align(buffer.position()));
+
+			// il mapping resta valido anche dopo la chiusura del file
+			return new TMXBinaryCache(xml, buffer, buffer.getInt());
+		} catch (Exception e) {
+			Logger.warn("Can not read binary cache %s: %s", file.getName(), e.getMessage());
+			return null;
+		} finally {
+			try {
+				if (raf != null)
+					raf.close();
+			} catch (IOException e) {
+				Logger.error(e.toString());
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Scrive la cache del tmx. Se la scrittura non riesce, la mappa viene semplicemente ricaricata dal tmx la volta successiva.
+	 * </p>
+	 *
+	 * <p>
+	 * Il file viene scritto un pezzo alla volta attraverso un buffer di {@link #BUFFER_SIZE} byte: i chunk delle mappe infinite
+	 * vengono decompressi uno alla volta, senza costruire il file nello heap.
+	 * </p>
+	 *
+	 * @param file
+	 *            file di cache
+	 * @param source
+	 *            copia del tmx
+	 * @param layers
+	 *            layer nell'ordine dei tag data del tmx
+	 */
+	public static void write(File file, Source source, ArrayList<TiledLayer> layers) {
+		// scriviamo su un file temporaneo, così una scrittura interrotta non lascia una cache a metà
+		File temp = new File(file.getPath() + ".tmp");
+		FileOutputStream out = null;
+		try {
+			byte[] xml = stripData(source);
+
+			out = new FileOutputStream(temp);
+			FileChannel channel = out.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(source.length);
+			buffer.putInt(source.crc);
+			buffer.putInt(xml.length);
+			putBytes(channel, buffer, xml);
+			putBytes(channel, buffer, new byte[align(xml.length) - xml.length]);
+
+			putInt(channel, buffer, layers.size());
+			int[] cells = null;
+			for (TiledLayer item : layers) {
+				putInt(channel, buffer, item.cells.length);
+				putInts(channel, buffer, item.cells, item.cells.length);
+
+				int chunkCount = item.chunkedCells != null ? item.chunkedCells.getChunkCount() : 0;
+				putInt(channel, buffer, chunkCount);
+				for (int i = 0; i < chunkCount; i++) {
+					ChunkedCells.Chunk chunk = item.chunkedCells.getChunk(i);
+					putInt(channel, buffer, chunk.column);
+					putInt(channel, buffer, chunk.row);
+					putInt(channel, buffer, chunk.width);
+					putInt(channel, buffer, chunk.height);
+
+					// i chunk compressi vengono salvati decompressi, per poterli leggere direttamente dal file mappato
+					int count = chunk.width * chunk.height;
+					if (cells == null || cells.length < count) {
+						cells = new int[count];
+					}
+					chunk.decode(cells);
+					putInts(channel, buffer, cells, count);
+				}
+			}
+			flush(channel, buffer);
+			long size = channel.position();
+			out.close();
+			out = null;
+
+			if (!temp.renameTo(file)) {
+				throw new IOException("can not rename " + temp.getName());
+			}
+			Logger.info("Binary cache %s written, %s bytes", file.getName(), size);
+		} catch (IOException e) {
+			Logger.warn("Can not write binary cache %s: %s", file.getName(), e.getMessage());
+			temp.delete();
+		} finally {
+			try {
+				if (out != null)
+					out.close();
+			} catch (IOException e) {
+				Logger.error(e.toString());
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Scrive un int nel buffer, svuotandolo prima nel file se è pieno.
+	 * </p>
+	 */
+	private static void putInt(FileChannel channel, ByteBuffer buffer, int value) throws IOException {
+		if (buffer.remaining() < 4) {
+			flush(channel, buffer);
+		}
+		buffer.putInt(value);
+	}
+
+	private static void putInts(FileChannel channel, ByteBuffer buffer, int[] values, int count) throws IOException {
+		int offset = 0;
+		while (offset < count) {
+			if (buffer.remaining() < 4) {
+				flush(channel, buffer);
+			}
+			int n = Math.min(count - offset, buffer.remaining() / 4);
+			buffer.asIntBuffer().put(values, offset, n);
+			buffer.position(buffer.position() + n * 4);
+			offset += n;
+		}
+	}
+
+	private static void putBytes(FileChannel channel, ByteBuffer buffer, byte[] values) throws IOException {
+		int offset = 0;
+		while (offset < values.length) {
+			if (!buffer.hasRemaining()) {
+				flush(channel, buffer);
+			}
+			int n = Math.min(values.length - offset, buffer.remaining());
+			buffer.put(values, offset, n);
+			offset += n;
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * <p>
+	 * Rimuove dal tmx il contenuto dei tag data, lasciando i tag con i loro attributi.
+	 * </p>
+	 *
+	 * @param source
+	 *            copia del tmx, letta dal file mappato
+	 * @return tmx senza le celle dei layer
+	 * @throws IOException
+	 */
+	static byte[] stripData(Source source) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(source.file, "r");
+		try {
+			return stripData(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, source.length));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Rimuove dal tmx il contenuto dei tag data, vedi {@link #stripData(Source)}.
+	 * </p>
+	 *
+	 * @param source
+	 *            contenuto del tmx, dalla posizione 0 al limite
+	 * @return tmx senza le celle dei layer
+	 */
+	static byte[] stripData(ByteBuffer source) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+		int copied = 0;
+		int i = indexOf(source, DATA_START, 0);
+		while (i != -1) {
+			int next = i + DATA_START.length();
+			if (next < source.limit() && (source.get(next) == '>' || source.get(next) == '/' || source.get(next) <= ' ')) {
+				int tagEnd = indexOf(source, ">", next);
+				if (tagEnd == -1) {
+					break;
+				}
+				if (source.get(tagEnd - 1) != '/') {
+					// tag data con contenuto: teniamo il tag e saltiamo fino alla sua chiusura
+					int close = indexOf(source, DATA_END, tagEnd);
+					if (close == -1) {
+						break;
+					}
+					copy(source, copied, tagEnd + 1, out);
+					copied = close;
+					next = close + DATA_END.length();
+				} else {
+					next = tagEnd + 1;
+				}
+			}
+			i = indexOf(source, DATA_START, next);
+		}
+		copy(source, copied, source.limit(), out);
+
+		return out.toByteArray();
+	}
+
+	private static int indexOf(ByteBuffer source, String value, int from) {
+		int last = source.limit() - value.length();
+		for (int i = from; i <= last; i++) {
+			int j = 0;
+			while (j < value.length() && source.get(i + j) == value.charAt(j)) {
+				j++;
+			}
+			if (j == value.length()) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static void copy(ByteBuffer source, int from, int to, ByteArrayOutputStream out) {
+		ByteBuffer view = source.duplicate();
+		view.position(from);
+		byte[] temp = new byte[Math.min(to - from, BUFFER_SIZE)];
+		while (from < to) {
+			int n = Math.min(to - from, temp.length);
+			view.get(temp, 0, n);
+			out.write(temp, 0, n);
+			from += n;
+		}
+	}
+
+	private static int align(int position) {
+		return (position + 3) & ~3;
+	}
+
+}
@@ -4,23 +4,29 @@
 package com.abubusoft.xenon.mesh.tiledmaps.tmx.loader;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.InflaterInputStream;
+import java.util.zip.Inflater;
 
+import com.abubusoft.xenon.math.XenonMath;
 import com.abubusoft.xenon.mesh.MeshTile;
+import com.abubusoft.xenon.mesh.tiledmaps.ChunkedCells;
 import com.abubusoft.xenon.mesh.tiledmaps.Layer;
+import com.abubusoft.xenon.mesh.tiledmaps.MapOrientationType;
 import com.abubusoft.xenon.mesh.tiledmaps.Tile;
 import com.abubusoft.xenon.mesh.tiledmaps.TiledLayer;
 import com.abubusoft.xenon.mesh.tiledmaps.TiledMap;
 import com.abubusoft.kripton.android.Logger;
 import org.xml.sax.Attributes;
 
-import android.util.Base64;
-import android.util.Base64InputStream;
-
 /**
  * <p>
  * Helper per caricare una layer da un file tmx.
@@ -44,143 +50,435 @@ public abstract class TMXLayerHelper {
 
 	/**
 	 * <p>
-	 * Legge il gid, con i flag di flipping ancora inseriti. Per questo motivo al posto di essere un int è messo come long. In read rawGID verrà trasformato.
+	 * Estrae dal contenuto del tag <code>data</code> la definizione delle varie tile. Le celle vengono decodificate
+	 * direttamente in {@link TiledLayer#cells}, senza passare per stringhe o stream intermedi. Sono supportate le codifiche
+	 * <code>csv</code> e <code>base64</code>, quest'ultima anche con compressione <code>zlib</code> o <code>gzip</code>.
 	 * </p>
 	 * 
-	 * @param dataIn
-	 * @return
+	 * @param data
+	 * @param encoding
+	 * @param compression
 	 * @throws IOException
 	 */
-	private static long readRawGID(DataInputStream dataIn) throws IOException {
-		// devo necessarimente usare long e non int, altrimenti le operazioni di
-		// shift mi
-		// danno valori negativi!
-		long lowestByte = dataIn.read();
-		long secondLowestByte = dataIn.read();
-		long secondHighestByte = dataIn.read();
-		long highestByte = dataIn.read();
+	public static void extract(TiledLayer layer, CharSequence data, String encoding, String compression) throws IOException {
+		try {
+			int first = layer.tileCounter;
+			int count = layer.cells.length - first;
 
-		if (lowestByte < 0 || secondLowestByte < 0 || secondHighestByte < 0 || highestByte < 0) {
-			throw new IllegalArgumentException("Couldn't read gid from stream.");
-		}
+			if ("csv".equals(encoding)) {
+				if (compression != null) {
+					throw new IllegalArgumentException("compression '" + compression + "' is not supported with csv.");
+				}
+				readCsv(data, layer.cells, first, count);
+			} else if ("base64".equals(encoding)) {
+				byte[] bytes = decodeBase64(data);
+
+				if (compression != null) {
+					bytes = decompress(bytes, compression, count * 4);
+				}
+				if (bytes.length < count * 4) {
+					throw new IllegalArgumentException("Couldn't read gid from stream.");
+				}
+
+				// i gid sono little endian
+				ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(layer.cells, first, count);
+			} else {
+				throw new IllegalArgumentException("encoding '" + encoding + "' is not supported.");
+			}
 
-		return lowestByte | secondLowestByte << 8 | secondHighestByte << 16 | highestByte << 24;
+			setCells(layer);
+		} catch (Exception e) {
+			Logger.fatal(e.getMessage());
+		}
 	}
 
 	/**
 	 * <p>
-	 * Estrae dalla stringa data in input la definizione delle varie tile.
+	 * Estrae dal contenuto di un tag <code>chunk</code> di una mappa infinita le celle del chunk, con le stesse codifiche di
+	 * {@link #extract(TiledLayer, CharSequence, String, String)}. Nessun chunk resta decodificato nello heap: i chunk compressi
+	 * restano come sono, quelli csv o base64 senza compressione vengono compressi con zlib. {@link ChunkedCells} li decomprime
+	 * solo quando servono.
 	 * </p>
 	 * 
+	 * @param layer
+	 * @param column
+	 *            colonna della prima cella del chunk, nel tmx
+	 * @param row
+	 *            riga della prima cella del chunk, nel tmx
+	 * @param width
+	 *            colonne del chunk
+	 * @param height
+	 *            righe del chunk
 	 * @param data
 	 * @param encoding
 	 * @param compression
-	 * @throws IOException
 	 */
-	@SuppressWarnings("resource")
-	public static void extract(TiledLayer layer, String data, String encoding, String compression) throws IOException {
-		DataInputStream dataIn = null;
+	public static void extractChunk(TiledLayer layer, int column, int row, int width, int height, CharSequence data, String encoding, String compression) {
 		try {
-			InputStream in = new ByteArrayInputStream(data.getBytes("UTF-8"));
-
-			if (encoding != null && encoding.equals("base64")) {
-				in = new Base64InputStream(in, Base64.DEFAULT);
-			}
-			if (compression != null) {
-				if (compression.equals("gzip")) {
-					in = new GZIPInputStream(in);
+			int count = width * height;
 
-				} else if (compression.equals("zlib")) {
-					in = new InflaterInputStream(in);
+			if ("csv".equals(encoding)) {
+				if (compression != null) {
+					throw new IllegalArgumentException("compression '" + compression + "' is not supported with csv.");
+				}
+				int[] values = new int[count];
+				readCsv(data, values, 0, count);
+
+				ByteBuffer bytes = ByteBuffer.allocate(count * 4).order(ByteOrder.LITTLE_ENDIAN);
+				bytes.asIntBuffer().put(values);
+				layer.chunkedCells.addChunk(column, row, width, height, compress(bytes.array(), count * 4), "zlib");
+				setChunkCells(layer, IntBuffer.wrap(values), count);
+			} else if ("base64".equals(encoding)) {
+				byte[] bytes = decodeBase64(data);
+
+				if (compression == null) {
+					if (bytes.length < count * 4) {
+						throw new IllegalArgumentException("Couldn't read gid from stream.");
+					}
+					layer.chunkedCells.addChunk(column, row, width, height, compress(bytes, count * 4), "zlib");
+					setChunkCells(layer, ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer(), count);
 				} else {
-					throw new IllegalArgumentException("compression '" + compression + "' is not supported.");
+					// decomprimiamo una volta per creare le tile, poi teniamo solo la versione compressa
+					IntBuffer values = ByteBuffer.wrap(decompress(bytes, compression, count * 4)).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+					layer.chunkedCells.addChunk(column, row, width, height, bytes, compression);
+					setChunkCells(layer, values, count);
 				}
+			} else {
+				throw new IllegalArgumentException("encoding '" + encoding + "' is not supported.");
 			}
+		} catch (TMXException e) {
+			throw e;
+		} catch (Exception e) {
+			Logger.fatal(e.getMessage());
+		}
+	}
 
-			dataIn = new DataInputStream(in);
+	/**
+	 * <p>
+	 * Aggiunge un chunk di una mappa infinita con le celle già decodificate, creando le tile delle sue celle. Le celle non
+	 * vengono copiate: si usa per i chunk letti dal file mappato della cache binaria.
+	 * </p>
+	 * 
+	 * @param layer
+	 * @param column
+	 *            colonna della prima cella del chunk, nel tmx
+	 * @param row
+	 *            riga della prima cella del chunk, nel tmx
+	 * @param width
+	 *            colonne del chunk
+	 * @param height
+	 *            righe del chunk
+	 * @param cells
+	 *            celle del chunk, per righe
+	 */
+	public static void addChunk(TiledLayer layer, int column, int row, int width, int height, IntBuffer cells) {
+		layer.chunkedCells.addChunk(column, row, width, height, cells);
+		setChunkCells(layer, cells, width * height);
+	}
 
-			int expectedTileCount = layer.tileColumns * layer.tileRows;
-			while (layer.tileCounter < expectedTileCount) {
-				addTile(layer, readRawGID(dataIn));
+	/**
+	 * <p>
+	 * Calcola le dimensioni di una mappa infinita dal rettangolo che contiene i chunk di tutti i suoi tiled layer. La prima cella
+	 * del rettangolo diventa la cella (0, 0) della mappa: i chunk mantengono le coordinate del tmx, mentre gli oggetti vengono
+	 * spostati della stessa quantità. Se la mappa non ha chunk, si usano le dimensioni dichiarate nel tag <code>map</code>.
+	 * </p>
+	 * 
+	 * @param tiledMap
+	 *            mappa infinita, con tutti i layer caricati
+	 */
+	public static void buildInfiniteBounds(TiledMap tiledMap) {
+		int minColumn = Integer.MAX_VALUE;
+		int minRow = Integer.MAX_VALUE;
+		int maxColumn = Integer.MIN_VALUE;
+		int maxRow = Integer.MIN_VALUE;
+
+		for (Layer item : tiledMap.layers) {
+			if (item.type != Layer.LayerType.TILED || ((TiledLayer) item).chunkedCells == null) {
+				continue;
 			}
-		} catch (Exception e) {
-			Logger.fatal(e.getMessage());
-		} finally {
-			try {
-				if (dataIn!=null) dataIn.close();
-			} catch (IOException e) {
-				Logger.error(e.toString());
+
+			ChunkedCells cells = ((TiledLayer) item).chunkedCells;
+			for (int i = 0; i < cells.getChunkCount(); i++) {
+				ChunkedCells.Chunk chunk = cells.getChunk(i);
+				minColumn = Math.min(minColumn, chunk.column);
+				minRow = Math.min(minRow, chunk.row);
+				maxColumn = Math.max(maxColumn, chunk.column + chunk.width);
+				maxRow = Math.max(maxRow, chunk.row + chunk.height);
 			}
 		}
+
+		if (minColumn != Integer.MAX_VALUE && tiledMap.orientation == MapOrientationType.STAGGERED) {
+			// nelle mappe staggered le righe dispari sono spostate: l'origine deve restare su una riga pari
+			minRow = XenonMath.floorDiv(minRow, 2) * 2;
+		}
+
+		if (minColumn == Integer.MAX_VALUE) {
+			tiledMap.setInfiniteBounds(0, 0, tiledMap.tileColumns, tiledMap.tileRows);
+		} else {
+			tiledMap.setInfiniteBounds(minColumn, minRow, maxColumn - minColumn, maxRow - minRow);
+		}
 	}
 
 	/**
 	 * <p>
-	 * Provvede a creare una tile
+	 * Crea le tile delle celle di un chunk. I gid sconosciuti vengono associati alla tile vuota.
+	 * </p>
+	 */
+	private static void setChunkCells(TiledLayer layer, IntBuffer cells, int count) {
+		for (int i = 0; i < count; i++) {
+			int value = cells.get(i);
+
+			Tile currentTile = resolveTile(layer, value);
+			if (currentTile == null) {
+				// gid sconosciuto, la cella resta vuota
+				currentTile = layer.palette.get(0);
+				layer.palette.put(value, currentTile);
+			}
+
+			checkDrawOffset(layer, currentTile);
+			layer.tileCounter++;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Decomprime le celle di un chunk.
 	 * </p>
 	 * 
-	 * @param gid
+	 * @param data
+	 *            celle compresse
+	 * @param compression
+	 *            <code>zlib</code> o <code>gzip</code>
+	 * @param cells
+	 *            celle decompresse
+	 * @param count
+	 *            numero di celle
 	 */
-	private static void addTile(TiledLayer layer, long rawGid) {
-		int column = layer.tileCounter % layer.tileColumns;
-		int row = layer.tileCounter / layer.tileColumns;
+	public static void decompressCells(byte[] data, String compression, int[] cells, int count) {
+		try {
+			ByteBuffer.wrap(decompress(data, compression, count * 4)).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(cells, 0, count);
+		} catch (Exception e) {
+			throw new TMXException(e);
+		}
+	}
 
-		Tile currentTile = null;
+	/**
+	 * <p>
+	 * Crea le tile delle celle già presenti in {@link TiledLayer#cells}, a partire da {@link TiledLayer#tileCounter}.
+	 * </p>
+	 * 
+	 * @param layer
+	 */
+	public static void setCells(TiledLayer layer) {
+		final int[] cells = layer.cells;
+		while (layer.tileCounter < cells.length) {
+			addTile(layer, cells[layer.tileCounter]);
+		}
+	}
 
-		// inverte per startX
-		final long FLIPPED_HORIZONTALLY_FLAG = 0x80000000;
+	/**
+	 * <p>
+	 * Legge i gid separati da virgola.
+	 * </p>
+	 */
+	private static void readCsv(CharSequence data, int[] cells, int first, int count) {
+		int n = data.length();
+		int index = 0;
+		int i = 0;
+
+		while (index < count) {
+			// saltiamo spazi e separatori
+			while (i < n && (data.charAt(i) < '0' || data.charAt(i) > '9')) {
+				i++;
+			}
+			if (i == n) {
+				throw new IllegalArgumentException("Couldn't read gid from csv.");
+			}
 
-		// inverte per startY
-		final long FLIPPED_VERTICALLY_FLAG = 0x40000000;
+			// il gid con i flag può superare Integer.MAX_VALUE
+			long value = 0;
+			char c;
+			while (i < n && (c = data.charAt(i)) >= '0' && c <= '9') {
+				value = value * 10 + (c - '0');
+				i++;
+			}
+			cells[first + index++] = (int) value;
+		}
+	}
 
-		// inverte startX con startY
-		final long FLIPPED_DIAGONALLY_FLAG = 0x20000000;
+	/**
+	 * <p>
+	 * Decodifica il base64, ignorando gli spazi.
+	 * </p>
+	 */
+	private static byte[] decodeBase64(CharSequence data) {
+		int n = data.length();
+		byte[] result = new byte[n * 3 / 4 + 3];
+		int size = 0;
+		int bits = 0;
+		int pending = 0;
+
+		for (int i = 0; i < n; i++) {
+			char c = data.charAt(i);
+			int value;
+			if (c >= 'A' && c <= 'Z') {
+				value = c - 'A';
+			} else if (c >= 'a' && c <= 'z') {
+				value = c - 'a' + 26;
+			} else if (c >= '0' && c <= '9') {
+				value = c - '0' + 52;
+			} else if (c == '+' || c == '-') {
+				value = 62;
+			} else if (c == '/' || c == '_') {
+				value = 63;
+			} else if (c == '=') {
+				break;
+			} else {
+				continue;
+			}
 
-		// Read out the flags
-		boolean flipped_horizontally = (rawGid & FLIPPED_HORIZONTALLY_FLAG) > 0;
-		boolean flipped_vertically = (rawGid & FLIPPED_VERTICALLY_FLAG) > 0;
-		boolean flipped_diagonally = (rawGid & FLIPPED_DIAGONALLY_FLAG) > 0;
+			bits = (bits << 6) | value;
+			pending += 6;
+			if (pending >= 8) {
+				pending -= 8;
+				result[size++] = (byte) (bits >> pending);
+			}
+		}
 
-		rawGid &= ~(FLIPPED_HORIZONTALLY_FLAG | FLIPPED_VERTICALLY_FLAG | FLIPPED_DIAGONALLY_FLAG);
+		return size == result.length ? result : Arrays.copyOf(result, size);
+	}
 
-		int gid = (int) rawGid;
-		
-		int currentTileIndex=row * layer.tileColumns + column;
+	/**
+	 * <p>
+	 * Decomprime i byte delle celle.
+	 * </p>
+	 */
+	private static byte[] decompress(byte[] input, String compression, int size) throws IOException, DataFormatException {
+		byte[] result = new byte[size];
 
-		if (gid == 0) {
-			layer.tiles[currentTileIndex] = Tile.getEmptyTile(column, row);
-			
+		if (compression.equals("zlib")) {
+			Inflater inflater = new Inflater();
+			try {
+				inflater.setInput(input);
+				int read = 0;
+				while (read < size) {
+					int n = inflater.inflate(result, read, size - read);
+					if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+						throw new IllegalArgumentException("Couldn't read gid from stream.");
+					}
+					read += n;
+				}
+			} finally {
+				inflater.end();
+			}
+		} else if (compression.equals("gzip")) {
+			DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(input)));
+			try {
+				in.readFully(result);
+			} finally {
+				in.close();
+			}
 		} else {
+			throw new IllegalArgumentException("compression '" + compression + "' is not supported.");
+		}
+
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * Comprime con zlib i byte delle celle di un chunk. Si usa la compressione più veloce: le celle di un chunk sono molto
+	 * ripetitive e si riducono comunque a una frazione della dimensione originale.
+	 * </p>
+	 */
+	private static byte[] compress(byte[] input, int size) {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(input, 0, size);
+			deflater.finish();
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream(size / 8 + 64);
+			byte[] temp = new byte[1024];
+			while (!deflater.finished()) {
+				out.write(temp, 0, deflater.deflate(temp));
+			}
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Provvede a creare una tile
+	 * </p>
+	 * 
+	 * @param gid
+	 */
+	private static void addTile(TiledLayer layer, long rawGid) {
+		// il valore della cella mantiene i flag di flip
+		int value = (int) rawGid;
+
+		Tile currentTile = resolveTile(layer, value);
+		if (currentTile == null) {
+			// gid sconosciuto, la cella resta vuota
+			value = 0;
+			currentTile = layer.palette.get(0);
+		}
+
+		layer.cells[layer.tileCounter] = value;
+
+		checkDrawOffset(layer, currentTile);
+		layer.tileCounter++;
+	}
+
+	/**
+	 * <p>
+	 * Tile di un valore di cella, creata e messa in {@link TiledLayer#palette} la prima volta.
+	 * </p>
+	 * 
+	 * @return tile, o <code>null</code> se il gid non è definito in nessun tileset
+	 */
+	private static Tile resolveTile(TiledLayer layer, int value) {
+		Tile currentTile = layer.palette.get(value);
+		if (currentTile == null) {
+			int gid = value & TiledLayer.GID_MASK;
 			MeshTile sprite = layer.tiledMap.getSpriteByGID(gid);
-			if (sprite == null)
-				return;
 
-			// creiamo un tile e lo impostiamo adeguatamente
-			currentTile = new Tile(gid, column, row, sprite.tileColumnIndex, sprite.tileRowIndex, (int) sprite.tileWidth, (int) sprite.tileHeight, sprite.drawOffsetX, sprite.drawOffsetY);
+			if (sprite == null) {
+				return null;
+			}
+
+			// creiamo la tile condivisa da tutte le celle con questo valore
+			currentTile = new Tile(gid, 0, 0, sprite.tileColumnIndex, sprite.tileRowIndex, (int) sprite.tileWidth, (int) sprite.tileHeight, sprite.drawOffsetX, sprite.drawOffsetY);
 
-			currentTile.horizontalFlip = flipped_horizontally;
-			currentTile.verticalFlip = flipped_vertically;
-			currentTile.diagonalFlip = flipped_diagonally;
+			currentTile.horizontalFlip = (value & TiledLayer.FLIPPED_HORIZONTALLY_FLAG) != 0;
+			currentTile.verticalFlip = (value & TiledLayer.FLIPPED_VERTICALLY_FLAG) != 0;
+			currentTile.diagonalFlip = (value & TiledLayer.FLIPPED_DIAGONALLY_FLAG) != 0;
 
-			layer.tiles[currentTileIndex] = currentTile;
+			layer.palette.put(value, currentTile);
 
 			// verifichiamo la dimensione massima dei tile presenti nel layer
-			layer.tileWidthMax = Math.max(layer.tileWidthMax,(int)sprite.tileWidth);
-			layer.tileHeightMax = Math.max(layer.tileHeightMax,(int)sprite.tileHeight);
-		}
-		
-		// se il layer ha dei tiles con degli offset diversi da quello corrente, lo registriamo
-		if (currentTileIndex==0){
-			layer.drawOffsetUnique=true;
-			layer.drawOffsetX=layer.tiles[currentTileIndex].drawOffsetX;
-			layer.drawOffsetY=layer.tiles[currentTileIndex].drawOffsetY;
-		}
-		else if (layer.drawOffsetUnique && (layer.tiles[currentTileIndex].drawOffsetX!=layer.drawOffsetX || layer.tiles[currentTileIndex].drawOffsetY!=layer.drawOffsetY))
-		{
-			layer.drawOffsetUnique=false;
+			layer.tileWidthMax = Math.max(layer.tileWidthMax, (int) sprite.tileWidth);
+			layer.tileHeightMax = Math.max(layer.tileHeightMax, (int) sprite.tileHeight);
 		}
 
-		layer.tileCounter++;
+		return currentTile;
+	}
+
+	/**
+	 * <p>
+	 * Se il layer ha dei tiles con degli offset diversi da quello corrente, lo registriamo.
+	 * </p>
+	 */
+	private static void checkDrawOffset(TiledLayer layer, Tile currentTile) {
+		if (layer.tileCounter == 0) {
+			layer.drawOffsetUnique = true;
+			layer.drawOffsetX = currentTile.drawOffsetX;
+			layer.drawOffsetY = currentTile.drawOffsetY;
+		} else if (layer.drawOffsetUnique && (currentTile.drawOffsetX != layer.drawOffsetX || currentTile.drawOffsetY != layer.drawOffsetY)) {
+			layer.drawOffsetUnique = false;
+		}
 	}
 
 	/**
@@ -1,6 +1,8 @@
 package com.abubusoft.xenon.mesh.tiledmaps.tmx.loader;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -36,6 +38,11 @@ public class TMXLoaderHandler extends DefaultHandler {
 	private static final String TAG_DATA = "data";
 	private static final String TAG_DATA_ATTRIBUTE_ENCODING = "encoding";
 	private static final String TAG_DATA_ATTRIBUTE_COMPRESSION = "compression";
+	private static final String TAG_CHUNK = "chunk";
+	private static final String TAG_CHUNK_ATTRIBUTE_X = "x";
+	private static final String TAG_CHUNK_ATTRIBUTE_Y = "y";
+	private static final String TAG_CHUNK_ATTRIBUTE_WIDTH = "width";
+	private static final String TAG_CHUNK_ATTRIBUTE_HEIGHT = "height";
 	private static final String TAG_IMAGE = "image";
 	private static final String TAG_LAYER = "layer";
 	private static final String TAG_IMAGE_LAYER = "imagelayer";
@@ -59,6 +66,10 @@ public class TMXLoaderHandler extends DefaultHandler {
 	private String encoding;
 	private String compression;
 	private int lastTileSetTileID;
+	private int chunkX;
+	private int chunkY;
+	private int chunkWidth;
+	private int chunkHeight;
 
 	private boolean inTileset = false;
 	private boolean inTile = false;
@@ -78,31 +89,140 @@ public class TMXLoaderHandler extends DefaultHandler {
 	 */
 	private TextureFilterType textureFilter;
 
+	/**
+	 * cache binaria da cui leggere le celle dei layer, se presente
+	 */
+	private TMXBinaryCache cache;
+
+	/**
+	 * layer nell'ordine dei tag data, da salvare nella cache binaria
+	 */
+	private ArrayList<TiledLayer> dataLayers = new ArrayList<TiledLayer>();
+
 	/**
 	 * Carica da un input stream
 	 * 
 	 */
 	public TiledMap load(Context context, InputStream inputStream, TMXLoaderType loaderTypeValue, TextureFilterType textureFilterValue) throws TMXException {
+		return load(context, inputStream, loaderTypeValue, textureFilterValue, null);
+	}
+
+	/**
+	 * <p>
+	 * Carica da un input stream, usando una cache binaria nella cartella indicata. La prima volta la mappa viene letta dal tmx e
+	 * la cache viene scritta, le volte successive le celle dei layer vengono lette dalla cache e dell'xml si legge solo la
+	 * parte senza i tag data.
+	 * </p>
+	 * 
+	 * @param cacheDir
+	 *            cartella della cache binaria, <code>null</code> per non usare la cache
+	 * @see TMXBinaryCache
+	 */
+	public TiledMap load(Context context, InputStream inputStream, TMXLoaderType loaderTypeValue, TextureFilterType textureFilterValue, File cacheDir) throws TMXException {
+		this.context = context;
+		this.loaderType = loaderTypeValue;
+		this.textureFilter = textureFilterValue;
+
+		long start = System.currentTimeMillis();
+		File cacheFile = null;
+		TMXBinaryCache.Source source = null;
 		try {
-			this.context = context;
-			this.loaderType = loaderTypeValue;
-			this.textureFilter = textureFilterValue;
+			if (cacheDir == null) {
+				parse(new BufferedInputStream(inputStream));
+			} else {
+				// il tmx viene copiato su file, non nello heap
+				source = TMXBinaryCache.copySource(inputStream, cacheDir);
+				cacheFile = TMXBinaryCache.getFile(cacheDir, source);
+				cache = TMXBinaryCache.open(cacheFile, source);
+
+				if (cache != null) {
+					parse(new ByteArrayInputStream(cache.xml));
+				} else {
+					parseSource(source);
+					TMXBinaryCache.write(cacheFile, source, dataLayers);
+
+					// i chunk delle mappe infinite vengono letti dal file mappato, invece di restare compressi nello heap
+					if (tiledMap.infinite) {
+						TMXBinaryCache written = TMXBinaryCache.open(cacheFile, source);
+						try {
+							if (written != null) {
+								written.bindChunks(dataLayers);
+							}
+						} catch (TMXException e) {
+							// i chunk già sostituiti hanno le stesse celle, gli altri restano compressi
+							Logger.warn("Binary cache %s not used for chunks: %s", cacheFile.getName(), e.getMessage());
+						}
+					}
+				}
+			}
+		} catch (Exception e) {
+			if (cache != null) {
+				// la cache non corrisponde al tmx: la eliminiamo e ricarichiamo dal tmx
+				Logger.warn("Binary cache %s discarded: %s", cacheFile.getName(), e.getMessage());
+				cacheFile.delete();
+				return new TMXLoaderHandler().loadSource(context, source, loaderTypeValue, textureFilterValue);
+			}
+			Logger.fatal("%s", e.getMessage());
+			throw new TMXException(e);
+		} finally {
+			if (source != null) {
+				source.delete();
+			}
+		}
 
-			SAXParserFactory spf = SAXParserFactory.newInstance();
-			SAXParser sp = spf.newSAXParser();
+		Logger.info("TMX loaded in %s ms%s", System.currentTimeMillis() - start, cache != null ? " from binary cache" : "");
 
-			XMLReader xr = sp.getXMLReader();
-			xr.setContentHandler(this);
+		return this.tiledMap;
+	}
+
+	/**
+	 * <p>
+	 * Carica dalla copia del tmx, senza cache binaria.
+	 * </p>
+	 */
+	private TiledMap loadSource(Context context, TMXBinaryCache.Source source, TMXLoaderType loaderTypeValue, TextureFilterType textureFilterValue) throws TMXException {
+		this.context = context;
+		this.loaderType = loaderTypeValue;
+		this.textureFilter = textureFilterValue;
 
-			xr.parse(new InputSource(new BufferedInputStream(inputStream)));
+		try {
+			parseSource(source);
 		} catch (Exception e) {
 			Logger.fatal("%s", e.getMessage());
 			throw new TMXException(e);
 		}
-
 		return this.tiledMap;
 	}
 
+	/**
+	 * <p>
+	 * Esegue il parsing della copia del tmx, leggendola dal file.
+	 * </p>
+	 */
+	private void parseSource(TMXBinaryCache.Source source) throws Exception {
+		InputStream input = source.openStream();
+		try {
+			parse(input);
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Esegue il parsing dell'xml.
+	 * </p>
+	 */
+	private void parse(InputStream inputStream) throws Exception {
+		SAXParserFactory spf = SAXParserFactory.newInstance();
+		SAXParser sp = spf.newSAXParser();
+
+		XMLReader xr = sp.getXMLReader();
+		xr.setContentHandler(this);
+
+		xr.parse(new InputSource(inputStream));
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -156,6 +276,9 @@ public class TMXLoaderHandler extends DefaultHandler {
 				this.lastTileSetTileID = SAXUtil.getInt(atts, TAG_TILE_ATTRIBUTE_ID);
 			} else if (inData) {
 				TiledLayer tiledLayer = (TiledLayer) tiledMap.layers.get(tiledMap.layers.size() - 1);
+				if (tiledLayer.chunkedCells != null) {
+					throw new SAXException("Infinite maps need csv or base64 layer data");
+				}
 
 				// aggiunge il tile all'ultimo layer
 				TMXLayerHelper.addTile(tiledLayer, atts);
@@ -202,6 +325,14 @@ public class TMXLoaderHandler extends DefaultHandler {
 			encoding = SAXUtil.getString(atts, TAG_DATA_ATTRIBUTE_ENCODING);
 			compression = SAXUtil.getString(atts, TAG_DATA_ATTRIBUTE_COMPRESSION);
 			break;
+		case TAG_CHUNK:
+			// chunk di una mappa infinita
+			chunkX = SAXUtil.getInt(atts, TAG_CHUNK_ATTRIBUTE_X);
+			chunkY = SAXUtil.getInt(atts, TAG_CHUNK_ATTRIBUTE_Y);
+			chunkWidth = SAXUtil.getInt(atts, TAG_CHUNK_ATTRIBUTE_WIDTH);
+			chunkHeight = SAXUtil.getInt(atts, TAG_CHUNK_ATTRIBUTE_HEIGHT);
+			this.characters.setLength(0);
+			break;
 		case TAG_OBJECTGROUP:
 			tiledMap.addObjectGroup(new ObjectLayer(this.tiledMap, atts));
 			inObjectLayer = true;
@@ -226,6 +357,12 @@ public class TMXLoaderHandler extends DefaultHandler {
 		case TAG_MAP: {
 			// rimuoviamo tutti gli eventuali layer da rimuovere
 			TMXLayerHelper.removePreviewLayer(tiledMap);
+
+			// le dimensioni delle mappe infinite dipendono dai chunk dei layer rimasti
+			if (tiledMap.infinite) {
+				TMXLayerHelper.buildInfiniteBounds(tiledMap);
+			}
+
 			// definisce le texture per ogni tile
 			tiledMap.assignTextureToLayers(context);
 
@@ -258,18 +395,24 @@ public class TMXLoaderHandler extends DefaultHandler {
 			break;
 		}
 		case TAG_DATA: {
-			boolean binarySaved = this.compression != null && this.encoding != null;
-			if (binarySaved) {
-				// l'ultimo layer sicuramente è un tiledLayer
-				TiledLayer tiledLayer = (TiledLayer) this.tiledMap.layers.get(this.tiledMap.layers.size() - 1);
+			// l'ultimo layer sicuramente è un tiledLayer
+			TiledLayer tiledLayer = (TiledLayer) this.tiledMap.layers.get(this.tiledMap.layers.size() - 1);
+			if (cache != null) {
+				// le celle sono già decodificate nella cache
+				cache.readLayer(tiledLayer);
+			} else if (tiledLayer.chunkedCells == null && this.encoding != null) {
+				// se non c'è encoding, le tile sono state definite con i tag tile. I chunk delle mappe infinite sono già stati
+				// aggiunti uno alla volta
 				try {
-					TMXLayerHelper.extract(tiledLayer, this.characters.toString().trim(), this.encoding, this.compression);
+					TMXLayerHelper.extract(tiledLayer, this.characters, this.encoding, this.compression);
 				} catch (IOException e) {
 					throw new SAXException(e);
 				}
-				this.compression = null;
-				this.encoding = null;
 			}
+			dataLayers.add(tiledLayer);
+
+			this.compression = null;
+			this.encoding = null;
 			this.inData = false;
 			break;
 		}
@@ -277,6 +420,16 @@ public class TMXLoaderHandler extends DefaultHandler {
 			this.inObject = false;
 			break;
 		}
+		case TAG_CHUNK: {
+			if (cache == null) {
+				TiledLayer tiledLayer = (TiledLayer) this.tiledMap.layers.get(this.tiledMap.layers.size() - 1);
+				if (tiledLayer.chunkedCells == null) {
+					throw new SAXException("Layer data chunks are allowed only in infinite maps");
+				}
+				TMXLayerHelper.extractChunk(tiledLayer, chunkX, chunkY, chunkWidth, chunkHeight, this.characters, this.encoding, this.compression);
+			}
+			break;
+		}
 
 		}
 
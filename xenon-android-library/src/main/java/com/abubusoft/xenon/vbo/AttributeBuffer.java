@@ -149,6 +149,39 @@ public class AttributeBuffer extends AbstractBuffer {
 		update(capacity);
 	}
 
+	/**
+	 * <p>
+	 * Aggiorna solo gli elementi da <code>offset</code> a <code>offset + size</code>: li copia nel native buffer e, se è un vbo, li
+	 * carica in video memory con <code>glBufferSubData</code>.
+	 * </p>
+	 * 
+	 * <p>
+	 * Se il vbo non è stato ancora caricato, aggiorna tutto il buffer con {@link #update()}.
+	 * </p>
+	 * 
+	 * @param offset
+	 *            primo elemento da aggiornare
+	 * @param size
+	 *            numero di elementi da aggiornare
+	 */
+	public void update(int offset, int size) {
+		if (allocation == BufferAllocationType.STATIC || (allocation != BufferAllocationType.CLIENT && firstUpdate)) {
+			update();
+			return;
+		}
+
+		buffer.position(offset);
+		buffer.put(coords, offset, size).position(offset);
+
+		if (allocation != BufferAllocationType.CLIENT) {
+			GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, bindingId);
+			GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, offset * BYTES_PER_FLOAT, size * BYTES_PER_FLOAT, buffer);
+			GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		}
+
+		buffer.position(0);
+	}
+
 	/**
 	 * Se è un vbo, ricarichiamo i valori
 	 */
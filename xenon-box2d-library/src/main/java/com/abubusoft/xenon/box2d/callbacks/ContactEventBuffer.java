@@ -0,0 +1,362 @@
+package com.abubusoft.xenon.box2d.callbacks;
+
+import com.abubusoft.xenon.box2d.collision.Manifold;
+import com.abubusoft.xenon.box2d.collision.WorldManifold;
+import com.abubusoft.xenon.box2d.common.Settings;
+import com.abubusoft.xenon.box2d.common.Vec2;
+import com.abubusoft.xenon.box2d.dynamics.Body;
+import com.abubusoft.xenon.box2d.dynamics.Fixture;
+import com.abubusoft.xenon.box2d.dynamics.contacts.Contact;
+
+/**
+ * A contact listener that only records the begin contact, end contact and post solve events in a
+ * ring buffer of primitive arrays, to be drained by the game after the step. The listener work is
+ * then done outside of the step, where the world can be changed, and the events can be processed
+ * in batch or handed to another thread. Set it with
+ * {@link com.abubusoft.xenon.box2d.dynamics.World#setContactListener(ContactListener)}.
+ *
+ * Events are read from the oldest, with an index from 0 to {@link #size()} excluded, and dropped
+ * with {@link #remove(int)} or {@link #clear()}. The buffer grows when full, so nothing is
+ * allocated once it fits the events of a step. It must not be read while the world is stepping.
+ *
+ * Pre solve is not recorded: it can only be used during the step. The events keep the fixtures
+ * and their bodies as references, with the positions of the bodies when the event was recorded.
+ * Use {@link #getBodyA(int)} and {@link #getBodyB(int)} instead of {@link Fixture#getBody()}: a
+ * fixture removed with {@link Body#destroyFixture(Fixture)} has no body any more. A fixture of a
+ * body removed with {@link com.abubusoft.xenon.box2d.dynamics.World#destroyBody(Body)} keeps its
+ * body, which is no longer in the world.
+ */
+public class ContactEventBuffer implements ContactListener {
+
+  public static final int BEGIN_CONTACT = 1;
+  public static final int END_CONTACT = 2;
+  public static final int POST_SOLVE = 4;
+
+  private final int m_maxPoints = Settings.maxManifoldPoints;
+  private final WorldManifold m_worldManifold = new WorldManifold();
+  private int m_eventMask = BEGIN_CONTACT | END_CONTACT | POST_SOLVE;
+
+  private byte[] m_type;
+  private Fixture[] m_fixtureA;
+  private Fixture[] m_fixtureB;
+  private Body[] m_bodyA;
+  private Body[] m_bodyB;
+  private float[] m_positionAX;
+  private float[] m_positionAY;
+  private float[] m_positionBX;
+  private float[] m_positionBY;
+  private int[] m_childIndexA;
+  private int[] m_childIndexB;
+  private float[] m_normalX;
+  private float[] m_normalY;
+  private byte[] m_pointCount;
+  private float[] m_normalImpulses;
+  private float[] m_tangentImpulses;
+
+  // capacity is a power of 2, the events are in slots head .. head + count - 1, wrapped
+  private int m_mask;
+  private int m_head;
+  private int m_count;
+
+  public ContactEventBuffer() {
+    this(256);
+  }
+
+  /**
+   * @param capacity initial number of events, rounded up to a power of 2.
+   */
+  public ContactEventBuffer(int capacity) {
+    int size = 16;
+    while (size < capacity) {
+      size <<= 1;
+    }
+    allocate(size);
+  }
+
+  private void allocate(int capacity) {
+    m_type = new byte[capacity];
+    m_fixtureA = new Fixture[capacity];
+    m_fixtureB = new Fixture[capacity];
+    m_bodyA = new Body[capacity];
+    m_bodyB = new Body[capacity];
+    m_positionAX = new float[capacity];
+    m_positionAY = new float[capacity];
+    m_positionBX = new float[capacity];
+    m_positionBY = new float[capacity];
+    m_childIndexA = new int[capacity];
+    m_childIndexB = new int[capacity];
+    m_normalX = new float[capacity];
+    m_normalY = new float[capacity];
+    m_pointCount = new byte[capacity];
+    m_normalImpulses = new float[capacity * m_maxPoints];
+    m_tangentImpulses = new float[capacity * m_maxPoints];
+    m_mask = capacity - 1;
+  }
+
+  /**
+   * Double the capacity, the events are moved to the first slots.
+   */
+  private void grow() {
+    final byte[] type = m_type;
+    final Fixture[] fixtureA = m_fixtureA;
+    final Fixture[] fixtureB = m_fixtureB;
+    final Body[] bodyA = m_bodyA;
+    final Body[] bodyB = m_bodyB;
+    final float[] positionAX = m_positionAX;
+    final float[] positionAY = m_positionAY;
+    final float[] positionBX = m_positionBX;
+    final float[] positionBY = m_positionBY;
+    final int[] childIndexA = m_childIndexA;
+    final int[] childIndexB = m_childIndexB;
+    final float[] normalX = m_normalX;
+    final float[] normalY = m_normalY;
+    final byte[] pointCount = m_pointCount;
+    final float[] normalImpulses = m_normalImpulses;
+    final float[] tangentImpulses = m_tangentImpulses;
+    final int oldMask = m_mask;
+
+    allocate(type.length * 2);
+    for (int i = 0; i < m_count; i++) {
+      final int from = (m_head + i) & oldMask;
+      m_type[i] = type[from];
+      m_fixtureA[i] = fixtureA[from];
+      m_fixtureB[i] = fixtureB[from];
+      m_bodyA[i] = bodyA[from];
+      m_bodyB[i] = bodyB[from];
+      m_positionAX[i] = positionAX[from];
+      m_positionAY[i] = positionAY[from];
+      m_positionBX[i] = positionBX[from];
+      m_positionBY[i] = positionBY[from];
+      m_childIndexA[i] = childIndexA[from];
+      m_childIndexB[i] = childIndexB[from];
+      m_normalX[i] = normalX[from];
+      m_normalY[i] = normalY[from];
+      m_pointCount[i] = pointCount[from];
+      System.arraycopy(normalImpulses, from * m_maxPoints, m_normalImpulses, i * m_maxPoints,
+          m_maxPoints);
+      System.arraycopy(tangentImpulses, from * m_maxPoints, m_tangentImpulses, i * m_maxPoints,
+          m_maxPoints);
+    }
+    m_head = 0;
+  }
+
+  /**
+   * Choose the events recorded, a combination of {@link #BEGIN_CONTACT}, {@link #END_CONTACT} and
+   * {@link #POST_SOLVE}. All by default.
+   */
+  public void setEventMask(int mask) {
+    m_eventMask = mask;
+  }
+
+  public int getEventMask() {
+    return m_eventMask;
+  }
+
+  /**
+   * Append an event.
+   *
+   * @return its slot.
+   */
+  private int add(int type, Contact contact) {
+    if (m_count == m_type.length) {
+      grow();
+    }
+    final int slot = (m_head + m_count) & m_mask;
+    m_count++;
+    m_type[slot] = (byte) type;
+    m_fixtureA[slot] = contact.getFixtureA();
+    m_fixtureB[slot] = contact.getFixtureB();
+    final Body bodyA = m_fixtureA[slot].getBody();
+    final Body bodyB = m_fixtureB[slot].getBody();
+    m_bodyA[slot] = bodyA;
+    m_bodyB[slot] = bodyB;
+    m_positionAX[slot] = bodyA.getPosition().x;
+    m_positionAY[slot] = bodyA.getPosition().y;
+    m_positionBX[slot] = bodyB.getPosition().x;
+    m_positionBY[slot] = bodyB.getPosition().y;
+    m_childIndexA[slot] = contact.getChildIndexA();
+    m_childIndexB[slot] = contact.getChildIndexB();
+    m_pointCount[slot] = (byte) contact.getManifold().pointCount;
+    if (m_pointCount[slot] > 0) {
+      contact.getWorldManifold(m_worldManifold);
+      m_normalX[slot] = m_worldManifold.normal.x;
+      m_normalY[slot] = m_worldManifold.normal.y;
+    } else {
+      m_normalX[slot] = 0;
+      m_normalY[slot] = 0;
+    }
+    return slot;
+  }
+
+  @Override
+  public void beginContact(Contact contact) {
+    if ((m_eventMask & BEGIN_CONTACT) != 0) {
+      clearImpulses(add(BEGIN_CONTACT, contact));
+    }
+  }
+
+  @Override
+  public void endContact(Contact contact) {
+    if ((m_eventMask & END_CONTACT) != 0) {
+      clearImpulses(add(END_CONTACT, contact));
+    }
+  }
+
+  @Override
+  public void preSolve(Contact contact, Manifold oldManifold) {
+  }
+
+  @Override
+  public void postSolve(Contact contact, ContactImpulse impulse) {
+    if ((m_eventMask & POST_SOLVE) != 0) {
+      final int slot = add(POST_SOLVE, contact);
+      final int offset = slot * m_maxPoints;
+      for (int j = 0; j < m_maxPoints; j++) {
+        final boolean valid = j < impulse.count;
+        m_normalImpulses[offset + j] = valid ? impulse.normalImpulses[j] : 0;
+        m_tangentImpulses[offset + j] = valid ? impulse.tangentImpulses[j] : 0;
+      }
+    }
+  }
+
+  private void clearImpulses(int slot) {
+    final int offset = slot * m_maxPoints;
+    for (int j = 0; j < m_maxPoints; j++) {
+      m_normalImpulses[offset + j] = 0;
+      m_tangentImpulses[offset + j] = 0;
+    }
+  }
+
+  /**
+   * @return the number of events not yet removed.
+   */
+  public int size() {
+    return m_count;
+  }
+
+  public boolean isEmpty() {
+    return m_count == 0;
+  }
+
+  /**
+   * Remove the oldest events.
+   */
+  public void remove(int count) {
+    assert (0 <= count && count <= m_count);
+    for (int i = 0; i < count; i++) {
+      final int slot = (m_head + i) & m_mask;
+      m_fixtureA[slot] = null;
+      m_fixtureB[slot] = null;
+      m_bodyA[slot] = null;
+      m_bodyB[slot] = null;
+    }
+    m_head = (m_head + count) & m_mask;
+    m_count -= count;
+  }
+
+  /**
+   * Remove all the events.
+   */
+  public void clear() {
+    remove(m_count);
+    m_head = 0;
+  }
+
+  private int slot(int event) {
+    assert (0 <= event && event < m_count);
+    return (m_head + event) & m_mask;
+  }
+
+  /**
+   * @return {@link #BEGIN_CONTACT}, {@link #END_CONTACT} or {@link #POST_SOLVE}.
+   */
+  public int getType(int event) {
+    return m_type[slot(event)];
+  }
+
+  public Fixture getFixtureA(int event) {
+    return m_fixtureA[slot(event)];
+  }
+
+  public Fixture getFixtureB(int event) {
+    return m_fixtureB[slot(event)];
+  }
+
+  /**
+   * @return the body of fixture A when the event was recorded.
+   */
+  public Body getBodyA(int event) {
+    return m_bodyA[slot(event)];
+  }
+
+  /**
+   * @return the body of fixture B when the event was recorded.
+   */
+  public Body getBodyB(int event) {
+    return m_bodyB[slot(event)];
+  }
+
+  /**
+   * The position of the origin of body A when the event was recorded.
+   *
+   * @return out
+   */
+  public Vec2 getPositionA(int event, Vec2 out) {
+    final int slot = slot(event);
+    return out.set(m_positionAX[slot], m_positionAY[slot]);
+  }
+
+  /**
+   * The position of the origin of body B when the event was recorded.
+   *
+   * @return out
+   */
+  public Vec2 getPositionB(int event, Vec2 out) {
+    final int slot = slot(event);
+    return out.set(m_positionBX[slot], m_positionBY[slot]);
+  }
+
+  public int getChildIndexA(int event) {
+    return m_childIndexA[slot(event)];
+  }
+
+  public int getChildIndexB(int event) {
+    return m_childIndexB[slot(event)];
+  }
+
+  /**
+   * @return the number of points of the contact manifold when the event was recorded. An end
+   *         contact reported by the step has none, an end contact reported because a fixture or a
+   *         body was destroyed keeps the points of the last step.
+   */
+  public int getPointCount(int event) {
+    return m_pointCount[slot(event)];
+  }
+
+  /**
+   * The world normal, from A to B. Zero when there is no contact point.
+   */
+  public float getNormalX(int event) {
+    return m_normalX[slot(event)];
+  }
+
+  public float getNormalY(int event) {
+    return m_normalY[slot(event)];
+  }
+
+  /**
+   * @return the normal impulse of a contact point, post solve only.
+   */
+  public float getNormalImpulse(int event, int point) {
+    assert (0 <= point && point < m_maxPoints);
+    return m_normalImpulses[slot(event) * m_maxPoints + point];
+  }
+
+  /**
+   * @return the tangent impulse of a contact point, post solve only.
+   */
+  public float getTangentImpulse(int event, int point) {
+    assert (0 <= point && point < m_maxPoints);
+    return m_tangentImpulses[slot(event) * m_maxPoints + point];
+  }
+}
@@ -0,0 +1,60 @@
+package com.abubusoft.xenon.box2d.callbacks;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import com.abubusoft.xenon.box2d.dynamics.Profile;
+import com.abubusoft.xenon.box2d.dynamics.Profile.Counter;
+import com.abubusoft.xenon.box2d.dynamics.Profile.Phase;
+
+/**
+ * Writes one line per step: the step number, the phase durations in nanoseconds and the counters,
+ * after a header line with the column names. Meant to dump the frames of a soak test to a file.
+ * The output is not flushed nor closed by the sink.
+ */
+public class CsvProfileSink implements ProfileSink {
+
+  private static final Phase[] PHASES = Phase.values();
+  private static final Counter[] COUNTERS = Counter.values();
+
+  private final Appendable m_out;
+  private final StringBuilder m_line = new StringBuilder();
+  private long m_step;
+
+  /**
+   * @param out where the lines go, a buffered writer for a file.
+   */
+  public CsvProfileSink(Appendable out) {
+    m_out = out;
+  }
+
+  @Override
+  public void stepProfiled(Profile profile) {
+    final StringBuilder line = m_line;
+    line.setLength(0);
+    if (m_step == 0) {
+      line.append("step");
+      for (Phase phase : PHASES) {
+        line.append(',').append(phase.name().toLowerCase(Locale.ROOT)).append("_ns");
+      }
+      for (Counter counter : COUNTERS) {
+        line.append(',').append(counter.name().toLowerCase(Locale.ROOT));
+      }
+      line.append('\n');
+    }
+    line.append(m_step++);
+    for (Phase phase : PHASES) {
+      line.append(',').append(profile.getNanos(phase));
+    }
+    for (Counter counter : COUNTERS) {
+      line.append(',').append(profile.getCount(counter));
+    }
+    line.append('\n');
+
+    try {
+      m_out.append(line);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
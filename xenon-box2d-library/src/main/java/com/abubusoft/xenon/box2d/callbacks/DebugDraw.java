@@ -187,6 +187,46 @@ public abstract class DebugDraw {
   public abstract void drawParticlesWireframe(Vec2[] centers, float radius, ParticleColor[] colors,
       int count);
 
+  /**
+   * Draw a particle array given as two coordinate arrays. The default implementation copies the
+   * coordinates into a reused vector array and calls
+   * {@link #drawParticles(Vec2[], float, ParticleColor[], int)}.
+   * 
+   * @param colors can be null
+   */
+  public void drawParticles(float[] x, float[] y, float radius, ParticleColor[] colors, int count) {
+    drawParticles(toCenters(x, y, count), radius, colors, count);
+  }
+
+  /**
+   * Draw a particle array given as two coordinate arrays, see
+   * {@link #drawParticles(float[], float[], float, ParticleColor[], int)}.
+   * 
+   * @param colors can be null
+   */
+  public void drawParticlesWireframe(float[] x, float[] y, float radius, ParticleColor[] colors,
+      int count) {
+    drawParticlesWireframe(toCenters(x, y, count), radius, colors, count);
+  }
+
+  private Vec2[] centers = new Vec2[0];
+
+  private Vec2[] toCenters(float[] x, float[] y, int count) {
+    if (centers.length < count) {
+      Vec2[] old = centers;
+      centers = new Vec2[Math.max(count, 2 * old.length)];
+      System.arraycopy(old, 0, centers, 0, old.length);
+      for (int i = old.length; i < centers.length; i++) {
+        centers[i] = new Vec2();
+      }
+    }
+    for (int i = 0; i < count; i++) {
+      centers[i].x = x[i];
+      centers[i].y = y[i];
+    }
+    return centers;
+  }
+
   /** Called at the end of drawing a world */
   public void flush() {}
 
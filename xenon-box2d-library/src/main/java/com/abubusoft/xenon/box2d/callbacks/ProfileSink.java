@@ -0,0 +1,21 @@
+package com.abubusoft.xenon.box2d.callbacks;
+
+import com.abubusoft.xenon.box2d.dynamics.Profile;
+
+/**
+ * Receives the profile of each step. Setting a sink turns on the phase timings and the histograms
+ * of the profile, which cost nothing otherwise. Set it with
+ * {@link com.abubusoft.xenon.box2d.dynamics.World#setProfileSink(ProfileSink)}.
+ *
+ * @see CsvProfileSink
+ */
+public interface ProfileSink {
+
+  /**
+   * Called at the end of each step, once the world is unlocked. The profile is reused by the next
+   * step: copy what must be kept.
+   *
+   * @param profile the phase durations and the counters of the step.
+   */
+  void stepProfiled(Profile profile);
+}
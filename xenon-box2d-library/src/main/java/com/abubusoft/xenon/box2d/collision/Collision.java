@@ -188,7 +188,7 @@ public class Collision {
   // #### COLLISION STUFF (not from collision.h or collision.cpp) ####
 
   // djm pooling
-  private static Vec2 d = new Vec2();
+  private final Vec2 d = new Vec2();
 
   /**
    * Compute the collision manifold between two circles.
@@ -1,5 +1,7 @@
 package com.abubusoft.xenon.box2d.collision.broadphase;
 
+import java.nio.ByteBuffer;
+
 import com.abubusoft.xenon.box2d.callbacks.DebugDraw;
 import com.abubusoft.xenon.box2d.callbacks.PairCallback;
 import com.abubusoft.xenon.box2d.callbacks.TreeCallback;
@@ -29,6 +31,18 @@ public interface BroadPhase {
    */
   void destroyProxy(int proxyId);
 
+  /**
+   * Start a bulk load: the proxies created until {@link #endBulkLoad()} are added to the tree
+   * together, which is much faster than one by one for large sets, like the static fixtures of a
+   * level.
+   */
+  void beginBulkLoad();
+
+  /**
+   * End a bulk load, adding the pending proxies.
+   */
+  void endBulkLoad();
+
   /**
    * Call MoveProxy as many times as you like, then when you are done call UpdatePairs to finalized
    * the proxy pairs (for your time step).
@@ -79,6 +93,23 @@ public interface BroadPhase {
    */
   void raycast(TreeRayCastCallback callback, RayCastInput input);
 
+  /**
+   * Query with the given working memory, so that several threads can query at once. See
+   * {@link BroadPhaseStrategy#query(TreeCallback, AABB, BroadPhaseScratch)}.
+   */
+  void query(TreeCallback callback, AABB aabb, BroadPhaseScratch scratch);
+
+  /**
+   * Ray-cast with the given working memory, so that several threads can ray-cast at once. See
+   * {@link BroadPhaseStrategy#query(TreeCallback, AABB, BroadPhaseScratch)}.
+   */
+  void raycast(TreeRayCastCallback callback, RayCastInput input, BroadPhaseScratch scratch);
+
+  /**
+   * Apply the updates of the structure deferred to the next query.
+   */
+  void flushUpdates();
+
   /**
    * Get the height of the embedded tree.
    * 
@@ -89,4 +120,25 @@ public interface BroadPhase {
   int getTreeBalance();
 
   float getTreeQuality();
+
+  /**
+   * Rebuild the tree from scratch, to restore its quality after many moves.
+   */
+  void rebuildTree();
+
+  /**
+   * @return the size in bytes of what {@link #writeState(ByteBuffer)} writes.
+   */
+  int getStateSize();
+
+  /**
+   * Write the moved proxies and the structure of the strategy, for a world snapshot. See
+   * {@link BroadPhaseStrategy#writeState(ByteBuffer)}.
+   */
+  void writeState(ByteBuffer buffer);
+
+  /**
+   * Read what {@link #writeState(ByteBuffer)} wrote, into a broad-phase with the same proxies.
+   */
+  void readState(ByteBuffer buffer);
 }
@@ -0,0 +1,30 @@
+package com.abubusoft.xenon.box2d.collision.broadphase;
+
+import com.abubusoft.xenon.box2d.collision.AABB;
+import com.abubusoft.xenon.box2d.collision.RayCastInput;
+import com.abubusoft.xenon.box2d.common.Vec2;
+
+/**
+ * Working memory of the queries and the ray casts of a {@link BroadPhaseStrategy}. Each strategy
+ * has its own; a thread that queries a strategy at the same time as others passes its own
+ * instance to the query and ray cast methods that take one.
+ *
+ * An instance can be used with any strategy, one query at a time.
+ */
+public class BroadPhaseScratch {
+  // trees
+  int[] stack = new int[20];
+  DynamicTreeNode[] nodeStack = new DynamicTreeNode[20];
+
+  // ray casts
+  final Vec2 r = new Vec2();
+  final AABB segAABB = new AABB();
+  final RayCastInput subInput = new RayCastInput();
+  float rayP1X, rayP1Y, rayP2X, rayP2Y;
+  float rayVX, rayVY;
+  float rayMaxFraction;
+
+  // uniform grid, last query that reported each proxy
+  int[] stamp = new int[0];
+  int stampValue;
+}
@@ -0,0 +1,74 @@
+package com.abubusoft.xenon.box2d.collision.broadphase;
+
+import java.nio.ByteBuffer;
+
+import com.abubusoft.xenon.box2d.collision.AABB;
+
+/**
+ * Helpers of the strategies to write and read their state.
+ */
+final class BroadPhaseState {
+
+  static final int AABB_SIZE = 4 * 4;
+
+  private BroadPhaseState() {
+  }
+
+  static void putAABB(ByteBuffer buffer, AABB aabb) {
+    buffer.putFloat(aabb.lowerBoundX);
+    buffer.putFloat(aabb.lowerBoundY);
+    buffer.putFloat(aabb.upperBoundX);
+    buffer.putFloat(aabb.upperBoundY);
+  }
+
+  static void getAABB(ByteBuffer buffer, AABB aabb) {
+    aabb.lowerBoundX = buffer.getFloat();
+    aabb.lowerBoundY = buffer.getFloat();
+    aabb.upperBoundX = buffer.getFloat();
+    aabb.upperBoundY = buffer.getFloat();
+  }
+
+  /**
+   * Write the count, then the first count values.
+   */
+  static void putInts(ByteBuffer buffer, int[] values, int count) {
+    buffer.putInt(count);
+    for (int i = 0; i < count; i++) {
+      buffer.putInt(values[i]);
+    }
+  }
+
+  /**
+   * Read count values, the count being already read.
+   */
+  static void getInts(ByteBuffer buffer, int[] values, int count) {
+    for (int i = 0; i < count; i++) {
+      values[i] = buffer.getInt();
+    }
+  }
+
+  /**
+   * Chain the ids from {@code from} to {@code to}, allocated since the state was written, after the
+   * free list of the state, in the order a growth of the buffers would have added them.
+   *
+   * @param next the next free id of each free id.
+   * @return the head of the free list.
+   */
+  static int appendFree(int[] next, int freeList, int from, int to, int nullId) {
+    for (int i = from; i < to; i++) {
+      next[i] = (i == to - 1) ? nullId : i + 1;
+    }
+    if (from == to) {
+      return freeList;
+    }
+    if (freeList == nullId) {
+      return from;
+    }
+    int last = freeList;
+    while (next[last] != nullId) {
+      last = next[last];
+    }
+    next[last] = from;
+    return freeList;
+  }
+}
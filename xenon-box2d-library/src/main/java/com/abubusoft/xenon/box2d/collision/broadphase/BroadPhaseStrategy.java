@@ -1,5 +1,7 @@
 package com.abubusoft.xenon.box2d.collision.broadphase;
 
+import java.nio.ByteBuffer;
+
 import com.abubusoft.xenon.box2d.callbacks.DebugDraw;
 import com.abubusoft.xenon.box2d.callbacks.TreeCallback;
 import com.abubusoft.xenon.box2d.callbacks.TreeRayCastCallback;
@@ -18,6 +20,18 @@ public interface BroadPhaseStrategy {
    */
   int createProxy(AABB aabb, Object userData);
 
+  /**
+   * Start a bulk load: the proxies created from now on can be added to the structure together, at
+   * the latest by {@link #endBulkLoad()}. Queries, ray casts, moves and destructions add the pending
+   * proxies first.
+   */
+  void beginBulkLoad();
+
+  /**
+   * Add the proxies created since {@link #beginBulkLoad()} and go back to adding them one by one.
+   */
+  void endBulkLoad();
+
   /**
    * Destroy a proxy
    * 
@@ -57,6 +71,25 @@ public interface BroadPhaseStrategy {
    */
   void raycast(TreeRayCastCallback callback, RayCastInput input);
 
+  /**
+   * Same as {@link #query(TreeCallback, AABB)}, using the given working memory instead of the
+   * strategy's own. Several threads can query at once this way, each with its own scratch, as long
+   * as the structure is not changed and {@link #flushUpdates()} was called since the last change.
+   */
+  void query(TreeCallback callback, AABB aabb, BroadPhaseScratch scratch);
+
+  /**
+   * Same as {@link #raycast(TreeRayCastCallback, RayCastInput)}, using the given working memory
+   * instead of the strategy's own. See {@link #query(TreeCallback, AABB, BroadPhaseScratch)}.
+   */
+  void raycast(TreeRayCastCallback callback, RayCastInput input, BroadPhaseScratch scratch);
+
+  /**
+   * Apply the updates deferred to the next query, such as the proxies of a bulk load. Then the
+   * queries and the ray casts only read the structure, until it is changed again.
+   */
+  void flushUpdates();
+
   /**
    * Compute the height of the tree.
    */
@@ -84,5 +117,27 @@ public interface BroadPhaseStrategy {
    */
   float getAreaRatio();
 
+  /**
+   * Rebuild the structure from its proxies, to restore its quality after many moves.
+   */
+  void rebuildBottomUp();
+
+  /**
+   * @return the size in bytes of what {@link #writeState(ByteBuffer)} writes.
+   */
+  int getStateSize();
+
+  /**
+   * Write the structure with the fat AABBs, not the user data, for a world snapshot.
+   */
+  void writeState(ByteBuffer buffer);
+
+  /**
+   * Read what {@link #writeState(ByteBuffer)} wrote, into a structure with the same proxies. The
+   * structure is the same as when it was written, not only equivalent: the queries report the
+   * proxies in the same order and the next proxies get the same ids.
+   */
+  void readState(ByteBuffer buffer);
+
   void drawTree(DebugDraw draw);
 }
\ No newline at end of file
@@ -23,6 +23,7 @@
  ******************************************************************************/
 package com.abubusoft.xenon.box2d.collision.broadphase;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import com.abubusoft.xenon.box2d.callbacks.DebugDraw;
@@ -89,6 +90,16 @@ public class DefaultBroadPhaseBuffer implements TreeCallback, BroadPhase {
     m_tree.destroyProxy(proxyId);
   }
 
+  @Override
+  public void beginBulkLoad() {
+    m_tree.beginBulkLoad();
+  }
+
+  @Override
+  public void endBulkLoad() {
+    m_tree.endBulkLoad();
+  }
+
   @Override
   public final void moveProxy(int proxyId, final AABB aabb, final Vec2 displacement) {
     boolean buffer = m_tree.moveProxy(proxyId, aabb, displacement);
@@ -199,6 +210,23 @@ public class DefaultBroadPhaseBuffer implements TreeCallback, BroadPhase {
     m_tree.raycast(callback, input);
   }
 
+  @Override
+  public final void query(final TreeCallback callback, final AABB aabb,
+      final BroadPhaseScratch scratch) {
+    m_tree.query(callback, aabb, scratch);
+  }
+
+  @Override
+  public final void raycast(final TreeRayCastCallback callback, final RayCastInput input,
+      final BroadPhaseScratch scratch) {
+    m_tree.raycast(callback, input, scratch);
+  }
+
+  @Override
+  public final void flushUpdates() {
+    m_tree.flushUpdates();
+  }
+
   @Override
   public final int getTreeHeight() {
     return m_tree.getHeight();
@@ -214,6 +242,33 @@ public class DefaultBroadPhaseBuffer implements TreeCallback, BroadPhase {
     return m_tree.getAreaRatio();
   }
 
+  @Override
+  public void rebuildTree() {
+    m_tree.rebuildBottomUp();
+  }
+
+  @Override
+  public int getStateSize() {
+    return 4 + 4 * m_moveCount + m_tree.getStateSize();
+  }
+
+  @Override
+  public void writeState(ByteBuffer buffer) {
+    BroadPhaseState.putInts(buffer, m_moveBuffer, m_moveCount);
+    m_tree.writeState(buffer);
+  }
+
+  @Override
+  public void readState(ByteBuffer buffer) {
+    m_moveCount = buffer.getInt();
+    if (m_moveCapacity < m_moveCount) {
+      m_moveCapacity = m_moveCount;
+      m_moveBuffer = new int[m_moveCapacity];
+    }
+    BroadPhaseState.getInts(buffer, m_moveBuffer, m_moveCount);
+    m_tree.readState(buffer);
+  }
+
   protected final void bufferMove(int proxyId) {
     if (m_moveCount == m_moveCapacity) {
       int[] old = m_moveBuffer;
@@ -23,6 +23,8 @@
  ******************************************************************************/
 package com.abubusoft.xenon.box2d.collision.broadphase;
 
+import java.nio.ByteBuffer;
+
 import com.abubusoft.xenon.box2d.callbacks.DebugDraw;
 import com.abubusoft.xenon.box2d.callbacks.TreeCallback;
 import com.abubusoft.xenon.box2d.callbacks.TreeRayCastCallback;
@@ -53,8 +55,13 @@ public class DynamicTree implements BroadPhaseStrategy {
   private int m_freeList;
 
   private final Vec2[] drawVecs = new Vec2[4];
-  private DynamicTreeNode[] nodeStack = new DynamicTreeNode[20];
-  private int nodeStackIndex = 0;
+  private final BroadPhaseScratch m_scratch = new BroadPhaseScratch();
+
+  private boolean m_bulkLoad;
+  // leaves created during a bulk load, not yet in the tree
+  private int[] m_pending = new int[16];
+  private int m_pendingCount;
+  private final TreeBuilder m_builder = new TreeBuilder();
 
   public DynamicTree() {
     m_root = null;
@@ -88,14 +95,56 @@ public class DynamicTree implements BroadPhaseStrategy {
     nodeAABB.upperBoundY = aabb.upperBoundY + Settings.aabbExtension;
     node.userData = userData;
 
-    insertLeaf(proxyId);
+    if (m_bulkLoad) {
+      if (m_pendingCount == m_pending.length) {
+        int[] old = m_pending;
+        m_pending = new int[old.length * 2];
+        System.arraycopy(old, 0, m_pending, 0, old.length);
+      }
+      m_pending[m_pendingCount++] = proxyId;
+    } else {
+      insertLeaf(proxyId);
+    }
 
     return proxyId;
   }
 
+  @Override
+  public void beginBulkLoad() {
+    m_bulkLoad = true;
+  }
+
+  @Override
+  public void endBulkLoad() {
+    m_bulkLoad = false;
+    if (m_pendingCount > 0) {
+      insertPending();
+    }
+  }
+
+  /**
+   * Insert the leaves created by the bulk load: one by one if they are few compared to the tree,
+   * otherwise rebuilding the whole tree top-down.
+   */
+  private void insertPending() {
+    final int count = m_pendingCount;
+    m_pendingCount = 0;
+    final int treeLeaves = m_root == null ? 0 : (m_nodeCount - count + 1) / 2;
+    if (count < treeLeaves) {
+      for (int i = 0; i < count; i++) {
+        insertLeaf(m_pending[i]);
+      }
+    } else {
+      rebuild(true);
+    }
+  }
+
   @Override
   public final void destroyProxy(int proxyId) {
     assert (0 <= proxyId && proxyId < m_nodeCapacity);
+    if (m_pendingCount > 0) {
+      insertPending();
+    }
     DynamicTreeNode node = m_nodes[proxyId];
     assert (node.child1 == null);
 
@@ -107,6 +156,9 @@ public class DynamicTree implements BroadPhaseStrategy {
   public final boolean moveProxy(int proxyId, final AABB aabb, Vec2 displacement) {
     assert(aabb.isValid());
     assert (0 <= proxyId && proxyId < m_nodeCapacity);
+    if (m_pendingCount > 0) {
+      insertPending();
+    }
     final DynamicTreeNode node = m_nodes[proxyId];
     assert (node.child1 == null);
 
@@ -160,8 +212,17 @@ public class DynamicTree implements BroadPhaseStrategy {
 
   @Override
   public final void query(TreeCallback callback, AABB aabb) {
+    query(callback, aabb, m_scratch);
+  }
+
+  @Override
+  public final void query(TreeCallback callback, AABB aabb, BroadPhaseScratch scratch) {
     assert(aabb.isValid());
-    nodeStackIndex = 0;
+    if (m_pendingCount > 0) {
+      insertPending();
+    }
+    DynamicTreeNode[] nodeStack = scratch.nodeStack;
+    int nodeStackIndex = 0;
     nodeStack[nodeStackIndex++] = m_root;
 
     while (nodeStackIndex > 0) {
@@ -181,6 +242,7 @@ public class DynamicTree implements BroadPhaseStrategy {
             DynamicTreeNode[] newBuffer = new DynamicTreeNode[nodeStack.length * 2];
             System.arraycopy(nodeStack, 0, newBuffer, 0, nodeStack.length);
             nodeStack = newBuffer;
+            scratch.nodeStack = nodeStack;
           }
           nodeStack[nodeStackIndex++] = node.child1;
           nodeStack[nodeStackIndex++] = node.child2;
@@ -189,12 +251,17 @@ public class DynamicTree implements BroadPhaseStrategy {
     }
   }
 
-  private final Vec2 r = new Vec2();
-  private final AABB aabb = new AABB();
-  private final RayCastInput subInput = new RayCastInput();
-
   @Override
   public void raycast(TreeRayCastCallback callback, RayCastInput input) {
+    raycast(callback, input, m_scratch);
+  }
+
+  @Override
+  public void raycast(TreeRayCastCallback callback, RayCastInput input,
+      BroadPhaseScratch scratch) {
+    if (m_pendingCount > 0) {
+      insertPending();
+    }
     final Vec2 p1 = input.p1;
     final Vec2 p2 = input.p2;
     float p1x = p1.x, p2x = p2.x, p1y = p1.y, p2y = p2.y;
@@ -204,6 +271,7 @@ public class DynamicTree implements BroadPhaseStrategy {
     float cx, cy;
     float hx, hy;
     float tempx, tempy;
+    final Vec2 r = scratch.r;
     r.x = p2x - p1x;
     r.y = p2y - p1y;
     assert ((r.x * r.x + r.y * r.y) > 0f);
@@ -223,7 +291,7 @@ public class DynamicTree implements BroadPhaseStrategy {
     float maxFraction = input.maxFraction;
 
     // Build a bounding box for the segment.
-    final AABB segAABB = aabb;
+    final AABB segAABB = scratch.segAABB;
     // Vec2 t = p1 + maxFraction * (p2 - p1);
     // before inline
     // temp.set(p2).subLocal(p1).mulLocal(maxFraction).addLocal(p1);
@@ -237,7 +305,8 @@ public class DynamicTree implements BroadPhaseStrategy {
     segAABB.upperBoundY = p1y > tempy ? p1y : tempy;
     // end inline
 
-    nodeStackIndex = 0;
+    DynamicTreeNode[] nodeStack = scratch.nodeStack;
+    int nodeStackIndex = 0;
     nodeStack[nodeStackIndex++] = m_root;
     while (nodeStackIndex > 0) {
       final DynamicTreeNode node = nodeStack[--nodeStackIndex];
@@ -266,6 +335,7 @@ public class DynamicTree implements BroadPhaseStrategy {
       }
 
       if (node.child1 == null) {
+        final RayCastInput subInput = scratch.subInput;
         subInput.p1.x = p1x;
         subInput.p1.y = p1y;
         subInput.p2.x = p2x;
@@ -297,6 +367,7 @@ public class DynamicTree implements BroadPhaseStrategy {
           DynamicTreeNode[] newBuffer = new DynamicTreeNode[nodeStack.length * 2];
           System.arraycopy(nodeStack, 0, newBuffer, 0, nodeStack.length);
           nodeStack = newBuffer;
+          scratch.nodeStack = nodeStack;
         }
         nodeStack[nodeStackIndex++] = node.child1;
         nodeStack[nodeStackIndex++] = node.child2;
@@ -304,8 +375,18 @@ public class DynamicTree implements BroadPhaseStrategy {
     }
   }
 
+  @Override
+  public final void flushUpdates() {
+    if (m_pendingCount > 0) {
+      insertPending();
+    }
+  }
+
   @Override
   public final int computeHeight() {
+    if (m_pendingCount > 0) {
+      insertPending();
+    }
     return computeHeight(m_root);
   }
 
@@ -343,6 +424,9 @@ public class DynamicTree implements BroadPhaseStrategy {
 
   @Override
   public int getHeight() {
+    if (m_pendingCount > 0) {
+      insertPending();
+    }
     if (m_root == null) {
       return 0;
     }
@@ -351,6 +435,9 @@ public class DynamicTree implements BroadPhaseStrategy {
 
   @Override
   public int getMaxBalance() {
+    if (m_pendingCount > 0) {
+      insertPending();
+    }
     int maxBalance = 0;
     for (int i = 0; i < m_nodeCapacity; ++i) {
       final DynamicTreeNode node = m_nodes[i];
@@ -371,6 +458,9 @@ public class DynamicTree implements BroadPhaseStrategy {
 
   @Override
   public float getAreaRatio() {
+    if (m_pendingCount > 0) {
+      insertPending();
+    }
     if (m_root == null) {
       return 0.0f;
     }
@@ -393,10 +483,22 @@ public class DynamicTree implements BroadPhaseStrategy {
   }
 
   /**
-   * Build an optimal tree. Very expensive. For testing.
+   * Rebuild the tree from its leaves, merging the closest nodes bottom-up. Restores the quality of a
+   * tree worn by many moves, in about n log n.
    */
+  @Override
   public void rebuildBottomUp() {
-    int[] nodes = new int[m_nodeCount];
+    m_pendingCount = 0;
+    rebuild(false);
+  }
+
+  /**
+   * Rebuild the tree from its leaves. All the internal nodes are freed and built again.
+   * 
+   * @param topDown split the leaves top-down, else merge them bottom-up.
+   */
+  private void rebuild(boolean topDown) {
+    int[] leaves = new int[m_nodeCount];
     int count = 0;
 
     // Build array of leaves. Free the rest.
@@ -409,55 +511,132 @@ public class DynamicTree implements BroadPhaseStrategy {
       DynamicTreeNode node = m_nodes[i];
       if (node.child1 == null) {
         node.parent = null;
-        nodes[count] = i;
+        leaves[count] = i;
         ++count;
       } else {
         freeNode(node);
       }
     }
 
-    AABB b = new AABB();
-    while (count > 1) {
-      float minCost = Float.MAX_VALUE;
-      int iMin = -1, jMin = -1;
-      for (int i = 0; i < count; ++i) {
-        AABB aabbi = m_nodes[nodes[i]].aabb;
-
-        for (int j = i + 1; j < count; ++j) {
-          AABB aabbj = m_nodes[nodes[j]].aabb;
-          b.combine(aabbi, aabbj);
-          float cost = b.getPerimeter();
-          if (cost < minCost) {
-            iMin = i;
-            jMin = j;
-            minCost = cost;
-          }
-        }
-      }
+    if (count == 0) {
+      m_root = null;
+      return;
+    }
 
-      int index1 = nodes[iMin];
-      int index2 = nodes[jMin];
-      DynamicTreeNode child1 = m_nodes[index1];
-      DynamicTreeNode child2 = m_nodes[index2];
+    final TreeBuilder builder = m_builder;
+    builder.reset(count);
+    for (int i = 0; i < count; i++) {
+      builder.setLeaf(i, m_nodes[leaves[i]].aabb);
+    }
+    final int root = topDown ? builder.buildTopDown() : builder.buildBottomUp();
+
+    final int[] ids = new int[builder.nodeCount];
+    for (int i = 0; i < builder.nodeCount; i++) {
+      ids[i] = allocateNode().id;
+    }
+    for (int i = 0; i < builder.nodeCount; i++) {
+      final DynamicTreeNode node = m_nodes[ids[i]];
+      final int ref1 = builder.child1[i];
+      final int ref2 = builder.child2[i];
+      final DynamicTreeNode child1 = m_nodes[ref1 < 0 ? leaves[~ref1] : ids[ref1]];
+      final DynamicTreeNode child2 = m_nodes[ref2 < 0 ? leaves[~ref2] : ids[ref2]];
+      node.child1 = child1;
+      node.child2 = child2;
+      child1.parent = node;
+      child2.parent = node;
+      node.height = builder.height[i];
+      node.aabb.lowerBoundX = builder.lowerX[i];
+      node.aabb.lowerBoundY = builder.lowerY[i];
+      node.aabb.upperBoundX = builder.upperX[i];
+      node.aabb.upperBoundY = builder.upperY[i];
+    }
+
+    m_root = m_nodes[root < 0 ? leaves[~root] : ids[root]];
+    m_root.parent = null;
+  }
 
-      DynamicTreeNode parent = allocateNode();
-      parent.child1 = child1;
-      parent.child2 = child2;
-      parent.height = 1 + MathUtils.max(child1.height, child2.height);
-      parent.aabb.combine(child1.aabb, child2.aabb);
-      parent.parent = null;
+  // capacity, count, root, free list, bulk load, pending count
+  private static final int STATE_HEADER_SIZE = 4 * 4 + 1 + 4;
+  // parent, children, height, AABB
+  private static final int NODE_STATE_SIZE = 4 * 4 + BroadPhaseState.AABB_SIZE;
 
-      child1.parent = parent;
-      child2.parent = parent;
+  @Override
+  public int getStateSize() {
+    return STATE_HEADER_SIZE + m_nodeCapacity * NODE_STATE_SIZE + 4 * m_pendingCount;
+  }
+
+  @Override
+  public void writeState(ByteBuffer buffer) {
+    buffer.putInt(m_nodeCapacity);
+    buffer.putInt(m_nodeCount);
+    buffer.putInt(id(m_root));
+    buffer.putInt(m_freeList);
+    for (int i = 0; i < m_nodeCapacity; i++) {
+      final DynamicTreeNode node = m_nodes[i];
+      // the parent of a free node is the next free one
+      buffer.putInt(id(node.parent));
+      buffer.putInt(id(node.child1));
+      buffer.putInt(id(node.child2));
+      buffer.putInt(node.height);
+      BroadPhaseState.putAABB(buffer, node.aabb);
+    }
+    buffer.put((byte) (m_bulkLoad ? 1 : 0));
+    BroadPhaseState.putInts(buffer, m_pending, m_pendingCount);
+  }
 
-      nodes[jMin] = nodes[count - 1];
-      nodes[iMin] = parent.id;
-      --count;
+  @Override
+  public void readState(ByteBuffer buffer) {
+    final int capacity = buffer.getInt();
+    if (m_nodeCapacity < capacity) {
+      DynamicTreeNode[] old = m_nodes;
+      m_nodes = new DynamicTreeNode[capacity];
+      System.arraycopy(old, 0, m_nodes, 0, old.length);
+      for (int i = old.length; i < capacity; i++) {
+        m_nodes[i] = new DynamicTreeNode(i);
+      }
+      m_nodeCapacity = capacity;
+    }
+    m_nodeCount = buffer.getInt();
+    m_root = node(buffer.getInt());
+    m_freeList = buffer.getInt();
+    for (int i = 0; i < capacity; i++) {
+      final DynamicTreeNode node = m_nodes[i];
+      node.parent = node(buffer.getInt());
+      node.child1 = node(buffer.getInt());
+      node.child2 = node(buffer.getInt());
+      node.height = buffer.getInt();
+      BroadPhaseState.getAABB(buffer, node.aabb);
     }
+    if (m_nodeCapacity > capacity) {
+      // free nodes added since, after the free ones of the state, as a growth would have added them
+      for (int i = capacity; i < m_nodeCapacity; i++) {
+        m_nodes[i].parent = (i == m_nodeCapacity - 1) ? null : m_nodes[i + 1];
+        m_nodes[i].height = -1;
+      }
+      if (m_freeList == NULL_NODE) {
+        m_freeList = capacity;
+      } else {
+        DynamicTreeNode last = m_nodes[m_freeList];
+        while (last.parent != null) {
+          last = last.parent;
+        }
+        last.parent = m_nodes[capacity];
+      }
+    }
+    m_bulkLoad = buffer.get() != 0;
+    m_pendingCount = buffer.getInt();
+    if (m_pending.length < m_pendingCount) {
+      m_pending = new int[m_pendingCount];
+    }
+    BroadPhaseState.getInts(buffer, m_pending, m_pendingCount);
+  }
 
-    m_root = m_nodes[nodes[0]];
+  private static int id(DynamicTreeNode node) {
+    return node != null ? node.id : NULL_NODE;
+  }
 
-    validate();
+  private DynamicTreeNode node(int id) {
+    return id != NULL_NODE ? m_nodes[id] : null;
   }
 
   private final DynamicTreeNode allocateNode() {
@@ -23,6 +23,8 @@
  ******************************************************************************/
 package com.abubusoft.xenon.box2d.collision.broadphase;
 
+import java.nio.ByteBuffer;
+
 import com.abubusoft.xenon.box2d.callbacks.DebugDraw;
 import com.abubusoft.xenon.box2d.callbacks.TreeCallback;
 import com.abubusoft.xenon.box2d.callbacks.TreeRayCastCallback;
@@ -53,6 +55,13 @@ public class DynamicTreeFlatNodes implements BroadPhaseStrategy {
   private int m_freeList;
 
   private final Vec2[] drawVecs = new Vec2[4];
+  private final BroadPhaseScratch m_scratch = new BroadPhaseScratch();
+
+  private boolean m_bulkLoad;
+  // leaves created during a bulk load, not yet in the tree
+  private int[] m_pending = new int[INITIAL_BUFFER_LENGTH];
+  private int m_pendingCount;
+  private final TreeBuilder m_builder = new TreeBuilder();
 
   public DynamicTreeFlatNodes() {
     m_root = NULL_NODE;
@@ -95,14 +104,54 @@ public class DynamicTreeFlatNodes implements BroadPhaseStrategy {
     nodeAABB.upperBoundY = aabb.upperBoundY + Settings.aabbExtension;
     m_userData[node] = userData;
 
-    insertLeaf(node);
+    if (m_bulkLoad) {
+      if (m_pendingCount == m_pending.length) {
+        m_pending = BufferUtils.reallocateBuffer(m_pending, m_pendingCount, m_pendingCount * 2);
+      }
+      m_pending[m_pendingCount++] = node;
+    } else {
+      insertLeaf(node);
+    }
 
     return node;
   }
 
+  @Override
+  public void beginBulkLoad() {
+    m_bulkLoad = true;
+  }
+
+  @Override
+  public void endBulkLoad() {
+    m_bulkLoad = false;
+    if (m_pendingCount > 0) {
+      insertPending();
+    }
+  }
+
+  /**
+   * Insert the leaves created by the bulk load: one by one if they are few compared to the tree,
+   * otherwise rebuilding the whole tree top-down.
+   */
+  private void insertPending() {
+    final int count = m_pendingCount;
+    m_pendingCount = 0;
+    final int treeLeaves = m_root == NULL_NODE ? 0 : (m_nodeCount - count + 1) / 2;
+    if (count < treeLeaves) {
+      for (int i = 0; i < count; i++) {
+        insertLeaf(m_pending[i]);
+      }
+    } else {
+      rebuild(true);
+    }
+  }
+
   @Override
   public final void destroyProxy(int proxyId) {
     assert (0 <= proxyId && proxyId < m_nodeCapacity);
+    if (m_pendingCount > 0) {
+      insertPending();
+    }
     assert (m_child1[proxyId] == NULL_NODE);
 
     removeLeaf(proxyId);
@@ -112,6 +161,9 @@ public class DynamicTreeFlatNodes implements BroadPhaseStrategy {
   @Override
   public final boolean moveProxy(int proxyId, final AABB aabb, Vec2 displacement) {
     assert (0 <= proxyId && proxyId < m_nodeCapacity);
+    if (m_pendingCount > 0) {
+      insertPending();
+    }
     final int node = proxyId;
     assert (m_child1[node] == NULL_NODE);
 
@@ -153,22 +205,28 @@ public class DynamicTreeFlatNodes implements BroadPhaseStrategy {
 
   @Override
   public final Object getUserData(int proxyId) {
-    assert (0 <= proxyId && proxyId < m_nodeCount);
+    assert (0 <= proxyId && proxyId < m_nodeCapacity);
     return m_userData[proxyId];
   }
 
   @Override
   public final AABB getFatAABB(int proxyId) {
-    assert (0 <= proxyId && proxyId < m_nodeCount);
+    assert (0 <= proxyId && proxyId < m_nodeCapacity);
     return m_aabb[proxyId];
   }
 
-  private int[] nodeStack = new int[20];
-  private int nodeStackIndex;
-
   @Override
   public final void query(TreeCallback callback, AABB aabb) {
-    nodeStackIndex = 0;
+    query(callback, aabb, m_scratch);
+  }
+
+  @Override
+  public final void query(TreeCallback callback, AABB aabb, BroadPhaseScratch scratch) {
+    if (m_pendingCount > 0) {
+      insertPending();
+    }
+    int[] nodeStack = scratch.stack;
+    int nodeStackIndex = 0;
     nodeStack[nodeStackIndex++] = m_root;
 
     while (nodeStackIndex > 0) {
@@ -188,6 +246,7 @@ public class DynamicTreeFlatNodes implements BroadPhaseStrategy {
           if (nodeStack.length - nodeStackIndex - 2 <= 0) {
             nodeStack =
                 BufferUtils.reallocateBuffer(nodeStack, nodeStack.length, nodeStack.length * 2);
+            scratch.stack = nodeStack;
           }
           nodeStack[nodeStackIndex++] = child1;
           nodeStack[nodeStackIndex++] = m_child2[node];
@@ -196,12 +255,17 @@ public class DynamicTreeFlatNodes implements BroadPhaseStrategy {
     }
   }
 
-  private final Vec2 r = new Vec2();
-  private final AABB aabb = new AABB();
-  private final RayCastInput subInput = new RayCastInput();
-
   @Override
   public void raycast(TreeRayCastCallback callback, RayCastInput input) {
+    raycast(callback, input, m_scratch);
+  }
+
+  @Override
+  public void raycast(TreeRayCastCallback callback, RayCastInput input,
+      BroadPhaseScratch scratch) {
+    if (m_pendingCount > 0) {
+      insertPending();
+    }
     final Vec2 p1 = input.p1;
     final Vec2 p2 = input.p2;
     float p1x = p1.x, p2x = p2.x, p1y = p1.y, p2y = p2.y;
@@ -211,6 +275,7 @@ public class DynamicTreeFlatNodes implements BroadPhaseStrategy {
     float cx, cy;
     float hx, hy;
     float tempx, tempy;
+    final Vec2 r = scratch.r;
     r.x = p2x - p1x;
     r.y = p2y - p1y;
     assert ((r.x * r.x + r.y * r.y) > 0f);
@@ -230,7 +295,7 @@ public class DynamicTreeFlatNodes implements BroadPhaseStrategy {
     float maxFraction = input.maxFraction;
 
     // Build a bounding box for the segment.
-    final AABB segAABB = aabb;
+    final AABB segAABB = scratch.segAABB;
     // Vec2 t = p1 + maxFraction * (p2 - p1);
     // before inline
     // temp.set(p2).subLocal(p1).mulLocal(maxFraction).addLocal(p1);
@@ -244,10 +309,11 @@ public class DynamicTreeFlatNodes implements BroadPhaseStrategy {
     segAABB.upperBoundY = p1y > tempy ? p1y : tempy;
     // end inline
 
-    nodeStackIndex = 0;
+    int[] nodeStack = scratch.stack;
+    int nodeStackIndex = 0;
     nodeStack[nodeStackIndex++] = m_root;
     while (nodeStackIndex > 0) {
-      int node = nodeStack[--nodeStackIndex] = m_root;
+      int node = nodeStack[--nodeStackIndex];
       if (node == NULL_NODE) {
         continue;
       }
@@ -274,6 +340,7 @@ public class DynamicTreeFlatNodes implements BroadPhaseStrategy {
 
       int child1 = m_child1[node];
       if (child1 == NULL_NODE) {
+        final RayCastInput subInput = scratch.subInput;
         subInput.p1.x = p1x;
         subInput.p1.y = p1y;
         subInput.p2.x = p2x;
@@ -301,14 +368,29 @@ public class DynamicTreeFlatNodes implements BroadPhaseStrategy {
           segAABB.upperBoundY = p1y > tempy ? p1y : tempy;
         }
       } else {
+        if (nodeStack.length - nodeStackIndex - 2 <= 0) {
+          nodeStack =
+              BufferUtils.reallocateBuffer(nodeStack, nodeStack.length, nodeStack.length * 2);
+          scratch.stack = nodeStack;
+        }
         nodeStack[nodeStackIndex++] = child1;
         nodeStack[nodeStackIndex++] = m_child2[node];
       }
     }
   }
 
+  @Override
+  public final void flushUpdates() {
+    if (m_pendingCount > 0) {
+      insertPending();
+    }
+  }
+
   @Override
   public final int computeHeight() {
+    if (m_pendingCount > 0) {
+      insertPending();
+    }
     return computeHeight(m_root);
   }
 
@@ -344,6 +426,9 @@ public class DynamicTreeFlatNodes implements BroadPhaseStrategy {
 
   @Override
   public int getHeight() {
+    if (m_pendingCount > 0) {
+      insertPending();
+    }
     if (m_root == NULL_NODE) {
       return 0;
     }
@@ -352,6 +437,9 @@ public class DynamicTreeFlatNodes implements BroadPhaseStrategy {
 
   @Override
   public int getMaxBalance() {
+    if (m_pendingCount > 0) {
+      insertPending();
+    }
     int maxBalance = 0;
     for (int i = 0; i < m_nodeCapacity; ++i) {
       if (m_height[i] <= 1) {
@@ -371,6 +459,9 @@ public class DynamicTreeFlatNodes implements BroadPhaseStrategy {
 
   @Override
   public float getAreaRatio() {
+    if (m_pendingCount > 0) {
+      insertPending();
+    }
     if (m_root == NULL_NODE) {
       return 0.0f;
     }
@@ -391,73 +482,136 @@ public class DynamicTreeFlatNodes implements BroadPhaseStrategy {
     return totalArea / rootArea;
   }
 
-  // /**
-  // * Build an optimal tree. Very expensive. For testing.
-  // */
-  // public void rebuildBottomUp() {
-  // int[] nodes = new int[m_nodeCount];
-  // int count = 0;
-  //
-  // // Build array of leaves. Free the rest.
-  // for (int i = 0; i < m_nodeCapacity; ++i) {
-  // if (m_nodes[i].height < 0) {
-  // // free node in pool
-  // continue;
-  // }
-  //
-  // DynamicTreeNode node = m_nodes[i];
-  // if (node.isLeaf()) {
-  // node.parent = null;
-  // nodes[count] = i;
-  // ++count;
-  // } else {
-  // freeNode(node);
-  // }
-  // }
-  //
-  // AABB b = new AABB();
-  // while (count > 1) {
-  // float minCost = Float.MAX_VALUE;
-  // int iMin = -1, jMin = -1;
-  // for (int i = 0; i < count; ++i) {
-  // AABB aabbi = m_nodes[nodes[i]].aabb;
-  //
-  // for (int j = i + 1; j < count; ++j) {
-  // AABB aabbj = m_nodes[nodes[j]].aabb;
-  // b.combine(aabbi, aabbj);
-  // float cost = b.getPerimeter();
-  // if (cost < minCost) {
-  // iMin = i;
-  // jMin = j;
-  // minCost = cost;
-  // }
-  // }
-  // }
-  //
-  // int index1 = nodes[iMin];
-  // int index2 = nodes[jMin];
-  // DynamicTreeNode child1 = m_nodes[index1];
-  // DynamicTreeNode child2 = m_nodes[index2];
-  //
-  // DynamicTreeNode parent = allocateNode();
-  // parent.child1 = child1;
-  // parent.child2 = child2;
-  // parent.height = 1 + MathUtils.max(child1.height, child2.height);
-  // parent.aabb.combine(child1.aabb, child2.aabb);
-  // parent.parent = null;
-  //
-  // child1.parent = parent;
-  // child2.parent = parent;
-  //
-  // nodes[jMin] = nodes[count - 1];
-  // nodes[iMin] = parent.id;
-  // --count;
-  // }
-  //
-  // m_root = m_nodes[nodes[0]];
-  //
-  // validate();
-  // }
+  /**
+   * Rebuild the tree from its leaves, merging the closest nodes bottom-up. Restores the quality of a
+   * tree worn by many moves, in about n log n.
+   */
+  @Override
+  public void rebuildBottomUp() {
+    m_pendingCount = 0;
+    rebuild(false);
+  }
+
+  /**
+   * Rebuild the tree from its leaves. All the internal nodes are freed and built again.
+   * 
+   * @param topDown split the leaves top-down, else merge them bottom-up.
+   */
+  private void rebuild(boolean topDown) {
+    int[] leaves = new int[m_nodeCount];
+    int count = 0;
+
+    // Build array of leaves. Free the rest.
+    for (int i = 0; i < m_nodeCapacity; ++i) {
+      if (m_height[i] < 0) {
+        // free node in pool
+        continue;
+      }
+
+      if (m_child1[i] == NULL_NODE) {
+        m_parent[i] = NULL_NODE;
+        leaves[count] = i;
+        ++count;
+      } else {
+        freeNode(i);
+      }
+    }
+
+    if (count == 0) {
+      m_root = NULL_NODE;
+      return;
+    }
+
+    final TreeBuilder builder = m_builder;
+    builder.reset(count);
+    for (int i = 0; i < count; i++) {
+      builder.setLeaf(i, m_aabb[leaves[i]]);
+    }
+    final int root = topDown ? builder.buildTopDown() : builder.buildBottomUp();
+
+    final int[] ids = new int[builder.nodeCount];
+    for (int i = 0; i < builder.nodeCount; i++) {
+      ids[i] = allocateNode();
+    }
+    for (int i = 0; i < builder.nodeCount; i++) {
+      final int node = ids[i];
+      final int ref1 = builder.child1[i];
+      final int ref2 = builder.child2[i];
+      final int child1 = ref1 < 0 ? leaves[~ref1] : ids[ref1];
+      final int child2 = ref2 < 0 ? leaves[~ref2] : ids[ref2];
+      m_child1[node] = child1;
+      m_child2[node] = child2;
+      m_parent[child1] = node;
+      m_parent[child2] = node;
+      m_height[node] = builder.height[i];
+      final AABB nodeAABB = m_aabb[node];
+      nodeAABB.lowerBoundX = builder.lowerX[i];
+      nodeAABB.lowerBoundY = builder.lowerY[i];
+      nodeAABB.upperBoundX = builder.upperX[i];
+      nodeAABB.upperBoundY = builder.upperY[i];
+    }
+
+    m_root = root < 0 ? leaves[~root] : ids[root];
+    m_parent[m_root] = NULL_NODE;
+  }
+
+  // capacity, count, root, free list, bulk load, pending count
+  private static final int STATE_HEADER_SIZE = 4 * 4 + 1 + 4;
+  // parent, children, height, AABB
+  private static final int NODE_STATE_SIZE = 4 * 4 + BroadPhaseState.AABB_SIZE;
+
+  @Override
+  public int getStateSize() {
+    return STATE_HEADER_SIZE + m_nodeCapacity * NODE_STATE_SIZE + 4 * m_pendingCount;
+  }
+
+  @Override
+  public void writeState(ByteBuffer buffer) {
+    buffer.putInt(m_nodeCapacity);
+    buffer.putInt(m_nodeCount);
+    buffer.putInt(m_root);
+    buffer.putInt(m_freeList);
+    for (int i = 0; i < m_nodeCapacity; i++) {
+      // the parent of a free node is the next free one
+      buffer.putInt(m_parent[i]);
+      buffer.putInt(m_child1[i]);
+      buffer.putInt(m_child2[i]);
+      buffer.putInt(m_height[i]);
+      BroadPhaseState.putAABB(buffer, m_aabb[i]);
+    }
+    buffer.put((byte) (m_bulkLoad ? 1 : 0));
+    BroadPhaseState.putInts(buffer, m_pending, m_pendingCount);
+  }
+
+  @Override
+  public void readState(ByteBuffer buffer) {
+    final int capacity = buffer.getInt();
+    if (m_nodeCapacity < capacity) {
+      expandBuffers(m_nodeCapacity, capacity);
+      m_nodeCapacity = capacity;
+    }
+    m_nodeCount = buffer.getInt();
+    m_root = buffer.getInt();
+    m_freeList = buffer.getInt();
+    for (int i = 0; i < capacity; i++) {
+      m_parent[i] = buffer.getInt();
+      m_child1[i] = buffer.getInt();
+      m_child2[i] = buffer.getInt();
+      m_height[i] = buffer.getInt();
+      BroadPhaseState.getAABB(buffer, m_aabb[i]);
+    }
+    for (int i = capacity; i < m_nodeCapacity; i++) {
+      m_height[i] = -1;
+    }
+    m_freeList =
+        BroadPhaseState.appendFree(m_parent, m_freeList, capacity, m_nodeCapacity, NULL_NODE);
+    m_bulkLoad = buffer.get() != 0;
+    m_pendingCount = buffer.getInt();
+    if (m_pending.length < m_pendingCount) {
+      m_pending = new int[m_pendingCount];
+    }
+    BroadPhaseState.getInts(buffer, m_pending, m_pendingCount);
+  }
 
   private final int allocateNode() {
     if (m_freeList == NULL_NODE) {
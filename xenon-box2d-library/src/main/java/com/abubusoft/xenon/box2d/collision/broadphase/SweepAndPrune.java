@@ -0,0 +1,654 @@
+package com.abubusoft.xenon.box2d.collision.broadphase;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.abubusoft.xenon.box2d.callbacks.DebugDraw;
+import com.abubusoft.xenon.box2d.callbacks.TreeCallback;
+import com.abubusoft.xenon.box2d.callbacks.TreeRayCastCallback;
+import com.abubusoft.xenon.box2d.collision.AABB;
+import com.abubusoft.xenon.box2d.collision.RayCastInput;
+import com.abubusoft.xenon.box2d.common.BufferUtils;
+import com.abubusoft.xenon.box2d.common.Color3f;
+import com.abubusoft.xenon.box2d.common.MathUtils;
+import com.abubusoft.xenon.box2d.common.Settings;
+import com.abubusoft.xenon.box2d.common.Vec2;
+
+/**
+ * Sort and sweep broad-phase strategy. The fat AABBs are kept sorted by their lower x bound: a query
+ * is a binary search followed by a linear sweep, and keeping the order after the proxies moved is
+ * an insertion sort, linear when the order changed little. Suited to worlds spread along the x
+ * axis, like side scrolling levels, where a tree spends its time rebalancing.
+ *
+ * A query sweeps back from its lower x bound by the width of the widest proxy. Proxies wider than
+ * a threshold (a ground box spanning the whole level) are kept out of the sorted list and tested on
+ * every query.
+ *
+ * Use it wrapped in a {@link DefaultBroadPhaseBuffer}, for example with
+ * {@link com.abubusoft.xenon.box2d.dynamics.World#World(Vec2, com.abubusoft.xenon.box2d.pooling.IWorldPool, BroadPhaseStrategy)}
+ * .
+ */
+public class SweepAndPrune implements BroadPhaseStrategy {
+  public static final int NULL_PROXY = -1;
+  public static final int INITIAL_BUFFER_LENGTH = 16;
+  /** Default width above which a proxy is tested on every query, instead of being sorted. */
+  public static final float DEFAULT_LARGE_PROXY_WIDTH = 16.0f;
+
+  /** Moves per proxy allowed to the insertion sort, before falling back to a full sort. */
+  private static final int SORT_MOVES_PER_PROXY = 4;
+
+  private static final int STATE_FREE = 0;
+  private static final int STATE_SORTED = 1;
+  private static final int STATE_LARGE = 2;
+
+  private final float m_largeProxyWidth;
+
+  // proxies, by id
+  private AABB[] m_aabb;
+  private Object[] m_userData;
+  private int[] m_state;
+  // index in the sorted or large list, or next free proxy
+  private int[] m_slot;
+  private int m_proxyCapacity;
+  private int m_proxyCount;
+  private int m_freeList;
+
+  // proxies sorted by lower x bound, destroyed proxies are NULL_PROXY until the next sort
+  private int[] m_sortedProxy;
+  private float[] m_sortedMinX;
+  private float[] m_sortedMaxX;
+  private int m_sortedCount;
+  private boolean m_dirty;
+  private float m_maxWidth;
+  private long[] m_sortKeys;
+
+  private int[] m_largeProxy;
+  private int m_largeCount;
+
+  private final Vec2[] drawVecs = new Vec2[4];
+  private final BroadPhaseScratch m_scratch = new BroadPhaseScratch();
+
+  public SweepAndPrune() {
+    this(DEFAULT_LARGE_PROXY_WIDTH);
+  }
+
+  /**
+   * @param largeProxyWidth proxies with a fat AABB wider than this are tested on every query
+   *          instead of being sorted.
+   */
+  public SweepAndPrune(float largeProxyWidth) {
+    m_largeProxyWidth = largeProxyWidth;
+    m_proxyCapacity = 0;
+    m_proxyCount = 0;
+    expandProxies(INITIAL_BUFFER_LENGTH);
+
+    m_sortedProxy = new int[INITIAL_BUFFER_LENGTH];
+    m_sortedMinX = new float[INITIAL_BUFFER_LENGTH];
+    m_sortedMaxX = new float[INITIAL_BUFFER_LENGTH];
+    m_sortedCount = 0;
+    m_largeProxy = new int[INITIAL_BUFFER_LENGTH];
+    m_largeCount = 0;
+
+    for (int i = 0; i < drawVecs.length; i++) {
+      drawVecs[i] = new Vec2();
+    }
+  }
+
+  private void expandProxies(int newCapacity) {
+    int oldCapacity = m_proxyCapacity;
+    m_aabb = BufferUtils.reallocateBuffer(AABB.class, m_aabb, oldCapacity, newCapacity);
+    m_userData = BufferUtils.reallocateBuffer(Object.class, m_userData, oldCapacity, newCapacity);
+    m_state = BufferUtils.reallocateBuffer(m_state, oldCapacity, newCapacity);
+    m_slot = BufferUtils.reallocateBuffer(m_slot, oldCapacity, newCapacity);
+
+    // Build a linked list for the free list.
+    for (int i = oldCapacity; i < newCapacity; i++) {
+      m_state[i] = STATE_FREE;
+      m_slot[i] = (i == newCapacity - 1) ? NULL_PROXY : i + 1;
+    }
+    m_freeList = oldCapacity;
+    m_proxyCapacity = newCapacity;
+  }
+
+  @Override
+  public final int createProxy(final AABB aabb, Object userData) {
+    if (m_freeList == NULL_PROXY) {
+      expandProxies(m_proxyCapacity * 2);
+    }
+    final int proxyId = m_freeList;
+    m_freeList = m_slot[proxyId];
+    ++m_proxyCount;
+
+    // Fatten the aabb
+    final AABB fatAABB = m_aabb[proxyId];
+    fatAABB.lowerBoundX = aabb.lowerBoundX - Settings.aabbExtension;
+    fatAABB.lowerBoundY = aabb.lowerBoundY - Settings.aabbExtension;
+    fatAABB.upperBoundX = aabb.upperBoundX + Settings.aabbExtension;
+    fatAABB.upperBoundY = aabb.upperBoundY + Settings.aabbExtension;
+    m_userData[proxyId] = userData;
+
+    insert(proxyId);
+    return proxyId;
+  }
+
+  /**
+   * Nothing to do: the proxies are sorted together before the next query anyway.
+   */
+  @Override
+  public void beginBulkLoad() {
+  }
+
+  @Override
+  public void endBulkLoad() {
+  }
+
+  @Override
+  public final void destroyProxy(int proxyId) {
+    assert (0 <= proxyId && proxyId < m_proxyCapacity);
+    assert (m_state[proxyId] != STATE_FREE);
+
+    remove(proxyId);
+    m_userData[proxyId] = null;
+    m_state[proxyId] = STATE_FREE;
+    m_slot[proxyId] = m_freeList;
+    m_freeList = proxyId;
+    --m_proxyCount;
+  }
+
+  @Override
+  public final boolean moveProxy(int proxyId, final AABB aabb, Vec2 displacement) {
+    assert (0 <= proxyId && proxyId < m_proxyCapacity);
+    assert (m_state[proxyId] != STATE_FREE);
+
+    final AABB fatAABB = m_aabb[proxyId];
+    if (fatAABB.lowerBoundX <= aabb.lowerBoundX && fatAABB.lowerBoundY <= aabb.lowerBoundY
+        && aabb.upperBoundX <= fatAABB.upperBoundX && aabb.upperBoundY <= fatAABB.upperBoundY) {
+      return false;
+    }
+
+    // Extend AABB
+    fatAABB.lowerBoundX = aabb.lowerBoundX - Settings.aabbExtension;
+    fatAABB.lowerBoundY = aabb.lowerBoundY - Settings.aabbExtension;
+    fatAABB.upperBoundX = aabb.upperBoundX + Settings.aabbExtension;
+    fatAABB.upperBoundY = aabb.upperBoundY + Settings.aabbExtension;
+
+    // Predict AABB displacement.
+    final float dx = displacement.x * Settings.aabbMultiplier;
+    final float dy = displacement.y * Settings.aabbMultiplier;
+    if (dx < 0.0f) {
+      fatAABB.lowerBoundX += dx;
+    } else {
+      fatAABB.upperBoundX += dx;
+    }
+
+    if (dy < 0.0f) {
+      fatAABB.lowerBoundY += dy;
+    } else {
+      fatAABB.upperBoundY += dy;
+    }
+
+    final float width = fatAABB.upperBoundX - fatAABB.lowerBoundX;
+    if (m_state[proxyId] == STATE_SORTED && width <= m_largeProxyWidth) {
+      // stays in place until the next sort
+      final int slot = m_slot[proxyId];
+      m_sortedMinX[slot] = fatAABB.lowerBoundX;
+      m_sortedMaxX[slot] = fatAABB.upperBoundX;
+      if (width > m_maxWidth) {
+        m_maxWidth = width;
+      }
+      m_dirty = true;
+    } else {
+      remove(proxyId);
+      insert(proxyId);
+    }
+    return true;
+  }
+
+  @Override
+  public int getStateSize() {
+    return 6 * 4 + 1 + m_proxyCapacity * (2 * 4 + BroadPhaseState.AABB_SIZE)
+        + m_sortedCount * 3 * 4 + m_largeCount * 4;
+  }
+
+  @Override
+  public void writeState(ByteBuffer buffer) {
+    buffer.putInt(m_proxyCapacity);
+    buffer.putInt(m_proxyCount);
+    buffer.putInt(m_freeList);
+    for (int i = 0; i < m_proxyCapacity; i++) {
+      buffer.putInt(m_state[i]);
+      buffer.putInt(m_slot[i]);
+      BroadPhaseState.putAABB(buffer, m_aabb[i]);
+    }
+    buffer.putInt(m_sortedCount);
+    for (int i = 0; i < m_sortedCount; i++) {
+      buffer.putInt(m_sortedProxy[i]);
+      buffer.putFloat(m_sortedMinX[i]);
+      buffer.putFloat(m_sortedMaxX[i]);
+    }
+    buffer.put((byte) (m_dirty ? 1 : 0));
+    buffer.putFloat(m_maxWidth);
+    BroadPhaseState.putInts(buffer, m_largeProxy, m_largeCount);
+  }
+
+  @Override
+  public void readState(ByteBuffer buffer) {
+    final int capacity = buffer.getInt();
+    if (m_proxyCapacity < capacity) {
+      expandProxies(capacity);
+    }
+    m_proxyCount = buffer.getInt();
+    m_freeList = buffer.getInt();
+    for (int i = 0; i < capacity; i++) {
+      m_state[i] = buffer.getInt();
+      m_slot[i] = buffer.getInt();
+      BroadPhaseState.getAABB(buffer, m_aabb[i]);
+    }
+    for (int i = capacity; i < m_proxyCapacity; i++) {
+      m_state[i] = STATE_FREE;
+    }
+    m_freeList =
+        BroadPhaseState.appendFree(m_slot, m_freeList, capacity, m_proxyCapacity, NULL_PROXY);
+    m_sortedCount = buffer.getInt();
+    if (m_sortedProxy.length < m_sortedCount) {
+      m_sortedProxy = new int[m_sortedCount];
+      m_sortedMinX = new float[m_sortedCount];
+      m_sortedMaxX = new float[m_sortedCount];
+    }
+    for (int i = 0; i < m_sortedCount; i++) {
+      m_sortedProxy[i] = buffer.getInt();
+      m_sortedMinX[i] = buffer.getFloat();
+      m_sortedMaxX[i] = buffer.getFloat();
+    }
+    m_dirty = buffer.get() != 0;
+    m_maxWidth = buffer.getFloat();
+    m_largeCount = buffer.getInt();
+    if (m_largeProxy.length < m_largeCount) {
+      m_largeProxy = new int[m_largeCount];
+    }
+    BroadPhaseState.getInts(buffer, m_largeProxy, m_largeCount);
+  }
+
+  private void insert(int proxyId) {
+    final AABB fatAABB = m_aabb[proxyId];
+    final float width = fatAABB.upperBoundX - fatAABB.lowerBoundX;
+    if (width > m_largeProxyWidth) {
+      if (m_largeCount == m_largeProxy.length) {
+        m_largeProxy = BufferUtils.reallocateBuffer(m_largeProxy, m_largeCount, m_largeCount * 2);
+      }
+      m_state[proxyId] = STATE_LARGE;
+      m_slot[proxyId] = m_largeCount;
+      m_largeProxy[m_largeCount++] = proxyId;
+    } else {
+      if (m_sortedCount == m_sortedProxy.length) {
+        m_sortedProxy =
+            BufferUtils.reallocateBuffer(m_sortedProxy, m_sortedCount, m_sortedCount * 2);
+        m_sortedMinX = BufferUtils.reallocateBuffer(m_sortedMinX, m_sortedCount, m_sortedCount * 2);
+        m_sortedMaxX = BufferUtils.reallocateBuffer(m_sortedMaxX, m_sortedCount, m_sortedCount * 2);
+      }
+      m_state[proxyId] = STATE_SORTED;
+      m_slot[proxyId] = m_sortedCount;
+      m_sortedProxy[m_sortedCount] = proxyId;
+      m_sortedMinX[m_sortedCount] = fatAABB.lowerBoundX;
+      m_sortedMaxX[m_sortedCount] = fatAABB.upperBoundX;
+      m_sortedCount++;
+      if (width > m_maxWidth) {
+        m_maxWidth = width;
+      }
+      m_dirty = true;
+    }
+  }
+
+  private void remove(int proxyId) {
+    final int slot = m_slot[proxyId];
+    if (m_state[proxyId] == STATE_LARGE) {
+      final int last = m_largeProxy[--m_largeCount];
+      m_largeProxy[slot] = last;
+      m_slot[last] = slot;
+    } else {
+      // compacted by the next sort
+      m_sortedProxy[slot] = NULL_PROXY;
+      m_dirty = true;
+    }
+  }
+
+  /**
+   * Restore the order of the sorted list, after proxies were created, moved or destroyed.
+   */
+  private void sort() {
+    if (!m_dirty) {
+      return;
+    }
+    m_dirty = false;
+
+    final int[] proxies = m_sortedProxy;
+    final float[] keys = m_sortedMinX;
+    final float[] upper = m_sortedMaxX;
+
+    // drop the destroyed proxies, compute the widest proxy
+    int count = 0;
+    float maxWidth = 0.0f;
+    for (int i = 0; i < m_sortedCount; i++) {
+      final int proxyId = proxies[i];
+      if (proxyId == NULL_PROXY) {
+        continue;
+      }
+      proxies[count] = proxyId;
+      keys[count] = keys[i];
+      upper[count] = upper[i];
+      final float width = upper[i] - keys[i];
+      if (width > maxWidth) {
+        maxWidth = width;
+      }
+      count++;
+    }
+    m_sortedCount = count;
+    m_maxWidth = maxWidth;
+
+    final int maxMoves = SORT_MOVES_PER_PROXY * count;
+    int moves = 0;
+    for (int i = 1; i < count; i++) {
+      final float key = keys[i];
+      if (keys[i - 1] <= key) {
+        continue;
+      }
+      final int proxyId = proxies[i];
+      final float upperKey = upper[i];
+      int j = i;
+      do {
+        keys[j] = keys[j - 1];
+        upper[j] = upper[j - 1];
+        proxies[j] = proxies[j - 1];
+        j--;
+      } while (j > 0 && keys[j - 1] > key);
+      keys[j] = key;
+      upper[j] = upperKey;
+      proxies[j] = proxyId;
+      moves += i - j;
+      if (moves > maxMoves) {
+        fullSort();
+        break;
+      }
+    }
+
+    for (int i = 0; i < count; i++) {
+      m_slot[proxies[i]] = i;
+    }
+  }
+
+  /** Sort the list from scratch, packing the key and the proxy in a long. */
+  private void fullSort() {
+    final int count = m_sortedCount;
+    if (m_sortKeys == null || m_sortKeys.length < count) {
+      m_sortKeys = new long[m_sortedProxy.length];
+    }
+    final long[] sortKeys = m_sortKeys;
+    for (int i = 0; i < count; i++) {
+      // float bits, flipped so that negative values compare as signed ints
+      final int bits = Float.floatToIntBits(m_sortedMinX[i]);
+      final int sortable = bits ^ ((bits >> 31) & 0x7fffffff);
+      sortKeys[i] = ((long) sortable << 32) | (m_sortedProxy[i] & 0xffffffffL);
+    }
+    Arrays.sort(sortKeys, 0, count);
+    for (int i = 0; i < count; i++) {
+      final int proxyId = (int) sortKeys[i];
+      final AABB fatAABB = m_aabb[proxyId];
+      m_sortedProxy[i] = proxyId;
+      m_sortedMinX[i] = fatAABB.lowerBoundX;
+      m_sortedMaxX[i] = fatAABB.upperBoundX;
+    }
+  }
+
+  /** First sorted index with a lower x bound greater or equal than x. */
+  private int lowerBound(float x) {
+    int left = 0;
+    int length = m_sortedCount;
+    while (length > 0) {
+      int step = length / 2;
+      int curr = left + step;
+      if (m_sortedMinX[curr] < x) {
+        left = curr + 1;
+        length -= step + 1;
+      } else {
+        length = step;
+      }
+    }
+    return left;
+  }
+
+  /** First sorted index with a lower x bound greater than x. */
+  private int upperBound(float x) {
+    int left = 0;
+    int length = m_sortedCount;
+    while (length > 0) {
+      int step = length / 2;
+      int curr = left + step;
+      if (m_sortedMinX[curr] <= x) {
+        left = curr + 1;
+        length -= step + 1;
+      } else {
+        length = step;
+      }
+    }
+    return left;
+  }
+
+  @Override
+  public final Object getUserData(int proxyId) {
+    assert (0 <= proxyId && proxyId < m_proxyCapacity);
+    return m_userData[proxyId];
+  }
+
+  @Override
+  public final AABB getFatAABB(int proxyId) {
+    assert (0 <= proxyId && proxyId < m_proxyCapacity);
+    return m_aabb[proxyId];
+  }
+
+  public int getProxyCount() {
+    return m_proxyCount;
+  }
+
+  @Override
+  public final void query(TreeCallback callback, AABB aabb) {
+    query(callback, aabb, m_scratch);
+  }
+
+  @Override
+  public final void query(TreeCallback callback, AABB aabb, BroadPhaseScratch scratch) {
+    sort();
+
+    for (int i = 0; i < m_largeCount; i++) {
+      final int proxyId = m_largeProxy[i];
+      if (AABB.testOverlap(m_aabb[proxyId], aabb) && !callback.treeCallback(proxyId)) {
+        return;
+      }
+    }
+
+    final float lowerBoundX = aabb.lowerBoundX;
+    final float upperBoundX = aabb.upperBoundX;
+    for (int i = lowerBound(lowerBoundX - m_maxWidth); i < m_sortedCount
+        && m_sortedMinX[i] <= upperBoundX; i++) {
+      if (m_sortedMaxX[i] < lowerBoundX) {
+        continue;
+      }
+      final int proxyId = m_sortedProxy[i];
+      if (AABB.testOverlap(m_aabb[proxyId], aabb) && !callback.treeCallback(proxyId)) {
+        return;
+      }
+    }
+  }
+
+  @Override
+  public void raycast(TreeRayCastCallback callback, RayCastInput input) {
+    raycast(callback, input, m_scratch);
+  }
+
+  @Override
+  public void raycast(TreeRayCastCallback callback, RayCastInput input,
+      BroadPhaseScratch scratch) {
+    sort();
+    final Vec2 r = scratch.r;
+    final AABB segAABB = scratch.segAABB;
+
+    scratch.rayP1X = input.p1.x;
+    scratch.rayP1Y = input.p1.y;
+    scratch.rayP2X = input.p2.x;
+    scratch.rayP2Y = input.p2.y;
+    r.x = scratch.rayP2X - scratch.rayP1X;
+    r.y = scratch.rayP2Y - scratch.rayP1Y;
+    assert ((r.x * r.x + r.y * r.y) > 0f);
+    r.normalize();
+
+    // v is perpendicular to the segment.
+    scratch.rayVX = -1f * r.y;
+    scratch.rayVY = 1f * r.x;
+
+    // Build a bounding box for the segment.
+    scratch.rayMaxFraction = input.maxFraction;
+    updateSegmentAABB(scratch);
+
+    for (int i = 0; i < m_largeCount; i++) {
+      if (!raycastProxy(callback, scratch, m_largeProxy[i])) {
+        return;
+      }
+    }
+
+    // sweep along the ray, so that a clipped ray ends the sweep early
+    if (r.x >= 0) {
+      for (int i = lowerBound(segAABB.lowerBoundX - m_maxWidth); i < m_sortedCount
+          && m_sortedMinX[i] <= segAABB.upperBoundX; i++) {
+        if (m_sortedMaxX[i] >= segAABB.lowerBoundX
+            && !raycastProxy(callback, scratch, m_sortedProxy[i])) {
+          return;
+        }
+      }
+    } else {
+      for (int i = upperBound(segAABB.upperBoundX) - 1; i >= 0
+          && m_sortedMinX[i] >= segAABB.lowerBoundX - m_maxWidth; i--) {
+        if (m_sortedMinX[i] <= segAABB.upperBoundX && m_sortedMaxX[i] >= segAABB.lowerBoundX
+            && !raycastProxy(callback, scratch, m_sortedProxy[i])) {
+          return;
+        }
+      }
+    }
+  }
+
+  private static void updateSegmentAABB(BroadPhaseScratch scratch) {
+    final AABB segAABB = scratch.segAABB;
+    final float p1x = scratch.rayP1X, p1y = scratch.rayP1Y;
+    final float tempx = (scratch.rayP2X - p1x) * scratch.rayMaxFraction + p1x;
+    final float tempy = (scratch.rayP2Y - p1y) * scratch.rayMaxFraction + p1y;
+    segAABB.lowerBoundX = p1x < tempx ? p1x : tempx;
+    segAABB.lowerBoundY = p1y < tempy ? p1y : tempy;
+    segAABB.upperBoundX = p1x > tempx ? p1x : tempx;
+    segAABB.upperBoundY = p1y > tempy ? p1y : tempy;
+  }
+
+  /**
+   * @return false if the client has terminated the ray cast.
+   */
+  private boolean raycastProxy(TreeRayCastCallback callback, BroadPhaseScratch scratch,
+      int proxyId) {
+    final AABB proxyAABB = m_aabb[proxyId];
+    if (!AABB.testOverlap(proxyAABB, scratch.segAABB)) {
+      return true;
+    }
+
+    // Separating axis for segment (Gino, p80).
+    // |dot(v, p1 - c)| > dot(|v|, h)
+    final float cx = (proxyAABB.lowerBoundX + proxyAABB.upperBoundX) * .5f;
+    final float cy = (proxyAABB.lowerBoundY + proxyAABB.upperBoundY) * .5f;
+    final float hx = (proxyAABB.upperBoundX - proxyAABB.lowerBoundX) * .5f;
+    final float hy = (proxyAABB.upperBoundY - proxyAABB.lowerBoundY) * .5f;
+    final float tempx = scratch.rayP1X - cx;
+    final float tempy = scratch.rayP1Y - cy;
+    float separation =
+        MathUtils.abs(scratch.rayVX * tempx + scratch.rayVY * tempy)
+            - (MathUtils.abs(scratch.rayVX) * hx + MathUtils.abs(scratch.rayVY) * hy);
+    if (separation > 0.0f) {
+      return true;
+    }
+
+    final RayCastInput subInput = scratch.subInput;
+    subInput.p1.x = scratch.rayP1X;
+    subInput.p1.y = scratch.rayP1Y;
+    subInput.p2.x = scratch.rayP2X;
+    subInput.p2.y = scratch.rayP2Y;
+    subInput.maxFraction = scratch.rayMaxFraction;
+
+    float value = callback.raycastCallback(subInput, proxyId);
+    if (value == 0.0f) {
+      // The client has terminated the ray cast.
+      return false;
+    }
+
+    if (value > 0.0f) {
+      // Update segment bounding box.
+      scratch.rayMaxFraction = value;
+      updateSegmentAABB(scratch);
+    }
+    return true;
+  }
+
+  @Override
+  public final void flushUpdates() {
+    sort();
+  }
+
+  /**
+   * There is no tree: always 0.
+   */
+  @Override
+  public int computeHeight() {
+    return 0;
+  }
+
+  /**
+   * There is no tree: always 0.
+   */
+  @Override
+  public int getHeight() {
+    return 0;
+  }
+
+  /**
+   * There is no tree: always 0.
+   */
+  @Override
+  public int getMaxBalance() {
+    return 0;
+  }
+
+  /**
+   * There is no tree: always 0.
+   */
+  @Override
+  public float getAreaRatio() {
+    return 0;
+  }
+
+  /**
+   * Nothing to rebuild: the list is kept sorted.
+   */
+  @Override
+  public void rebuildBottomUp() {
+  }
+
+  private final Color3f color = new Color3f(1, 1, 1);
+
+  @Override
+  public void drawTree(DebugDraw argDraw) {
+    for (int i = 0; i < m_largeCount; i++) {
+      m_aabb[m_largeProxy[i]].getVertices(drawVecs);
+      argDraw.drawPolygon(drawVecs, 4, color);
+    }
+    for (int i = 0; i < m_sortedCount; i++) {
+      final int proxyId = m_sortedProxy[i];
+      if (proxyId != NULL_PROXY) {
+        m_aabb[proxyId].getVertices(drawVecs);
+        argDraw.drawPolygon(drawVecs, 4, color);
+      }
+    }
+  }
+}
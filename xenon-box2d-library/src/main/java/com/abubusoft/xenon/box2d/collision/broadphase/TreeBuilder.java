@@ -0,0 +1,299 @@
+package com.abubusoft.xenon.box2d.collision.broadphase;
+
+import java.util.Arrays;
+
+import com.abubusoft.xenon.box2d.collision.AABB;
+import com.abubusoft.xenon.box2d.common.MathUtils;
+
+/**
+ * Builds the shape of a tree over a set of leaves at once, for the bulk loads and the rebuilds of
+ * {@link DynamicTree} and {@link DynamicTreeFlatNodes}. The trees copy the result into their own
+ * nodes.
+ *
+ * A child is a reference: an internal node by its index, a leaf <code>i</code> as <code>~i</code>.
+ * The bounds and the height of every internal node are computed as well.
+ */
+class TreeBuilder {
+  /** Neighbors searched on each side in Morton order, bottom-up build. */
+  private static final int SEARCH_RADIUS = 8;
+
+  // leaves
+  float[] leafLowerX = new float[0];
+  float[] leafLowerY = new float[0];
+  float[] leafUpperX = new float[0];
+  float[] leafUpperY = new float[0];
+  int leafCount;
+
+  // internal nodes
+  int[] child1 = new int[0];
+  int[] child2 = new int[0];
+  int[] height = new int[0];
+  float[] lowerX = new float[0];
+  float[] lowerY = new float[0];
+  float[] upperX = new float[0];
+  float[] upperY = new float[0];
+  int nodeCount;
+
+  // scratch
+  private float[] centerX = new float[0];
+  private float[] centerY = new float[0];
+  private long[] keys = new long[0];
+  private int[] nearest = new int[0];
+  private float[] cost = new float[0];
+  private int[] refs = new int[0];
+  private int[] stackBegin = new int[0];
+  private int[] stackEnd = new int[0];
+  private int[] stackParent = new int[0];
+
+  /**
+   * Prepare for <code>count</code> leaves, to be set with {@link #setLeaf(int, AABB)}.
+   */
+  void reset(int count) {
+    if (leafLowerX.length < count) {
+      int capacity = MathUtils.max(count, leafLowerX.length * 2);
+      leafLowerX = new float[capacity];
+      leafLowerY = new float[capacity];
+      leafUpperX = new float[capacity];
+      leafUpperY = new float[capacity];
+      centerX = new float[capacity];
+      centerY = new float[capacity];
+      keys = new long[capacity];
+      nearest = new int[capacity];
+      cost = new float[capacity];
+      refs = new int[capacity];
+      stackBegin = new int[capacity];
+      stackEnd = new int[capacity];
+      stackParent = new int[capacity];
+
+      child1 = new int[capacity];
+      child2 = new int[capacity];
+      height = new int[capacity];
+      lowerX = new float[capacity];
+      lowerY = new float[capacity];
+      upperX = new float[capacity];
+      upperY = new float[capacity];
+    }
+    leafCount = count;
+    nodeCount = 0;
+  }
+
+  void setLeaf(int leaf, AABB aabb) {
+    leafLowerX[leaf] = aabb.lowerBoundX;
+    leafLowerY[leaf] = aabb.lowerBoundY;
+    leafUpperX[leaf] = aabb.upperBoundX;
+    leafUpperY[leaf] = aabb.upperBoundY;
+    // twice the center, only compared
+    centerX[leaf] = aabb.lowerBoundX + aabb.upperBoundX;
+    centerY[leaf] = aabb.lowerBoundY + aabb.upperBoundY;
+  }
+
+  /**
+   * Sort the leaves along a Morton curve, then split them top-down where the Morton code changes
+   * its highest bit, that is at the middle of the space of the range along alternate axes.
+   *
+   * @return the reference of the root.
+   */
+  int buildTopDown() {
+    assert (leafCount > 0);
+    sortMorton();
+
+    // a range is pushed with the slot it fills: parent * 2 + child - 1, or -1 for the root
+    int root = ~0;
+    int stackCount = 0;
+    stackBegin[stackCount] = 0;
+    stackEnd[stackCount] = leafCount;
+    stackParent[stackCount] = -1;
+    stackCount++;
+
+    while (stackCount > 0) {
+      stackCount--;
+      final int begin = stackBegin[stackCount];
+      final int end = stackEnd[stackCount];
+      final int parent = stackParent[stackCount];
+
+      final int ref;
+      if (end - begin == 1) {
+        ref = refs[begin];
+      } else {
+        final int mid = splitMorton(begin, end);
+        ref = nodeCount++;
+        stackBegin[stackCount] = mid;
+        stackEnd[stackCount] = end;
+        stackParent[stackCount] = ref * 2 + 1;
+        stackCount++;
+        stackBegin[stackCount] = begin;
+        stackEnd[stackCount] = mid;
+        stackParent[stackCount] = ref * 2;
+        stackCount++;
+      }
+      if (parent == -1) {
+        root = ref;
+      } else if ((parent & 1) == 0) {
+        child1[parent >> 1] = ref;
+      } else {
+        child2[parent >> 1] = ref;
+      }
+    }
+
+    // children are created after their parent
+    for (int i = nodeCount - 1; i >= 0; i--) {
+      computeNode(i);
+    }
+    return root;
+  }
+
+  /**
+   * Split a range of sorted leaves in two non empty ranges.
+   *
+   * @return the first index of the second range.
+   */
+  private int splitMorton(int begin, int end) {
+    final int first = (int) (keys[begin] >>> 31);
+    final int last = (int) (keys[end - 1] >>> 31);
+    if (first == last) {
+      return (begin + end) >>> 1;
+    }
+    // first index with the highest differing bit set
+    final int bit = Integer.highestOneBit(first ^ last);
+    int lo = begin + 1, hi = end - 1;
+    while (lo < hi) {
+      final int m = (lo + hi) >>> 1;
+      if ((((int) (keys[m] >>> 31)) & bit) != 0) {
+        hi = m;
+      } else {
+        lo = m + 1;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Merge the leaves bottom-up: leaves are sorted along a Morton curve, then the nodes that are
+   * each other's best neighbor, within a few positions, are merged until one is left.
+   *
+   * @return the reference of the root.
+   */
+  int buildBottomUp() {
+    assert (leafCount > 0);
+    sortMorton();
+    int count = leafCount;
+    while (count > 1) {
+      for (int i = 0; i < count; i++) {
+        nearest[i] = -1;
+        cost[i] = Float.MAX_VALUE;
+      }
+      // each pair once, ties go to the first neighbor
+      for (int i = 0; i < count; i++) {
+        final int to = MathUtils.min(count - 1, i + SEARCH_RADIUS);
+        for (int j = i + 1; j <= to; j++) {
+          final float c = combinedPerimeter(refs[i], refs[j]);
+          if (c < cost[i]) {
+            cost[i] = c;
+            nearest[i] = j;
+          }
+          if (c < cost[j]) {
+            cost[j] = c;
+            nearest[j] = i;
+          }
+        }
+      }
+
+      int newCount = 0;
+      for (int i = 0; i < count; i++) {
+        final int j = nearest[i];
+        if (nearest[j] == i) {
+          if (i < j) {
+            refs[newCount++] = merge(refs[i], refs[j]);
+          }
+          // else merged at j
+        } else {
+          refs[newCount++] = refs[i];
+        }
+      }
+      if (newCount == count) {
+        // no mutual pair, because of ties
+        refs[0] = merge(refs[0], refs[nearest[0]]);
+        System.arraycopy(refs, nearest[0] + 1, refs, nearest[0], count - nearest[0] - 1);
+        newCount = count - 1;
+      }
+      count = newCount;
+    }
+    return refs[0];
+  }
+
+  /**
+   * Sort the leaves along a Morton curve of their centers, into refs.
+   */
+  private void sortMorton() {
+    float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+    float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+    for (int i = 0; i < leafCount; i++) {
+      minX = MathUtils.min(minX, centerX[i]);
+      minY = MathUtils.min(minY, centerY[i]);
+      maxX = MathUtils.max(maxX, centerX[i]);
+      maxY = MathUtils.max(maxY, centerY[i]);
+    }
+    final float scaleX = maxX > minX ? 65535 / (maxX - minX) : 0;
+    final float scaleY = maxY > minY ? 65535 / (maxY - minY) : 0;
+    for (int i = 0; i < leafCount; i++) {
+      final int code =
+          interleave((int) ((centerX[i] - minX) * scaleX))
+              | (interleave((int) ((centerY[i] - minY) * scaleY)) << 1);
+      keys[i] = ((code & 0xffffffffL) << 31) | i;
+    }
+    Arrays.sort(keys, 0, leafCount);
+    for (int i = 0; i < leafCount; i++) {
+      refs[i] = ~((int) (keys[i] & 0x7fffffff));
+    }
+  }
+
+  private int merge(int refA, int refB) {
+    final int node = nodeCount++;
+    child1[node] = refA;
+    child2[node] = refB;
+    computeNode(node);
+    return node;
+  }
+
+  private void computeNode(int node) {
+    final int a = child1[node];
+    final int b = child2[node];
+    lowerX[node] = MathUtils.min(lowerX(a), lowerX(b));
+    lowerY[node] = MathUtils.min(lowerY(a), lowerY(b));
+    upperX[node] = MathUtils.max(upperX(a), upperX(b));
+    upperY[node] = MathUtils.max(upperY(a), upperY(b));
+    height[node] = 1 + MathUtils.max(a < 0 ? 0 : height[a], b < 0 ? 0 : height[b]);
+  }
+
+  private float combinedPerimeter(int refA, int refB) {
+    final float w = MathUtils.max(upperX(refA), upperX(refB)) - MathUtils.min(lowerX(refA), lowerX(refB));
+    final float h = MathUtils.max(upperY(refA), upperY(refB)) - MathUtils.min(lowerY(refA), lowerY(refB));
+    return w + h;
+  }
+
+  private float lowerX(int ref) {
+    return ref < 0 ? leafLowerX[~ref] : lowerX[ref];
+  }
+
+  private float lowerY(int ref) {
+    return ref < 0 ? leafLowerY[~ref] : lowerY[ref];
+  }
+
+  private float upperX(int ref) {
+    return ref < 0 ? leafUpperX[~ref] : upperX[ref];
+  }
+
+  private float upperY(int ref) {
+    return ref < 0 ? leafUpperY[~ref] : upperY[ref];
+  }
+
+  /** Spread the low 16 bits of v to the even bits. */
+  private static int interleave(int v) {
+    v &= 0xffff;
+    v = (v | (v << 8)) & 0x00ff00ff;
+    v = (v | (v << 4)) & 0x0f0f0f0f;
+    v = (v | (v << 2)) & 0x33333333;
+    v = (v | (v << 1)) & 0x55555555;
+    return v;
+  }
+}
@@ -0,0 +1,758 @@
+package com.abubusoft.xenon.box2d.collision.broadphase;
+
+import java.nio.ByteBuffer;
+
+import com.abubusoft.xenon.box2d.callbacks.DebugDraw;
+import com.abubusoft.xenon.box2d.callbacks.TreeCallback;
+import com.abubusoft.xenon.box2d.callbacks.TreeRayCastCallback;
+import com.abubusoft.xenon.box2d.collision.AABB;
+import com.abubusoft.xenon.box2d.collision.RayCastInput;
+import com.abubusoft.xenon.box2d.common.BufferUtils;
+import com.abubusoft.xenon.box2d.common.Color3f;
+import com.abubusoft.xenon.box2d.common.MathUtils;
+import com.abubusoft.xenon.box2d.common.Settings;
+import com.abubusoft.xenon.box2d.common.Vec2;
+
+/**
+ * Uniform grid broad-phase strategy. Every proxy is listed in the cells its fat AABB overlaps; the
+ * cells are kept in an open addressing hash, so the grid is unbounded and only the occupied cells
+ * use memory. Queries visit the cells overlapping the AABB, ray casts walk the cells crossed by the
+ * ray (Amanatides and Woo).
+ *
+ * Suited to worlds of bodies of about the same size, like tile maps: use a cell size close to the
+ * size of a body. Proxies covering more than {@link #MAX_CELLS_PER_PROXY} cells are kept out of the
+ * grid and tested on every query.
+ *
+ * Use it wrapped in a {@link DefaultBroadPhaseBuffer}, like {@link SweepAndPrune}.
+ */
+public class UniformGrid implements BroadPhaseStrategy {
+  public static final int NULL_PROXY = -1;
+  public static final int INITIAL_BUFFER_LENGTH = 16;
+  /** Cells a proxy can cover before it is tested on every query. */
+  public static final int MAX_CELLS_PER_PROXY = 64;
+
+  private static final int NULL_ENTRY = -1;
+  // hash slot not used by any cell
+  private static final int EMPTY_SLOT = -2;
+
+  private final float m_cellSize;
+  private final float m_invCellSize;
+
+  // proxies, by id
+  private AABB[] m_aabb;
+  private Object[] m_userData;
+  private int[] m_minCellX;
+  private int[] m_minCellY;
+  private int[] m_maxCellX;
+  private int[] m_maxCellY;
+  // index in the large proxy list, or NULL_PROXY
+  private int[] m_largeSlot;
+  private int[] m_nextFree;
+  private int m_proxyCapacity;
+  private int m_proxyCount;
+  private int m_freeList;
+
+  // cell hash, linear probing. Cells left empty are dropped when the table is rebuilt.
+  private int[] m_cellX;
+  private int[] m_cellY;
+  private int[] m_cellHead;
+  private int m_cellMask;
+  private int m_cellUsed;
+
+  // cell lists
+  private int[] m_entryProxy;
+  private int[] m_entryNext;
+  private int m_entryCapacity;
+  private int m_entryFree;
+
+  private int[] m_largeProxy;
+  private int m_largeCount;
+
+  private final Vec2[] drawVecs = new Vec2[4];
+  private final BroadPhaseScratch m_scratch = new BroadPhaseScratch();
+
+  /**
+   * @param cellSize side of a cell, about the size of the bodies of the world.
+   */
+  public UniformGrid(float cellSize) {
+    if (!(cellSize > 0)) {
+      throw new IllegalArgumentException("cellSize must be positive");
+    }
+    m_cellSize = cellSize;
+    m_invCellSize = 1.0f / cellSize;
+
+    m_proxyCapacity = 0;
+    m_proxyCount = 0;
+    expandProxies(INITIAL_BUFFER_LENGTH);
+
+    m_entryCapacity = 0;
+    expandEntries(INITIAL_BUFFER_LENGTH);
+
+    createCells(INITIAL_BUFFER_LENGTH);
+
+    m_largeProxy = new int[INITIAL_BUFFER_LENGTH];
+    m_largeCount = 0;
+
+    for (int i = 0; i < drawVecs.length; i++) {
+      drawVecs[i] = new Vec2();
+    }
+  }
+
+  public float getCellSize() {
+    return m_cellSize;
+  }
+
+  public int getProxyCount() {
+    return m_proxyCount;
+  }
+
+  private void expandProxies(int newCapacity) {
+    int oldCapacity = m_proxyCapacity;
+    m_aabb = BufferUtils.reallocateBuffer(AABB.class, m_aabb, oldCapacity, newCapacity);
+    m_userData = BufferUtils.reallocateBuffer(Object.class, m_userData, oldCapacity, newCapacity);
+    m_minCellX = BufferUtils.reallocateBuffer(m_minCellX, oldCapacity, newCapacity);
+    m_minCellY = BufferUtils.reallocateBuffer(m_minCellY, oldCapacity, newCapacity);
+    m_maxCellX = BufferUtils.reallocateBuffer(m_maxCellX, oldCapacity, newCapacity);
+    m_maxCellY = BufferUtils.reallocateBuffer(m_maxCellY, oldCapacity, newCapacity);
+    m_largeSlot = BufferUtils.reallocateBuffer(m_largeSlot, oldCapacity, newCapacity);
+    m_nextFree = BufferUtils.reallocateBuffer(m_nextFree, oldCapacity, newCapacity);
+
+    // Build a linked list for the free list.
+    for (int i = oldCapacity; i < newCapacity; i++) {
+      m_nextFree[i] = (i == newCapacity - 1) ? NULL_PROXY : i + 1;
+    }
+    m_freeList = oldCapacity;
+    m_proxyCapacity = newCapacity;
+  }
+
+  private void expandEntries(int newCapacity) {
+    int oldCapacity = m_entryCapacity;
+    m_entryProxy = BufferUtils.reallocateBuffer(m_entryProxy, oldCapacity, newCapacity);
+    m_entryNext = BufferUtils.reallocateBuffer(m_entryNext, oldCapacity, newCapacity);
+    for (int i = oldCapacity; i < newCapacity; i++) {
+      m_entryNext[i] = (i == newCapacity - 1) ? NULL_ENTRY : i + 1;
+    }
+    m_entryFree = oldCapacity;
+    m_entryCapacity = newCapacity;
+  }
+
+  @Override
+  public int getStateSize() {
+    return 3 * 4 + m_proxyCapacity * (6 * 4 + BroadPhaseState.AABB_SIZE) + 2 * 4
+        + m_cellHead.length * 3 * 4 + 2 * 4 + m_entryCapacity * 2 * 4 + 4 + m_largeCount * 4;
+  }
+
+  @Override
+  public void writeState(ByteBuffer buffer) {
+    buffer.putInt(m_proxyCapacity);
+    buffer.putInt(m_proxyCount);
+    buffer.putInt(m_freeList);
+    for (int i = 0; i < m_proxyCapacity; i++) {
+      BroadPhaseState.putAABB(buffer, m_aabb[i]);
+      buffer.putInt(m_minCellX[i]);
+      buffer.putInt(m_minCellY[i]);
+      buffer.putInt(m_maxCellX[i]);
+      buffer.putInt(m_maxCellY[i]);
+      buffer.putInt(m_largeSlot[i]);
+      buffer.putInt(m_nextFree[i]);
+    }
+    buffer.putInt(m_cellHead.length);
+    buffer.putInt(m_cellUsed);
+    for (int i = 0; i < m_cellHead.length; i++) {
+      buffer.putInt(m_cellX[i]);
+      buffer.putInt(m_cellY[i]);
+      buffer.putInt(m_cellHead[i]);
+    }
+    buffer.putInt(m_entryCapacity);
+    buffer.putInt(m_entryFree);
+    for (int i = 0; i < m_entryCapacity; i++) {
+      buffer.putInt(m_entryProxy[i]);
+      buffer.putInt(m_entryNext[i]);
+    }
+    BroadPhaseState.putInts(buffer, m_largeProxy, m_largeCount);
+  }
+
+  @Override
+  public void readState(ByteBuffer buffer) {
+    final int capacity = buffer.getInt();
+    if (m_proxyCapacity < capacity) {
+      expandProxies(capacity);
+    }
+    m_proxyCount = buffer.getInt();
+    m_freeList = buffer.getInt();
+    for (int i = 0; i < capacity; i++) {
+      BroadPhaseState.getAABB(buffer, m_aabb[i]);
+      m_minCellX[i] = buffer.getInt();
+      m_minCellY[i] = buffer.getInt();
+      m_maxCellX[i] = buffer.getInt();
+      m_maxCellY[i] = buffer.getInt();
+      m_largeSlot[i] = buffer.getInt();
+      m_nextFree[i] = buffer.getInt();
+    }
+    m_freeList =
+        BroadPhaseState.appendFree(m_nextFree, m_freeList, capacity, m_proxyCapacity, NULL_PROXY);
+
+    final int cellCapacity = buffer.getInt();
+    if (m_cellHead.length != cellCapacity) {
+      createCells(cellCapacity);
+    }
+    m_cellUsed = buffer.getInt();
+    for (int i = 0; i < cellCapacity; i++) {
+      m_cellX[i] = buffer.getInt();
+      m_cellY[i] = buffer.getInt();
+      m_cellHead[i] = buffer.getInt();
+    }
+
+    final int entryCapacity = buffer.getInt();
+    if (m_entryCapacity < entryCapacity) {
+      expandEntries(entryCapacity);
+    }
+    m_entryFree = buffer.getInt();
+    for (int i = 0; i < entryCapacity; i++) {
+      m_entryProxy[i] = buffer.getInt();
+      m_entryNext[i] = buffer.getInt();
+    }
+    m_entryFree = BroadPhaseState.appendFree(m_entryNext, m_entryFree, entryCapacity,
+        m_entryCapacity, NULL_ENTRY);
+
+    m_largeCount = buffer.getInt();
+    if (m_largeProxy.length < m_largeCount) {
+      m_largeProxy = new int[m_largeCount];
+    }
+    BroadPhaseState.getInts(buffer, m_largeProxy, m_largeCount);
+  }
+
+  private void createCells(int capacity) {
+    m_cellX = new int[capacity];
+    m_cellY = new int[capacity];
+    m_cellHead = new int[capacity];
+    for (int i = 0; i < capacity; i++) {
+      m_cellHead[i] = EMPTY_SLOT;
+    }
+    m_cellMask = capacity - 1;
+    m_cellUsed = 0;
+  }
+
+  /**
+   * Rebuild the cell hash, dropping the empty cells and keeping it at most a quarter full.
+   */
+  private void rehash() {
+    final int[] oldX = m_cellX;
+    final int[] oldY = m_cellY;
+    final int[] oldHead = m_cellHead;
+
+    int live = 0;
+    for (int i = 0; i < oldHead.length; i++) {
+      if (oldHead[i] >= 0) {
+        live++;
+      }
+    }
+    createCells(MathUtils.max(INITIAL_BUFFER_LENGTH, MathUtils.ceilPowerOf2(live * 4)));
+
+    for (int i = 0; i < oldHead.length; i++) {
+      if (oldHead[i] >= 0) {
+        int slot = hash(oldX[i], oldY[i]);
+        while (m_cellHead[slot] != EMPTY_SLOT) {
+          slot = (slot + 1) & m_cellMask;
+        }
+        m_cellX[slot] = oldX[i];
+        m_cellY[slot] = oldY[i];
+        m_cellHead[slot] = oldHead[i];
+        m_cellUsed++;
+      }
+    }
+  }
+
+  private int hash(int cellX, int cellY) {
+    int h = cellX * 73856093 ^ cellY * 19349663;
+    h ^= h >>> 16;
+    return h & m_cellMask;
+  }
+
+  /**
+   * @return the hash slot of the cell, or -1 if the cell was never used.
+   */
+  private int findCell(int cellX, int cellY) {
+    int slot = hash(cellX, cellY);
+    while (m_cellHead[slot] != EMPTY_SLOT) {
+      if (m_cellX[slot] == cellX && m_cellY[slot] == cellY) {
+        return slot;
+      }
+      slot = (slot + 1) & m_cellMask;
+    }
+    return -1;
+  }
+
+  private int getOrCreateCell(int cellX, int cellY) {
+    int slot = findCell(cellX, cellY);
+    if (slot != -1) {
+      return slot;
+    }
+    if ((m_cellUsed + 1) * 2 > m_cellHead.length) {
+      rehash();
+    }
+    slot = hash(cellX, cellY);
+    while (m_cellHead[slot] != EMPTY_SLOT) {
+      slot = (slot + 1) & m_cellMask;
+    }
+    m_cellX[slot] = cellX;
+    m_cellY[slot] = cellY;
+    m_cellHead[slot] = NULL_ENTRY;
+    m_cellUsed++;
+    return slot;
+  }
+
+  /**
+   * Start a query: the proxies reported by it get the returned stamp in the scratch.
+   */
+  private int nextStamp(BroadPhaseScratch scratch) {
+    if (scratch.stamp.length < m_proxyCapacity) {
+      scratch.stamp =
+          BufferUtils.reallocateBuffer(scratch.stamp, scratch.stamp.length, m_proxyCapacity);
+    }
+    if (++scratch.stampValue == Integer.MAX_VALUE) {
+      for (int i = 0; i < scratch.stamp.length; i++) {
+        scratch.stamp[i] = 0;
+      }
+      scratch.stampValue = 1;
+    }
+    return scratch.stampValue;
+  }
+
+  @Override
+  public final int createProxy(final AABB aabb, Object userData) {
+    if (m_freeList == NULL_PROXY) {
+      expandProxies(m_proxyCapacity * 2);
+    }
+    final int proxyId = m_freeList;
+    m_freeList = m_nextFree[proxyId];
+    ++m_proxyCount;
+
+    // Fatten the aabb
+    final AABB fatAABB = m_aabb[proxyId];
+    fatAABB.lowerBoundX = aabb.lowerBoundX - Settings.aabbExtension;
+    fatAABB.lowerBoundY = aabb.lowerBoundY - Settings.aabbExtension;
+    fatAABB.upperBoundX = aabb.upperBoundX + Settings.aabbExtension;
+    fatAABB.upperBoundY = aabb.upperBoundY + Settings.aabbExtension;
+    m_userData[proxyId] = userData;
+
+    insert(proxyId);
+    return proxyId;
+  }
+
+  /**
+   * Nothing to do: adding a proxy to the grid does not depend on the other proxies.
+   */
+  @Override
+  public void beginBulkLoad() {
+  }
+
+  @Override
+  public void endBulkLoad() {
+  }
+
+  @Override
+  public final void destroyProxy(int proxyId) {
+    assert (0 <= proxyId && proxyId < m_proxyCapacity);
+
+    remove(proxyId);
+    m_userData[proxyId] = null;
+    m_nextFree[proxyId] = m_freeList;
+    m_freeList = proxyId;
+    --m_proxyCount;
+  }
+
+  @Override
+  public final boolean moveProxy(int proxyId, final AABB aabb, Vec2 displacement) {
+    assert (0 <= proxyId && proxyId < m_proxyCapacity);
+
+    final AABB fatAABB = m_aabb[proxyId];
+    if (fatAABB.lowerBoundX <= aabb.lowerBoundX && fatAABB.lowerBoundY <= aabb.lowerBoundY
+        && aabb.upperBoundX <= fatAABB.upperBoundX && aabb.upperBoundY <= fatAABB.upperBoundY) {
+      return false;
+    }
+
+    // Extend AABB
+    fatAABB.lowerBoundX = aabb.lowerBoundX - Settings.aabbExtension;
+    fatAABB.lowerBoundY = aabb.lowerBoundY - Settings.aabbExtension;
+    fatAABB.upperBoundX = aabb.upperBoundX + Settings.aabbExtension;
+    fatAABB.upperBoundY = aabb.upperBoundY + Settings.aabbExtension;
+
+    // Predict AABB displacement.
+    final float dx = displacement.x * Settings.aabbMultiplier;
+    final float dy = displacement.y * Settings.aabbMultiplier;
+    if (dx < 0.0f) {
+      fatAABB.lowerBoundX += dx;
+    } else {
+      fatAABB.upperBoundX += dx;
+    }
+
+    if (dy < 0.0f) {
+      fatAABB.lowerBoundY += dy;
+    } else {
+      fatAABB.upperBoundY += dy;
+    }
+
+    if (m_largeSlot[proxyId] == NULL_PROXY
+        && m_minCellX[proxyId] == MathUtils.floor(fatAABB.lowerBoundX * m_invCellSize)
+        && m_minCellY[proxyId] == MathUtils.floor(fatAABB.lowerBoundY * m_invCellSize)
+        && m_maxCellX[proxyId] == MathUtils.floor(fatAABB.upperBoundX * m_invCellSize)
+        && m_maxCellY[proxyId] == MathUtils.floor(fatAABB.upperBoundY * m_invCellSize)) {
+      // same cells
+      return true;
+    }
+
+    remove(proxyId);
+    insert(proxyId);
+    return true;
+  }
+
+  private void insert(int proxyId) {
+    final AABB fatAABB = m_aabb[proxyId];
+    final int minX = MathUtils.floor(fatAABB.lowerBoundX * m_invCellSize);
+    final int minY = MathUtils.floor(fatAABB.lowerBoundY * m_invCellSize);
+    final int maxX = MathUtils.floor(fatAABB.upperBoundX * m_invCellSize);
+    final int maxY = MathUtils.floor(fatAABB.upperBoundY * m_invCellSize);
+    m_minCellX[proxyId] = minX;
+    m_minCellY[proxyId] = minY;
+    m_maxCellX[proxyId] = maxX;
+    m_maxCellY[proxyId] = maxY;
+
+    if ((long) (maxX - minX + 1) * (maxY - minY + 1) > MAX_CELLS_PER_PROXY) {
+      if (m_largeCount == m_largeProxy.length) {
+        m_largeProxy = BufferUtils.reallocateBuffer(m_largeProxy, m_largeCount, m_largeCount * 2);
+      }
+      m_largeSlot[proxyId] = m_largeCount;
+      m_largeProxy[m_largeCount++] = proxyId;
+      return;
+    }
+
+    m_largeSlot[proxyId] = NULL_PROXY;
+    for (int y = minY; y <= maxY; y++) {
+      for (int x = minX; x <= maxX; x++) {
+        final int slot = getOrCreateCell(x, y);
+        if (m_entryFree == NULL_ENTRY) {
+          expandEntries(m_entryCapacity * 2);
+        }
+        final int entry = m_entryFree;
+        m_entryFree = m_entryNext[entry];
+        m_entryProxy[entry] = proxyId;
+        m_entryNext[entry] = m_cellHead[slot];
+        m_cellHead[slot] = entry;
+      }
+    }
+  }
+
+  private void remove(int proxyId) {
+    final int largeSlot = m_largeSlot[proxyId];
+    if (largeSlot != NULL_PROXY) {
+      final int last = m_largeProxy[--m_largeCount];
+      m_largeProxy[largeSlot] = last;
+      m_largeSlot[last] = largeSlot;
+      return;
+    }
+
+    for (int y = m_minCellY[proxyId]; y <= m_maxCellY[proxyId]; y++) {
+      for (int x = m_minCellX[proxyId]; x <= m_maxCellX[proxyId]; x++) {
+        final int slot = findCell(x, y);
+        assert (slot != -1);
+        int prev = NULL_ENTRY;
+        int entry = m_cellHead[slot];
+        while (m_entryProxy[entry] != proxyId) {
+          prev = entry;
+          entry = m_entryNext[entry];
+        }
+        if (prev == NULL_ENTRY) {
+          m_cellHead[slot] = m_entryNext[entry];
+        } else {
+          m_entryNext[prev] = m_entryNext[entry];
+        }
+        m_entryNext[entry] = m_entryFree;
+        m_entryFree = entry;
+      }
+    }
+  }
+
+  @Override
+  public final Object getUserData(int proxyId) {
+    assert (0 <= proxyId && proxyId < m_proxyCapacity);
+    return m_userData[proxyId];
+  }
+
+  @Override
+  public final AABB getFatAABB(int proxyId) {
+    assert (0 <= proxyId && proxyId < m_proxyCapacity);
+    return m_aabb[proxyId];
+  }
+
+  @Override
+  public final void query(TreeCallback callback, AABB aabb) {
+    query(callback, aabb, m_scratch);
+  }
+
+  @Override
+  public final void query(TreeCallback callback, AABB aabb, BroadPhaseScratch scratch) {
+    final int stamp = nextStamp(scratch);
+    final int[] stamps = scratch.stamp;
+
+    for (int i = 0; i < m_largeCount; i++) {
+      final int proxyId = m_largeProxy[i];
+      if (AABB.testOverlap(m_aabb[proxyId], aabb) && !callback.treeCallback(proxyId)) {
+        return;
+      }
+    }
+
+    final int minX = MathUtils.floor(aabb.lowerBoundX * m_invCellSize);
+    final int minY = MathUtils.floor(aabb.lowerBoundY * m_invCellSize);
+    final int maxX = MathUtils.floor(aabb.upperBoundX * m_invCellSize);
+    final int maxY = MathUtils.floor(aabb.upperBoundY * m_invCellSize);
+
+    if ((long) (maxX - minX + 1) * (maxY - minY + 1) > m_cellHead.length) {
+      // cheaper to scan the whole hash
+      for (int slot = 0; slot < m_cellHead.length; slot++) {
+        if (m_cellHead[slot] >= 0 && minX <= m_cellX[slot] && m_cellX[slot] <= maxX
+            && minY <= m_cellY[slot] && m_cellY[slot] <= maxY
+            && !queryCell(callback, aabb, slot, stamps, stamp)) {
+          return;
+        }
+      }
+      return;
+    }
+
+    for (int y = minY; y <= maxY; y++) {
+      for (int x = minX; x <= maxX; x++) {
+        final int slot = findCell(x, y);
+        if (slot != -1 && !queryCell(callback, aabb, slot, stamps, stamp)) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * @return false if the client has terminated the query.
+   */
+  private boolean queryCell(TreeCallback callback, AABB aabb, int slot, int[] stamps,
+      int stamp) {
+    for (int entry = m_cellHead[slot]; entry != NULL_ENTRY; entry = m_entryNext[entry]) {
+      final int proxyId = m_entryProxy[entry];
+      if (stamps[proxyId] == stamp) {
+        continue;
+      }
+      stamps[proxyId] = stamp;
+      if (AABB.testOverlap(m_aabb[proxyId], aabb) && !callback.treeCallback(proxyId)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void raycast(TreeRayCastCallback callback, RayCastInput input) {
+    raycast(callback, input, m_scratch);
+  }
+
+  @Override
+  public void raycast(TreeRayCastCallback callback, RayCastInput input,
+      BroadPhaseScratch scratch) {
+    final int stamp = nextStamp(scratch);
+    final int[] stamps = scratch.stamp;
+    final Vec2 r = scratch.r;
+
+    final float p1x = input.p1.x;
+    final float p1y = input.p1.y;
+    final float dx = input.p2.x - p1x;
+    final float dy = input.p2.y - p1y;
+    scratch.rayP1X = p1x;
+    scratch.rayP1Y = p1y;
+    scratch.rayP2X = input.p2.x;
+    scratch.rayP2Y = input.p2.y;
+    r.x = dx;
+    r.y = dy;
+    assert ((r.x * r.x + r.y * r.y) > 0f);
+    r.normalize();
+
+    // v is perpendicular to the segment.
+    scratch.rayVX = -1f * r.y;
+    scratch.rayVY = 1f * r.x;
+
+    // Build a bounding box for the segment.
+    scratch.rayMaxFraction = input.maxFraction;
+    updateSegmentAABB(scratch);
+
+    for (int i = 0; i < m_largeCount; i++) {
+      if (!raycastProxy(callback, scratch, m_largeProxy[i])) {
+        return;
+      }
+    }
+
+    // Walk the cells crossed by the ray. The t values are fractions of p2 - p1.
+    int x = MathUtils.floor(p1x * m_invCellSize);
+    int y = MathUtils.floor(p1y * m_invCellSize);
+    final int stepX = dx > 0 ? 1 : -1;
+    final int stepY = dy > 0 ? 1 : -1;
+    final float tDeltaX = dx != 0 ? m_cellSize / MathUtils.abs(dx) : Float.MAX_VALUE;
+    final float tDeltaY = dy != 0 ? m_cellSize / MathUtils.abs(dy) : Float.MAX_VALUE;
+    float tMaxX =
+        dx > 0 ? ((x + 1) * m_cellSize - p1x) / dx : dx < 0 ? (x * m_cellSize - p1x) / dx
+            : Float.MAX_VALUE;
+    float tMaxY =
+        dy > 0 ? ((y + 1) * m_cellSize - p1y) / dy : dy < 0 ? (y * m_cellSize - p1y) / dy
+            : Float.MAX_VALUE;
+
+    while (true) {
+      final int slot = findCell(x, y);
+      if (slot != -1) {
+        for (int entry = m_cellHead[slot]; entry != NULL_ENTRY; entry = m_entryNext[entry]) {
+          final int proxyId = m_entryProxy[entry];
+          if (stamps[proxyId] == stamp) {
+            continue;
+          }
+          stamps[proxyId] = stamp;
+          if (!raycastProxy(callback, scratch, proxyId)) {
+            return;
+          }
+        }
+      }
+
+      if (tMaxX < tMaxY) {
+        if (tMaxX > scratch.rayMaxFraction) {
+          return;
+        }
+        x += stepX;
+        tMaxX += tDeltaX;
+      } else {
+        if (tMaxY > scratch.rayMaxFraction) {
+          return;
+        }
+        y += stepY;
+        tMaxY += tDeltaY;
+      }
+    }
+  }
+
+  private static void updateSegmentAABB(BroadPhaseScratch scratch) {
+    final AABB segAABB = scratch.segAABB;
+    final float p1x = scratch.rayP1X, p1y = scratch.rayP1Y;
+    final float tempx = (scratch.rayP2X - p1x) * scratch.rayMaxFraction + p1x;
+    final float tempy = (scratch.rayP2Y - p1y) * scratch.rayMaxFraction + p1y;
+    segAABB.lowerBoundX = p1x < tempx ? p1x : tempx;
+    segAABB.lowerBoundY = p1y < tempy ? p1y : tempy;
+    segAABB.upperBoundX = p1x > tempx ? p1x : tempx;
+    segAABB.upperBoundY = p1y > tempy ? p1y : tempy;
+  }
+
+  /**
+   * @return false if the client has terminated the ray cast.
+   */
+  private boolean raycastProxy(TreeRayCastCallback callback, BroadPhaseScratch scratch,
+      int proxyId) {
+    final AABB proxyAABB = m_aabb[proxyId];
+    if (!AABB.testOverlap(proxyAABB, scratch.segAABB)) {
+      return true;
+    }
+
+    // Separating axis for segment (Gino, p80).
+    // |dot(v, p1 - c)| > dot(|v|, h)
+    final float cx = (proxyAABB.lowerBoundX + proxyAABB.upperBoundX) * .5f;
+    final float cy = (proxyAABB.lowerBoundY + proxyAABB.upperBoundY) * .5f;
+    final float hx = (proxyAABB.upperBoundX - proxyAABB.lowerBoundX) * .5f;
+    final float hy = (proxyAABB.upperBoundY - proxyAABB.lowerBoundY) * .5f;
+    final float tempx = scratch.rayP1X - cx;
+    final float tempy = scratch.rayP1Y - cy;
+    float separation =
+        MathUtils.abs(scratch.rayVX * tempx + scratch.rayVY * tempy)
+            - (MathUtils.abs(scratch.rayVX) * hx + MathUtils.abs(scratch.rayVY) * hy);
+    if (separation > 0.0f) {
+      return true;
+    }
+
+    final RayCastInput subInput = scratch.subInput;
+    subInput.p1.x = scratch.rayP1X;
+    subInput.p1.y = scratch.rayP1Y;
+    subInput.p2.x = scratch.rayP2X;
+    subInput.p2.y = scratch.rayP2Y;
+    subInput.maxFraction = scratch.rayMaxFraction;
+
+    float value = callback.raycastCallback(subInput, proxyId);
+    if (value == 0.0f) {
+      // The client has terminated the ray cast.
+      return false;
+    }
+
+    if (value > 0.0f) {
+      // Update segment bounding box.
+      scratch.rayMaxFraction = value;
+      updateSegmentAABB(scratch);
+    }
+    return true;
+  }
+
+  /**
+   * Nothing is deferred.
+   */
+  @Override
+  public final void flushUpdates() {
+  }
+
+  /**
+   * There is no tree: always 0.
+   */
+  @Override
+  public int computeHeight() {
+    return 0;
+  }
+
+  /**
+   * There is no tree: always 0.
+   */
+  @Override
+  public int getHeight() {
+    return 0;
+  }
+
+  /**
+   * There is no tree: always 0.
+   */
+  @Override
+  public int getMaxBalance() {
+    return 0;
+  }
+
+  /**
+   * There is no tree: always 0.
+   */
+  @Override
+  public float getAreaRatio() {
+    return 0;
+  }
+
+  /**
+   * Nothing to rebuild: the cells do not wear.
+   */
+  @Override
+  public void rebuildBottomUp() {
+  }
+
+  private final Color3f cellColor = new Color3f(.3f, .3f, .3f);
+  private final Color3f color = new Color3f(1, 1, 1);
+
+  @Override
+  public void drawTree(DebugDraw argDraw) {
+    for (int slot = 0; slot < m_cellHead.length; slot++) {
+      if (m_cellHead[slot] >= 0) {
+        final float x = m_cellX[slot] * m_cellSize;
+        final float y = m_cellY[slot] * m_cellSize;
+        drawVecs[0].set(x, y);
+        drawVecs[1].set(x + m_cellSize, y);
+        drawVecs[2].set(x + m_cellSize, y + m_cellSize);
+        drawVecs[3].set(x, y + m_cellSize);
+        argDraw.drawPolygon(drawVecs, 4, cellColor);
+      }
+    }
+    for (int i = 0; i < m_largeCount; i++) {
+      m_aabb[m_largeProxy[i]].getVertices(drawVecs);
+      argDraw.drawPolygon(drawVecs, 4, color);
+    }
+  }
+}
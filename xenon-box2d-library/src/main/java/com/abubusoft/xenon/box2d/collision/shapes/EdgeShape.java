@@ -81,9 +81,6 @@ public class EdgeShape extends Shape {
     return false;
   }
 
-  // for pooling
-  private final Vec2 normal = new Vec2();
-
   @Override
   public float computeDistanceToOut(Transform xf, Vec2 p, int childIndex, Vec2 normalOut) {
     float xfqc = xf.q.c;
@@ -153,11 +150,15 @@ public class EdgeShape extends Shape {
 
     // final Vec2 normal = pool2.set(v2).subLocal(v1);
     // normal.set(normal.y, -normal.x);
-    normal.x = v2.y - v1.y;
-    normal.y = v1.x - v2.x;
-    normal.normalize();
-    final float normalx = normal.x;
-    final float normaly = normal.y;
+    // normal.normalize(), on locals so that several threads can ray-cast the same edge
+    float normalx = v2.y - v1.y;
+    float normaly = v1.x - v2.x;
+    final float length = MathUtils.sqrt(normalx * normalx + normaly * normaly);
+    if (length >= Settings.EPSILON) {
+      final float invLength = 1.0f / length;
+      normalx *= invLength;
+      normaly *= invLength;
+    }
 
     // q = p1 + t * d
     // dot(normal, q - v1) = 0
@@ -200,22 +201,18 @@ public class EdgeShape extends Shape {
     output.fraction = t;
     if (numerator > 0.0f) {
       // output.normal = -b2Mul(xf.q, normal);
-      output.normal.x = -xfq.c * normal.x + xfq.s * normal.y;
-      output.normal.y = -xfq.s * normal.x - xfq.c * normal.y;
+      output.normal.x = -xfq.c * normalx + xfq.s * normaly;
+      output.normal.y = -xfq.s * normalx - xfq.c * normaly;
     } else {
       // output->normal = b2Mul(xf.q, normal);
-      output.normal.x = xfq.c * normal.x - xfq.s * normal.y;
-      output.normal.y = xfq.s * normal.x + xfq.c * normal.y;
+      output.normal.x = xfq.c * normalx - xfq.s * normaly;
+      output.normal.y = xfq.s * normalx + xfq.c * normaly;
     }
     return true;
   }
 
   @Override
   public void computeAABB(AABB aabb, Transform xf, int childIndex) {
-    float lowerBoundX = aabb.lowerBoundX;
-    float lowerBoundY = aabb.lowerBoundY;
-    float upperBoundX = aabb.upperBoundX;
-    float upperBoundY = aabb.upperBoundY;
     final Rot xfq = xf.q;
 
     final float v1x = (xfq.c * m_vertex1.x - xfq.s * m_vertex1.y) + xf.p.x;
@@ -223,15 +220,10 @@ public class EdgeShape extends Shape {
     final float v2x = (xfq.c * m_vertex2.x - xfq.s * m_vertex2.y) + xf.p.x;
     final float v2y = (xfq.s * m_vertex2.x + xfq.c * m_vertex2.y) + xf.p.y;
 
-    lowerBoundX = v1x < v2x ? v1x : v2x;
-    lowerBoundY = v1y < v2y ? v1y : v2y;
-    upperBoundX = v1x > v2x ? v1x : v2x;
-    upperBoundY = v1y > v2y ? v1y : v2y;
-
-    lowerBoundX -= m_radius;
-    lowerBoundY -= m_radius;
-    upperBoundX += m_radius;
-    upperBoundY += m_radius;
+    aabb.lowerBoundX = (v1x < v2x ? v1x : v2x) - m_radius;
+    aabb.lowerBoundY = (v1y < v2y ? v1y : v2y) - m_radius;
+    aabb.upperBoundX = (v1x > v2x ? v1x : v2x) + m_radius;
+    aabb.upperBoundY = (v1y > v2y ? v1y : v2y) + m_radius;
   }
 
   @Override
@@ -324,10 +324,10 @@ public class PolygonShape extends Shape {
 
   @Override
   public final void computeAABB(final AABB aabb, final Transform xf, int childIndex) {
-    float lowerX = aabb.lowerBoundX;
-    float lowerY = aabb.lowerBoundY;
-    float upperX = aabb.upperBoundX;
-    float upperY = aabb.upperBoundY;
+    float lowerX;
+    float lowerY;
+    float upperX;
+    float upperY;
     final Vec2 v1 = m_vertices[0];
     final float xfqc = xf.q.c;
     final float xfqs = xf.q.s;
@@ -349,10 +349,10 @@ public class PolygonShape extends Shape {
       upperY = upperY > vy ? upperY : vy;
     }
 
-    lowerX -= m_radius;
-    lowerY -= m_radius;
-    upperX += m_radius;
-    upperY += m_radius;
+    aabb.lowerBoundX = lowerX - m_radius;
+    aabb.lowerBoundY = lowerY - m_radius;
+    aabb.upperBoundX = upperX + m_radius;
+    aabb.upperBoundY = upperY + m_radius;
   }
 
   /**
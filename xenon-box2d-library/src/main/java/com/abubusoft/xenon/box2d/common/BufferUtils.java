@@ -32,6 +32,16 @@ public class BufferUtils {
     return newBuffer;
   }
 
+  /** Reallocate a buffer. */
+  public static long[] reallocateBuffer(long[] oldBuffer, int oldCapacity, int newCapacity) {
+    assert (newCapacity > oldCapacity);
+    long[] newBuffer = new long[newCapacity];
+    if (oldBuffer != null) {
+      System.arraycopy(oldBuffer, 0, newBuffer, 0, oldCapacity);
+    }
+    return newBuffer;
+  }
+
   /** Reallocate a buffer. */
   public static float[] reallocateBuffer(float[] oldBuffer, int oldCapacity, int newCapacity) {
     assert (newCapacity > oldCapacity);
@@ -73,12 +73,12 @@ public class MathUtils extends PlatformMathUtils {
 
   static {
     for (int i = 0; i < Settings.SINCOS_LUT_LENGTH; i++) {
-      sinLUT[i] = (float) Math.sin(i * Settings.SINCOS_LUT_PRECISION);
+      sinLUT[i] = (float) StrictMath.sin(i * Settings.SINCOS_LUT_PRECISION);
     }
   }
 
   public static final float sin(float x) {
-    if (Settings.SINCOS_LUT_ENABLED) {
+    if (Settings.SINCOS_LUT_ENABLED && !Settings.DETERMINISTIC) {
       return sinLUT(x);
     } else {
       return (float) StrictMath.sin(x);
@@ -115,7 +115,7 @@ public class MathUtils extends PlatformMathUtils {
   }
 
   public static final float cos(float x) {
-    if (Settings.SINCOS_LUT_ENABLED) {
+    if (Settings.SINCOS_LUT_ENABLED && !Settings.DETERMINISTIC) {
       return sinLUT(HALF_PI - x);
     } else {
       return (float) StrictMath.cos(x);
@@ -257,7 +257,7 @@ public class MathUtils extends PlatformMathUtils {
   }
 
   public static final float pow(float a, float b) {
-    if (Settings.FAST_POW) {
+    if (Settings.FAST_POW && !Settings.DETERMINISTIC) {
       return fastPow(a, b);
     } else {
       return (float) StrictMath.pow(a, b);
@@ -265,7 +265,7 @@ public class MathUtils extends PlatformMathUtils {
   }
 
   public static final float atan2(final float y, final float x) {
-    if (Settings.FAST_ATAN2) {
+    if (Settings.FAST_ATAN2 && !Settings.DETERMINISTIC) {
       return fastAtan2(y, x);
     } else {
       return (float) StrictMath.atan2(y, x);
@@ -44,6 +44,14 @@ public class Settings {
   public static boolean FAST_POW = true;
   public static int CONTACT_STACK_INIT_SIZE = 10;
   public static boolean SINCOS_LUT_ENABLED = true;
+  /**
+   * Deterministic mode, for replays and lockstep networking. The trigonometric functions and the
+   * powers of {@link MathUtils} use {@link StrictMath}, whose results are specified bit for bit,
+   * instead of the lookup table and the fast approximations. The same world stepped with the same
+   * inputs and the same solvers then ends in the same state on every run and every platform, which
+   * World.checksum() can compare. Set it before creating the worlds.
+   */
+  public static boolean DETERMINISTIC = false;
   /**
    * smaller the precision, the larger the table. If a small table is used (eg, precision is .006 or
    * greater), make sure you set the table to lerp it's results. Accuracy chart is in the MathUtils
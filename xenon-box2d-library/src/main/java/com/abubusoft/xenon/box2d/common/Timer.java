@@ -43,4 +43,8 @@ public class Timer {
   public float getMilliseconds() {
     return (System.nanoTime() - resetNanos) / 1000 * 1f / 1000;
   }
+
+  public long getNanoseconds() {
+    return System.nanoTime() - resetNanos;
+  }
 }
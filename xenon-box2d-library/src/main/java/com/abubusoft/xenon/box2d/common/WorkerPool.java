@@ -0,0 +1,159 @@
+package com.abubusoft.xenon.box2d.common;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The worker threads shared by the parallel solvers. A task is run by a number of workers at once
+ * and the call returns when all of them are done. The calling thread works as worker 0, so a pool
+ * with one worker never leaves it, and the others run on the executor. Nothing is allocated per
+ * call.
+ *
+ * A throwable raised by a worker is rethrown by {@link #run(Task, int)} once all the workers are
+ * done. A pool runs one task at a time.
+ */
+public class WorkerPool {
+
+  /** The work of a worker. */
+  public interface Task {
+    void run(int worker);
+  }
+
+  private final int m_workerCount;
+  private final ExecutorService m_executor;
+  private final boolean m_ownExecutor;
+  private final Helper[] m_helpers;
+
+  private final Object m_lock = new Object();
+  private int m_pending;
+  private Task m_task;
+  private volatile Throwable m_error;
+
+  /**
+   * @param workerCount number of workers, including the calling thread.
+   * @param executor executor able to run at least <code>workerCount - 1</code> tasks at once, or
+   *          null to create daemon threads. An executor given here is not shut down by
+   *          {@link #shutdown()}.
+   * @param name prefix of the names of the threads created.
+   */
+  public WorkerPool(int workerCount, ExecutorService executor, final String name) {
+    if (workerCount < 1) {
+      throw new IllegalArgumentException("workerCount must be at least 1");
+    }
+    m_workerCount = workerCount;
+    m_helpers = new Helper[workerCount];
+    for (int i = 1; i < workerCount; i++) {
+      m_helpers[i] = new Helper(i);
+    }
+
+    if (executor == null && workerCount > 1) {
+      m_executor = Executors.newFixedThreadPool(workerCount - 1, new ThreadFactory() {
+        private int count;
+
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, name + "-" + (++count));
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      m_ownExecutor = true;
+    } else {
+      m_executor = executor;
+      m_ownExecutor = false;
+    }
+  }
+
+  public int getWorkerCount() {
+    return m_workerCount;
+  }
+
+  /**
+   * Stop the threads created by this pool.
+   */
+  public void shutdown() {
+    if (m_ownExecutor) {
+      m_executor.shutdown();
+    }
+  }
+
+  /**
+   * @return true if a worker of the running task has failed, the others can stop early.
+   */
+  public boolean isFailed() {
+    return m_error != null;
+  }
+
+  /**
+   * Run the task on workers 0 to <code>count - 1</code> and wait for all of them to complete.
+   *
+   * @param count number of workers, from 1 to {@link #getWorkerCount()}.
+   */
+  public void run(Task task, int count) {
+    assert (1 <= count && count <= m_workerCount);
+    m_task = task;
+    m_error = null;
+    m_pending = count - 1;
+    for (int i = 1; i < count; i++) {
+      m_executor.execute(m_helpers[i]);
+    }
+    execute(0);
+
+    boolean interrupted = false;
+    synchronized (m_lock) {
+      while (m_pending > 0) {
+        try {
+          m_lock.wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    m_task = null;
+
+    final Throwable error = m_error;
+    if (error != null) {
+      m_error = null;
+      if (error instanceof RuntimeException) {
+        throw (RuntimeException) error;
+      }
+      if (error instanceof Error) {
+        throw (Error) error;
+      }
+      throw new RuntimeException(error);
+    }
+  }
+
+  private void execute(int worker) {
+    try {
+      m_task.run(worker);
+    } catch (Throwable t) {
+      m_error = t;
+    }
+  }
+
+  private class Helper implements Runnable {
+    final int worker;
+
+    Helper(int worker) {
+      this.worker = worker;
+    }
+
+    @Override
+    public void run() {
+      try {
+        execute(worker);
+      } finally {
+        synchronized (m_lock) {
+          if (--m_pending == 0) {
+            m_lock.notifyAll();
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,144 @@
+package com.abubusoft.xenon.box2d.dynamics;
+
+import com.abubusoft.xenon.box2d.collision.AABB;
+import com.abubusoft.xenon.box2d.common.MathUtils;
+
+/**
+ * A set of boxes queried together by {@link World#queryAABB(AABBQueryBatch)}. The fixtures found
+ * by all the queries are stored one query after the other: those of query <code>i</code> are the
+ * results from {@link #getResultStart(int)} to {@link #getResultEnd(int)}, excluded. The buffers
+ * grow as needed and are reused, so a batch run every step does not allocate.
+ *
+ * Like {@link World#queryAABB(com.abubusoft.xenon.box2d.callbacks.QueryCallback, AABB)}, a fixture
+ * is found when its fat AABB overlaps the box, once per child whose proxy overlaps.
+ */
+public class AABBQueryBatch {
+
+  private float[] m_lowerX = new float[0];
+  private float[] m_lowerY = new float[0];
+  private float[] m_upperX = new float[0];
+  private float[] m_upperY = new float[0];
+  private int m_count;
+
+  private int m_maskBits = 0xFFFF;
+
+  // results, query i found m_results[m_resultStart[i] .. m_resultStart[i + 1] - 1]
+  int[] m_resultStart = new int[1];
+  Fixture[] m_results = new Fixture[0];
+  int m_resultCount;
+
+  /**
+   * Remove all the queries and their results.
+   */
+  public void clear() {
+    clearResults();
+    m_count = 0;
+  }
+
+  void clearResults() {
+    for (int i = 0; i < m_resultCount; i++) {
+      m_results[i] = null;
+    }
+    m_resultCount = 0;
+  }
+
+  /**
+   * Add a query box.
+   *
+   * @return the index of the query.
+   */
+  public int add(float lowerX, float lowerY, float upperX, float upperY) {
+    if (m_count == m_lowerX.length) {
+      int capacity = MathUtils.max(16, m_count * 2);
+      m_lowerX = copyOf(m_lowerX, capacity);
+      m_lowerY = copyOf(m_lowerY, capacity);
+      m_upperX = copyOf(m_upperX, capacity);
+      m_upperY = copyOf(m_upperY, capacity);
+      int[] resultStart = new int[capacity + 1];
+      System.arraycopy(m_resultStart, 0, resultStart, 0, m_count + 1);
+      m_resultStart = resultStart;
+    }
+    m_lowerX[m_count] = lowerX;
+    m_lowerY[m_count] = lowerY;
+    m_upperX[m_count] = upperX;
+    m_upperY[m_count] = upperY;
+    m_resultStart[m_count + 1] = m_resultStart[m_count];
+    return m_count++;
+  }
+
+  public int add(AABB aabb) {
+    return add(aabb.lowerBoundX, aabb.lowerBoundY, aabb.upperBoundX, aabb.upperBoundY);
+  }
+
+  private float[] copyOf(float[] old, int capacity) {
+    float[] array = new float[capacity];
+    System.arraycopy(old, 0, array, 0, m_count);
+    return array;
+  }
+
+  /**
+   * Append a result to the current query; the queries are run in order.
+   */
+  void addResult(Fixture fixture) {
+    if (m_resultCount == m_results.length) {
+      Fixture[] results = new Fixture[MathUtils.max(16, m_resultCount * 2)];
+      System.arraycopy(m_results, 0, results, 0, m_resultCount);
+      m_results = results;
+    }
+    m_results[m_resultCount++] = fixture;
+  }
+
+  void getQuery(int query, AABB out) {
+    out.lowerBoundX = m_lowerX[query];
+    out.lowerBoundY = m_lowerY[query];
+    out.upperBoundX = m_upperX[query];
+    out.upperBoundY = m_upperY[query];
+  }
+
+  public int getCount() {
+    return m_count;
+  }
+
+  /**
+   * Only the fixtures with a category in the mask are found. Default 0xFFFF.
+   */
+  public void setMaskBits(int maskBits) {
+    m_maskBits = maskBits;
+  }
+
+  public int getMaskBits() {
+    return m_maskBits;
+  }
+
+  /**
+   * @return the number of fixtures found by all the queries.
+   */
+  public int getResultCount() {
+    return m_resultCount;
+  }
+
+  /**
+   * @return the number of fixtures found by a query.
+   */
+  public int getResultCount(int query) {
+    return m_resultStart[query + 1] - m_resultStart[query];
+  }
+
+  /**
+   * @return the index of the first result of a query.
+   */
+  public int getResultStart(int query) {
+    return m_resultStart[query];
+  }
+
+  /**
+   * @return the index after the last result of a query.
+   */
+  public int getResultEnd(int query) {
+    return m_resultStart[query + 1];
+  }
+
+  public Fixture getResult(int index) {
+    return m_results[index];
+  }
+}
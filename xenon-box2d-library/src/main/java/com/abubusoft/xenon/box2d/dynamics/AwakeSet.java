@@ -0,0 +1,286 @@
+package com.abubusoft.xenon.box2d.dynamics;
+
+/**
+ * The bodies or contacts of a world that can do something during a time step, so that the step
+ * does not visit the sleeping ones. Each item has a sequence number, growing with its creation,
+ * and the world lists are in decreasing sequence order: a pass visits the items in that order, as
+ * the list walk did, including the items added during the pass that the list walk had still to
+ * reach.
+ *
+ * Removing an item leaves a hole and added items go after the last one. Both are merged back in
+ * order when the next pass begins, so a step costs the number of items in the set, not the number
+ * of items in the world.
+ */
+abstract class AwakeSet<T> {
+
+  private Object[] m_items = new Object[16];
+  private Object[] m_buffer = new Object[16];
+  // items and holes
+  private int m_count;
+  private int m_holes;
+  // the items before this index are in order
+  private int m_ordered;
+
+  private boolean m_passing;
+  private int m_passEnd;
+  private int m_next;
+  private long m_cursor;
+  // items added during the pass and still to visit, in increasing sequence order
+  private Object[] m_added = new Object[16];
+  private int m_addedCount;
+
+  abstract long sequence(T item);
+
+  /**
+   * @return the slot of the item, -1 when it is not in the set.
+   */
+  abstract int index(T item);
+
+  abstract void setIndex(T item, int index);
+
+  /**
+   * @return the number of items.
+   */
+  int size() {
+    return m_count - m_holes;
+  }
+
+  /**
+   * @return the number of slots, including holes.
+   */
+  int slots() {
+    return m_count;
+  }
+
+  /**
+   * @return the item in the slot, null for a hole.
+   */
+  @SuppressWarnings("unchecked")
+  T get(int slot) {
+    return (T) m_items[slot];
+  }
+
+  void add(T item) {
+    assert (index(item) == -1);
+    if (m_count == m_items.length) {
+      if (!m_passing && 2 * m_holes >= m_count) {
+        order();
+      } else {
+        Object[] old = m_items;
+        m_items = new Object[old.length * 2];
+        System.arraycopy(old, 0, m_items, 0, m_count);
+      }
+    }
+    setIndex(item, m_count);
+    m_items[m_count++] = item;
+
+    if (m_passing && sequence(item) < m_cursor) {
+      addToPass(item);
+    }
+  }
+
+  void remove(T item) {
+    int slot = index(item);
+    assert (slot >= 0 && m_items[slot] == item);
+    m_items[slot] = null;
+    setIndex(item, -1);
+    m_holes++;
+  }
+
+  /**
+   * Begin a pass, in decreasing sequence order.
+   *
+   * @return the slots to visit, from 0 excluded. Holes can appear among them during the pass.
+   */
+  int begin() {
+    assert (!m_passing);
+    order();
+    m_passing = true;
+    m_passEnd = m_count;
+    m_next = 0;
+    m_cursor = Long.MAX_VALUE;
+    return m_passEnd;
+  }
+
+  /**
+   * @return the next item of the pass, null at the end.
+   */
+  @SuppressWarnings("unchecked")
+  T next() {
+    while (m_next < m_passEnd && m_items[m_next] == null) {
+      m_next++;
+    }
+    T item = m_next < m_passEnd ? (T) m_items[m_next] : null;
+    T added = nextAdded(item == null ? Long.MIN_VALUE : sequence(item));
+    if (added != null) {
+      return added;
+    }
+    if (item != null) {
+      m_next++;
+      visit(item);
+    }
+    return item;
+  }
+
+  /**
+   * @return the next item added during the pass with a sequence above the given one, null if
+   *         none.
+   */
+  @SuppressWarnings("unchecked")
+  T nextAdded(long sequence) {
+    while (m_addedCount > 0) {
+      T item = (T) m_added[m_addedCount - 1];
+      if (index(item) >= 0) {
+        if (sequence(item) <= sequence) {
+          return null;
+        }
+        m_added[--m_addedCount] = null;
+        m_cursor = sequence(item);
+        return item;
+      }
+      // removed since
+      m_added[--m_addedCount] = null;
+    }
+    return null;
+  }
+
+  /**
+   * Tell the pass the item is visited, when the slots are visited without {@link #next()}.
+   */
+  void visit(T item) {
+    m_cursor = sequence(item);
+    if (m_addedCount > 0 && m_added[m_addedCount - 1] == item) {
+      m_added[--m_addedCount] = null;
+    }
+  }
+
+  void end() {
+    assert (m_passing);
+    while (m_addedCount > 0) {
+      m_added[--m_addedCount] = null;
+    }
+    m_passing = false;
+  }
+
+  private void addToPass(T item) {
+    final long sequence = sequence(item);
+    // sequences are unique, an item already there is among the ones not below it
+    int i = m_addedCount;
+    while (i > 0) {
+      Object other = m_added[i - 1];
+      if (other == item) {
+        return;
+      }
+      @SuppressWarnings("unchecked")
+      long otherSequence = sequence((T) other);
+      if (otherSequence < sequence) {
+        break;
+      }
+      i--;
+    }
+    if (m_addedCount == m_added.length) {
+      Object[] old = m_added;
+      m_added = new Object[old.length * 2];
+      System.arraycopy(old, 0, m_added, 0, m_addedCount);
+    }
+    System.arraycopy(m_added, i, m_added, i + 1, m_addedCount - i);
+    m_added[i] = item;
+    m_addedCount++;
+  }
+
+  /**
+   * Remove the holes and merge the added items in order.
+   */
+  private void order() {
+    if (m_holes == 0 && m_ordered == m_count) {
+      return;
+    }
+    final Object[] items = m_items;
+    int ordered = 0;
+    int count = 0;
+    for (int i = 0; i < m_count; i++) {
+      Object item = items[i];
+      if (item == null) {
+        continue;
+      }
+      if (i < m_ordered) {
+        ordered++;
+      }
+      items[count++] = item;
+    }
+    for (int i = count; i < m_count; i++) {
+      items[i] = null;
+    }
+    sort(items, ordered, count);
+    merge(items, 0, ordered, count);
+    for (int i = 0; i < count; i++) {
+      @SuppressWarnings("unchecked")
+      T item = (T) items[i];
+      setIndex(item, i);
+    }
+    m_count = count;
+    m_ordered = count;
+    m_holes = 0;
+  }
+
+  /**
+   * Sort items of the kind of this set in decreasing sequence order.
+   */
+  void sort(Object[] items, int from, int to) {
+    if (to - from < 8) {
+      for (int i = from + 1; i < to; i++) {
+        Object item = items[i];
+        @SuppressWarnings("unchecked")
+        long sequence = sequence((T) item);
+        int j = i;
+        while (j > from && before(sequence, items[j - 1])) {
+          items[j] = items[j - 1];
+          j--;
+        }
+        items[j] = item;
+      }
+      return;
+    }
+    int mid = (from + to) >>> 1;
+    sort(items, from, mid);
+    sort(items, mid, to);
+    merge(items, from, mid, to);
+  }
+
+  /**
+   * Merge the ordered ranges from .. mid and mid .. to.
+   */
+  @SuppressWarnings("unchecked")
+  private void merge(Object[] items, int from, int mid, int to) {
+    if (from == mid || mid == to || !before(sequence((T) items[mid]), items[mid - 1])) {
+      return;
+    }
+    if (m_buffer.length < mid - from) {
+      m_buffer = new Object[Math.max(mid - from, 2 * m_buffer.length)];
+    }
+    final Object[] buffer = m_buffer;
+    System.arraycopy(items, from, buffer, 0, mid - from);
+    int i = 0;
+    int j = mid;
+    int k = from;
+    final int end = mid - from;
+    while (i < end && j < to) {
+      if (before(sequence((T) items[j]), buffer[i])) {
+        items[k++] = items[j++];
+      } else {
+        items[k++] = buffer[i++];
+      }
+    }
+    while (i < end) {
+      items[k++] = buffer[i++];
+    }
+    for (i = 0; i < end; i++) {
+      buffer[i] = null;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private boolean before(long sequence, Object other) {
+    return sequence > sequence((T) other);
+  }
+}
@@ -0,0 +1,135 @@
+package com.abubusoft.xenon.box2d.dynamics;
+
+import com.abubusoft.xenon.box2d.callbacks.TreeCallback;
+import com.abubusoft.xenon.box2d.callbacks.TreeRayCastCallback;
+import com.abubusoft.xenon.box2d.collision.AABB;
+import com.abubusoft.xenon.box2d.collision.RayCastInput;
+import com.abubusoft.xenon.box2d.collision.RayCastOutput;
+import com.abubusoft.xenon.box2d.collision.broadphase.BroadPhase;
+import com.abubusoft.xenon.box2d.collision.broadphase.BroadPhaseScratch;
+import com.abubusoft.xenon.box2d.collision.shapes.ChainShape;
+import com.abubusoft.xenon.box2d.collision.shapes.EdgeShape;
+import com.abubusoft.xenon.box2d.collision.shapes.Shape;
+import com.abubusoft.xenon.box2d.collision.shapes.ShapeType;
+
+/**
+ * Runs a range of the rays of a {@link RayCastBatch} or of the boxes of an {@link AABBQueryBatch}.
+ * A worker owns all the memory it writes to, except the result slots of its own rays, so several
+ * workers can run at once on a world that is not changed.
+ */
+class BatchQueryWorker implements TreeCallback, TreeRayCastCallback {
+  private final BroadPhaseScratch m_scratch = new BroadPhaseScratch();
+  private final RayCastInput m_input = new RayCastInput();
+  private final RayCastOutput m_output = new RayCastOutput();
+  // the edges of the chains, ChainShape.raycast uses one shared by all the threads
+  private final EdgeShape m_edge = new EdgeShape();
+  private final AABB m_aabb = new AABB();
+
+  private BroadPhase m_broadPhase;
+  private RayCastBatch m_rays;
+  private int m_ray;
+  private int m_maskBits;
+
+  // fixtures found by the queries of the range, in order
+  private Fixture[] m_results = new Fixture[16];
+  private int m_resultCount;
+
+  void raycast(BroadPhase broadPhase, RayCastBatch batch, int begin, int end) {
+    m_broadPhase = broadPhase;
+    m_rays = batch;
+    final RayCastInput input = m_input;
+    for (int i = begin; i < end; i++) {
+      batch.m_fixture[i] = null;
+      m_ray = i;
+      input.p1.x = batch.getStartX(i);
+      input.p1.y = batch.getStartY(i);
+      input.p2.x = batch.getEndX(i);
+      input.p2.y = batch.getEndY(i);
+      input.maxFraction = 1.0f;
+      broadPhase.raycast(this, input, m_scratch);
+    }
+    m_rays = null;
+    m_broadPhase = null;
+  }
+
+  public float raycastCallback(RayCastInput input, int nodeId) {
+    FixtureProxy proxy = (FixtureProxy) m_broadPhase.getUserData(nodeId);
+    Fixture fixture = proxy.fixture;
+    final RayCastBatch batch = m_rays;
+    if ((fixture.m_filter.categoryBits & batch.getMaskBits()) == 0
+        || (fixture.m_isSensor && batch.isIgnoreSensors())) {
+      return -1f;
+    }
+
+    final Shape shape = fixture.m_shape;
+    final boolean hit;
+    if (shape.m_type == ShapeType.CHAIN) {
+      ((ChainShape) shape).getChildEdge(m_edge, proxy.childIndex);
+      hit = m_edge.raycast(m_output, input, fixture.m_body.m_xf, 0);
+    } else {
+      hit = shape.raycast(m_output, input, fixture.m_body.m_xf, proxy.childIndex);
+    }
+    if (!hit) {
+      return input.maxFraction;
+    }
+
+    // closer than the previous hits, the ray is clipped to it
+    final int ray = m_ray;
+    batch.m_fixture[ray] = fixture;
+    batch.m_fraction[ray] = m_output.fraction;
+    batch.m_normalX[ray] = m_output.normal.x;
+    batch.m_normalY[ray] = m_output.normal.y;
+    return batch.isAnyHit() ? 0f : m_output.fraction;
+  }
+
+  /**
+   * Run the queries of the range. The number of fixtures found by each query is stored in the
+   * batch at the end of its result range, then {@link #collect} makes the ranges.
+   */
+  void query(BroadPhase broadPhase, AABBQueryBatch batch, int begin, int end) {
+    m_broadPhase = broadPhase;
+    m_maskBits = batch.getMaskBits();
+    m_resultCount = 0;
+    for (int i = begin; i < end; i++) {
+      int before = m_resultCount;
+      batch.getQuery(i, m_aabb);
+      broadPhase.query(this, m_aabb, m_scratch);
+      batch.m_resultStart[i + 1] = m_resultCount - before;
+    }
+    m_broadPhase = null;
+  }
+
+  public boolean treeCallback(int proxyId) {
+    Fixture fixture = ((FixtureProxy) m_broadPhase.getUserData(proxyId)).fixture;
+    if ((fixture.m_filter.categoryBits & m_maskBits) != 0) {
+      if (m_resultCount == m_results.length) {
+        Fixture[] old = m_results;
+        m_results = new Fixture[old.length * 2];
+        System.arraycopy(old, 0, m_results, 0, old.length);
+      }
+      m_results[m_resultCount++] = fixture;
+    }
+    return true;
+  }
+
+  /**
+   * Store the results of the workers that ran consecutive ranges of the batch, from the first.
+   */
+  static void collect(AABBQueryBatch batch, BatchQueryWorker[] workers, int workerCount) {
+    final int[] resultStart = batch.m_resultStart;
+    resultStart[0] = 0;
+    for (int i = 0; i < batch.getCount(); i++) {
+      resultStart[i + 1] += resultStart[i];
+    }
+
+    batch.clearResults();
+    for (int w = 0; w < workerCount; w++) {
+      final BatchQueryWorker worker = workers[w];
+      for (int i = 0; i < worker.m_resultCount; i++) {
+        batch.addResult(worker.m_results[i]);
+        worker.m_results[i] = null;
+      }
+      worker.m_resultCount = 0;
+    }
+  }
+}
@@ -48,6 +48,10 @@ public class Body {
   public static final int e_fixedRotationFlag = 0x0010;
   public static final int e_activeFlag = 0x0020;
   public static final int e_toiFlag = 0x0040;
+  // The body is out of the awake set and its previous transform must still be updated.
+  public static final int e_dirtyTransformFlag = 0x0080;
+  // The body is out of the awake set and its force must still be cleared.
+  public static final int e_dirtyForceFlag = 0x0100;
 
   public BodyType m_type;
 
@@ -55,6 +59,16 @@ public class Body {
 
   public int m_islandIndex;
 
+  /**
+   * Creation order in the world, the body list is in decreasing order.
+   */
+  public long m_sequence;
+
+  /**
+   * Slot in the world awake set, -1 when the body is not simulated: sleeping, inactive or static.
+   */
+  public int m_awakeIndex = -1;
+
   /**
    * The body origin transform.
    */
@@ -330,6 +344,10 @@ public class Body {
     m_sweep.c0.set(m_sweep.c);
     m_sweep.a0 = m_sweep.a;
 
+    if (m_awakeIndex == -1) {
+      m_world.touchBody(this, e_dirtyTransformFlag);
+    }
+
     BroadPhase broadPhase = m_world.m_contactManager.m_broadPhase;
     for (Fixture f = m_fixtureList; f != null; f = f.m_next) {
       f.synchronize(broadPhase, m_xf, m_xf);
@@ -473,6 +491,10 @@ public class Body {
     m_force.y += force.y;
 
     m_torque += (point.x - m_sweep.c.x) * force.y - (point.y - m_sweep.c.y) * force.x;
+
+    if (m_awakeIndex == -1) {
+      m_world.touchBody(this, e_dirtyForceFlag);
+    }
   }
 
   /**
@@ -491,6 +513,10 @@ public class Body {
 
     m_force.x += force.x;
     m_force.y += force.y;
+
+    if (m_awakeIndex == -1) {
+      m_world.touchBody(this, e_dirtyForceFlag);
+    }
   }
 
   /**
@@ -509,6 +535,10 @@ public class Body {
     }
 
     m_torque += torque;
+
+    if (m_awakeIndex == -1) {
+      m_world.touchBody(this, e_dirtyForceFlag);
+    }
   }
 
   /**
@@ -893,6 +923,7 @@ public class Body {
     }
 
     setAwake(true);
+    m_world.updateAwake(this);
 
     m_force.setZero();
     m_torque = 0.0f;
@@ -964,6 +995,7 @@ public class Body {
       if ((m_flags & e_awakeFlag) == 0) {
         m_flags |= e_awakeFlag;
         m_sleepTime = 0.0f;
+        m_world.updateAwake(this);
       }
     } else {
       m_flags &= ~e_awakeFlag;
@@ -972,6 +1004,9 @@ public class Body {
       m_angularVelocity = 0.0f;
       m_force.setZero();
       m_torque = 0.0f;
+      if (m_awakeIndex != -1) {
+        m_world.updateAwake(this);
+      }
     }
   }
 
@@ -1005,6 +1040,7 @@ public class Body {
 
     if (flag) {
       m_flags |= e_activeFlag;
+      m_world.updateAwake(this);
 
       // Create all proxies.
       BroadPhase broadPhase = m_world.m_contactManager.m_broadPhase;
@@ -1015,6 +1051,7 @@ public class Body {
       // Contacts are created the next time step.
     } else {
       m_flags &= ~e_activeFlag;
+      m_world.updateAwake(this);
 
       // Destroy all proxies.
       BroadPhase broadPhase = m_world.m_contactManager.m_broadPhase;
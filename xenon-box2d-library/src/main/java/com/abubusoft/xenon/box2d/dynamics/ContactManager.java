@@ -23,12 +23,17 @@
  ******************************************************************************/
 package com.abubusoft.xenon.box2d.dynamics;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 import com.abubusoft.xenon.box2d.callbacks.ContactFilter;
 import com.abubusoft.xenon.box2d.callbacks.ContactListener;
 import com.abubusoft.xenon.box2d.callbacks.PairCallback;
+import com.abubusoft.xenon.box2d.collision.Manifold;
+import com.abubusoft.xenon.box2d.collision.Manifold.ManifoldType;
+import com.abubusoft.xenon.box2d.collision.ManifoldPoint;
 import com.abubusoft.xenon.box2d.collision.broadphase.BroadPhase;
 import com.abubusoft.xenon.box2d.dynamics.contacts.Contact;
-import com.abubusoft.xenon.box2d.dynamics.contacts.ContactEdge;
 
 /**
  * Delegate of World.
@@ -45,6 +50,57 @@ public class ContactManager implements PairCallback {
 
   private final World pool;
 
+  // Contacts by proxy pair, open addressing with linear probing. An empty slot has a null
+  // contact. Kept at most half full.
+  private long[] m_pairKeys;
+  private Contact[] m_pairContacts;
+  private int m_pairMask;
+
+  ParallelNarrowPhaseSolver m_narrowPhaseSolver;
+
+  // What the parallel narrow phase does with each contact, in list order.
+  private static final byte COLLIDE_DESTROY = 0;
+  private static final byte COLLIDE_UPDATE = 1;
+  private static final byte COLLIDE_INACTIVE = 2;
+
+  private Contact[] m_collideContacts = new Contact[0];
+  private byte[] m_collideActions = new byte[0];
+  private Contact[] m_updateContacts = new Contact[0];
+
+  private long m_contactSequence;
+
+  /**
+   * The contacts the narrow phase and the time of impact solver have to visit: the ones with an
+   * awake body, flagged for filtering or with a time of impact of the current step.
+   */
+  final AwakeSet<Contact> m_awakeContacts = new AwakeSet<Contact>() {
+    @Override
+    long sequence(Contact c) {
+      return c.m_sequence;
+    }
+
+    @Override
+    int index(Contact c) {
+      return c.m_awakeIndex;
+    }
+
+    @Override
+    void setIndex(Contact c, int index) {
+      c.m_awakeIndex = index;
+    }
+  };
+
+  /**
+   * The candidate time of impact events, while the world solves them.
+   */
+  final TOIQueue m_toiQueue = new TOIQueue();
+
+  // Counted since the last flushCounters.
+  private int m_pairsTested;
+  private int m_contactsCreated;
+  private int m_contactsDestroyed;
+  private int m_contactsVisited;
+
   public ContactManager(World argPool, BroadPhase broadPhase) {
     m_contactList = null;
     m_contactCount = 0;
@@ -52,6 +108,88 @@ public class ContactManager implements PairCallback {
     m_contactListener = null;
     m_broadPhase = broadPhase;
     pool = argPool;
+    m_pairKeys = new long[64];
+    m_pairContacts = new Contact[64];
+    m_pairMask = 63;
+  }
+
+  /**
+   * The key of a pair of proxies, the same in both orders. A proxy id is the same for the whole
+   * life of a contact.
+   */
+  private static long pairKey(int proxyIdA, int proxyIdB) {
+    return proxyIdA < proxyIdB ? ((long) proxyIdA << 32) | proxyIdB
+        : ((long) proxyIdB << 32) | proxyIdA;
+  }
+
+  private static int pairHash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  private Contact findPair(long key) {
+    final long[] keys = m_pairKeys;
+    final Contact[] contacts = m_pairContacts;
+    int slot = pairHash(key) & m_pairMask;
+    while (contacts[slot] != null) {
+      if (keys[slot] == key) {
+        return contacts[slot];
+      }
+      slot = (slot + 1) & m_pairMask;
+    }
+    return null;
+  }
+
+  private void insertPair(Contact c) {
+    // m_contactCount does not count c yet
+    if (2 * (m_contactCount + 1) > m_pairContacts.length) {
+      final long[] keys = m_pairKeys;
+      final Contact[] contacts = m_pairContacts;
+      m_pairKeys = new long[keys.length * 2];
+      m_pairContacts = new Contact[keys.length * 2];
+      m_pairMask = keys.length * 2 - 1;
+      for (int i = 0; i < keys.length; i++) {
+        if (contacts[i] != null) {
+          putPair(keys[i], contacts[i]);
+        }
+      }
+    }
+    putPair(c.m_pairKey, c);
+  }
+
+  private void putPair(long key, Contact c) {
+    int slot = pairHash(key) & m_pairMask;
+    while (m_pairContacts[slot] != null) {
+      slot = (slot + 1) & m_pairMask;
+    }
+    m_pairKeys[slot] = key;
+    m_pairContacts[slot] = c;
+  }
+
+  private void removePair(Contact c) {
+    final long[] keys = m_pairKeys;
+    final Contact[] contacts = m_pairContacts;
+    final int mask = m_pairMask;
+    int slot = pairHash(c.m_pairKey) & mask;
+    while (contacts[slot] != c) {
+      assert (contacts[slot] != null);
+      slot = (slot + 1) & mask;
+    }
+
+    // Shift back the following entries of the run that can take the hole, so that no lookup
+    // stops early on it.
+    int hole = slot;
+    slot = (slot + 1) & mask;
+    while (contacts[slot] != null) {
+      int home = pairHash(keys[slot]) & mask;
+      if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+        keys[hole] = keys[slot];
+        contacts[hole] = contacts[slot];
+        hole = slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    contacts[hole] = null;
   }
 
   /**
@@ -61,6 +199,7 @@ public class ContactManager implements PairCallback {
    * @param proxyUserDataB
    */
   public void addPair(Object proxyUserDataA, Object proxyUserDataB) {
+    ++m_pairsTested;
     FixtureProxy proxyA = (FixtureProxy) proxyUserDataA;
     FixtureProxy proxyB = (FixtureProxy) proxyUserDataB;
 
@@ -78,29 +217,10 @@ public class ContactManager implements PairCallback {
       return;
     }
 
-    // TODO_ERIN use a hash table to remove a potential bottleneck when both
-    // bodies have a lot of contacts.
     // Does a contact already exist?
-    ContactEdge edge = bodyB.getContactList();
-    while (edge != null) {
-      if (edge.other == bodyA) {
-        Fixture fA = edge.contact.getFixtureA();
-        Fixture fB = edge.contact.getFixtureB();
-        int iA = edge.contact.getChildIndexA();
-        int iB = edge.contact.getChildIndexB();
-
-        if (fA == fixtureA && iA == indexA && fB == fixtureB && iB == indexB) {
-          // A contact already exists.
-          return;
-        }
-
-        if (fA == fixtureB && iA == indexB && fB == fixtureA && iB == indexA) {
-          // A contact already exists.
-          return;
-        }
-      }
-
-      edge = edge.next;
+    long key = pairKey(proxyA.proxyId, proxyB.proxyId);
+    if (findPair(key) != null) {
+      return;
     }
 
     // Does a joint override collision? is at least one body dynamic?
@@ -122,11 +242,34 @@ public class ContactManager implements PairCallback {
     // Contact creation may swap fixtures.
     fixtureA = c.getFixtureA();
     fixtureB = c.getFixtureB();
-    indexA = c.getChildIndexA();
-    indexB = c.getChildIndexB();
     bodyA = fixtureA.getBody();
     bodyB = fixtureB.getBody();
 
+    c.m_pairKey = key;
+    c.m_sequence = ++m_contactSequence;
+    link(c);
+    ++m_contactsCreated;
+
+    // wake up the bodies
+    if (!fixtureA.isSensor() && !fixtureB.isSensor()) {
+      bodyA.setAwake(true);
+      bodyB.setAwake(true);
+    }
+    updateAwake(c);
+
+    ++m_contactCount;
+  }
+
+  /**
+   * Add a new contact to the pair table, to the contact list and to the contact lists of its
+   * bodies, at the head.
+   */
+  private void link(Contact c) {
+    final Body bodyA = c.getFixtureA().getBody();
+    final Body bodyB = c.getFixtureB().getBody();
+
+    insertPair(c);
+
     // Insert into the world.
     c.m_prev = null;
     c.m_next = m_contactList;
@@ -158,14 +301,47 @@ public class ContactManager implements PairCallback {
       bodyB.m_contactList.prev = c.m_nodeB;
     }
     bodyB.m_contactList = c.m_nodeB;
+  }
 
-    // wake up the bodies
-    if (!fixtureA.isSensor() && !fixtureB.isSensor()) {
-      bodyA.setAwake(true);
-      bodyB.setAwake(true);
+  /**
+   * Add the contact to the awake contacts, or remove it, after a change of its bodies or flags.
+   * During the time of impact phase, the contact is also checked again for events.
+   */
+  void updateAwake(Contact c) {
+    m_toiQueue.markDirty(c);
+    boolean awake = c.m_fixtureA.m_body.m_awakeIndex != -1
+        || c.m_fixtureB.m_body.m_awakeIndex != -1
+        || (c.m_flags & (Contact.FILTER_FLAG | Contact.TOI_FLAG)) != 0;
+    if (awake == (c.m_awakeIndex != -1)) {
+      return;
+    }
+    if (awake) {
+      m_awakeContacts.add(c);
+    } else {
+      m_awakeContacts.remove(c);
     }
+  }
 
-    ++m_contactCount;
+  /**
+   * Flag the contact for filtering at the next time step, even if both bodies sleep.
+   */
+  void flagForFiltering(Contact c) {
+    c.flagForFiltering();
+    updateAwake(c);
+  }
+
+  /**
+   * Add the counters to the profile and reset them.
+   */
+  void flushCounters(Profile profile) {
+    profile.addCount(Profile.Counter.PAIRS_TESTED, m_pairsTested);
+    profile.addCount(Profile.Counter.CONTACTS_CREATED, m_contactsCreated);
+    profile.addCount(Profile.Counter.CONTACTS_DESTROYED, m_contactsDestroyed);
+    profile.addCount(Profile.Counter.CONTACTS_VISITED, m_contactsVisited);
+    m_pairsTested = 0;
+    m_contactsCreated = 0;
+    m_contactsDestroyed = 0;
+    m_contactsVisited = 0;
   }
 
   public void findNewContacts() {
@@ -221,72 +397,340 @@ public class ContactManager implements PairCallback {
       bodyB.m_contactList = c.m_nodeB.next;
     }
 
+    removePair(c);
+    ++m_contactsDestroyed;
+    if (c.m_awakeIndex != -1) {
+      m_awakeContacts.remove(c);
+    }
+    m_toiQueue.discard(c);
+
     // Call the factory.
     pool.pushContact(c);
     --m_contactCount;
   }
 
+  private static final ManifoldType[] MANIFOLD_TYPES = ManifoldType.values();
+
+  // proxy ids, sequence, flags, time of impact, friction, restitution, tangent speed, manifold
+  private static final int CONTACT_STATE_SIZE = 2 * 4 + 8 + 4 + 5 * 4 + 2 + 4 * 4;
+  // local point, impulses, id
+  private static final int POINT_STATE_SIZE = 4 * 4 + 4;
+
+  /**
+   * @return the size in bytes of what {@link #writeState(ByteBuffer)} writes.
+   */
+  int getStateSize() {
+    int size = 8 + 4 + m_contactCount * CONTACT_STATE_SIZE;
+    for (Contact c = m_contactList; c != null; c = c.m_next) {
+      size += c.m_manifold.pointCount * POINT_STATE_SIZE;
+    }
+    return size;
+  }
+
+  /**
+   * Write the contacts for a world snapshot, oldest first, with their manifolds and impulses. The
+   * fixtures are written as proxy ids.
+   */
+  void writeState(ByteBuffer buffer) {
+    buffer.putLong(m_contactSequence);
+    buffer.putInt(m_contactCount);
+    Contact last = m_contactList;
+    while (last != null && last.m_next != null) {
+      last = last.m_next;
+    }
+    for (Contact c = last; c != null; c = c.m_prev) {
+      buffer.putInt(c.m_fixtureA.m_proxies[c.m_indexA].proxyId);
+      buffer.putInt(c.m_fixtureB.m_proxies[c.m_indexB].proxyId);
+      buffer.putLong(c.m_sequence);
+      buffer.putInt(c.m_flags);
+      buffer.putFloat(c.m_toiCount);
+      buffer.putFloat(c.m_toi);
+      buffer.putFloat(c.m_friction);
+      buffer.putFloat(c.m_restitution);
+      buffer.putFloat(c.m_tangentSpeed);
+
+      final Manifold manifold = c.m_manifold;
+      // no type until the first update
+      buffer.put((byte) (manifold.type != null ? manifold.type.ordinal() : -1));
+      buffer.put((byte) manifold.pointCount);
+      buffer.putFloat(manifold.localNormal.x);
+      buffer.putFloat(manifold.localNormal.y);
+      buffer.putFloat(manifold.localPoint.x);
+      buffer.putFloat(manifold.localPoint.y);
+      for (int i = 0; i < manifold.pointCount; i++) {
+        final ManifoldPoint point = manifold.points[i];
+        buffer.putFloat(point.localPoint.x);
+        buffer.putFloat(point.localPoint.y);
+        buffer.putFloat(point.normalImpulse);
+        buffer.putFloat(point.tangentImpulse);
+        buffer.put(point.id.indexA);
+        buffer.put(point.id.indexB);
+        buffer.put(point.id.typeA);
+        buffer.put(point.id.typeB);
+      }
+    }
+  }
+
+  /**
+   * Give back all the contacts to the pool, without calling the listener and without waking up
+   * their bodies. The contact lists of the bodies are left as they are.
+   */
+  void clearState() {
+    Contact c = m_contactList;
+    while (c != null) {
+      Contact next = c.m_next;
+      if (c.m_awakeIndex != -1) {
+        m_awakeContacts.remove(c);
+      }
+      pool.recycleContact(c);
+      c = next;
+    }
+    m_contactList = null;
+    m_contactCount = 0;
+    Arrays.fill(m_pairContacts, null);
+  }
+
+  /**
+   * Create again the contacts written by {@link #writeState(ByteBuffer)}, after
+   * {@link #clearState()} and once the bodies and the proxies are restored. Neither the filter nor
+   * the listener is called.
+   */
+  void readState(ByteBuffer buffer) {
+    assert (m_contactList == null);
+    m_contactSequence = buffer.getLong();
+    final int count = buffer.getInt();
+    for (int n = 0; n < count; n++) {
+      final int proxyIdA = buffer.getInt();
+      final int proxyIdB = buffer.getInt();
+      final FixtureProxy proxyA = (FixtureProxy) m_broadPhase.getUserData(proxyIdA);
+      final FixtureProxy proxyB = (FixtureProxy) m_broadPhase.getUserData(proxyIdB);
+      // the fixtures are already in the order of the contact type
+      final Contact c =
+          pool.popContact(proxyA.fixture, proxyA.childIndex, proxyB.fixture, proxyB.childIndex);
+      assert (c.m_fixtureA == proxyA.fixture);
+
+      c.m_pairKey = pairKey(proxyIdA, proxyIdB);
+      c.m_sequence = buffer.getLong();
+      c.m_flags = buffer.getInt();
+      c.m_toiCount = buffer.getFloat();
+      c.m_toi = buffer.getFloat();
+      c.m_friction = buffer.getFloat();
+      c.m_restitution = buffer.getFloat();
+      c.m_tangentSpeed = buffer.getFloat();
+
+      final Manifold manifold = c.m_manifold;
+      final byte type = buffer.get();
+      manifold.type = type >= 0 ? MANIFOLD_TYPES[type] : null;
+      manifold.pointCount = buffer.get();
+      manifold.localNormal.x = buffer.getFloat();
+      manifold.localNormal.y = buffer.getFloat();
+      manifold.localPoint.x = buffer.getFloat();
+      manifold.localPoint.y = buffer.getFloat();
+      for (int i = 0; i < manifold.pointCount; i++) {
+        final ManifoldPoint point = manifold.points[i];
+        point.localPoint.x = buffer.getFloat();
+        point.localPoint.y = buffer.getFloat();
+        point.normalImpulse = buffer.getFloat();
+        point.tangentImpulse = buffer.getFloat();
+        point.id.indexA = buffer.get();
+        point.id.indexB = buffer.get();
+        point.id.typeA = buffer.get();
+        point.id.typeB = buffer.get();
+      }
+
+      link(c);
+      updateAwake(c);
+      ++m_contactCount;
+    }
+  }
+
   /**
    * This is the top level collision call for the time step. Here all the narrow phase collision is
    * processed for the world contact list.
    */
   public void collide() {
-    // Update awake contacts.
-    Contact c = m_contactList;
-    while (c != null) {
-      Fixture fixtureA = c.getFixtureA();
-      Fixture fixtureB = c.getFixtureB();
-      int indexA = c.getChildIndexA();
-      int indexB = c.getChildIndexB();
-      Body bodyA = fixtureA.getBody();
-      Body bodyB = fixtureB.getBody();
-
-      // is this contact flagged for filtering?
-      if ((c.m_flags & Contact.FILTER_FLAG) == Contact.FILTER_FLAG) {
-        // Should these bodies collide?
-        if (bodyB.shouldCollide(bodyA) == false) {
-          Contact cNuke = c;
-          c = cNuke.getNext();
-          destroy(cNuke);
-          continue;
-        }
+    if (m_narrowPhaseSolver != null) {
+      collideParallel();
+      return;
+    }
 
-        // Check user filtering.
-        if (m_contactFilter != null && m_contactFilter.shouldCollide(fixtureA, fixtureB) == false) {
-          Contact cNuke = c;
-          c = cNuke.getNext();
-          destroy(cNuke);
-          continue;
-        }
+    // Update awake contacts, in list order.
+    final AwakeSet<Contact> awakeContacts = m_awakeContacts;
+    awakeContacts.begin();
+    Contact c;
+    while ((c = awakeContacts.next()) != null) {
+      collide(c);
+    }
+    awakeContacts.end();
+  }
+
+  private void collide(Contact c) {
+    ++m_contactsVisited;
+    Fixture fixtureA = c.getFixtureA();
+    Fixture fixtureB = c.getFixtureB();
+    int indexA = c.getChildIndexA();
+    int indexB = c.getChildIndexB();
+    Body bodyA = fixtureA.getBody();
+    Body bodyB = fixtureB.getBody();
+
+    // is this contact flagged for filtering?
+    if ((c.m_flags & Contact.FILTER_FLAG) == Contact.FILTER_FLAG) {
+      // Should these bodies collide?
+      if (bodyB.shouldCollide(bodyA) == false) {
+        destroy(c);
+        return;
+      }
 
-        // Clear the filtering flag.
-        c.m_flags &= ~Contact.FILTER_FLAG;
+      // Check user filtering.
+      if (m_contactFilter != null && m_contactFilter.shouldCollide(fixtureA, fixtureB) == false) {
+        destroy(c);
+        return;
       }
 
-      boolean activeA = bodyA.isAwake() && bodyA.m_type != BodyType.STATIC;
-      boolean activeB = bodyB.isAwake() && bodyB.m_type != BodyType.STATIC;
+      // Clear the filtering flag.
+      c.m_flags &= ~Contact.FILTER_FLAG;
+      updateAwake(c);
+    }
+
+    boolean activeA = bodyA.isAwake() && bodyA.m_type != BodyType.STATIC;
+    boolean activeB = bodyB.isAwake() && bodyB.m_type != BodyType.STATIC;
 
-      // At least one body must be awake and it must be dynamic or kinematic.
-      if (activeA == false && activeB == false) {
-        c = c.getNext();
+    // At least one body must be awake and it must be dynamic or kinematic.
+    if (activeA == false && activeB == false) {
+      return;
+    }
+
+    int proxyIdA = fixtureA.m_proxies[indexA].proxyId;
+    int proxyIdB = fixtureB.m_proxies[indexB].proxyId;
+    boolean overlap = m_broadPhase.testOverlap(proxyIdA, proxyIdB);
+
+    // Here we destroy contacts that cease to overlap in the broad-phase.
+    if (overlap == false) {
+      destroy(c);
+      return;
+    }
+
+    // The contact persists.
+    c.update(m_contactListener);
+  }
+
+  /**
+   * Same as {@link #collide()}, with the manifolds computed on the narrow phase solver. The
+   * contacts to update are picked first, then the manifolds are computed, then the destructions,
+   * the touching changes and the listener calls happen in list order, as in the serial loop. The
+   * contact filter is called before any listener.
+   */
+  private void collideParallel() {
+    final AwakeSet<Contact> awakeContacts = m_awakeContacts;
+    final int slots = awakeContacts.begin();
+    if (m_collideContacts.length < slots) {
+      m_collideContacts = new Contact[slots * 2];
+      m_collideActions = new byte[slots * 2];
+      m_updateContacts = new Contact[slots * 2];
+    }
+    final Contact[] contacts = m_collideContacts;
+    final byte[] actions = m_collideActions;
+    final Contact[] updates = m_updateContacts;
+    int count = 0;
+    int updateCount = 0;
+
+    for (int i = 0; i < slots; i++) {
+      Contact c = awakeContacts.get(i);
+      if (c == null) {
         continue;
       }
+      ++m_contactsVisited;
+      contacts[count] = c;
+      actions[count] = collideAction(c);
+      if (actions[count] == COLLIDE_UPDATE) {
+        updates[updateCount++] = c;
+      }
+      count++;
+    }
 
-      int proxyIdA = fixtureA.m_proxies[indexA].proxyId;
-      int proxyIdB = fixtureB.m_proxies[indexB].proxyId;
-      boolean overlap = m_broadPhase.testOverlap(proxyIdA, proxyIdB);
+    m_narrowPhaseSolver.updateManifolds(updates, updateCount);
 
-      // Here we destroy contacts that cease to overlap in the broad-phase.
-      if (overlap == false) {
-        Contact cNuke = c;
-        c = cNuke.getNext();
-        destroy(cNuke);
-        continue;
+    for (int i = 0; i < count; i++) {
+      Contact c = contacts[i];
+      contacts[i] = null;
+
+      // Contacts that were not awake when the step began, before this one in the list.
+      Contact added;
+      while ((added = awakeContacts.nextAdded(c.m_sequence)) != null) {
+        collide(added);
       }
+      awakeContacts.visit(c);
+
+      switch (actions[i]) {
+        case COLLIDE_DESTROY:
+          destroy(c);
+          break;
+        case COLLIDE_UPDATE:
+          c.finishUpdate(m_contactListener);
+          updateAwake(c);
+          break;
+        default:
+          // A contact above may have woken up one of the bodies.
+          if (isActive(c)) {
+            if (overlaps(c)) {
+              c.update(m_contactListener);
+            } else {
+              destroy(c);
+              break;
+            }
+          }
+          updateAwake(c);
+          break;
+      }
+    }
+    Contact added;
+    while ((added = awakeContacts.nextAdded(Long.MIN_VALUE)) != null) {
+      collide(added);
+    }
+    awakeContacts.end();
 
-      // The contact persists.
-      c.update(m_contactListener);
-      c = c.getNext();
+    for (int i = 0; i < updateCount; i++) {
+      updates[i] = null;
     }
   }
+
+  /**
+   * Filter the contact as the serial loop does, and tell what to do next with it.
+   */
+  private byte collideAction(Contact c) {
+    if ((c.m_flags & Contact.FILTER_FLAG) == Contact.FILTER_FLAG) {
+      Fixture fixtureA = c.getFixtureA();
+      Fixture fixtureB = c.getFixtureB();
+      if (fixtureB.getBody().shouldCollide(fixtureA.getBody()) == false) {
+        return COLLIDE_DESTROY;
+      }
+      if (m_contactFilter != null && m_contactFilter.shouldCollide(fixtureA, fixtureB) == false) {
+        return COLLIDE_DESTROY;
+      }
+      c.m_flags &= ~Contact.FILTER_FLAG;
+    }
+
+    if (!isActive(c)) {
+      return COLLIDE_INACTIVE;
+    }
+    return overlaps(c) ? COLLIDE_UPDATE : COLLIDE_DESTROY;
+  }
+
+  /**
+   * At least one body must be awake and it must be dynamic or kinematic.
+   */
+  private static boolean isActive(Contact c) {
+    Body bodyA = c.getFixtureA().getBody();
+    Body bodyB = c.getFixtureB().getBody();
+    boolean activeA = bodyA.isAwake() && bodyA.m_type != BodyType.STATIC;
+    boolean activeB = bodyB.isAwake() && bodyB.m_type != BodyType.STATIC;
+    return activeA || activeB;
+  }
+
+  private boolean overlaps(Contact c) {
+    int proxyIdA = c.getFixtureA().m_proxies[c.getChildIndexA()].proxyId;
+    int proxyIdB = c.getFixtureB().m_proxies[c.getChildIndexB()].proxyId;
+    return m_broadPhase.testOverlap(proxyIdA, proxyIdB);
+  }
+
 }
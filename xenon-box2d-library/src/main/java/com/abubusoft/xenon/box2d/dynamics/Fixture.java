@@ -155,7 +155,7 @@ public class Fixture {
       Fixture fixtureA = contact.getFixtureA();
       Fixture fixtureB = contact.getFixtureB();
       if (fixtureA == this || fixtureB == this) {
-        contact.flagForFiltering();
+        m_body.m_world.m_contactManager.flagForFiltering(contact);
       }
       edge = edge.next;
     }
@@ -33,10 +33,12 @@ import com.abubusoft.xenon.box2d.common.Vec2;
 import com.abubusoft.xenon.box2d.dynamics.contacts.Contact;
 import com.abubusoft.xenon.box2d.dynamics.contacts.ContactSolver;
 import com.abubusoft.xenon.box2d.dynamics.contacts.ContactSolver.ContactSolverDef;
+import com.abubusoft.xenon.box2d.dynamics.contacts.FlatContactSolver;
 import com.abubusoft.xenon.box2d.dynamics.contacts.ContactVelocityConstraint;
 import com.abubusoft.xenon.box2d.dynamics.contacts.Position;
 import com.abubusoft.xenon.box2d.dynamics.contacts.Velocity;
 import com.abubusoft.xenon.box2d.dynamics.joints.Joint;
+import com.abubusoft.xenon.box2d.pooling.IWorldPool;
 
 /*
  Position Correction Notes
@@ -164,6 +166,7 @@ import com.abubusoft.xenon.box2d.dynamics.joints.Joint;
 public class Island {
 
   public ContactListener m_listener;
+  public IWorldPool m_pool;
 
   public Body[] m_bodies;
   public Contact[] m_contacts;
@@ -185,7 +188,7 @@ public class Island {
   }
 
   public void init(int bodyCapacity, int contactCapacity, int jointCapacity,
-      ContactListener listener) {
+      ContactListener listener, IWorldPool pool) {
     // System.out.println("Initializing Island");
     m_bodyCapacity = bodyCapacity;
     m_contactCapacity = contactCapacity;
@@ -195,21 +198,24 @@ public class Island {
     m_jointCount = 0;
 
     m_listener = listener;
+    m_pool = pool;
 
+    // The capacities follow the world counts: grow with room, not at each new contact.
     if (m_bodies == null || m_bodyCapacity > m_bodies.length) {
-      m_bodies = new Body[m_bodyCapacity];
+      m_bodies = new Body[grownCapacity(m_bodies == null ? 0 : m_bodies.length, m_bodyCapacity)];
     }
     if (m_joints == null || m_jointCapacity > m_joints.length) {
-      m_joints = new Joint[m_jointCapacity];
+      m_joints = new Joint[grownCapacity(m_joints == null ? 0 : m_joints.length, m_jointCapacity)];
     }
     if (m_contacts == null || m_contactCapacity > m_contacts.length) {
-      m_contacts = new Contact[m_contactCapacity];
+      m_contacts =
+          new Contact[grownCapacity(m_contacts == null ? 0 : m_contacts.length, m_contactCapacity)];
     }
 
     // dynamic array
     if (m_velocities == null || m_bodyCapacity > m_velocities.length) {
       final Velocity[] old = m_velocities == null ? new Velocity[0] : m_velocities;
-      m_velocities = new Velocity[m_bodyCapacity];
+      m_velocities = new Velocity[m_bodies.length];
       System.arraycopy(old, 0, m_velocities, 0, old.length);
       for (int i = old.length; i < m_velocities.length; i++) {
         m_velocities[i] = new Velocity();
@@ -219,7 +225,7 @@ public class Island {
     // dynamic array
     if (m_positions == null || m_bodyCapacity > m_positions.length) {
       final Position[] old = m_positions == null ? new Position[0] : m_positions;
-      m_positions = new Position[m_bodyCapacity];
+      m_positions = new Position[m_bodies.length];
       System.arraycopy(old, 0, m_positions, 0, old.length);
       for (int i = old.length; i < m_positions.length; i++) {
         m_positions[i] = new Position();
@@ -227,19 +233,44 @@ public class Island {
     }
   }
 
+  private static int grownCapacity(int current, int needed) {
+    return Math.max(needed, current + (current >> 1));
+  }
+
   public void clear() {
     m_bodyCount = 0;
     m_contactCount = 0;
     m_jointCount = 0;
   }
 
-  private final ContactSolver contactSolver = new ContactSolver();
+  private final ContactSolver objectContactSolver = new ContactSolver();
+  private FlatContactSolver flatContactSolver;
+  private ContactSolver contactSolver = objectContactSolver;
   private final Timer timer = new Timer();
   private final SolverData solverData = new SolverData();
   private final ContactSolverDef solverDef = new ContactSolverDef();
 
   public void solve(Profile profile, TimeStep step, Vec2 gravity, boolean allowSleep) {
+    prepare(profile, step, gravity);
+
+    boolean positionSolved = solveConstraints(profile, step, true);
+
+    report(contactSolver.m_velocityConstraints);
 
+    if (allowSleep && updateSleepTime(step.dt) && positionSolved) {
+      for (int i = 0; i < m_bodyCount; ++i) {
+        Body b = m_bodies[i];
+        b.setAwake(false);
+      }
+    }
+  }
+
+  /**
+   * Integrates velocities and initializes the contact and joint constraints. This reads the
+   * {@link Body#m_islandIndex} of static bodies, which are shared between islands, so it must run
+   * right after the island has been built.
+   */
+  void prepare(Profile profile, TimeStep step, Vec2 gravity) {
     // System.out.println("Solving Island");
     float h = step.dt;
 
@@ -290,6 +321,7 @@ public class Island {
     solverData.step = step;
     solverData.positions = m_positions;
     solverData.velocities = m_velocities;
+    solverData.pool = m_pool;
 
     // Initialize velocity constraints.
     solverDef.step = step;
@@ -298,6 +330,14 @@ public class Island {
     solverDef.positions = m_positions;
     solverDef.velocities = m_velocities;
 
+    if (step.flatContactSolver) {
+      if (flatContactSolver == null) {
+        flatContactSolver = new FlatContactSolver();
+      }
+      contactSolver = flatContactSolver;
+    } else {
+      contactSolver = objectContactSolver;
+    }
     contactSolver.init(solverDef);
     // System.out.println("island init vel");
     contactSolver.initializeVelocityConstraints();
@@ -311,7 +351,18 @@ public class Island {
       m_joints[i].initVelocityConstraints(solverData);
     }
 
-    profile.solveInit.accum(timer.getMilliseconds());
+    profile.solveInit.accumNanos(timer.getNanoseconds());
+  }
+
+  /**
+   * Runs the velocity and position iterations of a prepared island and copies the result back to
+   * the bodies. When <code>syncStatic</code> is false static bodies, which may be shared with
+   * other islands, are not written.
+   * 
+   * @return true if the position errors are below tolerance
+   */
+  boolean solveConstraints(Profile profile, TimeStep step, boolean syncStatic) {
+    float h = step.dt;
 
     // Solve velocity constraints
     timer.reset();
@@ -326,7 +377,7 @@ public class Island {
 
     // Store impulses for warm starting
     contactSolver.storeImpulses();
-    profile.solveVelocity.accum(timer.getMilliseconds());
+    profile.solveVelocity.accumNanos(timer.getNanoseconds());
 
     // Integrate positions
     for (int i = 0; i < m_bodyCount; ++i) {
@@ -383,6 +434,9 @@ public class Island {
     // Copy state buffers back to the bodies
     for (int i = 0; i < m_bodyCount; ++i) {
       Body body = m_bodies[i];
+      if (!syncStatic && body.m_type == BodyType.STATIC) {
+        continue;
+      }
       body.m_sweep.c.x = m_positions[i].c.x;
       body.m_sweep.c.y = m_positions[i].c.y;
       body.m_sweep.a = m_positions[i].a;
@@ -392,38 +446,75 @@ public class Island {
       body.synchronizeTransform();
     }
 
-    profile.solvePosition.accum(timer.getMilliseconds());
+    profile.solvePosition.accumNanos(timer.getNanoseconds());
 
-    report(contactSolver.m_velocityConstraints);
+    return positionSolved;
+  }
 
-    if (allowSleep) {
-      float minSleepTime = Float.MAX_VALUE;
+  /**
+   * Advances the sleep time of the non static bodies of the island.
+   * 
+   * @return true if every body has been resting long enough to fall asleep
+   */
+  boolean updateSleepTime(float h) {
+    float minSleepTime = Float.MAX_VALUE;
 
-      final float linTolSqr = Settings.linearSleepTolerance * Settings.linearSleepTolerance;
-      final float angTolSqr = Settings.angularSleepTolerance * Settings.angularSleepTolerance;
+    final float linTolSqr = Settings.linearSleepTolerance * Settings.linearSleepTolerance;
+    final float angTolSqr = Settings.angularSleepTolerance * Settings.angularSleepTolerance;
 
-      for (int i = 0; i < m_bodyCount; ++i) {
-        Body b = m_bodies[i];
-        if (b.getType() == BodyType.STATIC) {
-          continue;
-        }
-
-        if ((b.m_flags & Body.e_autoSleepFlag) == 0
-            || b.m_angularVelocity * b.m_angularVelocity > angTolSqr
-            || Vec2.dot(b.m_linearVelocity, b.m_linearVelocity) > linTolSqr) {
-          b.m_sleepTime = 0.0f;
-          minSleepTime = 0.0f;
-        } else {
-          b.m_sleepTime += h;
-          minSleepTime = MathUtils.min(minSleepTime, b.m_sleepTime);
-        }
+    for (int i = 0; i < m_bodyCount; ++i) {
+      Body b = m_bodies[i];
+      if (b.getType() == BodyType.STATIC) {
+        continue;
+      }
+
+      if ((b.m_flags & Body.e_autoSleepFlag) == 0
+          || b.m_angularVelocity * b.m_angularVelocity > angTolSqr
+          || Vec2.dot(b.m_linearVelocity, b.m_linearVelocity) > linTolSqr) {
+        b.m_sleepTime = 0.0f;
+        minSleepTime = 0.0f;
+      } else {
+        b.m_sleepTime += h;
+        minSleepTime = MathUtils.min(minSleepTime, b.m_sleepTime);
+      }
+    }
+
+    return minSleepTime >= Settings.timeToSleep;
+  }
+
+  private boolean readyToSleep;
+
+  /**
+   * Solves an island that has already been prepared, using the given pool for joint temporaries.
+   * Only the island buffers and its non static bodies are written, so different islands can be
+   * solved concurrently. Listener reports and sleeping are left to {@link #finishPrepared()}.
+   */
+  void solvePrepared(Profile profile, TimeStep step, boolean allowSleep, IWorldPool pool) {
+    solverData.pool = pool;
+    boolean positionSolved = solveConstraints(profile, step, false);
+    readyToSleep = allowSleep && updateSleepTime(step.dt) && positionSolved;
+    solverData.pool = m_pool;
+  }
+
+  /**
+   * Reports the impulses of a island solved with {@link #solvePrepared} and puts it to sleep if
+   * needed. Static bodies are woken first, as the serial solver does when it builds each island, so
+   * their awake flag ends up the same.
+   */
+  void finishPrepared() {
+    for (int i = 0; i < m_bodyCount; ++i) {
+      Body b = m_bodies[i];
+      if (b.getType() == BodyType.STATIC) {
+        b.setAwake(true);
       }
+    }
 
-      if (minSleepTime >= Settings.timeToSleep && positionSolved) {
-        for (int i = 0; i < m_bodyCount; ++i) {
-          Body b = m_bodies[i];
-          b.setAwake(false);
-        }
+    report(contactSolver.m_velocityConstraints);
+
+    if (readyToSleep) {
+      for (int i = 0; i < m_bodyCount; ++i) {
+        Body b = m_bodies[i];
+        b.setAwake(false);
       }
     }
   }
@@ -0,0 +1,151 @@
+package com.abubusoft.xenon.box2d.dynamics;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.abubusoft.xenon.box2d.common.Vec2;
+import com.abubusoft.xenon.box2d.common.WorkerPool;
+import com.abubusoft.xenon.box2d.pooling.IWorldPool;
+import com.abubusoft.xenon.box2d.pooling.normal.DefaultWorldPool;
+
+/**
+ * Solves the islands of a time step on a set of worker threads. The world builds and prepares the
+ * islands serially, the velocity and position iterations run concurrently, then the contact
+ * listener reports and the sleep updates are replayed in island order. The result does not depend
+ * on the number of workers.
+ *
+ * Each worker owns its world pool, every island owns its contact solver. The calling thread works
+ * as the first worker, so a solver with one worker never leaves the stepping thread.
+ *
+ * @see World#setIslandSolver(ParallelIslandSolver)
+ */
+public class ParallelIslandSolver {
+
+  private final WorkerPool m_pool;
+  private final Worker[] m_workers;
+
+  private Island[] m_islands = new Island[16];
+  private int m_islandCount;
+
+  private final AtomicInteger m_nextIsland = new AtomicInteger();
+
+  private TimeStep m_step;
+  private boolean m_allowSleep;
+
+  /**
+   * Create a solver with its own daemon threads.
+   *
+   * @param workerCount number of threads solving islands, including the stepping thread.
+   */
+  public ParallelIslandSolver(int workerCount) {
+    this(workerCount, null);
+  }
+
+  /**
+   * Create a solver that runs its helper tasks on the given executor.
+   *
+   * @see WorkerPool#WorkerPool(int, ExecutorService, String)
+   */
+  public ParallelIslandSolver(int workerCount, ExecutorService executor) {
+    m_pool = new WorkerPool(workerCount, executor, "box2d-island-solver");
+    m_workers = new Worker[workerCount];
+    for (int i = 0; i < workerCount; i++) {
+      m_workers[i] = new Worker();
+    }
+  }
+
+  public int getWorkerCount() {
+    return m_pool.getWorkerCount();
+  }
+
+  /**
+   * Stop the threads created by this solver.
+   */
+  public void shutdown() {
+    m_pool.shutdown();
+  }
+
+  /**
+   * Copy a freshly built island and prepare it. Must be called before the next island is built,
+   * while the island indices of its static bodies are still valid.
+   */
+  void add(Island source, Profile profile, TimeStep step, Vec2 gravity) {
+    if (m_islandCount == m_islands.length) {
+      Island[] old = m_islands;
+      m_islands = new Island[old.length * 2];
+      System.arraycopy(old, 0, m_islands, 0, old.length);
+    }
+    Island island = m_islands[m_islandCount];
+    if (island == null) {
+      island = new Island();
+      m_islands[m_islandCount] = island;
+    }
+
+    island.init(source.m_bodyCount, source.m_contactCount, source.m_jointCount,
+        source.m_listener, source.m_pool);
+    System.arraycopy(source.m_bodies, 0, island.m_bodies, 0, source.m_bodyCount);
+    System.arraycopy(source.m_contacts, 0, island.m_contacts, 0, source.m_contactCount);
+    System.arraycopy(source.m_joints, 0, island.m_joints, 0, source.m_jointCount);
+    island.m_bodyCount = source.m_bodyCount;
+    island.m_contactCount = source.m_contactCount;
+    island.m_jointCount = source.m_jointCount;
+
+    island.prepare(profile, step, gravity);
+    ++m_islandCount;
+  }
+
+  /**
+   * Solve all the islands added since the last call, then report them in the order they were
+   * added.
+   */
+  void solve(Profile profile, TimeStep step, boolean allowSleep) {
+    if (m_islandCount == 0) {
+      return;
+    }
+
+    m_step = step;
+    m_allowSleep = allowSleep;
+    m_nextIsland.set(0);
+
+    int workers = Math.min(m_pool.getWorkerCount(), m_islandCount);
+    try {
+      m_pool.run(m_solveIslands, workers);
+    } catch (RuntimeException e) {
+      m_islandCount = 0;
+      throw e;
+    } catch (Error e) {
+      m_islandCount = 0;
+      throw e;
+    }
+
+    for (int i = 0; i < workers; i++) {
+      Profile workerProfile = m_workers[i].profile;
+      profile.solveVelocity.accumNanos(workerProfile.solveVelocity.accumNanos);
+      profile.solvePosition.accumNanos(workerProfile.solvePosition.accumNanos);
+    }
+
+    for (int i = 0; i < m_islandCount; i++) {
+      m_islands[i].finishPrepared();
+    }
+    m_islandCount = 0;
+  }
+
+  private final WorkerPool.Task m_solveIslands = new WorkerPool.Task() {
+    @Override
+    public void run(int worker) {
+      final Worker w = m_workers[worker];
+      w.profile.solveVelocity.startAccum();
+      w.profile.solvePosition.startAccum();
+      int index;
+      while ((index = m_nextIsland.getAndIncrement()) < m_islandCount && !m_pool.isFailed()) {
+        m_islands[index].solvePrepared(w.profile, m_step, m_allowSleep, w.pool);
+      }
+    }
+  };
+
+  private static class Worker {
+    final IWorldPool pool =
+        new DefaultWorldPool(World.WORLD_POOL_SIZE, World.WORLD_POOL_CONTAINER_SIZE);
+    final Profile profile = new Profile();
+  }
+}
@@ -0,0 +1,106 @@
+package com.abubusoft.xenon.box2d.dynamics;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.abubusoft.xenon.box2d.common.WorkerPool;
+import com.abubusoft.xenon.box2d.dynamics.contacts.Contact;
+import com.abubusoft.xenon.box2d.pooling.IWorldPool;
+import com.abubusoft.xenon.box2d.pooling.normal.DefaultWorldPool;
+
+/**
+ * Computes the contact manifolds of a time step on a set of worker threads. The contact manager
+ * picks the contacts to update serially, the manifolds are computed concurrently, then the
+ * touching state changes, the contact destructions and the listener calls are applied in the
+ * order of the contact list. The result is the same as the serial narrow phase and does not depend
+ * on the number of workers.
+ *
+ * Each worker owns its world pool, and so its collision object. The calling thread works as the
+ * first worker.
+ *
+ * @see World#setNarrowPhaseSolver(ParallelNarrowPhaseSolver)
+ */
+public class ParallelNarrowPhaseSolver {
+
+  /** Contacts taken at once by a worker. */
+  static final int CONTACTS_PER_TASK = 32;
+
+  private final WorkerPool m_pool;
+  private final IWorldPool[] m_worldPools;
+
+  private Contact[] m_contacts;
+  private int m_contactCount;
+
+  private final AtomicInteger m_nextTask = new AtomicInteger();
+
+  /**
+   * Create a solver with its own daemon threads.
+   *
+   * @param workerCount number of threads computing manifolds, including the stepping thread.
+   */
+  public ParallelNarrowPhaseSolver(int workerCount) {
+    this(workerCount, null);
+  }
+
+  /**
+   * Create a solver that runs its helper tasks on the given executor.
+   *
+   * @see WorkerPool#WorkerPool(int, ExecutorService, String)
+   */
+  public ParallelNarrowPhaseSolver(int workerCount, ExecutorService executor) {
+    m_pool = new WorkerPool(workerCount, executor, "box2d-narrow-phase-solver");
+    m_worldPools = new IWorldPool[workerCount];
+    for (int i = 0; i < workerCount; i++) {
+      m_worldPools[i] =
+          new DefaultWorldPool(World.WORLD_POOL_SIZE, World.WORLD_POOL_CONTAINER_SIZE);
+    }
+  }
+
+  public int getWorkerCount() {
+    return m_pool.getWorkerCount();
+  }
+
+  /**
+   * Stop the threads created by this solver.
+   */
+  public void shutdown() {
+    m_pool.shutdown();
+  }
+
+  /**
+   * Call {@link Contact#updateManifold} on the given contacts and wait for all of them to complete.
+   */
+  void updateManifolds(Contact[] contacts, int count) {
+    if (count == 0) {
+      return;
+    }
+
+    m_contacts = contacts;
+    m_contactCount = count;
+    m_nextTask.set(0);
+
+    int tasks = (count + CONTACTS_PER_TASK - 1) / CONTACTS_PER_TASK;
+    try {
+      m_pool.run(m_updateManifolds, Math.min(m_pool.getWorkerCount(), tasks));
+    } finally {
+      m_contacts = null;
+    }
+  }
+
+  private final WorkerPool.Task m_updateManifolds = new WorkerPool.Task() {
+    @Override
+    public void run(int worker) {
+      final IWorldPool pool = m_worldPools[worker];
+      final Contact[] contacts = m_contacts;
+      final int count = m_contactCount;
+      int begin;
+      while ((begin = m_nextTask.getAndIncrement() * CONTACTS_PER_TASK) < count
+          && !m_pool.isFailed()) {
+        final int end = Math.min(begin + CONTACTS_PER_TASK, count);
+        for (int i = begin; i < end; i++) {
+          contacts[i].updateManifold(pool.getCollision());
+        }
+      }
+    }
+  };
+}
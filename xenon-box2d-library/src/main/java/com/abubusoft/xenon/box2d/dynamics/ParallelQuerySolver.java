@@ -0,0 +1,125 @@
+package com.abubusoft.xenon.box2d.dynamics;
+
+import java.util.concurrent.ExecutorService;
+
+import com.abubusoft.xenon.box2d.collision.broadphase.BroadPhase;
+import com.abubusoft.xenon.box2d.common.WorkerPool;
+
+/**
+ * Runs the batches of {@link World#raycast(RayCastBatch)} and
+ * {@link World#queryAABB(AABBQueryBatch)} on a set of worker threads. Nothing changes the world
+ * during a batch, so each worker walks the broad-phase with its own working memory. A batch is
+ * split in consecutive ranges, one per worker, and the results do not depend on the number of
+ * workers.
+ *
+ * The calling thread works as the first worker.
+ *
+ * @see World#setQuerySolver(ParallelQuerySolver)
+ */
+public class ParallelQuerySolver {
+
+  /** Rays or boxes below which a worker is not worth waking up. */
+  static final int MIN_ITEMS_PER_WORKER = 64;
+
+  private final WorkerPool m_pool;
+  private final int[] m_begin;
+  private final int[] m_end;
+  private final BatchQueryWorker[] m_workers;
+
+  private BroadPhase m_broadPhase;
+  private RayCastBatch m_rays;
+  private AABBQueryBatch m_queries;
+
+  /**
+   * Create a solver with its own daemon threads.
+   *
+   * @param workerCount number of threads running a batch, including the calling thread.
+   */
+  public ParallelQuerySolver(int workerCount) {
+    this(workerCount, null);
+  }
+
+  /**
+   * Create a solver that runs its helper tasks on the given executor.
+   *
+   * @see WorkerPool#WorkerPool(int, ExecutorService, String)
+   */
+  public ParallelQuerySolver(int workerCount, ExecutorService executor) {
+    m_pool = new WorkerPool(workerCount, executor, "box2d-query-solver");
+    m_begin = new int[workerCount];
+    m_end = new int[workerCount];
+    m_workers = new BatchQueryWorker[workerCount];
+    for (int i = 0; i < workerCount; i++) {
+      m_workers[i] = new BatchQueryWorker();
+    }
+  }
+
+  public int getWorkerCount() {
+    return m_pool.getWorkerCount();
+  }
+
+  /**
+   * Stop the threads created by this solver.
+   */
+  public void shutdown() {
+    m_pool.shutdown();
+  }
+
+  void raycast(BroadPhase broadPhase, RayCastBatch batch) {
+    m_rays = batch;
+    run(broadPhase, batch.getCount());
+    m_rays = null;
+  }
+
+  void query(BroadPhase broadPhase, AABBQueryBatch batch) {
+    m_queries = batch;
+    int rangeCount = run(broadPhase, batch.getCount());
+    m_queries = null;
+    BatchQueryWorker.collect(batch, m_workers, rangeCount);
+  }
+
+  /**
+   * Split the items of the current batch in ranges and wait for all of them to complete.
+   *
+   * @return the number of ranges, the workers with an index below it ran one.
+   */
+  private int run(BroadPhase broadPhase, int itemCount) {
+    final int workerCount = m_pool.getWorkerCount();
+    int rangeCount = itemCount / MIN_ITEMS_PER_WORKER;
+    rangeCount = rangeCount < 1 ? 1 : (rangeCount > workerCount ? workerCount : rangeCount);
+    for (int i = 0; i < rangeCount; i++) {
+      m_begin[i] = (int) ((long) itemCount * i / rangeCount);
+      m_end[i] = (int) ((long) itemCount * (i + 1) / rangeCount);
+    }
+
+    if (rangeCount == 1) {
+      runRange(0, broadPhase, 0, itemCount);
+      return 1;
+    }
+
+    // the workers only read the broad-phase
+    broadPhase.flushUpdates();
+    m_broadPhase = broadPhase;
+    try {
+      m_pool.run(m_runRange, rangeCount);
+    } finally {
+      m_broadPhase = null;
+    }
+    return rangeCount;
+  }
+
+  private void runRange(int worker, BroadPhase broadPhase, int begin, int end) {
+    if (m_rays != null) {
+      m_workers[worker].raycast(broadPhase, m_rays, begin, end);
+    } else {
+      m_workers[worker].query(broadPhase, m_queries, begin, end);
+    }
+  }
+
+  private final WorkerPool.Task m_runRange = new WorkerPool.Task() {
+    @Override
+    public void run(int worker) {
+      runRange(worker, m_broadPhase, m_begin[worker], m_end[worker]);
+    }
+  };
+}
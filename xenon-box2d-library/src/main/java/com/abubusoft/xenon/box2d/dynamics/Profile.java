@@ -39,6 +39,7 @@ public class Profile {
     float min;
     float max;
     float accum;
+    long accumNanos;
 
     public ProfileEntry() {
       min = Float.MAX_VALUE;
@@ -54,12 +55,21 @@ public class Profile {
 
     public void startAccum() {
       accum = 0;
+      accumNanos = 0;
     }
 
     public void accum(float value) {
       accum += value;
     }
 
+    /**
+     * Accumulate a duration given in nanoseconds, kept as such for {@link Profile#getNanos}.
+     */
+    public void accumNanos(long nanos) {
+      accum += nanos / 1000 * 1f / 1000;
+      accumNanos += nanos;
+    }
+
     public void endAccum() {
       record(accum);
     }
@@ -81,6 +91,234 @@ public class Profile {
   public final ProfileEntry broadphase = new ProfileEntry();
   public final ProfileEntry solveTOI = new ProfileEntry();
 
+  /**
+   * Phases of a step, timed in nanoseconds when the world has a profile sink.
+   */
+  public enum Phase {
+    /** The whole step. */
+    STEP,
+    /** Finding the new contacts from the broad-phase pairs. */
+    PAIRS,
+    /** Updating the contact manifolds. */
+    NARROW_PHASE,
+    PARTICLES,
+    /** Building the islands, the rest of the solve not in the phases below. */
+    ISLANDS,
+    /** Integrating velocities and initializing the constraints. */
+    SOLVE_INIT,
+    /** With a parallel island solver, the sum of the times of its workers. */
+    VELOCITY,
+    /** With a parallel island solver, the sum of the times of its workers. */
+    POSITION,
+    /** Moving the fixture proxies in the broad-phase. */
+    BROADPHASE,
+    /** Continuous collision, including its own pairs and narrow phase. */
+    TOI
+  }
+
+  /**
+   * What a step did, counted at each step.
+   */
+  public enum Counter {
+    /** Overlapping proxy pairs reported by the broad-phase. */
+    PAIRS_TESTED,
+    CONTACTS_CREATED,
+    CONTACTS_DESTROYED,
+    ISLANDS,
+    TOI_EVENTS,
+    /** Time of impact events not solved, because the event budget of the step ran out. */
+    TOI_DEFERRED,
+    /** Times the world pool had to allocate, when it is a default or a growable world pool. */
+    POOL_MISSES,
+    /** Bodies visited; sleeping bodies are not, so this grows with the awake part of the world. */
+    BODIES_VISITED,
+    /** Contacts visited; the ones between sleeping bodies are not. */
+    CONTACTS_VISITED
+  }
+
+  private static final Phase[] PHASES = Phase.values();
+  private static final Counter[] COUNTERS = Counter.values();
+
+  private final long[] nanos = new long[PHASES.length];
+  private final long[] counts = new long[COUNTERS.length];
+  private Histogram[] histograms;
+  private long stepCount;
+
+  /**
+   * @return the duration of the phase in the last step, 0 when it did not run or the world has no
+   *         profile sink.
+   */
+  public long getNanos(Phase phase) {
+    return nanos[phase.ordinal()];
+  }
+
+  /**
+   * @return the counter in the last step.
+   */
+  public long getCount(Counter counter) {
+    return counts[counter.ordinal()];
+  }
+
+  /**
+   * @return the durations of the phase over the steps profiled with a sink, null before the first.
+   */
+  public Histogram getHistogram(Phase phase) {
+    return histograms == null ? null : histograms[phase.ordinal()];
+  }
+
+  /**
+   * @return the number of steps profiled with a sink.
+   */
+  public long getStepCount() {
+    return stepCount;
+  }
+
+  /**
+   * Forget the histograms and the number of profiled steps.
+   */
+  public void resetHistograms() {
+    if (histograms != null) {
+      for (Histogram histogram : histograms) {
+        histogram.reset();
+      }
+    }
+    stepCount = 0;
+  }
+
+  void beginStep(boolean timed) {
+    if (timed) {
+      for (int i = 0; i < nanos.length; i++) {
+        nanos[i] = 0;
+      }
+    }
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = 0;
+    }
+  }
+
+  void addNanos(Phase phase, long value) {
+    nanos[phase.ordinal()] += value;
+  }
+
+  void addCount(Counter counter, long value) {
+    counts[counter.ordinal()] += value;
+  }
+
+  /**
+   * Record the phase durations of the step in the histograms.
+   */
+  void endTimedStep() {
+    if (histograms == null) {
+      histograms = new Histogram[PHASES.length];
+      for (int i = 0; i < histograms.length; i++) {
+        histograms[i] = new Histogram();
+      }
+    }
+    for (int i = 0; i < nanos.length; i++) {
+      histograms[i].record(nanos[i]);
+    }
+    stepCount++;
+  }
+
+  /**
+   * Distribution of durations in nanoseconds, in buckets less than 7% wide, without allocation once
+   * created.
+   */
+  public static class Histogram {
+    // 16 buckets for each power of 2
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    private final long[] buckets = new long[64 << SUB_BITS];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    public void record(long value) {
+      if (value < 0) {
+        value = 0;
+      }
+      buckets[bucket(value)]++;
+      count++;
+      sum += value;
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+    }
+
+    private static int bucket(long value) {
+      if (value < SUB_COUNT) {
+        return (int) value;
+      }
+      int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+      return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) - SUB_COUNT);
+    }
+
+    private static long bucketMax(int bucket) {
+      if (bucket < SUB_COUNT) {
+        return bucket;
+      }
+      int shift = (bucket >>> SUB_BITS) - 1;
+      long sub = SUB_COUNT + (bucket & (SUB_COUNT - 1));
+      return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * @param percent from 0 to 100.
+     * @return a value that percent of the recorded values do not exceed, to the bucket precision. 0
+     *         when nothing was recorded.
+     */
+    public long getPercentile(double percent) {
+      if (count == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(percent / 100 * count);
+      if (rank < 1) {
+        rank = 1;
+      }
+      long seen = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        seen += buckets[i];
+        if (seen >= rank) {
+          return Math.min(bucketMax(i), max);
+        }
+      }
+      return max;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getMin() {
+      return count == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+      return count == 0 ? 0 : max;
+    }
+
+    public double getMean() {
+      return count == 0 ? 0 : (double) sum / count;
+    }
+
+    public void reset() {
+      for (int i = 0; i < buckets.length; i++) {
+        buckets[i] = 0;
+      }
+      count = 0;
+      sum = 0;
+      min = Long.MAX_VALUE;
+      max = Long.MIN_VALUE;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("p50 %d p90 %d p99 %d max %d ns", getPercentile(50), getPercentile(90),
+          getPercentile(99), getMax());
+    }
+  }
+
   public void toDebugStrings(List<String> strings) {
     strings.add("Profile:");
     strings.add(" step: " + step);
@@ -93,5 +331,10 @@ public class Profile {
     strings.add("   solvePosition: " + solvePosition);
     strings.add("   broadphase: " + broadphase);
     strings.add("  solveTOI: " + solveTOI);
+    strings.add(" visited: " + getCount(Counter.BODIES_VISITED) + " bodies, "
+        + getCount(Counter.CONTACTS_VISITED) + " contacts");
+    if (histograms != null) {
+      strings.add(" step histogram: " + histograms[Phase.STEP.ordinal()]);
+    }
   }
 }
@@ -0,0 +1,191 @@
+package com.abubusoft.xenon.box2d.dynamics;
+
+import com.abubusoft.xenon.box2d.common.MathUtils;
+import com.abubusoft.xenon.box2d.common.Vec2;
+
+/**
+ * A set of rays cast together by {@link World#raycast(RayCastBatch)}, with one result per ray: the
+ * closest fixture hit, or any fixture hit when only the visibility matters. The buffers grow with
+ * the number of rays and are reused, so a batch cast every step does not allocate.
+ *
+ * Like {@link World#raycast(com.abubusoft.xenon.box2d.callbacks.RayCastCallback, Vec2, Vec2)}, a
+ * ray ignores the shapes that contain its starting point.
+ *
+ * The hit is returned as a {@link Fixture} reference, not as an index: fixtures have no stable
+ * index in the world, and a broad-phase proxy id is reused as soon as its fixture is destroyed.
+ * The other results are kept in primitive arrays.
+ */
+public class RayCastBatch {
+
+  private float[] m_p1x = new float[0];
+  private float[] m_p1y = new float[0];
+  private float[] m_p2x = new float[0];
+  private float[] m_p2y = new float[0];
+  private int m_count;
+
+  private int m_maskBits = 0xFFFF;
+  private boolean m_ignoreSensors;
+  private boolean m_anyHit;
+
+  // results
+  Fixture[] m_fixture = new Fixture[0];
+  float[] m_fraction = new float[0];
+  float[] m_normalX = new float[0];
+  float[] m_normalY = new float[0];
+
+  /**
+   * Remove all the rays.
+   */
+  public void clear() {
+    for (int i = 0; i < m_count; i++) {
+      m_fixture[i] = null;
+    }
+    m_count = 0;
+  }
+
+  /**
+   * Add a ray from (x1, y1) to (x2, y2). The two points must differ.
+   *
+   * @return the index of the ray.
+   */
+  public int add(float x1, float y1, float x2, float y2) {
+    if (m_count == m_p1x.length) {
+      grow(MathUtils.max(16, m_count * 2));
+    }
+    m_p1x[m_count] = x1;
+    m_p1y[m_count] = y1;
+    m_p2x[m_count] = x2;
+    m_p2y[m_count] = y2;
+    m_fixture[m_count] = null;
+    return m_count++;
+  }
+
+  public int add(Vec2 point1, Vec2 point2) {
+    return add(point1.x, point1.y, point2.x, point2.y);
+  }
+
+  private void grow(int capacity) {
+    m_p1x = copyOf(m_p1x, capacity);
+    m_p1y = copyOf(m_p1y, capacity);
+    m_p2x = copyOf(m_p2x, capacity);
+    m_p2y = copyOf(m_p2y, capacity);
+    m_fraction = copyOf(m_fraction, capacity);
+    m_normalX = copyOf(m_normalX, capacity);
+    m_normalY = copyOf(m_normalY, capacity);
+    Fixture[] fixture = new Fixture[capacity];
+    System.arraycopy(m_fixture, 0, fixture, 0, m_count);
+    m_fixture = fixture;
+  }
+
+  private float[] copyOf(float[] old, int capacity) {
+    float[] array = new float[capacity];
+    System.arraycopy(old, 0, array, 0, m_count);
+    return array;
+  }
+
+  public int getCount() {
+    return m_count;
+  }
+
+  public float getStartX(int ray) {
+    return m_p1x[ray];
+  }
+
+  public float getStartY(int ray) {
+    return m_p1y[ray];
+  }
+
+  public float getEndX(int ray) {
+    return m_p2x[ray];
+  }
+
+  public float getEndY(int ray) {
+    return m_p2y[ray];
+  }
+
+  /**
+   * Only the fixtures with a category in the mask are hit. Default 0xFFFF.
+   */
+  public void setMaskBits(int maskBits) {
+    m_maskBits = maskBits;
+  }
+
+  public int getMaskBits() {
+    return m_maskBits;
+  }
+
+  /**
+   * Let the rays go through the sensors. Default false.
+   */
+  public void setIgnoreSensors(boolean flag) {
+    m_ignoreSensors = flag;
+  }
+
+  public boolean isIgnoreSensors() {
+    return m_ignoreSensors;
+  }
+
+  /**
+   * Stop each ray at the first fixture found instead of the closest one, for line of sight tests.
+   * Default false.
+   */
+  public void setAnyHit(boolean flag) {
+    m_anyHit = flag;
+  }
+
+  public boolean isAnyHit() {
+    return m_anyHit;
+  }
+
+  /**
+   * @return the fixture hit by the ray, or null if the ray hit nothing.
+   */
+  public Fixture getFixture(int ray) {
+    return m_fixture[ray];
+  }
+
+  public boolean hasHit(int ray) {
+    return m_fixture[ray] != null;
+  }
+
+  /**
+   * @return the fraction of the ray where the fixture was hit. Only valid if there is a hit.
+   */
+  public float getFraction(int ray) {
+    return m_fraction[ray];
+  }
+
+  public float getPointX(int ray) {
+    final float fraction = m_fraction[ray];
+    return (1 - fraction) * m_p1x[ray] + fraction * m_p2x[ray];
+  }
+
+  public float getPointY(int ray) {
+    final float fraction = m_fraction[ray];
+    return (1 - fraction) * m_p1y[ray] + fraction * m_p2y[ray];
+  }
+
+  public float getNormalX(int ray) {
+    return m_normalX[ray];
+  }
+
+  public float getNormalY(int ray) {
+    return m_normalY[ray];
+  }
+
+  /**
+   * Copy the hit point of a ray.
+   */
+  public void getPoint(int ray, Vec2 out) {
+    out.x = getPointX(ray);
+    out.y = getPointY(ray);
+  }
+
+  /**
+   * Copy the normal of the surface hit by a ray.
+   */
+  public void getNormal(int ray, Vec2 out) {
+    out.x = m_normalX[ray];
+    out.y = m_normalY[ray];
+  }
+}
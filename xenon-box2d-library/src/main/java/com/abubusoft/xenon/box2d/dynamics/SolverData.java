@@ -25,9 +25,11 @@ package com.abubusoft.xenon.box2d.dynamics;
 
 import com.abubusoft.xenon.box2d.dynamics.contacts.Position;
 import com.abubusoft.xenon.box2d.dynamics.contacts.Velocity;
+import com.abubusoft.xenon.box2d.pooling.IWorldPool;
 
 public class SolverData {
   public TimeStep step;
   public Position[] positions;
   public Velocity[] velocities;
+  public IWorldPool pool;
 }
@@ -0,0 +1,190 @@
+package com.abubusoft.xenon.box2d.dynamics;
+
+import com.abubusoft.xenon.box2d.dynamics.contacts.Contact;
+
+/**
+ * The candidate time of impact events of a step: the contacts with a cached time of impact before
+ * the end of the step, in a heap by time of impact, and the contacts to check again. The world
+ * computes the time of impact of a contact once, and after each event only checks again the
+ * contacts the event changed, instead of scanning all the contacts for the next event.
+ *
+ * Ties go to the contact first in the contact list, so the events are the ones of the scan.
+ */
+final class TOIQueue {
+
+  private Contact[] m_heap = new Contact[16];
+  private int m_count;
+
+  private Contact[] m_dirty = new Contact[16];
+  private int m_dirtyCount;
+
+  private boolean m_solving;
+
+  /**
+   * Start collecting the contacts to check again.
+   */
+  void begin() {
+    assert (m_count == 0 && m_dirtyCount == 0);
+    m_solving = true;
+  }
+
+  void end() {
+    while (m_count > 0) {
+      Contact c = m_heap[--m_count];
+      m_heap[m_count] = null;
+      c.m_toiIndex = -1;
+    }
+    while (m_dirtyCount > 0) {
+      Contact c = m_dirty[--m_dirtyCount];
+      m_dirty[m_dirtyCount] = null;
+      c.m_flags &= ~Contact.TOI_DIRTY_FLAG;
+    }
+    m_solving = false;
+  }
+
+  /**
+   * Check the contact again before the next event: its time of impact, or what decides if it has
+   * one, changed. Ignored out of the time of impact phase.
+   */
+  void markDirty(Contact c) {
+    if (!m_solving || (c.m_flags & Contact.TOI_DIRTY_FLAG) != 0) {
+      return;
+    }
+    c.m_flags |= Contact.TOI_DIRTY_FLAG;
+    if (m_dirtyCount == m_dirty.length) {
+      Contact[] old = m_dirty;
+      m_dirty = new Contact[old.length * 2];
+      System.arraycopy(old, 0, m_dirty, 0, old.length);
+    }
+    m_dirty[m_dirtyCount++] = c;
+  }
+
+  /**
+   * @return the contacts to check again, from 0 to {@link #dirtyCount()}.
+   */
+  Contact[] dirty() {
+    return m_dirty;
+  }
+
+  int dirtyCount() {
+    return m_dirtyCount;
+  }
+
+  /**
+   * Forget the first contacts to check again, once checked.
+   */
+  void clearDirty(int count) {
+    for (int i = 0; i < count; i++) {
+      m_dirty[i].m_flags &= ~Contact.TOI_DIRTY_FLAG;
+    }
+    System.arraycopy(m_dirty, count, m_dirty, 0, m_dirtyCount - count);
+    for (int i = m_dirtyCount - count; i < m_dirtyCount; i++) {
+      m_dirty[i] = null;
+    }
+    m_dirtyCount -= count;
+  }
+
+  int size() {
+    return m_count;
+  }
+
+  /**
+   * @return the contact with the first time of impact, null if none.
+   */
+  Contact peek() {
+    return m_count > 0 ? m_heap[0] : null;
+  }
+
+  /**
+   * Add the contact, or move it after its time of impact changed.
+   */
+  void update(Contact c) {
+    int i = c.m_toiIndex;
+    if (i == -1) {
+      if (m_count == m_heap.length) {
+        Contact[] old = m_heap;
+        m_heap = new Contact[old.length * 2];
+        System.arraycopy(old, 0, m_heap, 0, old.length);
+      }
+      i = m_count++;
+      m_heap[i] = c;
+      c.m_toiIndex = i;
+    }
+    siftDown(siftUp(i));
+  }
+
+  void remove(Contact c) {
+    final int i = c.m_toiIndex;
+    if (i == -1) {
+      return;
+    }
+    c.m_toiIndex = -1;
+    Contact last = m_heap[--m_count];
+    m_heap[m_count] = null;
+    if (last != c) {
+      m_heap[i] = last;
+      last.m_toiIndex = i;
+      siftDown(siftUp(i));
+    }
+  }
+
+  /**
+   * Forget the contact, before it is destroyed.
+   */
+  void discard(Contact c) {
+    remove(c);
+    if ((c.m_flags & Contact.TOI_DIRTY_FLAG) != 0) {
+      c.m_flags &= ~Contact.TOI_DIRTY_FLAG;
+      for (int j = 0; j < m_dirtyCount; j++) {
+        if (m_dirty[j] == c) {
+          System.arraycopy(m_dirty, j + 1, m_dirty, j, m_dirtyCount - j - 1);
+          m_dirty[--m_dirtyCount] = null;
+          break;
+        }
+      }
+    }
+  }
+
+  private int siftUp(int i) {
+    final Contact c = m_heap[i];
+    while (i > 0) {
+      int parent = (i - 1) >> 1;
+      Contact p = m_heap[parent];
+      if (!before(c, p)) {
+        break;
+      }
+      m_heap[i] = p;
+      p.m_toiIndex = i;
+      i = parent;
+    }
+    m_heap[i] = c;
+    c.m_toiIndex = i;
+    return i;
+  }
+
+  private void siftDown(int i) {
+    final Contact c = m_heap[i];
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= m_count) {
+        break;
+      }
+      if (child + 1 < m_count && before(m_heap[child + 1], m_heap[child])) {
+        child++;
+      }
+      Contact first = m_heap[child];
+      if (!before(first, c)) {
+        break;
+      }
+      m_heap[i] = first;
+      first.m_toiIndex = i;
+      i = child;
+    }
+    m_heap[i] = c;
+    c.m_toiIndex = i;
+  }
+
+  private static boolean before(Contact a, Contact b) {
+    return a.m_toi < b.m_toi || (a.m_toi == b.m_toi && a.m_sequence > b.m_sequence);
+  }
+}
@@ -43,4 +43,7 @@ public class TimeStep {
 	public int positionIterations;
 	
 	public boolean warmStarting;
+	
+	/** solve the contact velocities with the flat contact solver. */
+	public boolean flatContactSolver;
 }
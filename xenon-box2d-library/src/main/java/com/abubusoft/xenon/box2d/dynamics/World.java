@@ -23,6 +23,8 @@
  ******************************************************************************/
 package com.abubusoft.xenon.box2d.dynamics;
 
+import java.nio.ByteBuffer;
+
 import com.abubusoft.xenon.box2d.callbacks.ContactFilter;
 import com.abubusoft.xenon.box2d.callbacks.ContactListener;
 import com.abubusoft.xenon.box2d.callbacks.DebugDraw;
@@ -30,6 +32,7 @@ import com.abubusoft.xenon.box2d.callbacks.DestructionListener;
 import com.abubusoft.xenon.box2d.callbacks.ParticleDestructionListener;
 import com.abubusoft.xenon.box2d.callbacks.ParticleQueryCallback;
 import com.abubusoft.xenon.box2d.callbacks.ParticleRaycastCallback;
+import com.abubusoft.xenon.box2d.callbacks.ProfileSink;
 import com.abubusoft.xenon.box2d.callbacks.QueryCallback;
 import com.abubusoft.xenon.box2d.callbacks.RayCastCallback;
 import com.abubusoft.xenon.box2d.callbacks.TreeCallback;
@@ -64,6 +67,7 @@ import com.abubusoft.xenon.box2d.dynamics.joints.Joint;
 import com.abubusoft.xenon.box2d.dynamics.joints.JointDef;
 import com.abubusoft.xenon.box2d.dynamics.joints.JointEdge;
 import com.abubusoft.xenon.box2d.dynamics.joints.PulleyJoint;
+import com.abubusoft.xenon.box2d.particle.ParallelParticleSolver;
 import com.abubusoft.xenon.box2d.particle.ParticleBodyContact;
 import com.abubusoft.xenon.box2d.particle.ParticleColor;
 import com.abubusoft.xenon.box2d.particle.ParticleContact;
@@ -75,6 +79,7 @@ import com.abubusoft.xenon.box2d.pooling.IDynamicStack;
 import com.abubusoft.xenon.box2d.pooling.IWorldPool;
 import com.abubusoft.xenon.box2d.pooling.arrays.Vec2Array;
 import com.abubusoft.xenon.box2d.pooling.normal.DefaultWorldPool;
+import com.abubusoft.xenon.box2d.pooling.normal.GrowableWorldPool;
 
 /**
  * The world class manages all physics entities, dynamic simulation, and asynchronous queries. The
@@ -123,15 +128,49 @@ public class World {
 
   // these are for debugging the solver
   private boolean m_warmStarting;
+  private boolean m_flatContactSolver;
   private boolean m_continuousPhysics;
   private boolean m_subStepping;
 
   private boolean m_stepComplete;
+  private int m_toiEventBudget = -1;
 
   private Profile m_profile;
+  private ProfileSink m_profileSink;
+  // the phases are timed in this step
+  private boolean m_timed;
+  private long m_poolMisses;
 
   private ParticleSystem m_particleSystem;
 
+  private ParallelIslandSolver m_islandSolver;
+
+  private long m_bodySequence;
+
+  /**
+   * The bodies a step simulates: awake, active and not static.
+   */
+  final AwakeSet<Body> m_awakeBodies = new AwakeSet<Body>() {
+    @Override
+    long sequence(Body b) {
+      return b.m_sequence;
+    }
+
+    @Override
+    int index(Body b) {
+      return b.m_awakeIndex;
+    }
+
+    @Override
+    void setIndex(Body b, int index) {
+      b.m_awakeIndex = index;
+    }
+  };
+
+  // Bodies out of the awake set with a previous transform to update or a force to clear.
+  private Body[] m_dirtyBodies = new Body[16];
+  private int m_dirtyBodyCount;
+
 
   private ContactRegister[][] contactStacks =
       new ContactRegister[ShapeType.values().length][ShapeType.values().length];
@@ -210,6 +249,22 @@ public class World {
     return m_subStepping;
   }
 
+  /**
+   * Set the most time of impact events solved in a step. When a burst of bullets goes over it, the
+   * bodies of the remaining events keep their positions at the end of the step, as without
+   * continuous physics, instead of making the step as long as the events. No limit by default.
+   * 
+   * @param budget the most events in a step, -1 for no limit.
+   */
+  public void setTOIEventBudget(int budget) {
+    assert (budget >= -1);
+    m_toiEventBudget = budget;
+  }
+
+  public int getTOIEventBudget() {
+    return m_toiEventBudget;
+  }
+
   public boolean isAllowSleep() {
     return m_allowSleep;
   }
@@ -279,8 +334,15 @@ public class World {
       fixtureB.getBody().setAwake(true);
     }
 
-    ShapeType type1 = fixtureA.getType();
-    ShapeType type2 = fixtureB.getType();
+    recycleContact(contact);
+  }
+
+  /**
+   * Give back a contact to its pool, without waking up its bodies.
+   */
+  void recycleContact(Contact contact) {
+    ShapeType type1 = contact.getFixtureA().getType();
+    ShapeType type2 = contact.getFixtureB().getType();
 
     IDynamicStack<Contact> creator = contactStacks[type1.ordinal()][type2.ordinal()].creator;
     creator.push(contact);
@@ -342,6 +404,11 @@ public class World {
     }
     // TODO djm pooling
     Body b = new Body(def, this);
+    b.m_sequence = ++m_bodySequence;
+    updateAwake(b);
+    if (b.m_awakeIndex == -1) {
+      touchBody(b, Body.e_dirtyTransformFlag);
+    }
 
     // add to world doubly linked list
     b.m_prev = null;
@@ -425,10 +492,71 @@ public class World {
       m_bodyList = body.m_next;
     }
 
+    if (body.m_awakeIndex != -1) {
+      m_awakeBodies.remove(body);
+    }
+    body.m_flags &= ~(Body.e_dirtyTransformFlag | Body.e_dirtyForceFlag);
+
     --m_bodyCount;
     // TODO djm recycle body
   }
 
+  /**
+   * Add the body to the awake set, or remove it, after a change of its awake, active or type state.
+   */
+  void updateAwake(Body b) {
+    final int flags = Body.e_awakeFlag | Body.e_activeFlag;
+    boolean awake = (b.m_flags & flags) == flags && b.m_type != BodyType.STATIC;
+    if (awake == (b.m_awakeIndex != -1)) {
+      return;
+    }
+    if (awake) {
+      m_awakeBodies.add(b);
+    } else {
+      m_awakeBodies.remove(b);
+      touchBody(b, Body.e_dirtyTransformFlag | Body.e_dirtyForceFlag);
+    }
+    for (ContactEdge ce = b.m_contactList; ce != null; ce = ce.next) {
+      m_contactManager.updateAwake(ce.contact);
+    }
+  }
+
+  /**
+   * Remember that the previous transform or the force of a body out of the awake set must still be
+   * updated, as if the step visited all the bodies.
+   * 
+   * @param flags {@link Body#e_dirtyTransformFlag} and/or {@link Body#e_dirtyForceFlag}.
+   */
+  void touchBody(Body b, int flags) {
+    if ((b.m_flags & (Body.e_dirtyTransformFlag | Body.e_dirtyForceFlag)) == 0) {
+      if (m_dirtyBodyCount == m_dirtyBodies.length) {
+        Body[] old = m_dirtyBodies;
+        m_dirtyBodies = new Body[old.length * 2];
+        System.arraycopy(old, 0, m_dirtyBodies, 0, old.length);
+      }
+      m_dirtyBodies[m_dirtyBodyCount++] = b;
+    }
+    b.m_flags |= flags;
+  }
+
+  /**
+   * Remove from m_dirtyBodies the bodies without a dirty flag.
+   */
+  private void compactDirtyBodies() {
+    final Body[] bodies = m_dirtyBodies;
+    int count = 0;
+    for (int i = 0; i < m_dirtyBodyCount; i++) {
+      Body b = bodies[i];
+      if ((b.m_flags & (Body.e_dirtyTransformFlag | Body.e_dirtyForceFlag)) != 0) {
+        bodies[count++] = b;
+      }
+    }
+    for (int i = count; i < m_dirtyBodyCount; i++) {
+      bodies[i] = null;
+    }
+    m_dirtyBodyCount = count;
+  }
+
   /**
    * create a joint to constrain bodies together. No reference to the definition is retained. This
    * may cause the connected bodies to cease colliding.
@@ -483,7 +611,7 @@ public class World {
         if (edge.other == bodyA) {
           // Flag the contact for filtering at the next time step (where either
           // body is awake).
-          edge.contact.flagForFiltering();
+          m_contactManager.flagForFiltering(edge.contact);
         }
 
         edge = edge.next;
@@ -574,7 +702,7 @@ public class World {
         if (edge.other == bodyA) {
           // Flag the contact for filtering at the next time step (where either
           // body is awake).
-          edge.contact.flagForFiltering();
+          m_contactManager.flagForFiltering(edge.contact);
         }
 
         edge = edge.next;
@@ -597,12 +725,18 @@ public class World {
   public void step(float dt, int velocityIterations, int positionIterations) {
     stepTimer.reset();
     tempTimer.reset();
+    final boolean timed = m_profileSink != null;
+    m_timed = timed;
+    m_profile.beginStep(timed);
     // log.debug("Starting step");
     // If new fixtures were added, we need to find the new contacts.
     if ((m_flags & NEW_FIXTURE) == NEW_FIXTURE) {
       // log.debug("There's a new fixture, lets look for new contacts");
       m_contactManager.findNewContacts();
       m_flags &= ~NEW_FIXTURE;
+      if (timed) {
+        m_profile.addNanos(Profile.Phase.PAIRS, tempTimer.getNanoseconds());
+      }
     }
 
     m_flags |= LOCKED;
@@ -619,18 +753,25 @@ public class World {
     step.dtRatio = m_inv_dt0 * dt;
 
     step.warmStarting = m_warmStarting;
+    step.flatContactSolver = m_flatContactSolver;
     m_profile.stepInit.record(tempTimer.getMilliseconds());
 
     // Update contacts. This is where some contacts are destroyed.
     tempTimer.reset();
     m_contactManager.collide();
     m_profile.collide.record(tempTimer.getMilliseconds());
+    if (timed) {
+      m_profile.addNanos(Profile.Phase.NARROW_PHASE, tempTimer.getNanoseconds());
+    }
 
     // Integrate velocities, solve velocity constraints, and integrate positions.
     if (m_stepComplete && step.dt > 0.0f) {
       tempTimer.reset();
       m_particleSystem.solve(step); // Particle Simulation
       m_profile.solveParticleSystem.record(tempTimer.getMilliseconds());
+      if (timed) {
+        m_profile.addNanos(Profile.Phase.PARTICLES, tempTimer.getNanoseconds());
+      }
       tempTimer.reset();
       solve(step);
       m_profile.solve.record(tempTimer.getMilliseconds());
@@ -641,6 +782,9 @@ public class World {
       tempTimer.reset();
       solveTOI(step);
       m_profile.solveTOI.record(tempTimer.getMilliseconds());
+      if (timed) {
+        m_profile.addNanos(Profile.Phase.TOI, tempTimer.getNanoseconds());
+      }
     }
 
     if (step.dt > 0.0f) {
@@ -651,10 +795,27 @@ public class World {
       clearForces();
     }
 
+    m_contactManager.flushCounters(m_profile);
+    long misses = -1;
+    if (pool instanceof DefaultWorldPool) {
+      misses = ((DefaultWorldPool) pool).getMissCount();
+    } else if (pool instanceof GrowableWorldPool) {
+      misses = ((GrowableWorldPool) pool).getMissCount();
+    }
+    if (misses >= 0) {
+      m_profile.addCount(Profile.Counter.POOL_MISSES, misses - m_poolMisses);
+      m_poolMisses = misses;
+    }
+
     m_flags &= ~LOCKED;
     // log.debug("ending step");
 
     m_profile.step.record(stepTimer.getMilliseconds());
+    if (timed) {
+      m_profile.addNanos(Profile.Phase.STEP, stepTimer.getNanoseconds());
+      m_profile.endTimedStep();
+      m_profileSink.stepProfiled(m_profile);
+    }
   }
 
   /**
@@ -665,10 +826,25 @@ public class World {
    * @see setAutoClearForces
    */
   public void clearForces() {
-    for (Body body = m_bodyList; body != null; body = body.getNext()) {
-      body.m_force.setZero();
-      body.m_torque = 0.0f;
+    // The other bodies have no force: a force wakes a body up, and sleeping clears the force.
+    final AwakeSet<Body> awakeBodies = m_awakeBodies;
+    for (int i = 0, slots = awakeBodies.slots(); i < slots; i++) {
+      Body body = awakeBodies.get(i);
+      if (body != null) {
+        body.m_force.setZero();
+        body.m_torque = 0.0f;
+      }
     }
+    for (int i = 0; i < m_dirtyBodyCount; i++) {
+      Body body = m_dirtyBodies[i];
+      if ((body.m_flags & Body.e_dirtyForceFlag) != 0) {
+        body.m_force.setZero();
+        body.m_torque = 0.0f;
+        body.m_flags &= ~Body.e_dirtyForceFlag;
+      }
+    }
+    m_profile.addCount(Profile.Counter.BODIES_VISITED, awakeBodies.slots() + m_dirtyBodyCount);
+    compactDirtyBodies();
   }
 
   private final Color3f color = new Color3f();
@@ -863,6 +1039,55 @@ public class World {
     m_particleSystem.raycast(particleCallback, point1, point2);
   }
 
+  private final BatchQueryWorker m_batchWorker = new BatchQueryWorker();
+  private final BatchQueryWorker[] m_batchWorkers = {m_batchWorker};
+  private ParallelQuerySolver m_querySolver;
+
+  /**
+   * Ray-cast the world for the rays of the batch, and store the fixture hit by each of them. No
+   * callback is involved: the results are in the batch. The rays run on the query solver, if
+   * any.
+   * 
+   * @param batch the rays, and their results.
+   */
+  public void raycast(RayCastBatch batch) {
+    if (m_querySolver != null) {
+      m_querySolver.raycast(m_contactManager.m_broadPhase, batch);
+    } else {
+      m_batchWorker.raycast(m_contactManager.m_broadPhase, batch, 0, batch.getCount());
+    }
+  }
+
+  /**
+   * Query the world for all fixtures that potentially overlap each box of the batch. No callback
+   * is involved: the results are in the batch. The queries run on the query solver, if any.
+   * 
+   * @param batch the boxes, and their results.
+   */
+  public void queryAABB(AABBQueryBatch batch) {
+    if (m_querySolver != null) {
+      m_querySolver.query(m_contactManager.m_broadPhase, batch);
+    } else {
+      m_batchWorker.query(m_contactManager.m_broadPhase, batch, 0, batch.getCount());
+      BatchQueryWorker.collect(batch, m_batchWorkers, 1);
+    }
+  }
+
+  /**
+   * Run the batch ray casts and queries on a parallel solver. Pass null to run them on the calling
+   * thread. The solver is owned by you, call {@link ParallelQuerySolver#shutdown()} when it is no
+   * longer used.
+   * 
+   * @param solver
+   */
+  public void setQuerySolver(ParallelQuerySolver solver) {
+    m_querySolver = solver;
+  }
+
+  public ParallelQuerySolver getQuerySolver() {
+    return m_querySolver;
+  }
+
   /**
    * Get the world body list. With the returned body, use Body.getNext to get the next body in the
    * world list. A null body indicates the end of the list.
@@ -916,6 +1141,21 @@ public class World {
     return m_warmStarting;
   }
 
+  /**
+   * Enable/disable the flat contact solver, which keeps the contact velocity constraints in float
+   * arrays. The results are the same, only the speed changes. Disabled by default.
+   * 
+   * @param flag
+   * @see com.abubusoft.xenon.box2d.dynamics.contacts.FlatContactSolver
+   */
+  public void setFlatContactSolver(boolean flag) {
+    m_flatContactSolver = flag;
+  }
+
+  public boolean isFlatContactSolver() {
+    return m_flatContactSolver;
+  }
+
   /**
    * Enable/disable continuous physics. For testing.
    * 
@@ -929,6 +1169,49 @@ public class World {
     return m_continuousPhysics;
   }
 
+  /**
+   * Solve the islands of each step on a parallel solver. Contact listener post-solve callbacks are
+   * still invoked on the stepping thread, in island order, but only after every island of the step
+   * has been solved. Pass null to go back to the serial solver. The solver is owned by you, call
+   * {@link ParallelIslandSolver#shutdown()} when it is no longer used.
+   * 
+   * @warning This function is locked during callbacks.
+   * @param solver
+   */
+  public void setIslandSolver(ParallelIslandSolver solver) {
+    assert (isLocked() == false);
+    if (isLocked()) {
+      return;
+    }
+    m_islandSolver = solver;
+  }
+
+  public ParallelIslandSolver getIslandSolver() {
+    return m_islandSolver;
+  }
+
+  /**
+   * Compute the contact manifolds of each step on a parallel solver. Destroyed contacts, touching
+   * changes and listener callbacks are still applied on the stepping thread, in the order of the
+   * contact list, and the contact filter is called before them. Pass null to go back to the
+   * serial narrow phase. The solver is owned by you, call
+   * {@link ParallelNarrowPhaseSolver#shutdown()} when it is no longer used.
+   * 
+   * @warning This function is locked during callbacks.
+   * @param solver
+   */
+  public void setNarrowPhaseSolver(ParallelNarrowPhaseSolver solver) {
+    assert (isLocked() == false);
+    if (isLocked()) {
+      return;
+    }
+    m_contactManager.m_narrowPhaseSolver = solver;
+  }
+
+  public ParallelNarrowPhaseSolver getNarrowPhaseSolver() {
+    return m_contactManager.m_narrowPhaseSolver;
+  }
+
 
 
   /**
@@ -949,6 +1232,335 @@ public class World {
     return m_bodyCount;
   }
 
+  /**
+   * Compute a hash of the state of the bodies: transform, sweep angle and velocities, bit for bit
+   * and in body list order. Two worlds stepped in lockstep, or a replay and its recording, have the
+   * same checksum as long as they have not diverged. See {@link Settings#DETERMINISTIC}.
+   *
+   * @return the FNV-1a hash of the bodies.
+   */
+  public long checksum() {
+    long hash = 0xcbf29ce484222325L;
+    for (Body b = m_bodyList; b != null; b = b.getNext()) {
+      hash = checksum(hash, b.m_xf.p.x);
+      hash = checksum(hash, b.m_xf.p.y);
+      hash = checksum(hash, b.m_xf.q.s);
+      hash = checksum(hash, b.m_xf.q.c);
+      hash = checksum(hash, b.m_sweep.a);
+      hash = checksum(hash, b.m_linearVelocity.x);
+      hash = checksum(hash, b.m_linearVelocity.y);
+      hash = checksum(hash, b.m_angularVelocity);
+    }
+    return hash;
+  }
+
+  private static long checksum(long hash, float value) {
+    return checksum(hash, Float.floatToRawIntBits(value));
+  }
+
+  private static long checksum(long hash, int bits) {
+    for (int i = 0; i < 4; i++) {
+      hash ^= (bits >>> (i * 8)) & 0xff;
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  private static final int SNAPSHOT_MAGIC = 0x62327331;
+  // magic, size, body, fixture, joint and proxy counts, structure hash, flags, gravity, inverse
+  // time step
+  private static final int SNAPSHOT_HEADER_SIZE = 4 + 4 + 4 * 4 + 8 + 4 + 2 * 4 + 4;
+  // flags, transforms, sweep, velocities, force, torque, sleep time
+  private static final int SNAPSHOT_BODY_SIZE = 4 + 2 * 4 * 4 + 9 * 4 + 3 * 4 + 3 * 4 + 4;
+  // tight AABB, the fat one is in the broad-phase state
+  private static final int SNAPSHOT_PROXY_SIZE = 4 * 4;
+  // the flags of a body that are state, not settings
+  private static final int SNAPSHOT_BODY_FLAGS = Body.e_islandFlag | Body.e_awakeFlag
+      | Body.e_toiFlag | Body.e_dirtyTransformFlag | Body.e_dirtyForceFlag;
+  private static final int DIRTY_FLAGS = Body.e_dirtyTransformFlag | Body.e_dirtyForceFlag;
+
+  private static void checkSnapshotCount(int expected, int actual, String what) {
+    if (expected != actual) {
+      throw new IllegalArgumentException("The snapshot has " + expected + " " + what
+          + ", the world has " + actual);
+    }
+  }
+
+  private int countFixtures() {
+    int count = 0;
+    for (Body b = m_bodyList; b != null; b = b.getNext()) {
+      count += b.m_fixtureCount;
+    }
+    return count;
+  }
+
+  /**
+   * Hash what a snapshot can only be restored into: the bodies with their types and proxies, the
+   * joints and the particles.
+   */
+  private long structureHash() {
+    long hash = 0xcbf29ce484222325L;
+    for (Body b = m_bodyList; b != null; b = b.getNext()) {
+      hash = checksum(hash, (int) b.m_sequence);
+      hash = checksum(hash, (int) (b.m_sequence >>> 32));
+      hash = checksum(hash, b.m_type.ordinal());
+      hash = checksum(hash, b.m_fixtureCount);
+      for (Fixture f = b.m_fixtureList; f != null; f = f.m_next) {
+        hash = checksum(hash, f.m_proxyCount);
+        for (int i = 0; i < f.m_proxyCount; i++) {
+          hash = checksum(hash, f.m_proxies[i].proxyId);
+        }
+      }
+    }
+    for (Joint j = m_jointList; j != null; j = j.getNext()) {
+      hash = checksum(hash, j.getType().ordinal());
+    }
+    hash = checksum(hash, m_particleSystem.getParticleCount());
+    hash = checksum(hash, m_particleSystem.getParticleGroupCount());
+    return hash;
+  }
+
+  /**
+   * @return the size in bytes of a snapshot of the world as it is now.
+   * @see #snapshot(ByteBuffer)
+   */
+  public int getSnapshotSize() {
+    int size = SNAPSHOT_HEADER_SIZE;
+    for (Body b = m_bodyList; b != null; b = b.getNext()) {
+      size += SNAPSHOT_BODY_SIZE;
+      for (Fixture f = b.m_fixtureList; f != null; f = f.m_next) {
+        size += f.m_proxyCount * SNAPSHOT_PROXY_SIZE;
+      }
+    }
+    size += m_contactManager.m_broadPhase.getStateSize();
+    for (Joint j = m_jointList; j != null; j = j.getNext()) {
+      size += j.getStateSize();
+    }
+    size += m_contactManager.getStateSize();
+    size += m_particleSystem.getStateSize();
+    return size;
+  }
+
+  /**
+   * Write the state of the world between two steps, to go back to it later with
+   * {@link #restore(ByteBuffer)}, for instance to roll back and step again with corrected inputs.
+   * The snapshot has the motion of the bodies, the fixture AABBs, the contacts with their manifolds
+   * and impulses, the impulses of the joints and the particles.
+   * 
+   * <p>
+   * It does not have the bodies, fixtures, joints and particles themselves, nor their settings:
+   * mass, friction, filters, motors, user data and so on.
+   * </p>
+   * 
+   * @param buffer written from its position, with at least {@link #getSnapshotSize()} bytes
+   *        remaining.
+   * @throws IllegalStateException in the middle of a step.
+   */
+  public void snapshot(ByteBuffer buffer) {
+    if (isLocked() || !m_stepComplete) {
+      throw new IllegalStateException("The world is in the middle of a step");
+    }
+    final int size = getSnapshotSize();
+    final int start = buffer.position();
+    buffer.putInt(SNAPSHOT_MAGIC);
+    buffer.putInt(size);
+    buffer.putInt(m_bodyCount);
+    buffer.putInt(countFixtures());
+    buffer.putInt(m_jointCount);
+    buffer.putInt(getProxyCount());
+    buffer.putLong(structureHash());
+    buffer.putInt(m_flags & NEW_FIXTURE);
+    buffer.putFloat(m_gravity.x);
+    buffer.putFloat(m_gravity.y);
+    buffer.putFloat(m_inv_dt0);
+
+    for (Body b = m_bodyList; b != null; b = b.getNext()) {
+      buffer.putInt(b.m_flags & SNAPSHOT_BODY_FLAGS);
+      putTransform(buffer, b.m_xf);
+      putTransform(buffer, b.m_xf0);
+      final Sweep sweep = b.m_sweep;
+      buffer.putFloat(sweep.localCenter.x);
+      buffer.putFloat(sweep.localCenter.y);
+      buffer.putFloat(sweep.c0.x);
+      buffer.putFloat(sweep.c0.y);
+      buffer.putFloat(sweep.c.x);
+      buffer.putFloat(sweep.c.y);
+      buffer.putFloat(sweep.a0);
+      buffer.putFloat(sweep.a);
+      buffer.putFloat(sweep.alpha0);
+      buffer.putFloat(b.m_linearVelocity.x);
+      buffer.putFloat(b.m_linearVelocity.y);
+      buffer.putFloat(b.m_angularVelocity);
+      buffer.putFloat(b.m_force.x);
+      buffer.putFloat(b.m_force.y);
+      buffer.putFloat(b.m_torque);
+      buffer.putFloat(b.m_sleepTime);
+
+      for (Fixture f = b.m_fixtureList; f != null; f = f.m_next) {
+        for (int i = 0; i < f.m_proxyCount; i++) {
+          putAABB(buffer, f.m_proxies[i].aabb);
+        }
+      }
+    }
+    m_contactManager.m_broadPhase.writeState(buffer);
+
+    for (Joint j = m_jointList; j != null; j = j.getNext()) {
+      j.writeState(buffer);
+    }
+    m_contactManager.writeState(buffer);
+    m_particleSystem.writeState(buffer);
+    assert (buffer.position() - start == size);
+  }
+
+  /**
+   * Go back to the state written by {@link #snapshot(ByteBuffer)}. The world must have the same
+   * bodies, fixtures, joints and particles as when the snapshot was taken: the bodies and the
+   * fixtures are not created again, their state is overwritten and the broad-phase is read back
+   * as it was, instead of moving the proxies one at a time. The contacts are created again as they
+   * were, without calling the contact filter or the contact listener.
+   * 
+   * @param buffer read from its position.
+   * @throws IllegalStateException in the middle of a step.
+   * @throws IllegalArgumentException if the buffer is not a snapshot of this world: the body,
+   *         fixture, joint or proxy counts differ, or the proxy layout or the particles do. The
+   *         world is left untouched.
+   */
+  public void restore(ByteBuffer buffer) {
+    if (isLocked() || !m_stepComplete) {
+      throw new IllegalStateException("The world is in the middle of a step");
+    }
+    final int start = buffer.position();
+    if (buffer.remaining() < SNAPSHOT_HEADER_SIZE || buffer.getInt(start) != SNAPSHOT_MAGIC) {
+      throw new IllegalArgumentException("Not a world snapshot");
+    }
+    if (buffer.remaining() < buffer.getInt(start + 4)) {
+      throw new IllegalArgumentException("Truncated world snapshot");
+    }
+    checkSnapshotCount(buffer.getInt(start + 8), m_bodyCount, "bodies");
+    checkSnapshotCount(buffer.getInt(start + 12), countFixtures(), "fixtures");
+    checkSnapshotCount(buffer.getInt(start + 16), m_jointCount, "joints");
+    checkSnapshotCount(buffer.getInt(start + 20), getProxyCount(), "broad-phase proxies");
+    // same counts, then the same bodies, types, proxy ids, joints and particles
+    if (buffer.getLong(start + 24) != structureHash()) {
+      throw new IllegalArgumentException(
+          "The bodies, fixtures, joints or particles of the world changed since the snapshot");
+    }
+    buffer.position(start + 32);
+
+    m_contactManager.clearState();
+    for (int i = 0; i < m_toiBodyCount; i++) {
+      m_toiBodies[i] = null;
+    }
+    m_toiBodyCount = 0;
+    for (int i = 0; i < m_toiContactCount; i++) {
+      m_toiContacts[i] = null;
+    }
+    m_toiContactCount = 0;
+    for (int i = 0; i < m_dirtyBodyCount; i++) {
+      m_dirtyBodies[i].m_flags &= ~DIRTY_FLAGS;
+      m_dirtyBodies[i] = null;
+    }
+    m_dirtyBodyCount = 0;
+
+    m_flags = (m_flags & ~NEW_FIXTURE) | buffer.getInt();
+    m_gravity.x = buffer.getFloat();
+    m_gravity.y = buffer.getFloat();
+    m_inv_dt0 = buffer.getFloat();
+
+    for (Body b = m_bodyList; b != null; b = b.getNext()) {
+      final int flags = buffer.getInt();
+      b.m_flags = (b.m_flags & ~SNAPSHOT_BODY_FLAGS) | (flags & ~DIRTY_FLAGS);
+      getTransform(buffer, b.m_xf);
+      getTransform(buffer, b.m_xf0);
+      final Sweep sweep = b.m_sweep;
+      sweep.localCenter.x = buffer.getFloat();
+      sweep.localCenter.y = buffer.getFloat();
+      sweep.c0.x = buffer.getFloat();
+      sweep.c0.y = buffer.getFloat();
+      sweep.c.x = buffer.getFloat();
+      sweep.c.y = buffer.getFloat();
+      sweep.a0 = buffer.getFloat();
+      sweep.a = buffer.getFloat();
+      sweep.alpha0 = buffer.getFloat();
+      b.m_linearVelocity.x = buffer.getFloat();
+      b.m_linearVelocity.y = buffer.getFloat();
+      b.m_angularVelocity = buffer.getFloat();
+      b.m_force.x = buffer.getFloat();
+      b.m_force.y = buffer.getFloat();
+      b.m_torque = buffer.getFloat();
+      b.m_sleepTime = buffer.getFloat();
+      b.m_contactList = null;
+
+      // the contacts are gone, as updateAwake would not touch the body
+      final boolean awake = (b.m_flags & (Body.e_awakeFlag | Body.e_activeFlag))
+          == (Body.e_awakeFlag | Body.e_activeFlag) && b.m_type != BodyType.STATIC;
+      if (awake != (b.m_awakeIndex != -1)) {
+        if (awake) {
+          m_awakeBodies.add(b);
+        } else {
+          m_awakeBodies.remove(b);
+        }
+      }
+      if ((flags & DIRTY_FLAGS) != 0) {
+        touchBody(b, flags & DIRTY_FLAGS);
+      }
+      if ((flags & Body.e_toiFlag) != 0) {
+        pushTOIBody(b);
+      }
+
+      for (Fixture f = b.m_fixtureList; f != null; f = f.m_next) {
+        for (int i = 0; i < f.m_proxyCount; i++) {
+          getAABB(buffer, f.m_proxies[i].aabb);
+        }
+      }
+    }
+    // the same structure, not just the same AABBs: queries report the proxies in the same order
+    m_contactManager.m_broadPhase.readState(buffer);
+
+    for (Joint j = m_jointList; j != null; j = j.getNext()) {
+      j.readState(buffer);
+    }
+
+    m_contactManager.readState(buffer);
+    for (Contact c = m_contactManager.m_contactList; c != null; c = c.m_next) {
+      // reset at the next step, as the contacts of the time of impact events were
+      if ((c.m_flags & Contact.TOI_FLAG) != 0 || c.m_toiCount != 0 || c.m_toi != 1.0f) {
+        addTOIContact(c);
+      }
+    }
+
+    m_particleSystem.readState(buffer);
+    assert (buffer.position() - start == buffer.getInt(start + 4));
+  }
+
+  private static void putTransform(ByteBuffer buffer, Transform xf) {
+    buffer.putFloat(xf.p.x);
+    buffer.putFloat(xf.p.y);
+    buffer.putFloat(xf.q.s);
+    buffer.putFloat(xf.q.c);
+  }
+
+  private static void getTransform(ByteBuffer buffer, Transform xf) {
+    xf.p.x = buffer.getFloat();
+    xf.p.y = buffer.getFloat();
+    xf.q.s = buffer.getFloat();
+    xf.q.c = buffer.getFloat();
+  }
+
+  private static void putAABB(ByteBuffer buffer, AABB aabb) {
+    buffer.putFloat(aabb.lowerBoundX);
+    buffer.putFloat(aabb.lowerBoundY);
+    buffer.putFloat(aabb.upperBoundX);
+    buffer.putFloat(aabb.upperBoundY);
+  }
+
+  private static void getAABB(ByteBuffer buffer, AABB aabb) {
+    aabb.lowerBoundX = buffer.getFloat();
+    aabb.lowerBoundY = buffer.getFloat();
+    aabb.upperBoundX = buffer.getFloat();
+    aabb.upperBoundY = buffer.getFloat();
+  }
+
   /**
    * Get the number of joints.
    * 
@@ -994,6 +1606,48 @@ public class World {
     return m_contactManager.m_broadPhase.getTreeQuality();
   }
 
+  /**
+   * Start loading many fixtures at once, like the static fixtures of a level. Their proxies are
+   * added to the broad-phase together by {@link #endBulkLoad()}, building the tree top-down instead
+   * of inserting them one by one. A query, a ray cast or a step adds the pending proxies first.
+   * 
+   * @warning This function is locked during callbacks.
+   */
+  public void beginBulkLoad() {
+    assert (isLocked() == false);
+    if (isLocked()) {
+      return;
+    }
+    m_contactManager.m_broadPhase.beginBulkLoad();
+  }
+
+  /**
+   * End a bulk load started by {@link #beginBulkLoad()}.
+   * 
+   * @warning This function is locked during callbacks.
+   */
+  public void endBulkLoad() {
+    assert (isLocked() == false);
+    if (isLocked()) {
+      return;
+    }
+    m_contactManager.m_broadPhase.endBulkLoad();
+  }
+
+  /**
+   * Rebuild the dynamic tree from scratch, to restore its quality after many moves. Cheap enough to
+   * be called every few seconds, see {@link #getTreeQuality()}.
+   * 
+   * @warning This function is locked during callbacks.
+   */
+  public void rebuildTree() {
+    assert (isLocked() == false);
+    if (isLocked()) {
+      return;
+    }
+    m_contactManager.m_broadPhase.rebuildTree();
+  }
+
   /**
    * Change the global gravity vector.
    * 
@@ -1056,41 +1710,71 @@ public class World {
     return m_profile;
   }
 
+  /**
+   * Set a sink to receive the profile after each step, with the phases timed in nanoseconds. Null,
+   * the default, leaves only the counters and the millisecond averages.
+   *
+   * @param sink
+   */
+  public void setProfileSink(ProfileSink sink) {
+    m_profileSink = sink;
+  }
+
+  public ProfileSink getProfileSink() {
+    return m_profileSink;
+  }
+
   private final Island island = new Island();
   private Body[] stack = new Body[10]; // TODO djm find a good initial stack number;
   private final Timer broadphaseTimer = new Timer();
 
+  // What solve flagged, to clear it without visiting the whole world. Static bodies are not there.
+  private Body[] m_islandBodies = new Body[16];
+  private int m_islandBodyCount;
+  private Contact[] m_islandContacts = new Contact[16];
+  private int m_islandContactCount;
+  private Joint[] m_islandJoints = new Joint[16];
+  private int m_islandJointCount;
+
   private void solve(TimeStep step) {
+    final boolean timed = m_timed;
+    final long solveStart = timed ? System.nanoTime() : 0;
     m_profile.solveInit.startAccum();
     m_profile.solveVelocity.startAccum();
     m_profile.solvePosition.startAccum();
 
-    // update previous transforms
-    for (Body b = m_bodyList; b != null; b = b.m_next) {
-      b.m_xf0.set(b.m_xf);
+    // update previous transforms, the bodies out of the awake set did not move since the last time
+    final AwakeSet<Body> awakeBodies = m_awakeBodies;
+    for (int i = 0, slots = awakeBodies.slots(); i < slots; i++) {
+      Body b = awakeBodies.get(i);
+      if (b != null) {
+        b.m_xf0.set(b.m_xf);
+      }
+    }
+    for (int i = 0; i < m_dirtyBodyCount; i++) {
+      Body b = m_dirtyBodies[i];
+      if ((b.m_flags & Body.e_dirtyTransformFlag) != 0) {
+        b.m_xf0.set(b.m_xf);
+        b.m_flags &= ~Body.e_dirtyTransformFlag;
+      }
     }
+    int bodiesVisited = awakeBodies.slots() + m_dirtyBodyCount;
+    compactDirtyBodies();
 
     // Size the island for the worst case.
     island.init(m_bodyCount, m_contactManager.m_contactCount, m_jointCount,
-        m_contactManager.m_contactListener);
+        m_contactManager.m_contactListener, pool);
 
-    // Clear all the island flags.
-    for (Body b = m_bodyList; b != null; b = b.m_next) {
-      b.m_flags &= ~Body.e_islandFlag;
-    }
-    for (Contact c = m_contactManager.m_contactList; c != null; c = c.m_next) {
-      c.m_flags &= ~Contact.ISLAND_FLAG;
-    }
-    for (Joint j = m_jointList; j != null; j = j.m_next) {
-      j.m_islandFlag = false;
-    }
-
-    // Build and simulate all awake islands.
+    // Build and simulate all awake islands, seeded in body list order.
     int stackSize = m_bodyCount;
     if (stack.length < stackSize) {
       stack = new Body[stackSize];
     }
-    for (Body seed = m_bodyList; seed != null; seed = seed.m_next) {
+    int islands = 0;
+    awakeBodies.begin();
+    Body seed;
+    while ((seed = awakeBodies.next()) != null) {
+      ++bodiesVisited;
       if ((seed.m_flags & Body.e_islandFlag) == Body.e_islandFlag) {
         continue;
       }
@@ -1109,6 +1793,7 @@ public class World {
       int stackCount = 0;
       stack[stackCount++] = seed;
       seed.m_flags |= Body.e_islandFlag;
+      addIslandBody(seed);
 
       // Perform a depth first search (DFS) on the constraint graph.
       while (stackCount > 0) {
@@ -1149,6 +1834,7 @@ public class World {
 
           island.add(contact);
           contact.m_flags |= Contact.ISLAND_FLAG;
+          addIslandContact(contact);
 
           Body other = ce.other;
 
@@ -1160,6 +1846,7 @@ public class World {
           assert (stackCount < stackSize);
           stack[stackCount++] = other;
           other.m_flags |= Body.e_islandFlag;
+          addIslandBody(other);
         }
 
         // Search all joints connect to this body.
@@ -1177,6 +1864,7 @@ public class World {
 
           island.add(je.joint);
           je.joint.m_islandFlag = true;
+          addIslandJoint(je.joint);
 
           if ((other.m_flags & Body.e_islandFlag) == Body.e_islandFlag) {
             continue;
@@ -1185,9 +1873,15 @@ public class World {
           assert (stackCount < stackSize);
           stack[stackCount++] = other;
           other.m_flags |= Body.e_islandFlag;
+          addIslandBody(other);
         }
       }
-      island.solve(m_profile, step, m_gravity, m_allowSleep);
+      ++islands;
+      if (m_islandSolver != null) {
+        m_islandSolver.add(island, m_profile, step, m_gravity);
+      } else {
+        island.solve(m_profile, step, m_gravity, m_allowSleep);
+      }
 
       // Post solve cleanup.
       for (int i = 0; i < island.m_bodyCount; ++i) {
@@ -1195,32 +1889,99 @@ public class World {
         Body b = island.m_bodies[i];
         if (b.getType() == BodyType.STATIC) {
           b.m_flags &= ~Body.e_islandFlag;
+          // its transform is computed again from its sweep
+          touchBody(b, Body.e_dirtyTransformFlag);
         }
       }
     }
+    awakeBodies.end();
+    long parallelNanos = 0;
+    if (m_islandSolver != null) {
+      final long parallelStart = timed ? System.nanoTime() : 0;
+      m_islandSolver.solve(m_profile, step, m_allowSleep);
+      parallelNanos = timed ? System.nanoTime() - parallelStart : 0;
+    }
     m_profile.solveInit.endAccum();
     m_profile.solveVelocity.endAccum();
     m_profile.solvePosition.endAccum();
+    m_profile.addCount(Profile.Counter.BODIES_VISITED, bodiesVisited);
+    m_profile.addCount(Profile.Counter.ISLANDS, islands);
+    if (timed) {
+      // the parallel solver sums the velocity and position times of its workers, which can be
+      // longer than the step itself, so its wall time is subtracted instead
+      long solverNanos = m_profile.solveInit.accumNanos + (m_islandSolver != null ? parallelNanos
+          : m_profile.solveVelocity.accumNanos + m_profile.solvePosition.accumNanos);
+      m_profile.addNanos(Profile.Phase.SOLVE_INIT, m_profile.solveInit.accumNanos);
+      m_profile.addNanos(Profile.Phase.VELOCITY, m_profile.solveVelocity.accumNanos);
+      m_profile.addNanos(Profile.Phase.POSITION, m_profile.solvePosition.accumNanos);
+      m_profile.addNanos(Profile.Phase.ISLANDS, System.nanoTime() - solveStart - solverNanos);
+    }
 
     broadphaseTimer.reset();
-    // Synchronize fixtures, check for out of range bodies.
-    for (Body b = m_bodyList; b != null; b = b.getNext()) {
-      // If a body was not in an island then it did not move.
-      if ((b.m_flags & Body.e_islandFlag) == 0) {
-        continue;
-      }
-
-      if (b.getType() == BodyType.STATIC) {
-        continue;
-      }
+    // Synchronize fixtures, check for out of range bodies. If a body was not in an island then it
+    // did not move. Body list order, so that the new contacts are found in the same order.
+    awakeBodies.sort(m_islandBodies, 0, m_islandBodyCount);
+    for (int i = 0; i < m_islandBodyCount; i++) {
+      Body b = m_islandBodies[i];
+      m_islandBodies[i] = null;
+      b.m_flags &= ~Body.e_islandFlag;
 
       // Update fixtures (for broad-phase).
       b.synchronizeFixtures();
     }
+    m_islandBodyCount = 0;
+    for (int i = 0; i < m_islandContactCount; i++) {
+      m_islandContacts[i].m_flags &= ~Contact.ISLAND_FLAG;
+      m_islandContacts[i] = null;
+    }
+    m_islandContactCount = 0;
+    for (int i = 0; i < m_islandJointCount; i++) {
+      m_islandJoints[i].m_islandFlag = false;
+      m_islandJoints[i] = null;
+    }
+    m_islandJointCount = 0;
+
+    if (timed) {
+      m_profile.addNanos(Profile.Phase.BROADPHASE, broadphaseTimer.getNanoseconds());
+    }
 
     // Look for new contacts.
+    final long pairsStart = timed ? System.nanoTime() : 0;
     m_contactManager.findNewContacts();
     m_profile.broadphase.record(broadphaseTimer.getMilliseconds());
+    if (timed) {
+      m_profile.addNanos(Profile.Phase.PAIRS, System.nanoTime() - pairsStart);
+    }
+  }
+
+  private void addIslandBody(Body b) {
+    if (b.m_type == BodyType.STATIC) {
+      return;
+    }
+    if (m_islandBodyCount == m_islandBodies.length) {
+      Body[] old = m_islandBodies;
+      m_islandBodies = new Body[old.length * 2];
+      System.arraycopy(old, 0, m_islandBodies, 0, old.length);
+    }
+    m_islandBodies[m_islandBodyCount++] = b;
+  }
+
+  private void addIslandContact(Contact c) {
+    if (m_islandContactCount == m_islandContacts.length) {
+      Contact[] old = m_islandContacts;
+      m_islandContacts = new Contact[old.length * 2];
+      System.arraycopy(old, 0, m_islandContacts, 0, old.length);
+    }
+    m_islandContacts[m_islandContactCount++] = c;
+  }
+
+  private void addIslandJoint(Joint j) {
+    if (m_islandJointCount == m_islandJoints.length) {
+      Joint[] old = m_islandJoints;
+      m_islandJoints = new Joint[old.length * 2];
+      System.arraycopy(old, 0, m_islandJoints, 0, old.length);
+    }
+    m_islandJoints[m_islandJointCount++] = j;
   }
 
   private final Island toiIsland = new Island();
@@ -1231,130 +1992,118 @@ public class World {
   private final Sweep backup1 = new Sweep();
   private final Sweep backup2 = new Sweep();
 
+  // What the time of impact events changed since the step began, to reset it at the next step
+  // without visiting the whole world. A contact can be there more than once.
+  private Body[] m_toiBodies = new Body[16];
+  private int m_toiBodyCount;
+  private Contact[] m_toiContacts = new Contact[16];
+  private int m_toiContactCount;
+
+  /**
+   * Remember a body whose sweep was advanced, and which can have moved.
+   */
+  private void addTOIBody(Body b) {
+    if (b.m_awakeIndex == -1) {
+      touchBody(b, Body.e_dirtyTransformFlag);
+    }
+    if ((b.m_flags & Body.e_toiFlag) != 0) {
+      return;
+    }
+    b.m_flags |= Body.e_toiFlag;
+    pushTOIBody(b);
+  }
+
+  private void pushTOIBody(Body b) {
+    if (m_toiBodyCount == m_toiBodies.length) {
+      Body[] old = m_toiBodies;
+      m_toiBodies = new Body[old.length * 2];
+      System.arraycopy(old, 0, m_toiBodies, 0, old.length);
+    }
+    m_toiBodies[m_toiBodyCount++] = b;
+  }
+
+  private void addTOIContact(Contact c) {
+    if (m_toiContactCount == m_toiContacts.length) {
+      Contact[] old = m_toiContacts;
+      m_toiContacts = new Contact[old.length * 2];
+      System.arraycopy(old, 0, m_toiContacts, 0, old.length);
+    }
+    m_toiContacts[m_toiContactCount++] = c;
+  }
+
   private void solveTOI(final TimeStep step) {
 
     final Island island = toiIsland;
     island.init(2 * Settings.maxTOIContacts, Settings.maxTOIContacts, 0,
-        m_contactManager.m_contactListener);
+        m_contactManager.m_contactListener, pool);
     if (m_stepComplete) {
-      for (Body b = m_bodyList; b != null; b = b.m_next) {
-        b.m_flags &= ~Body.e_islandFlag;
+      for (int i = 0; i < m_toiBodyCount; i++) {
+        Body b = m_toiBodies[i];
+        m_toiBodies[i] = null;
+        b.m_flags &= ~(Body.e_islandFlag | Body.e_toiFlag);
         b.m_sweep.alpha0 = 0.0f;
       }
+      m_toiBodyCount = 0;
 
-      for (Contact c = m_contactManager.m_contactList; c != null; c = c.m_next) {
+      for (int i = 0; i < m_toiContactCount; i++) {
+        Contact c = m_toiContacts[i];
+        m_toiContacts[i] = null;
         // Invalidate TOI
         c.m_flags &= ~(Contact.TOI_FLAG | Contact.ISLAND_FLAG);
         c.m_toiCount = 0;
         c.m_toi = 1.0f;
+        if (c.m_awakeIndex != -1) {
+          m_contactManager.updateAwake(c);
+        }
       }
+      m_toiContactCount = 0;
     }
 
     // Find TOI events and solve them.
-    for (;;) {
-      // Find the first TOI.
-      Contact minContact = null;
-      float minAlpha = 1.0f;
-
-      for (Contact c = m_contactManager.m_contactList; c != null; c = c.m_next) {
-        // Is this contact disabled?
-        if (c.isEnabled() == false) {
-          continue;
-        }
-
-        // Prevent excessive sub-stepping.
-        if (c.m_toiCount > Settings.maxSubSteps) {
-          continue;
-        }
-
-        float alpha = 1.0f;
-        if ((c.m_flags & Contact.TOI_FLAG) != 0) {
-          // This contact has a valid cached TOI.
-          alpha = c.m_toi;
-        } else {
-          Fixture fA = c.getFixtureA();
-          Fixture fB = c.getFixtureB();
-
-          // Is there a sensor?
-          if (fA.isSensor() || fB.isSensor()) {
-            continue;
-          }
-
-          Body bA = fA.getBody();
-          Body bB = fB.getBody();
-
-          BodyType typeA = bA.m_type;
-          BodyType typeB = bB.m_type;
-          assert (typeA == BodyType.DYNAMIC || typeB == BodyType.DYNAMIC);
-
-          boolean activeA = bA.isAwake() && typeA != BodyType.STATIC;
-          boolean activeB = bB.isAwake() && typeB != BodyType.STATIC;
-
-          // Is at least one body active (awake and dynamic or kinematic)?
-          if (activeA == false && activeB == false) {
-            continue;
-          }
-
-          boolean collideA = bA.isBullet() || typeA != BodyType.DYNAMIC;
-          boolean collideB = bB.isBullet() || typeB != BodyType.DYNAMIC;
-
-          // Are these two non-bullet dynamic bodies?
-          if (collideA == false && collideB == false) {
-            continue;
-          }
-
-          // Compute the TOI for this contact.
-          // Put the sweeps onto the same time interval.
-          float alpha0 = bA.m_sweep.alpha0;
-
-          if (bA.m_sweep.alpha0 < bB.m_sweep.alpha0) {
-            alpha0 = bB.m_sweep.alpha0;
-            bA.m_sweep.advance(alpha0);
-          } else if (bB.m_sweep.alpha0 < bA.m_sweep.alpha0) {
-            alpha0 = bA.m_sweep.alpha0;
-            bB.m_sweep.advance(alpha0);
-          }
-
-          assert (alpha0 < 1.0f);
-
-          int indexA = c.getChildIndexA();
-          int indexB = c.getChildIndexB();
-
-          // Compute the time of impact in interval [0, minTOI]
-          final TOIInput input = toiInput;
-          input.proxyA.set(fA.getShape(), indexA);
-          input.proxyB.set(fB.getShape(), indexB);
-          input.sweepA.set(bA.m_sweep);
-          input.sweepB.set(bB.m_sweep);
-          input.tMax = 1.0f;
-
-          pool.getTimeOfImpact().timeOfImpact(toiOutput, input);
-
-          // Beta is the fraction of the remaining portion of the .
-          float beta = toiOutput.t;
-          if (toiOutput.state == TOIOutputState.TOUCHING) {
-            alpha = MathUtils.min(alpha0 + (1.0f - alpha0) * beta, 1.0f);
-          } else {
-            alpha = 1.0f;
-          }
-
-          c.m_toi = alpha;
-          c.m_flags |= Contact.TOI_FLAG;
-        }
+    final TOIQueue queue = m_contactManager.m_toiQueue;
+    queue.begin();
+    final AwakeSet<Contact> awakeContacts = m_contactManager.m_awakeContacts;
+    awakeContacts.begin();
+    Contact c;
+    while ((c = awakeContacts.next()) != null) {
+      queueTOI(c);
+    }
+    awakeContacts.end();
 
-        if (alpha < minAlpha) {
-          // This is the minimum TOI found so far.
-          minContact = c;
-          minAlpha = alpha;
+    int events = 0;
+    for (;;) {
+      // Check again the contacts changed by the last event, in contact list order.
+      int dirtyCount;
+      while ((dirtyCount = queue.dirtyCount()) > 0) {
+        final Contact[] dirty = queue.dirty();
+        awakeContacts.sort(dirty, 0, dirtyCount);
+        for (int i = 0; i < dirtyCount; i++) {
+          queueTOI(dirty[i]);
         }
+        queue.clearDirty(dirtyCount);
       }
 
-      if (minContact == null || 1.0f - 10.0f * Settings.EPSILON < minAlpha) {
+      // Find the first TOI.
+      Contact minContact = queue.peek();
+      if (minContact == null) {
         // No more TOI events. Done!
         m_stepComplete = true;
         break;
       }
 
+      if (events == m_toiEventBudget) {
+        // Out of budget: the remaining bodies keep the end of the step, as without continuous
+        // physics.
+        m_profile.addCount(Profile.Counter.TOI_DEFERRED, queue.size());
+        m_stepComplete = true;
+        break;
+      }
+      ++events;
+
+      queue.remove(minContact);
+      queue.markDirty(minContact);
+      float minAlpha = minContact.m_toi;
+
       // Advance the bodies to the TOI.
       Fixture fA = minContact.getFixtureA();
       Fixture fB = minContact.getFixtureB();
@@ -1366,6 +2115,8 @@ public class World {
 
       bA.advance(minAlpha);
       bB.advance(minAlpha);
+      addTOIBody(bA);
+      addTOIBody(bB);
 
       // The TOI contact likely has some new contact points.
       minContact.update(m_contactManager.m_contactListener);
@@ -1436,6 +2187,7 @@ public class World {
             backup1.set(other.m_sweep);
             if ((other.m_flags & Body.e_islandFlag) == 0) {
               other.advance(minAlpha);
+              addTOIBody(other);
             }
 
             // Update the contact points
@@ -1483,11 +2235,15 @@ public class World {
       subStep.velocityIterations = step.velocityIterations;
       subStep.warmStarting = false;
       island.solveTOI(subStep, bA.m_islandIndex, bB.m_islandIndex);
+      m_profile.addCount(Profile.Counter.TOI_EVENTS, 1);
 
       // Reset island flags and synchronize broad-phase proxies.
       for (int i = 0; i < island.m_bodyCount; ++i) {
         Body body = island.m_bodies[i];
         body.m_flags &= ~Body.e_islandFlag;
+        if (body.m_awakeIndex == -1) {
+          touchBody(body, Body.e_dirtyTransformFlag);
+        }
 
         if (body.m_type != BodyType.DYNAMIC) {
           continue;
@@ -1498,6 +2254,7 @@ public class World {
         // Invalidate all contact TOIs on this displaced body.
         for (ContactEdge ce = body.m_contactList; ce != null; ce = ce.next) {
           ce.contact.m_flags &= ~(Contact.TOI_FLAG | Contact.ISLAND_FLAG);
+          queue.markDirty(ce.contact);
         }
       }
 
@@ -1510,6 +2267,116 @@ public class World {
         break;
       }
     }
+    queue.end();
+  }
+
+  /**
+   * Queue the contact if it has a time of impact before the end of the step, computing it if it is
+   * not cached, or take it out of the queue.
+   */
+  private void queueTOI(Contact c) {
+    m_profile.addCount(Profile.Counter.CONTACTS_VISITED, 1);
+    final TOIQueue queue = m_contactManager.m_toiQueue;
+
+    // Is this contact disabled, or out of the contacts to visit?
+    if (c.m_awakeIndex == -1 || c.isEnabled() == false) {
+      queue.remove(c);
+      return;
+    }
+
+    // Prevent excessive sub-stepping.
+    if (c.m_toiCount > Settings.maxSubSteps) {
+      queue.remove(c);
+      return;
+    }
+
+    float alpha = 1.0f;
+    if ((c.m_flags & Contact.TOI_FLAG) != 0) {
+      // This contact has a valid cached TOI.
+      alpha = c.m_toi;
+    } else {
+      Fixture fA = c.getFixtureA();
+      Fixture fB = c.getFixtureB();
+
+      // Is there a sensor?
+      if (fA.isSensor() || fB.isSensor()) {
+        queue.remove(c);
+        return;
+      }
+
+      Body bA = fA.getBody();
+      Body bB = fB.getBody();
+
+      BodyType typeA = bA.m_type;
+      BodyType typeB = bB.m_type;
+      assert (typeA == BodyType.DYNAMIC || typeB == BodyType.DYNAMIC);
+
+      boolean activeA = bA.isAwake() && typeA != BodyType.STATIC;
+      boolean activeB = bB.isAwake() && typeB != BodyType.STATIC;
+
+      // Is at least one body active (awake and dynamic or kinematic)?
+      if (activeA == false && activeB == false) {
+        queue.remove(c);
+        return;
+      }
+
+      boolean collideA = bA.isBullet() || typeA != BodyType.DYNAMIC;
+      boolean collideB = bB.isBullet() || typeB != BodyType.DYNAMIC;
+
+      // Are these two non-bullet dynamic bodies?
+      if (collideA == false && collideB == false) {
+        queue.remove(c);
+        return;
+      }
+
+      // Compute the TOI for this contact.
+      // Put the sweeps onto the same time interval.
+      float alpha0 = bA.m_sweep.alpha0;
+
+      if (bA.m_sweep.alpha0 < bB.m_sweep.alpha0) {
+        alpha0 = bB.m_sweep.alpha0;
+        bA.m_sweep.advance(alpha0);
+        addTOIBody(bA);
+      } else if (bB.m_sweep.alpha0 < bA.m_sweep.alpha0) {
+        alpha0 = bA.m_sweep.alpha0;
+        bB.m_sweep.advance(alpha0);
+        addTOIBody(bB);
+      }
+
+      assert (alpha0 < 1.0f);
+
+      int indexA = c.getChildIndexA();
+      int indexB = c.getChildIndexB();
+
+      // Compute the time of impact in interval [0, minTOI]
+      final TOIInput input = toiInput;
+      input.proxyA.set(fA.getShape(), indexA);
+      input.proxyB.set(fB.getShape(), indexB);
+      input.sweepA.set(bA.m_sweep);
+      input.sweepB.set(bB.m_sweep);
+      input.tMax = 1.0f;
+
+      pool.getTimeOfImpact().timeOfImpact(toiOutput, input);
+
+      // Beta is the fraction of the remaining portion of the .
+      float beta = toiOutput.t;
+      if (toiOutput.state == TOIOutputState.TOUCHING) {
+        alpha = MathUtils.min(alpha0 + (1.0f - alpha0) * beta, 1.0f);
+      } else {
+        alpha = 1.0f;
+      }
+
+      c.m_toi = alpha;
+      c.m_flags |= Contact.TOI_FLAG;
+      addTOIContact(c);
+    }
+
+    // Events at the very end of the step are left to the next one.
+    if (alpha <= 1.0f - 10.0f * Settings.EPSILON) {
+      queue.update(c);
+    } else {
+      queue.remove(c);
+    }
   }
 
   private void drawJoint(Joint joint) {
@@ -1648,18 +2515,11 @@ public class World {
     boolean wireframe = (m_debugDraw.getFlags() & DebugDraw.e_wireframeDrawingBit) != 0;
     int particleCount = system.getParticleCount();
     if (particleCount != 0) {
-      float particleRadius = system.getParticleRadius();
-      Vec2[] positionBuffer = system.getParticlePositionBuffer();
       ParticleColor[] colorBuffer = null;
       if (system.m_colorBuffer.data != null) {
         colorBuffer = system.getParticleColorBuffer();
       }
-      if (wireframe) {
-        m_debugDraw.drawParticlesWireframe(positionBuffer, particleRadius, colorBuffer,
-            particleCount);
-      } else {
-        m_debugDraw.drawParticles(positionBuffer, particleRadius, colorBuffer, particleCount);
-      }
+      system.drawParticles(m_debugDraw, wireframe, colorBuffer);
     }
   }
 
@@ -1884,6 +2744,27 @@ public class World {
     m_particleSystem.setParticleDamping(damping);
   }
 
+  /**
+   * Solve the per-contact stages of the particle system on a parallel solver. The result depends on
+   * the number of workers, not on thread scheduling. Pass null to go back to the single-threaded
+   * solver. The solver is owned by you, call {@link ParallelParticleSolver#shutdown()} when it is
+   * no longer used.
+   * 
+   * @warning This function is locked during callbacks.
+   * @param solver
+   */
+  public void setParticleSolver(ParallelParticleSolver solver) {
+    assert (isLocked() == false);
+    if (isLocked()) {
+      return;
+    }
+    m_particleSystem.setParallelSolver(solver);
+  }
+
+  public ParallelParticleSolver getParticleSolver() {
+    return m_particleSystem.getParallelSolver();
+  }
+
   /**
    * Get damping for particles
    * 
@@ -1921,14 +2802,48 @@ public class World {
     return m_particleSystem.getParticleFlagsBuffer();
   }
 
+  /**
+   * Get the particle positions. The vectors stay bound to the position arrays: writes to them move
+   * the particles, and every call returns the same array.
+   * 
+   * @see #getParticlePositionBufferX()
+   */
   public Vec2[] getParticlePositionBuffer() {
     return m_particleSystem.getParticlePositionBuffer();
   }
 
+  /**
+   * Get the x coordinates of the particle positions. The array is the storage used by the solver,
+   * no copy is made. The vectors returned by {@link #getParticlePositionBuffer()} are unbound.
+   * 
+   * @return
+   */
+  public float[] getParticlePositionBufferX() {
+    return m_particleSystem.getParticlePositionBufferX();
+  }
+
+  public float[] getParticlePositionBufferY() {
+    return m_particleSystem.getParticlePositionBufferY();
+  }
+
+  /**
+   * Get the particle velocities. The vectors stay bound to the velocity arrays, like
+   * {@link #getParticlePositionBuffer()}.
+   * 
+   * @see #getParticleVelocityBufferX()
+   */
   public Vec2[] getParticleVelocityBuffer() {
     return m_particleSystem.getParticleVelocityBuffer();
   }
 
+  public float[] getParticleVelocityBufferX() {
+    return m_particleSystem.getParticleVelocityBufferX();
+  }
+
+  public float[] getParticleVelocityBufferY() {
+    return m_particleSystem.getParticleVelocityBufferY();
+  }
+
   public ParticleColor[] getParticleColorBuffer() {
     return m_particleSystem.getParticleColorBuffer();
   }
@@ -1956,11 +2871,19 @@ public class World {
 
   }
 
+  public void setParticlePositionBuffer(float[] bufferX, float[] bufferY, int capacity) {
+    m_particleSystem.setParticlePositionBuffer(bufferX, bufferY, capacity);
+  }
+
   public void setParticleVelocityBuffer(Vec2[] buffer, int capacity) {
     m_particleSystem.setParticleVelocityBuffer(buffer, capacity);
 
   }
 
+  public void setParticleVelocityBuffer(float[] bufferX, float[] bufferY, int capacity) {
+    m_particleSystem.setParticleVelocityBuffer(bufferX, bufferY, capacity);
+  }
+
   public void setParticleColorBuffer(ParticleColor[] buffer, int capacity) {
     m_particleSystem.setParticleColorBuffer(buffer, capacity);
 
@@ -23,6 +23,7 @@
  ******************************************************************************/
 package com.abubusoft.xenon.box2d.dynamics.contacts;
 
+import com.abubusoft.xenon.box2d.collision.Collision;
 import com.abubusoft.xenon.box2d.collision.Manifold;
 import com.abubusoft.xenon.box2d.collision.shapes.CircleShape;
 import com.abubusoft.xenon.box2d.collision.shapes.ShapeType;
@@ -43,8 +44,8 @@ public class CircleContact extends Contact {
   }
 
   @Override
-  public void evaluate(Manifold manifold, Transform xfA, Transform xfB) {
-    pool.getCollision().collideCircles(manifold, (CircleShape) m_fixtureA.getShape(), xfA,
+  public void evaluate(Manifold manifold, Transform xfA, Transform xfB, Collision collision) {
+    collision.collideCircles(manifold, (CircleShape) m_fixtureA.getShape(), xfA,
         (CircleShape) m_fixtureB.getShape(), xfB);
   }
 }
@@ -25,6 +25,7 @@ package com.abubusoft.xenon.box2d.dynamics.contacts;
 
 
 import com.abubusoft.xenon.box2d.callbacks.ContactListener;
+import com.abubusoft.xenon.box2d.collision.Collision;
 import com.abubusoft.xenon.box2d.collision.ContactID;
 import com.abubusoft.xenon.box2d.collision.Manifold;
 import com.abubusoft.xenon.box2d.collision.ManifoldPoint;
@@ -58,6 +59,8 @@ public abstract class Contact {
   public static final int BULLET_HIT_FLAG = 0x0010;
 
   public static final int TOI_FLAG = 0x0020;
+  // The time of impact queue must check this contact again.
+  public static final int TOI_DIRTY_FLAG = 0x0040;
 
   public int m_flags;
 
@@ -85,6 +88,21 @@ public abstract class Contact {
 
   public float m_tangentSpeed;
 
+  // Key of the proxy pair, set by the contact manager.
+  public long m_pairKey;
+
+  // Creation order, set by the contact manager. The contact list is in decreasing order.
+  public long m_sequence;
+
+  // Slot in the awake contacts of the contact manager, -1 when not there.
+  public int m_awakeIndex = -1;
+
+  // Slot in the time of impact queue of the contact manager, -1 when not there.
+  public int m_toiIndex = -1;
+
+  // Touching state computed by updateManifold, applied by finishUpdate.
+  private boolean m_updateTouching;
+
   protected final IWorldPool pool;
 
   protected Contact(IWorldPool argPool) {
@@ -247,7 +265,16 @@ public abstract class Contact {
     return m_tangentSpeed;
   }
 
-  public abstract void evaluate(Manifold manifold, Transform xfA, Transform xfB);
+  public void evaluate(Manifold manifold, Transform xfA, Transform xfB) {
+    evaluate(manifold, xfA, xfB, pool.getCollision());
+  }
+
+  /**
+   * Compute the manifold with the given collision object. Only reads the fixtures and the body
+   * transforms, so contacts can be evaluated concurrently with one collision object per thread.
+   */
+  public abstract void evaluate(Manifold manifold, Transform xfA, Transform xfB,
+      Collision collision);
 
   /**
    * Flag this contact for filtering. Filtering will occur the next time step.
@@ -260,36 +287,33 @@ public abstract class Contact {
   private final Manifold oldManifold = new Manifold();
 
   public void update(ContactListener listener) {
+    updateManifold(pool.getCollision());
+    finishUpdate(listener);
+  }
 
+  /**
+   * First half of {@link #update(ContactListener)}: compute the new manifold and warm start it
+   * from the old one. Does not change the bodies, the flags or call the listener, so it can run
+   * concurrently for different contacts, with one collision object per thread.
+   */
+  public void updateManifold(Collision collision) {
     oldManifold.set(m_manifold);
 
-    // Re-enable this contact.
-    m_flags |= ENABLED_FLAG;
-
-    boolean touching = false;
-    boolean wasTouching = (m_flags & TOUCHING_FLAG) == TOUCHING_FLAG;
-
-    boolean sensorA = m_fixtureA.isSensor();
-    boolean sensorB = m_fixtureB.isSensor();
-    boolean sensor = sensorA || sensorB;
+    boolean sensor = m_fixtureA.isSensor() || m_fixtureB.isSensor();
 
-    Body bodyA = m_fixtureA.getBody();
-    Body bodyB = m_fixtureB.getBody();
-    Transform xfA = bodyA.getTransform();
-    Transform xfB = bodyB.getTransform();
-    // log.debug("TransformA: "+xfA);
-    // log.debug("TransformB: "+xfB);
+    Transform xfA = m_fixtureA.getBody().getTransform();
+    Transform xfB = m_fixtureB.getBody().getTransform();
 
     if (sensor) {
       Shape shapeA = m_fixtureA.getShape();
       Shape shapeB = m_fixtureB.getShape();
-      touching = pool.getCollision().testOverlap(shapeA, m_indexA, shapeB, m_indexB, xfA, xfB);
+      m_updateTouching = collision.testOverlap(shapeA, m_indexA, shapeB, m_indexB, xfA, xfB);
 
       // Sensors don't generate manifolds.
       m_manifold.pointCount = 0;
     } else {
-      evaluate(m_manifold, xfA, xfB);
-      touching = m_manifold.pointCount > 0;
+      evaluate(m_manifold, xfA, xfB, collision);
+      m_updateTouching = m_manifold.pointCount > 0;
 
       // Match old contact ids to new contact ids and copy the
       // stored impulses to warm start the solver.
@@ -309,11 +333,25 @@ public abstract class Contact {
           }
         }
       }
+    }
+  }
 
-      if (touching != wasTouching) {
-        bodyA.setAwake(true);
-        bodyB.setAwake(true);
-      }
+  /**
+   * Second half of {@link #update(ContactListener)}: apply the touching state computed by
+   * {@link #updateManifold(Collision)}, wake the bodies and call the listener.
+   */
+  public void finishUpdate(ContactListener listener) {
+    // Re-enable this contact.
+    m_flags |= ENABLED_FLAG;
+
+    boolean touching = m_updateTouching;
+    boolean wasTouching = (m_flags & TOUCHING_FLAG) == TOUCHING_FLAG;
+
+    boolean sensor = m_fixtureA.isSensor() || m_fixtureB.isSensor();
+
+    if (!sensor && touching != wasTouching) {
+      m_fixtureA.getBody().setAwake(true);
+      m_fixtureB.getBody().setAwake(true);
     }
 
     if (touching) {
@@ -218,7 +218,7 @@ public class ContactSolver {
   private final Transform xfB = new Transform();
   private final WorldManifold worldManifold = new WorldManifold();
 
-  public final void initializeVelocityConstraints() {
+  public void initializeVelocityConstraints() {
 
     // Warm start.
     for (int i = 0; i < m_count; ++i) {
@@ -333,7 +333,7 @@ public class ContactSolver {
   }
 
 
-  public final void solveVelocityConstraints() {
+  public void solveVelocityConstraints() {
     for (int i = 0; i < m_count; ++i) {
       final ContactVelocityConstraint vc = m_velocityConstraints[i];
 
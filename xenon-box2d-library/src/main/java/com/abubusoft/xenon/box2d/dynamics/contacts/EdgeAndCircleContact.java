@@ -23,6 +23,7 @@
  ******************************************************************************/
 package com.abubusoft.xenon.box2d.dynamics.contacts;
 
+import com.abubusoft.xenon.box2d.collision.Collision;
 import com.abubusoft.xenon.box2d.collision.Manifold;
 import com.abubusoft.xenon.box2d.collision.shapes.CircleShape;
 import com.abubusoft.xenon.box2d.collision.shapes.EdgeShape;
@@ -45,8 +46,8 @@ public class EdgeAndCircleContact extends Contact {
   }
 
   @Override
-  public void evaluate(Manifold manifold, Transform xfA, Transform xfB) {
-    pool.getCollision().collideEdgeAndCircle(manifold, (EdgeShape) m_fixtureA.getShape(), xfA,
+  public void evaluate(Manifold manifold, Transform xfA, Transform xfB, Collision collision) {
+    collision.collideEdgeAndCircle(manifold, (EdgeShape) m_fixtureA.getShape(), xfA,
         (CircleShape) m_fixtureB.getShape(), xfB);
   }
 }
@@ -23,6 +23,7 @@
  ******************************************************************************/
 package com.abubusoft.xenon.box2d.dynamics.contacts;
 
+import com.abubusoft.xenon.box2d.collision.Collision;
 import com.abubusoft.xenon.box2d.collision.Manifold;
 import com.abubusoft.xenon.box2d.collision.shapes.EdgeShape;
 import com.abubusoft.xenon.box2d.collision.shapes.PolygonShape;
@@ -45,8 +46,8 @@ public class EdgeAndPolygonContact extends Contact {
   }
 
   @Override
-  public void evaluate(Manifold manifold, Transform xfA, Transform xfB) {
-    pool.getCollision().collideEdgeAndPolygon(manifold, (EdgeShape) m_fixtureA.getShape(), xfA,
+  public void evaluate(Manifold manifold, Transform xfA, Transform xfB, Collision collision) {
+    collision.collideEdgeAndPolygon(manifold, (EdgeShape) m_fixtureA.getShape(), xfA,
         (PolygonShape) m_fixtureB.getShape(), xfB);
   }
 }
@@ -0,0 +1,376 @@
+package com.abubusoft.xenon.box2d.dynamics.contacts;
+
+import com.abubusoft.xenon.box2d.collision.Manifold;
+import com.abubusoft.xenon.box2d.common.MathUtils;
+import com.abubusoft.xenon.box2d.common.Settings;
+import com.abubusoft.xenon.box2d.dynamics.contacts.ContactVelocityConstraint.VelocityConstraintPoint;
+
+/**
+ * A contact solver that keeps the velocity constraints in flat float arrays, one per column, so
+ * the velocity iterations read consecutive memory instead of following the constraint and point
+ * objects. The constraints are built as in {@link ContactSolver}, then copied once per step; the
+ * warm start, the velocity iterations and the impulse storage run on the arrays and give the same
+ * results. The position constraints are unchanged.
+ *
+ * The body velocities stay in the {@link Velocity} objects, shared with the joints.
+ *
+ * @see com.abubusoft.xenon.box2d.dynamics.World#setFlatContactSolver(boolean)
+ */
+public class FlatContactSolver extends ContactSolver {
+
+  private static final int MAX_POINTS = Settings.maxManifoldPoints;
+
+  // per constraint
+  private int[] m_indexA;
+  private int[] m_indexB;
+  private int[] m_pointCount;
+  private float[] m_invMassA;
+  private float[] m_invMassB;
+  private float[] m_invIA;
+  private float[] m_invIB;
+  private float[] m_friction;
+  private float[] m_tangentSpeed;
+  private float[] m_normalX;
+  private float[] m_normalY;
+  // block solver matrices, K and its inverse, by columns: ex.x, ex.y, ey.x, ey.y
+  private float[] m_K;
+  private float[] m_normalMassK;
+
+  // per point, at constraint * MAX_POINTS + point
+  private float[] m_rAX;
+  private float[] m_rAY;
+  private float[] m_rBX;
+  private float[] m_rBY;
+  private float[] m_normalMass;
+  private float[] m_tangentMass;
+  private float[] m_velocityBias;
+  private float[] m_normalImpulse;
+  private float[] m_tangentImpulse;
+
+  public FlatContactSolver() {
+    allocate(INITIAL_NUM_CONSTRAINTS);
+  }
+
+  private void allocate(int capacity) {
+    m_indexA = new int[capacity];
+    m_indexB = new int[capacity];
+    m_pointCount = new int[capacity];
+    m_invMassA = new float[capacity];
+    m_invMassB = new float[capacity];
+    m_invIA = new float[capacity];
+    m_invIB = new float[capacity];
+    m_friction = new float[capacity];
+    m_tangentSpeed = new float[capacity];
+    m_normalX = new float[capacity];
+    m_normalY = new float[capacity];
+    m_K = new float[capacity * 4];
+    m_normalMassK = new float[capacity * 4];
+
+    final int points = capacity * MAX_POINTS;
+    m_rAX = new float[points];
+    m_rAY = new float[points];
+    m_rBX = new float[points];
+    m_rBY = new float[points];
+    m_normalMass = new float[points];
+    m_tangentMass = new float[points];
+    m_velocityBias = new float[points];
+    m_normalImpulse = new float[points];
+    m_tangentImpulse = new float[points];
+  }
+
+  /**
+   * Build the constraints, then copy them to the arrays.
+   */
+  @Override
+  public void initializeVelocityConstraints() {
+    super.initializeVelocityConstraints();
+
+    if (m_indexA.length < m_count) {
+      allocate(MathUtils.max(m_indexA.length * 2, m_count));
+    }
+
+    for (int i = 0; i < m_count; ++i) {
+      final ContactVelocityConstraint vc = m_velocityConstraints[i];
+      m_indexA[i] = vc.indexA;
+      m_indexB[i] = vc.indexB;
+      m_pointCount[i] = vc.pointCount;
+      m_invMassA[i] = vc.invMassA;
+      m_invMassB[i] = vc.invMassB;
+      m_invIA[i] = vc.invIA;
+      m_invIB[i] = vc.invIB;
+      m_friction[i] = vc.friction;
+      m_tangentSpeed[i] = vc.tangentSpeed;
+      m_normalX[i] = vc.normal.x;
+      m_normalY[i] = vc.normal.y;
+
+      final int k = i * 4;
+      m_K[k] = vc.K.ex.x;
+      m_K[k + 1] = vc.K.ex.y;
+      m_K[k + 2] = vc.K.ey.x;
+      m_K[k + 3] = vc.K.ey.y;
+      m_normalMassK[k] = vc.normalMass.ex.x;
+      m_normalMassK[k + 1] = vc.normalMass.ex.y;
+      m_normalMassK[k + 2] = vc.normalMass.ey.x;
+      m_normalMassK[k + 3] = vc.normalMass.ey.y;
+
+      final int p = i * MAX_POINTS;
+      for (int j = 0; j < vc.pointCount; ++j) {
+        final VelocityConstraintPoint vcp = vc.points[j];
+        m_rAX[p + j] = vcp.rA.x;
+        m_rAY[p + j] = vcp.rA.y;
+        m_rBX[p + j] = vcp.rB.x;
+        m_rBY[p + j] = vcp.rB.y;
+        m_normalMass[p + j] = vcp.normalMass;
+        m_tangentMass[p + j] = vcp.tangentMass;
+        m_velocityBias[p + j] = vcp.velocityBias;
+        m_normalImpulse[p + j] = vcp.normalImpulse;
+        m_tangentImpulse[p + j] = vcp.tangentImpulse;
+      }
+    }
+  }
+
+  @Override
+  public void warmStart() {
+    for (int i = 0; i < m_count; ++i) {
+      final Velocity velocityA = m_velocities[m_indexA[i]];
+      final Velocity velocityB = m_velocities[m_indexB[i]];
+      final float mA = m_invMassA[i];
+      final float iA = m_invIA[i];
+      final float mB = m_invMassB[i];
+      final float iB = m_invIB[i];
+      final float normalx = m_normalX[i];
+      final float normaly = m_normalY[i];
+      final float tangentx = 1.0f * normaly;
+      final float tangenty = -1.0f * normalx;
+
+      float vAx = velocityA.v.x;
+      float vAy = velocityA.v.y;
+      float wA = velocityA.w;
+      float vBx = velocityB.v.x;
+      float vBy = velocityB.v.y;
+      float wB = velocityB.w;
+
+      final int end = i * MAX_POINTS + m_pointCount[i];
+      for (int p = i * MAX_POINTS; p < end; ++p) {
+        final float Px = tangentx * m_tangentImpulse[p] + normalx * m_normalImpulse[p];
+        final float Py = tangenty * m_tangentImpulse[p] + normaly * m_normalImpulse[p];
+
+        wA -= iA * (m_rAX[p] * Py - m_rAY[p] * Px);
+        vAx -= Px * mA;
+        vAy -= Py * mA;
+        wB += iB * (m_rBX[p] * Py - m_rBY[p] * Px);
+        vBx += Px * mB;
+        vBy += Py * mB;
+      }
+
+      velocityA.v.x = vAx;
+      velocityA.v.y = vAy;
+      velocityA.w = wA;
+      velocityB.v.x = vBx;
+      velocityB.v.y = vBy;
+      velocityB.w = wB;
+    }
+  }
+
+  @Override
+  public void solveVelocityConstraints() {
+    final float[] rAX = m_rAX;
+    final float[] rAY = m_rAY;
+    final float[] rBX = m_rBX;
+    final float[] rBY = m_rBY;
+    final float[] normalImpulse = m_normalImpulse;
+    final float[] tangentImpulse = m_tangentImpulse;
+
+    for (int i = 0; i < m_count; ++i) {
+      final Velocity velocityA = m_velocities[m_indexA[i]];
+      final Velocity velocityB = m_velocities[m_indexB[i]];
+      final float mA = m_invMassA[i];
+      final float mB = m_invMassB[i];
+      final float iA = m_invIA[i];
+      final float iB = m_invIB[i];
+      final int pointCount = m_pointCount[i];
+
+      float vAx = velocityA.v.x;
+      float vAy = velocityA.v.y;
+      float wA = velocityA.w;
+      float vBx = velocityB.v.x;
+      float vBy = velocityB.v.y;
+      float wB = velocityB.w;
+
+      final float normalx = m_normalX[i];
+      final float normaly = m_normalY[i];
+      final float tangentx = 1.0f * normaly;
+      final float tangenty = -1.0f * normalx;
+      final float friction = m_friction[i];
+      final float tangentSpeed = m_tangentSpeed[i];
+
+      assert (pointCount == 1 || pointCount == 2);
+
+      // Solve tangent constraints
+      final int first = i * MAX_POINTS;
+      for (int p = first; p < first + pointCount; ++p) {
+        final float dvx = -wB * rBY[p] + vBx - vAx + wA * rAY[p];
+        final float dvy = wB * rBX[p] + vBy - vAy - wA * rAX[p];
+
+        // Compute tangent force
+        final float vt = dvx * tangentx + dvy * tangenty - tangentSpeed;
+        float lambda = m_tangentMass[p] * (-vt);
+
+        // Clamp the accumulated force
+        final float maxFriction = friction * normalImpulse[p];
+        final float newImpulse =
+            MathUtils.clamp(tangentImpulse[p] + lambda, -maxFriction, maxFriction);
+        lambda = newImpulse - tangentImpulse[p];
+        tangentImpulse[p] = newImpulse;
+
+        // Apply contact impulse
+        final float Px = tangentx * lambda;
+        final float Py = tangenty * lambda;
+
+        vAx -= Px * mA;
+        vAy -= Py * mA;
+        wA -= iA * (rAX[p] * Py - rAY[p] * Px);
+
+        vBx += Px * mB;
+        vBy += Py * mB;
+        wB += iB * (rBX[p] * Py - rBY[p] * Px);
+      }
+
+      // Solve normal constraints
+      if (pointCount == 1) {
+        final int p = first;
+
+        // Relative velocity at contact
+        final float dvx = -wB * rBY[p] + vBx - vAx + wA * rAY[p];
+        final float dvy = wB * rBX[p] + vBy - vAy - wA * rAX[p];
+
+        // Compute normal impulse
+        final float vn = dvx * normalx + dvy * normaly;
+        float lambda = -m_normalMass[p] * (vn - m_velocityBias[p]);
+
+        // Clamp the accumulated impulse
+        final float a = normalImpulse[p] + lambda;
+        final float newImpulse = (a > 0.0f ? a : 0.0f);
+        lambda = newImpulse - normalImpulse[p];
+        normalImpulse[p] = newImpulse;
+
+        // Apply contact impulse
+        final float Px = normalx * lambda;
+        final float Py = normaly * lambda;
+
+        vAx -= Px * mA;
+        vAy -= Py * mA;
+        wA -= iA * (rAX[p] * Py - rAY[p] * Px);
+
+        vBx += Px * mB;
+        vBy += Py * mB;
+        wB += iB * (rBX[p] * Py - rBY[p] * Px);
+      } else {
+        // Block solver, see ContactSolver.solveVelocityConstraints.
+        final int p1 = first;
+        final int p2 = first + 1;
+        final int k = i * 4;
+        final float ax = normalImpulse[p1];
+        final float ay = normalImpulse[p2];
+
+        assert (ax >= 0.0f && ay >= 0.0f);
+        // Relative velocity at contact
+        final float dv1x = -wB * rBY[p1] + vBx - vAx + wA * rAY[p1];
+        final float dv1y = wB * rBX[p1] + vBy - vAy - wA * rAX[p1];
+        final float dv2x = -wB * rBY[p2] + vBx - vAx + wA * rAY[p2];
+        final float dv2y = wB * rBX[p2] + vBy - vAy - wA * rAX[p2];
+
+        // Compute normal velocity
+        final float vn1 = dv1x * normalx + dv1y * normaly;
+        final float vn2 = dv2x * normalx + dv2y * normaly;
+
+        float bx = vn1 - m_velocityBias[p1];
+        float by = vn2 - m_velocityBias[p2];
+
+        // Compute b'
+        bx -= m_K[k] * ax + m_K[k + 2] * ay;
+        by -= m_K[k + 1] * ax + m_K[k + 3] * ay;
+
+        // Case 1: vn = 0, x = - inv(A) * b'
+        float xx = m_normalMassK[k] * bx + m_normalMassK[k + 2] * by;
+        float xy = m_normalMassK[k + 1] * bx + m_normalMassK[k + 3] * by;
+        xx *= -1;
+        xy *= -1;
+        boolean solved = xx >= 0.0f && xy >= 0.0f;
+
+        if (!solved) {
+          // Case 2: vn1 = 0 and x2 = 0
+          xx = -m_normalMass[p1] * bx;
+          xy = 0.0f;
+          solved = xx >= 0.0f && m_K[k + 1] * xx + by >= 0.0f;
+        }
+
+        if (!solved) {
+          // Case 3: vn2 = 0 and x1 = 0
+          xx = 0.0f;
+          xy = -m_normalMass[p2] * by;
+          solved = xy >= 0.0f && m_K[k + 2] * xy + bx >= 0.0f;
+        }
+
+        if (!solved) {
+          // Case 4: x1 = 0 and x2 = 0
+          xx = 0.0f;
+          xy = 0.0f;
+          solved = bx >= 0.0f && by >= 0.0f;
+        }
+
+        // No solution, give up. This is hit sometimes, but it doesn't seem to matter.
+        if (solved) {
+          // Get the incremental impulse
+          final float dx = xx - ax;
+          final float dy = xy - ay;
+
+          // Apply incremental impulse
+          final float P1x = dx * normalx;
+          final float P1y = dx * normaly;
+          final float P2x = dy * normalx;
+          final float P2y = dy * normaly;
+
+          vAx -= mA * (P1x + P2x);
+          vAy -= mA * (P1y + P2y);
+          vBx += mB * (P1x + P2x);
+          vBy += mB * (P1y + P2y);
+
+          wA -= iA * (rAX[p1] * P1y - rAY[p1] * P1x + (rAX[p2] * P2y - rAY[p2] * P2x));
+          wB += iB * (rBX[p1] * P1y - rBY[p1] * P1x + (rBX[p2] * P2y - rBY[p2] * P2x));
+
+          // Accumulate
+          normalImpulse[p1] = xx;
+          normalImpulse[p2] = xy;
+        }
+      }
+
+      velocityA.v.x = vAx;
+      velocityA.v.y = vAy;
+      velocityA.w = wA;
+      velocityB.v.x = vBx;
+      velocityB.v.y = vBy;
+      velocityB.w = wB;
+    }
+  }
+
+  /**
+   * Store the impulses in the manifolds for warm starting, and in the constraint points, read by
+   * the post solve reports.
+   */
+  @Override
+  public void storeImpulses() {
+    for (int i = 0; i < m_count; i++) {
+      final ContactVelocityConstraint vc = m_velocityConstraints[i];
+      final Manifold manifold = m_contacts[vc.contactIndex].getManifold();
+
+      final int p = i * MAX_POINTS;
+      for (int j = 0; j < m_pointCount[i]; j++) {
+        manifold.points[j].normalImpulse = m_normalImpulse[p + j];
+        manifold.points[j].tangentImpulse = m_tangentImpulse[p + j];
+        vc.points[j].normalImpulse = m_normalImpulse[p + j];
+        vc.points[j].tangentImpulse = m_tangentImpulse[p + j];
+      }
+    }
+  }
+}
@@ -23,6 +23,7 @@
  ******************************************************************************/
 package com.abubusoft.xenon.box2d.dynamics.contacts;
 
+import com.abubusoft.xenon.box2d.collision.Collision;
 import com.abubusoft.xenon.box2d.collision.Manifold;
 import com.abubusoft.xenon.box2d.collision.shapes.CircleShape;
 import com.abubusoft.xenon.box2d.collision.shapes.PolygonShape;
@@ -44,8 +45,8 @@ public class PolygonAndCircleContact extends Contact {
   }
 
   @Override
-  public void evaluate(Manifold manifold, Transform xfA, Transform xfB) {
-    pool.getCollision().collidePolygonAndCircle(manifold, (PolygonShape) m_fixtureA.getShape(),
+  public void evaluate(Manifold manifold, Transform xfA, Transform xfB, Collision collision) {
+    collision.collidePolygonAndCircle(manifold, (PolygonShape) m_fixtureA.getShape(),
         xfA, (CircleShape) m_fixtureB.getShape(), xfB);
   }
 }
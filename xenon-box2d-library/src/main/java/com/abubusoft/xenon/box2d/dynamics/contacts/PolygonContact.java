@@ -23,6 +23,7 @@
  ******************************************************************************/
 package com.abubusoft.xenon.box2d.dynamics.contacts;
 
+import com.abubusoft.xenon.box2d.collision.Collision;
 import com.abubusoft.xenon.box2d.collision.Manifold;
 import com.abubusoft.xenon.box2d.collision.shapes.PolygonShape;
 import com.abubusoft.xenon.box2d.collision.shapes.ShapeType;
@@ -43,8 +44,8 @@ public class PolygonContact extends Contact {
   }
 
   @Override
-  public void evaluate(Manifold manifold, Transform xfA, Transform xfB) {
-    pool.getCollision().collidePolygons(manifold, (PolygonShape) m_fixtureA.getShape(), xfA,
+  public void evaluate(Manifold manifold, Transform xfA, Transform xfB, Collision collision) {
+    collision.collidePolygons(manifold, (PolygonShape) m_fixtureA.getShape(), xfA,
         (PolygonShape) m_fixtureB.getShape(), xfB);
   }
 }
@@ -23,6 +23,8 @@
  ******************************************************************************/
 package com.abubusoft.xenon.box2d.dynamics.joints;
 
+import java.nio.ByteBuffer;
+
 import com.abubusoft.xenon.box2d.common.MathUtils;
 import com.abubusoft.xenon.box2d.common.Settings;
 import com.abubusoft.xenon.box2d.common.Vec2;
@@ -31,6 +33,7 @@ import com.abubusoft.xenon.box2d.dynamics.SolverData;
 import com.abubusoft.xenon.box2d.dynamics.World;
 import com.abubusoft.xenon.box2d.dynamics.contacts.Position;
 import com.abubusoft.xenon.box2d.dynamics.contacts.Velocity;
+import com.abubusoft.xenon.box2d.pooling.IWorldPool;
 
 public class ConstantVolumeJoint extends Joint {
 
@@ -131,7 +134,7 @@ public class ConstantVolumeJoint extends Joint {
     return area;
   }
 
-  private boolean constrainEdges(Position[] positions) {
+  private boolean constrainEdges(Position[] positions, IWorldPool pool) {
     float perimeter = 0.0f;
     for (int i = 0; i < bodies.length; ++i) {
       final int next = (i == bodies.length - 1) ? 0 : i + 1;
@@ -175,11 +178,26 @@ public class ConstantVolumeJoint extends Joint {
     return done;
   }
 
+  @Override
+  public int getStateSize() {
+    return 4;
+  }
+
+  @Override
+  public void writeState(ByteBuffer buffer) {
+    buffer.putFloat(m_impulse);
+  }
+
+  @Override
+  public void readState(ByteBuffer buffer) {
+    m_impulse = buffer.getFloat();
+  }
+
   @Override
   public void initVelocityConstraints(final SolverData step) {
     Velocity[] velocities = step.velocities;
     Position[] positions = step.positions;
-    final Vec2[] d = pool.getVec2Array(bodies.length);
+    final Vec2[] d = step.pool.getVec2Array(bodies.length);
 
     for (int i = 0; i < bodies.length; ++i) {
       final int prev = (i == 0) ? bodies.length - 1 : i - 1;
@@ -206,7 +224,7 @@ public class ConstantVolumeJoint extends Joint {
 
   @Override
   public boolean solvePositionConstraints(SolverData step) {
-    return constrainEdges(step.positions);
+    return constrainEdges(step.positions, step.pool);
   }
 
   @Override
@@ -216,7 +234,7 @@ public class ConstantVolumeJoint extends Joint {
 
     Velocity[] velocities = step.velocities;
     Position[] positions = step.positions;
-    final Vec2 d[] = pool.getVec2Array(bodies.length);
+    final Vec2 d[] = step.pool.getVec2Array(bodies.length);
 
     for (int i = 0; i < bodies.length; ++i) {
       final int prev = (i == 0) ? bodies.length - 1 : i - 1;
@@ -46,6 +46,8 @@
 
 package com.abubusoft.xenon.box2d.dynamics.joints;
 
+import java.nio.ByteBuffer;
+
 import com.abubusoft.xenon.box2d.common.MathUtils;
 import com.abubusoft.xenon.box2d.common.Rot;
 import com.abubusoft.xenon.box2d.common.Settings;
@@ -163,6 +165,21 @@ public class DistanceJoint extends Joint {
     return 0.0f;
   }
 
+  @Override
+  public int getStateSize() {
+    return 4;
+  }
+
+  @Override
+  public void writeState(ByteBuffer buffer) {
+    buffer.putFloat(m_impulse);
+  }
+
+  @Override
+  public void readState(ByteBuffer buffer) {
+    m_impulse = buffer.getFloat();
+  }
+
   @Override
   public void initVelocityConstraints(final SolverData data) {
 
@@ -185,8 +202,8 @@ public class DistanceJoint extends Joint {
     Vec2 vB = data.velocities[m_indexB].v;
     float wB = data.velocities[m_indexB].w;
 
-    final Rot qA = pool.popRot();
-    final Rot qB = pool.popRot();
+    final Rot qA = data.pool.popRot();
+    final Rot qB = data.pool.popRot();
 
     qA.set(aA);
     qB.set(aB);
@@ -196,7 +213,7 @@ public class DistanceJoint extends Joint {
     Rot.mulToOutUnsafe(qB, m_u.set(m_localAnchorB).subLocal(m_localCenterB), m_rB);
     m_u.set(cB).addLocal(m_rB).subLocal(cA).subLocal(m_rA);
 
-    pool.pushRot(2);
+    data.pool.pushRot(2);
 
     // Handle singularity.
     float length = m_u.length();
@@ -244,7 +261,7 @@ public class DistanceJoint extends Joint {
       // Scale the impulse to support a variable time step.
       m_impulse *= data.step.dtRatio;
 
-      Vec2 P = pool.popVec2();
+      Vec2 P = data.pool.popVec2();
       P.set(m_u).mulLocal(m_impulse);
 
       vA.x -= m_invMassA * P.x;
@@ -255,7 +272,7 @@ public class DistanceJoint extends Joint {
       vB.y += m_invMassB * P.y;
       wB += m_invIB * Vec2.cross(m_rB, P);
 
-      pool.pushVec2(1);
+      data.pool.pushVec2(1);
     } else {
       m_impulse = 0.0f;
     }
@@ -272,8 +289,8 @@ public class DistanceJoint extends Joint {
     Vec2 vB = data.velocities[m_indexB].v;
     float wB = data.velocities[m_indexB].w;
 
-    final Vec2 vpA = pool.popVec2();
-    final Vec2 vpB = pool.popVec2();
+    final Vec2 vpA = data.pool.popVec2();
+    final Vec2 vpB = data.pool.popVec2();
 
     // Cdot = dot(u, v + cross(w, r))
     Vec2.crossToOutUnsafe(wA, m_rA, vpA);
@@ -301,7 +318,7 @@ public class DistanceJoint extends Joint {
 //    data.velocities[m_indexB].v.set(vB);
     data.velocities[m_indexB].w = wB;
 
-    pool.pushVec2(2);
+    data.pool.pushVec2(2);
   }
 
   @Override
@@ -309,11 +326,11 @@ public class DistanceJoint extends Joint {
     if (m_frequencyHz > 0.0f) {
       return true;
     }
-    final Rot qA = pool.popRot();
-    final Rot qB = pool.popRot();
-    final Vec2 rA = pool.popVec2();
-    final Vec2 rB = pool.popVec2();
-    final Vec2 u = pool.popVec2();
+    final Rot qA = data.pool.popRot();
+    final Rot qB = data.pool.popRot();
+    final Vec2 rA = data.pool.popVec2();
+    final Vec2 rB = data.pool.popVec2();
+    final Vec2 u = data.pool.popVec2();
 
     Vec2 cA = data.positions[m_indexA].c;
     float aA = data.positions[m_indexA].a;
@@ -348,8 +365,8 @@ public class DistanceJoint extends Joint {
 //    data.positions[m_indexB].c.set(cB);
     data.positions[m_indexB].a = aB;
 
-    pool.pushVec2(3);
-    pool.pushRot(2);
+    data.pool.pushVec2(3);
+    data.pool.pushRot(2);
 
     return MathUtils.abs(C) < Settings.linearSlop;
   }
@@ -26,6 +26,8 @@
  */
 package com.abubusoft.xenon.box2d.dynamics.joints;
 
+import java.nio.ByteBuffer;
+
 import com.abubusoft.xenon.box2d.common.Mat22;
 import com.abubusoft.xenon.box2d.common.MathUtils;
 import com.abubusoft.xenon.box2d.common.Rot;
@@ -122,6 +124,25 @@ public class FrictionJoint extends Joint {
   /**
    * @see com.abubusoft.xenon.box2d.dynamics.joints.Joint#initVelocityConstraints(com.abubusoft.xenon.box2d.dynamics.TimeStep)
    */
+  @Override
+  public int getStateSize() {
+    return 12;
+  }
+
+  @Override
+  public void writeState(ByteBuffer buffer) {
+    buffer.putFloat(m_linearImpulse.x);
+    buffer.putFloat(m_linearImpulse.y);
+    buffer.putFloat(m_angularImpulse);
+  }
+
+  @Override
+  public void readState(ByteBuffer buffer) {
+    m_linearImpulse.x = buffer.getFloat();
+    m_linearImpulse.y = buffer.getFloat();
+    m_angularImpulse = buffer.getFloat();
+  }
+
   @Override
   public void initVelocityConstraints(final SolverData data) {
     m_indexA = m_bodyA.m_islandIndex;
@@ -142,9 +163,9 @@ public class FrictionJoint extends Joint {
     float wB = data.velocities[m_indexB].w;
 
 
-    final Vec2 temp = pool.popVec2();
-    final Rot qA = pool.popRot();
-    final Rot qB = pool.popRot();
+    final Vec2 temp = data.pool.popVec2();
+    final Rot qA = data.pool.popRot();
+    final Rot qB = data.pool.popRot();
 
     qA.set(aA);
     qB.set(aB);
@@ -165,7 +186,7 @@ public class FrictionJoint extends Joint {
     float mA = m_invMassA, mB = m_invMassB;
     float iA = m_invIA, iB = m_invIB;
 
-    final Mat22 K = pool.popMat22();
+    final Mat22 K = data.pool.popMat22();
     K.ex.x = mA + mB + iA * m_rA.y * m_rA.y + iB * m_rB.y * m_rB.y;
     K.ex.y = -iA * m_rA.x * m_rA.y - iB * m_rB.x * m_rB.y;
     K.ey.x = K.ex.y;
@@ -183,7 +204,7 @@ public class FrictionJoint extends Joint {
       m_linearImpulse.mulLocal(data.step.dtRatio);
       m_angularImpulse *= data.step.dtRatio;
 
-      final Vec2 P = pool.popVec2();
+      final Vec2 P = data.pool.popVec2();
       P.set(m_linearImpulse);
 
       temp.set(P).mulLocal(mA);
@@ -194,7 +215,7 @@ public class FrictionJoint extends Joint {
       vB.addLocal(temp);
       wB += iB * (Vec2.cross(m_rB, P) + m_angularImpulse);
 
-      pool.pushVec2(1);
+      data.pool.pushVec2(1);
     } else {
       m_linearImpulse.setZero();
       m_angularImpulse = 0.0f;
@@ -207,9 +228,9 @@ public class FrictionJoint extends Joint {
 //    data.velocities[m_indexB].v.set(vB);
     data.velocities[m_indexB].w = wB;
 
-    pool.pushRot(2);
-    pool.pushVec2(1);
-    pool.pushMat22(1);
+    data.pool.pushRot(2);
+    data.pool.pushVec2(1);
+    data.pool.pushMat22(1);
   }
 
   @Override
@@ -240,19 +261,19 @@ public class FrictionJoint extends Joint {
 
     // Solve linear friction
     {
-      final Vec2 Cdot = pool.popVec2();
-      final Vec2 temp = pool.popVec2();
+      final Vec2 Cdot = data.pool.popVec2();
+      final Vec2 temp = data.pool.popVec2();
 
       Vec2.crossToOutUnsafe(wA, m_rA, temp);
       Vec2.crossToOutUnsafe(wB, m_rB, Cdot);
       Cdot.addLocal(vB).subLocal(vA).subLocal(temp);
 
-      final Vec2 impulse = pool.popVec2();
+      final Vec2 impulse = data.pool.popVec2();
       Mat22.mulToOutUnsafe(m_linearMass, Cdot, impulse);
       impulse.negateLocal();
 
 
-      final Vec2 oldImpulse = pool.popVec2();
+      final Vec2 oldImpulse = data.pool.popVec2();
       oldImpulse.set(m_linearImpulse);
       m_linearImpulse.addLocal(impulse);
 
@@ -284,7 +305,7 @@ public class FrictionJoint extends Joint {
 //    data.velocities[m_indexB].v.set(vB);
     data.velocities[m_indexB].w = wB;
 
-    pool.pushVec2(4);
+    data.pool.pushVec2(4);
   }
 
   @Override
@@ -26,6 +26,8 @@
  */
 package com.abubusoft.xenon.box2d.dynamics.joints;
 
+import java.nio.ByteBuffer;
+
 import com.abubusoft.xenon.box2d.common.Rot;
 import com.abubusoft.xenon.box2d.common.Settings;
 import com.abubusoft.xenon.box2d.common.Transform;
@@ -225,6 +227,21 @@ public class GearJoint extends Joint {
     return m_ratio;
   }
 
+  @Override
+  public int getStateSize() {
+    return 4;
+  }
+
+  @Override
+  public void writeState(ByteBuffer buffer) {
+    buffer.putFloat(m_impulse);
+  }
+
+  @Override
+  public void readState(ByteBuffer buffer) {
+    m_impulse = buffer.getFloat();
+  }
+
   @Override
   public void initVelocityConstraints(SolverData data) {
     m_indexA = m_bodyA.m_islandIndex;
@@ -264,7 +281,7 @@ public class GearJoint extends Joint {
     Vec2 vD = data.velocities[m_indexD].v;
     float wD = data.velocities[m_indexD].w;
 
-    Rot qA = pool.popRot(), qB = pool.popRot(), qC = pool.popRot(), qD = pool.popRot();
+    Rot qA = data.pool.popRot(), qB = data.pool.popRot(), qC = data.pool.popRot(), qD = data.pool.popRot();
     qA.set(aA);
     qB.set(aB);
     qC.set(aC);
@@ -272,7 +289,7 @@ public class GearJoint extends Joint {
 
     m_mass = 0.0f;
 
-    Vec2 temp = pool.popVec2();
+    Vec2 temp = data.pool.popVec2();
 
     if (m_typeA == JointType.REVOLUTE) {
       m_JvAC.setZero();
@@ -280,15 +297,15 @@ public class GearJoint extends Joint {
       m_JwC = 1.0f;
       m_mass += m_iA + m_iC;
     } else {
-      Vec2 rC = pool.popVec2();
-      Vec2 rA = pool.popVec2();
+      Vec2 rC = data.pool.popVec2();
+      Vec2 rA = data.pool.popVec2();
       Rot.mulToOutUnsafe(qC, m_localAxisC, m_JvAC);
       Rot.mulToOutUnsafe(qC, temp.set(m_localAnchorC).subLocal(m_lcC), rC);
       Rot.mulToOutUnsafe(qA, temp.set(m_localAnchorA).subLocal(m_lcA), rA);
       m_JwC = Vec2.cross(rC, m_JvAC);
       m_JwA = Vec2.cross(rA, m_JvAC);
       m_mass += m_mC + m_mA + m_iC * m_JwC * m_JwC + m_iA * m_JwA * m_JwA;
-      pool.pushVec2(2);
+      data.pool.pushVec2(2);
     }
 
     if (m_typeB == JointType.REVOLUTE) {
@@ -297,9 +314,9 @@ public class GearJoint extends Joint {
       m_JwD = m_ratio;
       m_mass += m_ratio * m_ratio * (m_iB + m_iD);
     } else {
-      Vec2 u = pool.popVec2();
-      Vec2 rD = pool.popVec2();
-      Vec2 rB = pool.popVec2();
+      Vec2 u = data.pool.popVec2();
+      Vec2 rD = data.pool.popVec2();
+      Vec2 rB = data.pool.popVec2();
       Rot.mulToOutUnsafe(qD, m_localAxisD, u);
       Rot.mulToOutUnsafe(qD, temp.set(m_localAnchorD).subLocal(m_lcD), rD);
       Rot.mulToOutUnsafe(qB, temp.set(m_localAnchorB).subLocal(m_lcB), rB);
@@ -307,7 +324,7 @@ public class GearJoint extends Joint {
       m_JwD = m_ratio * Vec2.cross(rD, u);
       m_JwB = m_ratio * Vec2.cross(rB, u);
       m_mass += m_ratio * m_ratio * (m_mD + m_mB) + m_iD * m_JwD * m_JwD + m_iB * m_JwB * m_JwB;
-      pool.pushVec2(3);
+      data.pool.pushVec2(3);
     }
 
     // Compute effective mass.
@@ -332,8 +349,8 @@ public class GearJoint extends Joint {
     } else {
       m_impulse = 0.0f;
     }
-    pool.pushVec2(1);
-    pool.pushRot(4);
+    data.pool.pushVec2(1);
+    data.pool.pushRot(4);
 
     // data.velocities[m_indexA].v = vA;
     data.velocities[m_indexA].w = wA;
@@ -356,12 +373,12 @@ public class GearJoint extends Joint {
     Vec2 vD = data.velocities[m_indexD].v;
     float wD = data.velocities[m_indexD].w;
 
-    Vec2 temp1 = pool.popVec2();
-    Vec2 temp2 = pool.popVec2();
+    Vec2 temp1 = data.pool.popVec2();
+    Vec2 temp2 = data.pool.popVec2();
     float Cdot =
         Vec2.dot(m_JvAC, temp1.set(vA).subLocal(vC)) + Vec2.dot(m_JvBD, temp2.set(vB).subLocal(vD));
     Cdot += (m_JwA * wA - m_JwC * wC) + (m_JwB * wB - m_JwD * wD);
-    pool.pushVec2(2);
+    data.pool.pushVec2(2);
 
     float impulse = -m_mass * Cdot;
     m_impulse += impulse;
@@ -412,7 +429,7 @@ public class GearJoint extends Joint {
     Vec2 cD = data.positions[m_indexD].c;
     float aD = data.positions[m_indexD].a;
 
-    Rot qA = pool.popRot(), qB = pool.popRot(), qC = pool.popRot(), qD = pool.popRot();
+    Rot qA = data.pool.popRot(), qB = data.pool.popRot(), qC = data.pool.popRot(), qD = data.pool.popRot();
     qA.set(aA);
     qB.set(aB);
     qC.set(aC);
@@ -422,9 +439,9 @@ public class GearJoint extends Joint {
 
     float coordinateA, coordinateB;
 
-    Vec2 temp = pool.popVec2();
-    Vec2 JvAC = pool.popVec2();
-    Vec2 JvBD = pool.popVec2();
+    Vec2 temp = data.pool.popVec2();
+    Vec2 JvAC = data.pool.popVec2();
+    Vec2 JvBD = data.pool.popVec2();
     float JwA, JwB, JwC, JwD;
     float mass = 0.0f;
 
@@ -436,10 +453,10 @@ public class GearJoint extends Joint {
 
       coordinateA = aA - aC - m_referenceAngleA;
     } else {
-      Vec2 rC = pool.popVec2();
-      Vec2 rA = pool.popVec2();
-      Vec2 pC = pool.popVec2();
-      Vec2 pA = pool.popVec2();
+      Vec2 rC = data.pool.popVec2();
+      Vec2 rA = data.pool.popVec2();
+      Vec2 pC = data.pool.popVec2();
+      Vec2 pA = data.pool.popVec2();
       Rot.mulToOutUnsafe(qC, m_localAxisC, JvAC);
       Rot.mulToOutUnsafe(qC, temp.set(m_localAnchorC).subLocal(m_lcC), rC);
       Rot.mulToOutUnsafe(qA, temp.set(m_localAnchorA).subLocal(m_lcA), rA);
@@ -450,7 +467,7 @@ public class GearJoint extends Joint {
       pC.set(m_localAnchorC).subLocal(m_lcC);
       Rot.mulTransUnsafe(qC, temp.set(rA).addLocal(cA).subLocal(cC), pA);
       coordinateA = Vec2.dot(pA.subLocal(pC), m_localAxisC);
-      pool.pushVec2(4);
+      data.pool.pushVec2(4);
     }
 
     if (m_typeB == JointType.REVOLUTE) {
@@ -461,11 +478,11 @@ public class GearJoint extends Joint {
 
       coordinateB = aB - aD - m_referenceAngleB;
     } else {
-      Vec2 u = pool.popVec2();
-      Vec2 rD = pool.popVec2();
-      Vec2 rB = pool.popVec2();
-      Vec2 pD = pool.popVec2();
-      Vec2 pB = pool.popVec2();
+      Vec2 u = data.pool.popVec2();
+      Vec2 rD = data.pool.popVec2();
+      Vec2 rB = data.pool.popVec2();
+      Vec2 pD = data.pool.popVec2();
+      Vec2 pB = data.pool.popVec2();
       Rot.mulToOutUnsafe(qD, m_localAxisD, u);
       Rot.mulToOutUnsafe(qD, temp.set(m_localAnchorD).subLocal(m_lcD), rD);
       Rot.mulToOutUnsafe(qB, temp.set(m_localAnchorB).subLocal(m_lcB), rB);
@@ -477,7 +494,7 @@ public class GearJoint extends Joint {
       pD.set(m_localAnchorD).subLocal(m_lcD);
       Rot.mulTransUnsafe(qD, temp.set(rB).addLocal(cB).subLocal(cD), pB);
       coordinateB = Vec2.dot(pB.subLocal(pD), m_localAxisD);
-      pool.pushVec2(5);
+      data.pool.pushVec2(5);
     }
 
     float C = (coordinateA + m_ratio * coordinateB) - m_constant;
@@ -486,8 +503,8 @@ public class GearJoint extends Joint {
     if (mass > 0.0f) {
       impulse = -C / mass;
     }
-    pool.pushVec2(3);
-    pool.pushRot(4);
+    data.pool.pushVec2(3);
+    data.pool.pushRot(4);
 
     cA.x += (m_mA * impulse) * JvAC.x;
     cA.y += (m_mA * impulse) * JvAC.y;
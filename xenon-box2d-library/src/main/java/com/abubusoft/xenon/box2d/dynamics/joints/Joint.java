@@ -23,6 +23,8 @@
  ******************************************************************************/
 package com.abubusoft.xenon.box2d.dynamics.joints;
 
+import java.nio.ByteBuffer;
+
 import com.abubusoft.xenon.box2d.common.Vec2;
 import com.abubusoft.xenon.box2d.dynamics.Body;
 import com.abubusoft.xenon.box2d.dynamics.SolverData;
@@ -217,6 +219,36 @@ public abstract class Joint {
     return m_bodyA.isActive() && m_bodyB.isActive();
   }
 
+  /**
+   * @return the size in bytes of what {@link #writeState(ByteBuffer)} writes.
+   */
+  public int getStateSize() {
+    return 0;
+  }
+
+  /**
+   * Write what the solver keeps from a step to the next, the impulses for warm starting and the
+   * limit state, for a world snapshot. The settings of the joint are not written.
+   */
+  public void writeState(ByteBuffer buffer) {
+  }
+
+  /**
+   * Read what {@link #writeState(ByteBuffer)} wrote.
+   */
+  public void readState(ByteBuffer buffer) {
+  }
+
+  private static final LimitState[] LIMIT_STATES = LimitState.values();
+
+  protected static void writeLimitState(ByteBuffer buffer, LimitState state) {
+    buffer.put((byte) state.ordinal());
+  }
+
+  protected static LimitState readLimitState(ByteBuffer buffer) {
+    return LIMIT_STATES[buffer.get()];
+  }
+
   /** Internal */
   public abstract void initVelocityConstraints(SolverData data);
 
@@ -1,5 +1,7 @@
 package com.abubusoft.xenon.box2d.dynamics.joints;
 
+import java.nio.ByteBuffer;
+
 import com.abubusoft.xenon.box2d.common.Mat22;
 import com.abubusoft.xenon.box2d.common.MathUtils;
 import com.abubusoft.xenon.box2d.common.Rot;
@@ -164,6 +166,25 @@ public class MotorJoint extends Joint {
     return m_maxTorque;
   }
 
+  @Override
+  public int getStateSize() {
+    return 12;
+  }
+
+  @Override
+  public void writeState(ByteBuffer buffer) {
+    buffer.putFloat(m_linearImpulse.x);
+    buffer.putFloat(m_linearImpulse.y);
+    buffer.putFloat(m_angularImpulse);
+  }
+
+  @Override
+  public void readState(ByteBuffer buffer) {
+    m_linearImpulse.x = buffer.getFloat();
+    m_linearImpulse.y = buffer.getFloat();
+    m_angularImpulse = buffer.getFloat();
+  }
+
   @Override
   public void initVelocityConstraints(SolverData data) {
     m_indexA = m_bodyA.m_islandIndex;
@@ -185,10 +206,10 @@ public class MotorJoint extends Joint {
     final Vec2 vB = data.velocities[m_indexB].v;
     float wB = data.velocities[m_indexB].w;
 
-    final Rot qA = pool.popRot();
-    final Rot qB = pool.popRot();
-    final Vec2 temp = pool.popVec2();
-    Mat22 K = pool.popMat22();
+    final Rot qA = data.pool.popRot();
+    final Rot qB = data.pool.popRot();
+    final Vec2 temp = data.pool.popVec2();
+    Mat22 K = data.pool.popMat22();
 
     qA.set(aA);
     qB.set(aB);
@@ -248,9 +269,9 @@ public class MotorJoint extends Joint {
       m_angularImpulse = 0.0f;
     }
 
-    pool.pushVec2(1);
-    pool.pushMat22(1);
-    pool.pushRot(2);
+    data.pool.pushVec2(1);
+    data.pool.pushMat22(1);
+    data.pool.pushRot(2);
 
     // data.velocities[m_indexA].v = vA;
     data.velocities[m_indexA].w = wA;
@@ -271,7 +292,7 @@ public class MotorJoint extends Joint {
     float h = data.step.dt;
     float inv_h = data.step.inv_dt;
 
-    final Vec2 temp = pool.popVec2();
+    final Vec2 temp = data.pool.popVec2();
 
     // Solve angular friction
     {
@@ -287,7 +308,7 @@ public class MotorJoint extends Joint {
       wB += iB * impulse;
     }
 
-    final Vec2 Cdot = pool.popVec2();
+    final Vec2 Cdot = data.pool.popVec2();
 
     // Solve linear friction
     {
@@ -301,7 +322,7 @@ public class MotorJoint extends Joint {
       final Vec2 impulse = temp;
       Mat22.mulToOutUnsafe(m_linearMass, Cdot, impulse);
       impulse.negateLocal();
-      final Vec2 oldImpulse = pool.popVec2();
+      final Vec2 oldImpulse = data.pool.popVec2();
       oldImpulse.set(m_linearImpulse);
       m_linearImpulse.addLocal(impulse);
 
@@ -324,7 +345,7 @@ public class MotorJoint extends Joint {
       wB += iB * (m_rB.x * impulse.y - m_rB.y * impulse.x);
     }
 
-    pool.pushVec2(3);
+    data.pool.pushVec2(3);
 
     // data.velocities[m_indexA].v.set(vA);
     data.velocities[m_indexA].w = wA;
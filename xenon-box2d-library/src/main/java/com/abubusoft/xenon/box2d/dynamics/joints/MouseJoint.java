@@ -23,6 +23,8 @@
  ******************************************************************************/
 package com.abubusoft.xenon.box2d.dynamics.joints;
 
+import java.nio.ByteBuffer;
+
 import com.abubusoft.xenon.box2d.common.Mat22;
 import com.abubusoft.xenon.box2d.common.MathUtils;
 import com.abubusoft.xenon.box2d.common.Rot;
@@ -141,6 +143,23 @@ public class MouseJoint extends Joint {
     return m_dampingRatio;
   }
 
+  @Override
+  public int getStateSize() {
+    return 8;
+  }
+
+  @Override
+  public void writeState(ByteBuffer buffer) {
+    buffer.putFloat(m_impulse.x);
+    buffer.putFloat(m_impulse.y);
+  }
+
+  @Override
+  public void readState(ByteBuffer buffer) {
+    m_impulse.x = buffer.getFloat();
+    m_impulse.y = buffer.getFloat();
+  }
+
   @Override
   public void initVelocityConstraints(final SolverData data) {
     m_indexB = m_bodyB.m_islandIndex;
@@ -153,7 +172,7 @@ public class MouseJoint extends Joint {
     Vec2 vB = data.velocities[m_indexB].v;
     float wB = data.velocities[m_indexB].w;
 
-    final Rot qB = pool.popRot();
+    final Rot qB = data.pool.popRot();
 
     qB.set(aB);
 
@@ -179,7 +198,7 @@ public class MouseJoint extends Joint {
     }
     m_beta = h * k * m_gamma;
 
-    Vec2 temp = pool.popVec2();
+    Vec2 temp = data.pool.popVec2();
 
     // Compute the effective mass matrix.
     Rot.mulToOutUnsafe(qB, temp.set(m_localAnchorB).subLocal(m_localCenterB), m_rB);
@@ -187,7 +206,7 @@ public class MouseJoint extends Joint {
     // K = [(1/m1 + 1/m2) * eye(2) - skew(r1) * invI1 * skew(r1) - skew(r2) * invI2 * skew(r2)]
     // = [1/m1+1/m2 0 ] + invI1 * [r1.y*r1.y -r1.x*r1.y] + invI2 * [r1.y*r1.y -r1.x*r1.y]
     // [ 0 1/m1+1/m2] [-r1.x*r1.y r1.x*r1.x] [-r1.x*r1.y r1.x*r1.x]
-    final Mat22 K = pool.popMat22();
+    final Mat22 K = data.pool.popMat22();
     K.ex.x = m_invMassB + m_invIB * m_rB.y * m_rB.y + m_gamma;
     K.ex.y = -m_invIB * m_rB.x * m_rB.y;
     K.ey.x = K.ex.y;
@@ -213,9 +232,9 @@ public class MouseJoint extends Joint {
 //    data.velocities[m_indexB].v.set(vB);
     data.velocities[m_indexB].w = wB;
 
-    pool.pushVec2(1);
-    pool.pushMat22(1);
-    pool.pushRot(1);
+    data.pool.pushVec2(1);
+    data.pool.pushMat22(1);
+    data.pool.pushRot(1);
   }
 
   @Override
@@ -230,12 +249,12 @@ public class MouseJoint extends Joint {
     float wB = data.velocities[m_indexB].w;
 
     // Cdot = v + cross(w, r)
-    final Vec2 Cdot = pool.popVec2();
+    final Vec2 Cdot = data.pool.popVec2();
     Vec2.crossToOutUnsafe(wB, m_rB, Cdot);
     Cdot.addLocal(vB);
 
-    final Vec2 impulse = pool.popVec2();
-    final Vec2 temp = pool.popVec2();
+    final Vec2 impulse = data.pool.popVec2();
+    final Vec2 temp = data.pool.popVec2();
 
     temp.set(m_impulse).mulLocal(m_gamma).addLocal(m_C).addLocal(Cdot).negateLocal();
     Mat22.mulToOutUnsafe(m_mass, temp, impulse);
@@ -256,7 +275,7 @@ public class MouseJoint extends Joint {
 //    data.velocities[m_indexB].v.set(vB);
     data.velocities[m_indexB].w = wB;
     
-    pool.pushVec2(3);
+    data.pool.pushVec2(3);
   }
 
 }
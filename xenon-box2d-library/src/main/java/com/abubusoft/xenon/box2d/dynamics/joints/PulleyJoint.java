@@ -26,6 +26,8 @@
  */
 package com.abubusoft.xenon.box2d.dynamics.joints;
 
+import java.nio.ByteBuffer;
+
 import com.abubusoft.xenon.box2d.common.MathUtils;
 import com.abubusoft.xenon.box2d.common.Rot;
 import com.abubusoft.xenon.box2d.common.Settings;
@@ -178,6 +180,21 @@ public class PulleyJoint extends Joint {
     return m_ratio;
   }
 
+  @Override
+  public int getStateSize() {
+    return 4;
+  }
+
+  @Override
+  public void writeState(ByteBuffer buffer) {
+    buffer.putFloat(m_impulse);
+  }
+
+  @Override
+  public void readState(ByteBuffer buffer) {
+    m_impulse = buffer.getFloat();
+  }
+
   @Override
   public void initVelocityConstraints(final SolverData data) {
     m_indexA = m_bodyA.m_islandIndex;
@@ -199,9 +216,9 @@ public class PulleyJoint extends Joint {
     Vec2 vB = data.velocities[m_indexB].v;
     float wB = data.velocities[m_indexB].w;
 
-    final Rot qA = pool.popRot();
-    final Rot qB = pool.popRot();
-    final Vec2 temp = pool.popVec2();
+    final Rot qA = data.pool.popRot();
+    final Rot qB = data.pool.popRot();
+    final Vec2 temp = data.pool.popVec2();
 
     qA.set(aA);
     qB.set(aB);
@@ -247,8 +264,8 @@ public class PulleyJoint extends Joint {
       m_impulse *= data.step.dtRatio;
 
       // Warm starting.
-      final Vec2 PA = pool.popVec2();
-      final Vec2 PB = pool.popVec2();
+      final Vec2 PA = data.pool.popVec2();
+      final Vec2 PB = data.pool.popVec2();
 
       PA.set(m_uA).mulLocal(-m_impulse);
       PB.set(m_uB).mulLocal(-m_ratio * m_impulse);
@@ -260,7 +277,7 @@ public class PulleyJoint extends Joint {
       vB.y += m_invMassB * PB.y;
       wB += m_invIB * Vec2.cross(m_rB, PB);
 
-      pool.pushVec2(2);
+      data.pool.pushVec2(2);
     } else {
       m_impulse = 0.0f;
     }
@@ -269,8 +286,8 @@ public class PulleyJoint extends Joint {
 //    data.velocities[m_indexB].v.set(vB);
     data.velocities[m_indexB].w = wB;
 
-    pool.pushVec2(1);
-    pool.pushRot(2);
+    data.pool.pushVec2(1);
+    data.pool.pushRot(2);
   }
 
   @Override
@@ -280,10 +297,10 @@ public class PulleyJoint extends Joint {
     Vec2 vB = data.velocities[m_indexB].v;
     float wB = data.velocities[m_indexB].w;
 
-    final Vec2 vpA = pool.popVec2();
-    final Vec2 vpB = pool.popVec2();
-    final Vec2 PA = pool.popVec2();
-    final Vec2 PB = pool.popVec2();
+    final Vec2 vpA = data.pool.popVec2();
+    final Vec2 vpB = data.pool.popVec2();
+    final Vec2 PA = data.pool.popVec2();
+    final Vec2 PB = data.pool.popVec2();
 
     Vec2.crossToOutUnsafe(wA, m_rA, vpA);
     vpA.addLocal(vA);
@@ -308,20 +325,20 @@ public class PulleyJoint extends Joint {
 //    data.velocities[m_indexB].v.set(vB);
     data.velocities[m_indexB].w = wB;
 
-    pool.pushVec2(4);
+    data.pool.pushVec2(4);
   }
 
   @Override
   public boolean solvePositionConstraints(final SolverData data) {
-    final Rot qA = pool.popRot();
-    final Rot qB = pool.popRot();
-    final Vec2 rA = pool.popVec2();
-    final Vec2 rB = pool.popVec2();
-    final Vec2 uA = pool.popVec2();
-    final Vec2 uB = pool.popVec2();
-    final Vec2 temp = pool.popVec2();
-    final Vec2 PA = pool.popVec2();
-    final Vec2 PB = pool.popVec2();
+    final Rot qA = data.pool.popRot();
+    final Rot qB = data.pool.popRot();
+    final Vec2 rA = data.pool.popVec2();
+    final Vec2 rB = data.pool.popVec2();
+    final Vec2 uA = data.pool.popVec2();
+    final Vec2 uB = data.pool.popVec2();
+    final Vec2 temp = data.pool.popVec2();
+    final Vec2 PA = data.pool.popVec2();
+    final Vec2 PB = data.pool.popVec2();
 
     Vec2 cA = data.positions[m_indexA].c;
     float aA = data.positions[m_indexA].a;
@@ -385,8 +402,8 @@ public class PulleyJoint extends Joint {
 //    data.positions[m_indexB].c.set(cB);
     data.positions[m_indexB].a = aB;
 
-    pool.pushRot(2);
-    pool.pushVec2(7);
+    data.pool.pushRot(2);
+    data.pool.pushVec2(7);
 
     return linearError < Settings.linearSlop;
   }
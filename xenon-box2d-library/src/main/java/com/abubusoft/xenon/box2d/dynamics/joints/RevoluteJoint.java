@@ -23,6 +23,8 @@
  ******************************************************************************/
 package com.abubusoft.xenon.box2d.dynamics.joints;
 
+import java.nio.ByteBuffer;
+
 import com.abubusoft.xenon.box2d.common.Mat22;
 import com.abubusoft.xenon.box2d.common.Mat33;
 import com.abubusoft.xenon.box2d.common.MathUtils;
@@ -105,6 +107,29 @@ public class RevoluteJoint extends Joint {
     m_limitState = LimitState.INACTIVE;
   }
 
+  @Override
+  public int getStateSize() {
+    return 17;
+  }
+
+  @Override
+  public void writeState(ByteBuffer buffer) {
+    buffer.putFloat(m_impulse.x);
+    buffer.putFloat(m_impulse.y);
+    buffer.putFloat(m_impulse.z);
+    buffer.putFloat(m_motorImpulse);
+    writeLimitState(buffer, m_limitState);
+  }
+
+  @Override
+  public void readState(ByteBuffer buffer) {
+    m_impulse.x = buffer.getFloat();
+    m_impulse.y = buffer.getFloat();
+    m_impulse.z = buffer.getFloat();
+    m_motorImpulse = buffer.getFloat();
+    m_limitState = readLimitState(buffer);
+  }
+
   @Override
   public void initVelocityConstraints(final SolverData data) {
     m_indexA = m_bodyA.m_islandIndex;
@@ -125,9 +150,9 @@ public class RevoluteJoint extends Joint {
     float aB = data.positions[m_indexB].a;
     Vec2 vB = data.velocities[m_indexB].v;
     float wB = data.velocities[m_indexB].w;
-    final Rot qA = pool.popRot();
-    final Rot qB = pool.popRot();
-    final Vec2 temp = pool.popVec2();
+    final Rot qA = data.pool.popRot();
+    final Rot qB = data.pool.popRot();
+    final Vec2 temp = data.pool.popVec2();
 
     qA.set(aA);
     qB.set(aB);
@@ -192,7 +217,7 @@ public class RevoluteJoint extends Joint {
     }
 
     if (data.step.warmStarting) {
-      final Vec2 P = pool.popVec2();
+      final Vec2 P = data.pool.popVec2();
       // Scale impulses to support a variable time step.
       m_impulse.x *= data.step.dtRatio;
       m_impulse.y *= data.step.dtRatio;
@@ -208,7 +233,7 @@ public class RevoluteJoint extends Joint {
       vB.x += mB * P.x;
       vB.y += mB * P.y;
       wB += iB * (Vec2.cross(m_rB, P) + m_motorImpulse + m_impulse.z);
-      pool.pushVec2(1);
+      data.pool.pushVec2(1);
     } else {
       m_impulse.setZero();
       m_motorImpulse = 0.0f;
@@ -218,8 +243,8 @@ public class RevoluteJoint extends Joint {
     // data.velocities[m_indexB].v.set(vB);
     data.velocities[m_indexB].w = wB;
 
-    pool.pushVec2(1);
-    pool.pushRot(2);
+    data.pool.pushVec2(1);
+    data.pool.pushRot(2);
   }
 
   @Override
@@ -246,13 +271,13 @@ public class RevoluteJoint extends Joint {
       wA -= iA * impulse;
       wB += iB * impulse;
     }
-    final Vec2 temp = pool.popVec2();
+    final Vec2 temp = data.pool.popVec2();
 
     // Solve limit constraint.
     if (m_enableLimit && m_limitState != LimitState.INACTIVE && fixedRotation == false) {
 
-      final Vec2 Cdot1 = pool.popVec2();
-      final Vec3 Cdot = pool.popVec3();
+      final Vec2 Cdot1 = data.pool.popVec2();
+      final Vec3 Cdot = data.pool.popVec3();
 
       // Solve point-to-point constraint
       Vec2.crossToOutUnsafe(wA, m_rA, temp);
@@ -261,7 +286,7 @@ public class RevoluteJoint extends Joint {
       float Cdot2 = wB - wA;
       Cdot.set(Cdot1.x, Cdot1.y, Cdot2);
 
-      Vec3 impulse = pool.popVec3();
+      Vec3 impulse = data.pool.popVec3();
       m_mass.solve33ToOut(Cdot, impulse);
       impulse.negateLocal();
 
@@ -270,7 +295,7 @@ public class RevoluteJoint extends Joint {
       } else if (m_limitState == LimitState.AT_LOWER) {
         float newImpulse = m_impulse.z + impulse.z;
         if (newImpulse < 0.0f) {
-          final Vec2 rhs = pool.popVec2();
+          final Vec2 rhs = data.pool.popVec2();
           rhs.set(m_mass.ez.x, m_mass.ez.y).mulLocal(m_impulse.z).subLocal(Cdot1);
           m_mass.solve22ToOut(rhs, temp);
           impulse.x = temp.x;
@@ -279,14 +304,14 @@ public class RevoluteJoint extends Joint {
           m_impulse.x += temp.x;
           m_impulse.y += temp.y;
           m_impulse.z = 0.0f;
-          pool.pushVec2(1);
+          data.pool.pushVec2(1);
         } else {
           m_impulse.addLocal(impulse);
         }
       } else if (m_limitState == LimitState.AT_UPPER) {
         float newImpulse = m_impulse.z + impulse.z;
         if (newImpulse > 0.0f) {
-          final Vec2 rhs = pool.popVec2();
+          final Vec2 rhs = data.pool.popVec2();
           rhs.set(m_mass.ez.x, m_mass.ez.y).mulLocal(m_impulse.z).subLocal(Cdot1);
           m_mass.solve22ToOut(rhs, temp);
           impulse.x = temp.x;
@@ -295,12 +320,12 @@ public class RevoluteJoint extends Joint {
           m_impulse.x += temp.x;
           m_impulse.y += temp.y;
           m_impulse.z = 0.0f;
-          pool.pushVec2(1);
+          data.pool.pushVec2(1);
         } else {
           m_impulse.addLocal(impulse);
         }
       }
-      final Vec2 P = pool.popVec2();
+      final Vec2 P = data.pool.popVec2();
 
       P.set(impulse.x, impulse.y);
 
@@ -312,13 +337,13 @@ public class RevoluteJoint extends Joint {
       vB.y += mB * P.y;
       wB += iB * (Vec2.cross(m_rB, P) + impulse.z);
 
-      pool.pushVec2(2);
-      pool.pushVec3(2);
+      data.pool.pushVec2(2);
+      data.pool.pushVec3(2);
     } else {
 
       // Solve point-to-point constraint
-      Vec2 Cdot = pool.popVec2();
-      Vec2 impulse = pool.popVec2();
+      Vec2 Cdot = data.pool.popVec2();
+      Vec2 impulse = data.pool.popVec2();
 
       Vec2.crossToOutUnsafe(wA, m_rA, temp);
       Vec2.crossToOutUnsafe(wB, m_rB, Cdot);
@@ -336,7 +361,7 @@ public class RevoluteJoint extends Joint {
       vB.y += mB * impulse.y;
       wB += iB * Vec2.cross(m_rB, impulse);
 
-      pool.pushVec2(2);
+      data.pool.pushVec2(2);
     }
 
     // data.velocities[m_indexA].v.set(vA);
@@ -344,13 +369,13 @@ public class RevoluteJoint extends Joint {
     // data.velocities[m_indexB].v.set(vB);
     data.velocities[m_indexB].w = wB;
 
-    pool.pushVec2(1);
+    data.pool.pushVec2(1);
   }
 
   @Override
   public boolean solvePositionConstraints(final SolverData data) {
-    final Rot qA = pool.popRot();
-    final Rot qB = pool.popRot();
+    final Rot qA = data.pool.popRot();
+    final Rot qB = data.pool.popRot();
     Vec2 cA = data.positions[m_indexA].c;
     float aA = data.positions[m_indexA].a;
     Vec2 cB = data.positions[m_indexB].c;
@@ -400,10 +425,10 @@ public class RevoluteJoint extends Joint {
       qA.set(aA);
       qB.set(aB);
 
-      final Vec2 rA = pool.popVec2();
-      final Vec2 rB = pool.popVec2();
-      final Vec2 C = pool.popVec2();
-      final Vec2 impulse = pool.popVec2();
+      final Vec2 rA = data.pool.popVec2();
+      final Vec2 rB = data.pool.popVec2();
+      final Vec2 C = data.pool.popVec2();
+      final Vec2 impulse = data.pool.popVec2();
 
       Rot.mulToOutUnsafe(qA, C.set(m_localAnchorA).subLocal(m_localCenterA), rA);
       Rot.mulToOutUnsafe(qB, C.set(m_localAnchorB).subLocal(m_localCenterB), rB);
@@ -413,7 +438,7 @@ public class RevoluteJoint extends Joint {
       float mA = m_invMassA, mB = m_invMassB;
       float iA = m_invIA, iB = m_invIB;
 
-      final Mat22 K = pool.popMat22();
+      final Mat22 K = data.pool.popMat22();
       K.ex.x = mA + mB + iA * rA.y * rA.y + iB * rB.y * rB.y;
       K.ex.y = -iA * rA.x * rA.y - iB * rB.x * rB.y;
       K.ey.x = K.ex.y;
@@ -429,15 +454,15 @@ public class RevoluteJoint extends Joint {
       cB.y += mB * impulse.y;
       aB += iB * Vec2.cross(rB, impulse);
 
-      pool.pushVec2(4);
-      pool.pushMat22(1);
+      data.pool.pushVec2(4);
+      data.pool.pushMat22(1);
     }
     // data.positions[m_indexA].c.set(cA);
     data.positions[m_indexA].a = aA;
     // data.positions[m_indexB].c.set(cB);
     data.positions[m_indexB].a = aB;
 
-    pool.pushRot(2);
+    data.pool.pushRot(2);
 
     return positionError <= Settings.linearSlop && angularError <= Settings.angularSlop;
   }
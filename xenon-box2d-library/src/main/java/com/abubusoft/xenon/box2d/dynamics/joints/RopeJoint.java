@@ -1,5 +1,7 @@
 package com.abubusoft.xenon.box2d.dynamics.joints;
 
+import java.nio.ByteBuffer;
+
 import com.abubusoft.xenon.box2d.common.MathUtils;
 import com.abubusoft.xenon.box2d.common.Rot;
 import com.abubusoft.xenon.box2d.common.Settings;
@@ -52,6 +54,23 @@ public class RopeJoint extends Joint {
     m_length = 0.0f;
   }
 
+  @Override
+  public int getStateSize() {
+    return 5;
+  }
+
+  @Override
+  public void writeState(ByteBuffer buffer) {
+    buffer.putFloat(m_impulse);
+    writeLimitState(buffer, m_state);
+  }
+
+  @Override
+  public void readState(ByteBuffer buffer) {
+    m_impulse = buffer.getFloat();
+    m_state = readLimitState(buffer);
+  }
+
   @Override
   public void initVelocityConstraints(final SolverData data) {
     m_indexA = m_bodyA.m_islandIndex;
@@ -73,9 +92,9 @@ public class RopeJoint extends Joint {
     Vec2 vB = data.velocities[m_indexB].v;
     float wB = data.velocities[m_indexB].w;
 
-    final Rot qA = pool.popRot();
-    final Rot qB = pool.popRot();
-    final Vec2 temp = pool.popVec2();
+    final Rot qA = data.pool.popRot();
+    final Rot qB = data.pool.popRot();
+    final Vec2 temp = data.pool.popVec2();
 
     qA.set(aA);
     qB.set(aB);
@@ -101,8 +120,8 @@ public class RopeJoint extends Joint {
       m_u.setZero();
       m_mass = 0.0f;
       m_impulse = 0.0f;
-      pool.pushRot(2);
-      pool.pushVec2(1);
+      data.pool.pushRot(2);
+      data.pool.pushVec2(1);
       return;
     }
 
@@ -130,8 +149,8 @@ public class RopeJoint extends Joint {
       m_impulse = 0.0f;
     }
 
-    pool.pushRot(2);
-    pool.pushVec2(1);
+    data.pool.pushRot(2);
+    data.pool.pushVec2(1);
 
     // data.velocities[m_indexA].v = vA;
     data.velocities[m_indexA].w = wA;
@@ -147,9 +166,9 @@ public class RopeJoint extends Joint {
     float wB = data.velocities[m_indexB].w;
 
     // Cdot = dot(u, v + cross(w, r))
-    Vec2 vpA = pool.popVec2();
-    Vec2 vpB = pool.popVec2();
-    Vec2 temp = pool.popVec2();
+    Vec2 vpA = data.pool.popVec2();
+    Vec2 vpB = data.pool.popVec2();
+    Vec2 temp = data.pool.popVec2();
 
     Vec2.crossToOutUnsafe(wA, m_rA, vpA);
     vpA.addLocal(vA);
@@ -178,7 +197,7 @@ public class RopeJoint extends Joint {
     vB.y += m_invMassB * Py;
     wB += m_invIB * (m_rB.x * Py - m_rB.y * Px);
 
-    pool.pushVec2(3);
+    data.pool.pushVec2(3);
 
     // data.velocities[m_indexA].v = vA;
     data.velocities[m_indexA].w = wA;
@@ -193,12 +212,12 @@ public class RopeJoint extends Joint {
     Vec2 cB = data.positions[m_indexB].c;
     float aB = data.positions[m_indexB].a;
 
-    final Rot qA = pool.popRot();
-    final Rot qB = pool.popRot();
-    final Vec2 u = pool.popVec2();
-    final Vec2 rA = pool.popVec2();
-    final Vec2 rB = pool.popVec2();
-    final Vec2 temp = pool.popVec2();
+    final Rot qA = data.pool.popRot();
+    final Rot qB = data.pool.popRot();
+    final Vec2 u = data.pool.popVec2();
+    final Vec2 rA = data.pool.popVec2();
+    final Vec2 rB = data.pool.popVec2();
+    final Vec2 temp = data.pool.popVec2();
 
     qA.set(aA);
     qB.set(aB);
@@ -224,8 +243,8 @@ public class RopeJoint extends Joint {
     cB.y += m_invMassB * Py;
     aB += m_invIB * (rB.x * Py - rB.y * Px);
 
-    pool.pushRot(2);
-    pool.pushVec2(4);
+    data.pool.pushRot(2);
+    data.pool.pushVec2(4);
 
     // data.positions[m_indexA].c = cA;
     data.positions[m_indexA].a = aA;
@@ -23,6 +23,8 @@
  ******************************************************************************/
 package com.abubusoft.xenon.box2d.dynamics.joints;
 
+import java.nio.ByteBuffer;
+
 import com.abubusoft.xenon.box2d.common.MathUtils;
 import com.abubusoft.xenon.box2d.common.Rot;
 import com.abubusoft.xenon.box2d.common.Settings;
@@ -227,6 +229,25 @@ public class WheelJoint extends Joint {
   private final Vec2 rB = new Vec2();
   private final Vec2 d = new Vec2();
 
+  @Override
+  public int getStateSize() {
+    return 12;
+  }
+
+  @Override
+  public void writeState(ByteBuffer buffer) {
+    buffer.putFloat(m_impulse);
+    buffer.putFloat(m_motorImpulse);
+    buffer.putFloat(m_springImpulse);
+  }
+
+  @Override
+  public void readState(ByteBuffer buffer) {
+    m_impulse = buffer.getFloat();
+    m_motorImpulse = buffer.getFloat();
+    m_springImpulse = buffer.getFloat();
+  }
+
   @Override
   public void initVelocityConstraints(SolverData data) {
     m_indexA = m_bodyA.m_islandIndex;
@@ -251,9 +272,9 @@ public class WheelJoint extends Joint {
     Vec2 vB = data.velocities[m_indexB].v;
     float wB = data.velocities[m_indexB].w;
 
-    final Rot qA = pool.popRot();
-    final Rot qB = pool.popRot();
-    final Vec2 temp = pool.popVec2();
+    final Rot qA = data.pool.popRot();
+    final Rot qB = data.pool.popRot();
+    final Vec2 temp = data.pool.popVec2();
 
     qA.set(aA);
     qB.set(aB);
@@ -331,7 +352,7 @@ public class WheelJoint extends Joint {
     }
 
     if (data.step.warmStarting) {
-      final Vec2 P = pool.popVec2();
+      final Vec2 P = data.pool.popVec2();
       // Account for variable time step.
       m_impulse *= data.step.dtRatio;
       m_springImpulse *= data.step.dtRatio;
@@ -349,14 +370,14 @@ public class WheelJoint extends Joint {
       vB.x += m_invMassB * P.x;
       vB.y += m_invMassB * P.y;
       wB += m_invIB * LB;
-      pool.pushVec2(1);
+      data.pool.pushVec2(1);
     } else {
       m_impulse = 0.0f;
       m_springImpulse = 0.0f;
       m_motorImpulse = 0.0f;
     }
-    pool.pushRot(2);
-    pool.pushVec2(1);
+    data.pool.pushRot(2);
+    data.pool.pushVec2(1);
 
     // data.velocities[m_indexA].v = vA;
     data.velocities[m_indexA].w = wA;
@@ -374,8 +395,8 @@ public class WheelJoint extends Joint {
     Vec2 vB = data.velocities[m_indexB].v;
     float wB = data.velocities[m_indexB].w;
 
-    final Vec2 temp = pool.popVec2();
-    final Vec2 P = pool.popVec2();
+    final Vec2 temp = data.pool.popVec2();
+    final Vec2 P = data.pool.popVec2();
 
     // Solve spring constraint
     {
@@ -430,7 +451,7 @@ public class WheelJoint extends Joint {
       vB.y += mB * P.y;
       wB += iB * LB;
     }
-    pool.pushVec2(2);
+    data.pool.pushVec2(2);
 
     // data.velocities[m_indexA].v = vA;
     data.velocities[m_indexA].w = wA;
@@ -445,9 +466,9 @@ public class WheelJoint extends Joint {
     Vec2 cB = data.positions[m_indexB].c;
     float aB = data.positions[m_indexB].a;
 
-    final Rot qA = pool.popRot();
-    final Rot qB = pool.popRot();
-    final Vec2 temp = pool.popVec2();
+    final Rot qA = data.pool.popRot();
+    final Rot qB = data.pool.popRot();
+    final Vec2 temp = data.pool.popVec2();
 
     qA.set(aA);
     qB.set(aB);
@@ -456,7 +477,7 @@ public class WheelJoint extends Joint {
     Rot.mulToOut(qB, temp.set(m_localAnchorB).subLocal(m_localCenterB), rB);
     d.set(cB).subLocal(cA).addLocal(rB).subLocal(rA);
 
-    Vec2 ay = pool.popVec2();
+    Vec2 ay = data.pool.popVec2();
     Rot.mulToOut(qA, m_localYAxisA, ay);
 
     float sAy = Vec2.cross(temp.set(d).addLocal(rA), ay);
@@ -473,7 +494,7 @@ public class WheelJoint extends Joint {
       impulse = 0.0f;
     }
 
-    final Vec2 P = pool.popVec2();
+    final Vec2 P = data.pool.popVec2();
     P.x = impulse * ay.x;
     P.y = impulse * ay.y;
     float LA = impulse * sAy;
@@ -486,8 +507,8 @@ public class WheelJoint extends Joint {
     cB.y += m_invMassB * P.y;
     aB += m_invIB * LB;
 
-    pool.pushVec2(3);
-    pool.pushRot(2);
+    data.pool.pushVec2(3);
+    data.pool.pushRot(2);
     // data.positions[m_indexA].c = cA;
     data.positions[m_indexA].a = aA;
     // data.positions[m_indexB].c = cB;
@@ -0,0 +1,105 @@
+package com.abubusoft.xenon.box2d.particle;
+
+import java.util.concurrent.ExecutorService;
+
+import com.abubusoft.xenon.box2d.common.WorkerPool;
+
+/**
+ * Runs the per-contact stages of a particle system on a set of worker threads. A stage is split in
+ * contiguous ranges, one per worker, that depend only on the number of items and workers: each
+ * worker writes to its own scratch arrays, which are then summed in worker order. The result of a
+ * step does not depend on thread scheduling, but it differs from the single-threaded solver in the
+ * last bits, since the sums are done in a different order.
+ *
+ * The calling thread works as the first worker.
+ *
+ * @see ParticleSystem#setParallelSolver(ParallelParticleSolver)
+ */
+public class ParallelParticleSolver {
+
+  /** A stage of the solver, run on a range of items. */
+  interface Task {
+    void run(int worker, int begin, int end);
+  }
+
+  /** Items below which a worker is not worth waking up. */
+  static final int MIN_ITEMS_PER_WORKER = 256;
+
+  private final WorkerPool m_pool;
+  private final int[] m_begin;
+  private final int[] m_end;
+
+  private Task m_task;
+
+  /**
+   * Create a solver with its own daemon threads.
+   *
+   * @param workerCount number of threads solving the stages, including the stepping thread.
+   */
+  public ParallelParticleSolver(int workerCount) {
+    this(workerCount, null);
+  }
+
+  /**
+   * Create a solver that runs its helper tasks on the given executor.
+   *
+   * @see WorkerPool#WorkerPool(int, ExecutorService, String)
+   */
+  public ParallelParticleSolver(int workerCount, ExecutorService executor) {
+    m_pool = new WorkerPool(workerCount, executor, "box2d-particle-solver");
+    m_begin = new int[workerCount];
+    m_end = new int[workerCount];
+  }
+
+  public int getWorkerCount() {
+    return m_pool.getWorkerCount();
+  }
+
+  /**
+   * Stop the threads created by this solver.
+   */
+  public void shutdown() {
+    m_pool.shutdown();
+  }
+
+  /**
+   * Number of ranges {@link #run(Task, int)} splits the given number of items in.
+   */
+  int getRangeCount(int itemCount) {
+    int ranges = itemCount / MIN_ITEMS_PER_WORKER;
+    final int workerCount = m_pool.getWorkerCount();
+    return ranges < 1 ? 1 : (ranges > workerCount ? workerCount : ranges);
+  }
+
+  /**
+   * Run the task on <code>itemCount</code> items and wait for all the ranges to complete.
+   *
+   * @return the number of ranges, the workers with an index below it ran the task.
+   */
+  int run(Task task, int itemCount) {
+    int rangeCount = getRangeCount(itemCount);
+    for (int i = 0; i < rangeCount; i++) {
+      m_begin[i] = (int) ((long) itemCount * i / rangeCount);
+      m_end[i] = (int) ((long) itemCount * (i + 1) / rangeCount);
+    }
+    if (rangeCount == 1) {
+      task.run(0, 0, itemCount);
+      return 1;
+    }
+
+    m_task = task;
+    try {
+      m_pool.run(m_runRange, rangeCount);
+    } finally {
+      m_task = null;
+    }
+    return rangeCount;
+  }
+
+  private final WorkerPool.Task m_runRange = new WorkerPool.Task() {
+    @Override
+    public void run(int worker) {
+      m_task.run(worker, m_begin[worker], m_end[worker]);
+    }
+  };
+}
@@ -1,8 +1,10 @@
 package com.abubusoft.xenon.box2d.particle;
 
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
+import com.abubusoft.xenon.box2d.callbacks.DebugDraw;
 import com.abubusoft.xenon.box2d.callbacks.ParticleDestructionListener;
 import com.abubusoft.xenon.box2d.callbacks.ParticleQueryCallback;
 import com.abubusoft.xenon.box2d.callbacks.ParticleRaycastCallback;
@@ -30,6 +32,11 @@ public class ParticleSystem {
   private static final int k_triadFlags = ParticleType.b2_elasticParticle;
   /** All particle types that require computing depth */
   private static final int k_noPressureFlags = ParticleType.b2_powderParticle;
+  /**
+   * Proxy moves allowed per proxy to the insertion sort of updateContacts, before it falls back to a
+   * radix sort
+   */
+  private static final int k_maxProxySortMoves = 4;
 
   static final int xTruncBits = 12;
   static final int yTruncBits = 12;
@@ -68,10 +75,11 @@ public class ParticleSystem {
   int m_internalAllocatedCapacity;
   int m_maxCount;
   ParticleBufferInt m_flagsBuffer;
-  ParticleBuffer<Vec2> m_positionBuffer;
-  ParticleBuffer<Vec2> m_velocityBuffer;
+  ParticleBufferVec2 m_positionBuffer;
+  ParticleBufferVec2 m_velocityBuffer;
   float[] m_accumulationBuffer; // temporary values
-  Vec2[] m_accumulation2Buffer; // temporary vector values
+  float[] m_accumulation2BufferX; // temporary vector values
+  float[] m_accumulation2BufferY;
   float[] m_depthBuffer; // distance from the surface
 
   public ParticleBuffer<ParticleColor> m_colorBuffer;
@@ -80,7 +88,13 @@ public class ParticleSystem {
 
   int m_proxyCount;
   int m_proxyCapacity;
-  Proxy[] m_proxyBuffer;
+  // proxies sorted by tag, the order of the previous step is the starting point of the next sort
+  int[] m_proxyIndexBuffer;
+  long[] m_proxyTagBuffer;
+  // radix sort scratch
+  int[] m_proxyIndexScratch;
+  long[] m_proxyTagScratch;
+  private final int[] m_proxyRadixCounts = new int[8 * 256];
 
   public int m_contactCount;
   int m_contactCapacity;
@@ -114,6 +128,10 @@ public class ParticleSystem {
 
   World m_world;
 
+  ParallelParticleSolver m_parallelSolver;
+  private final ContactStage m_contactStage = new ContactStage();
+  private final ReduceStage m_reduceStage = new ReduceStage();
+
   public ParticleSystem(World world) {
     m_world = world;
     m_timestamp = 0;
@@ -159,8 +177,8 @@ public class ParticleSystem {
     m_colorMixingStrength = 0.5f;
 
     m_flagsBuffer = new ParticleBufferInt();
-    m_positionBuffer = new ParticleBuffer<Vec2>(Vec2.class);
-    m_velocityBuffer = new ParticleBuffer<Vec2>(Vec2.class);
+    m_positionBuffer = new ParticleBufferVec2();
+    m_velocityBuffer = new ParticleBufferVec2();
     m_colorBuffer = new ParticleBuffer<ParticleColor>(ParticleColor.class);
     m_userDataBuffer = new ParticleBuffer<Object>(Object.class);
   }
@@ -187,16 +205,17 @@ public class ParticleSystem {
       if (m_internalAllocatedCapacity < capacity) {
         m_flagsBuffer.data =
             reallocateBuffer(m_flagsBuffer, m_internalAllocatedCapacity, capacity, false);
-        m_positionBuffer.data =
-            reallocateBuffer(m_positionBuffer, m_internalAllocatedCapacity, capacity, false);
-        m_velocityBuffer.data =
-            reallocateBuffer(m_velocityBuffer, m_internalAllocatedCapacity, capacity, false);
+        reallocateBuffer(m_positionBuffer, m_internalAllocatedCapacity, capacity);
+        reallocateBuffer(m_velocityBuffer, m_internalAllocatedCapacity, capacity);
         m_accumulationBuffer =
             BufferUtils.reallocateBuffer(m_accumulationBuffer, 0, m_internalAllocatedCapacity,
                 capacity, false);
-        m_accumulation2Buffer =
-            BufferUtils.reallocateBuffer(Vec2.class, m_accumulation2Buffer, 0,
-                m_internalAllocatedCapacity, capacity, true);
+        m_accumulation2BufferX =
+            BufferUtils.reallocateBuffer(m_accumulation2BufferX, 0, m_internalAllocatedCapacity,
+                capacity, true);
+        m_accumulation2BufferY =
+            BufferUtils.reallocateBuffer(m_accumulation2BufferY, 0, m_internalAllocatedCapacity,
+                capacity, true);
         m_depthBuffer =
             BufferUtils.reallocateBuffer(m_depthBuffer, 0, m_internalAllocatedCapacity, capacity,
                 true);
@@ -215,9 +234,13 @@ public class ParticleSystem {
     }
     int index = m_count++;
     m_flagsBuffer.data[index] = def.flags;
-    m_positionBuffer.data[index].set(def.position);
+    m_positionBuffer.x[index] = def.position.x;
+    m_positionBuffer.y[index] = def.position.y;
 //    assertNotSamePosition();
-    m_velocityBuffer.data[index].set(def.velocity);
+    m_velocityBuffer.x[index] = def.velocity.x;
+    m_velocityBuffer.y[index] = def.velocity.y;
+    m_positionBuffer.push(index, index + 1);
+    m_velocityBuffer.push(index, index + 1);
     m_groupBuffer[index] = null;
     if (m_depthBuffer != null) {
       m_depthBuffer[index] = 0;
@@ -234,11 +257,14 @@ public class ParticleSystem {
     if (m_proxyCount >= m_proxyCapacity) {
       int oldCapacity = m_proxyCapacity;
       int newCapacity = m_proxyCount != 0 ? 2 * m_proxyCount : Settings.minParticleBufferCapacity;
-      m_proxyBuffer =
-          BufferUtils.reallocateBuffer(Proxy.class, m_proxyBuffer, oldCapacity, newCapacity);
+      m_proxyIndexBuffer =
+          BufferUtils.reallocateBuffer(m_proxyIndexBuffer, oldCapacity, newCapacity);
+      m_proxyTagBuffer = BufferUtils.reallocateBuffer(m_proxyTagBuffer, oldCapacity, newCapacity);
+      m_proxyIndexScratch = null;
+      m_proxyTagScratch = null;
       m_proxyCapacity = newCapacity;
     }
-    m_proxyBuffer[m_proxyCount++].index = index;
+    m_proxyIndexBuffer[m_proxyCount++] = index;
     return index;
   }
 
@@ -254,6 +280,7 @@ public class ParticleSystem {
   private final DestroyParticlesInShapeCallback dpcallback = new DestroyParticlesInShapeCallback();
 
   public int destroyParticlesInShape(Shape shape, Transform xf, boolean callDestructionListener) {
+    pullVectors();
     dpcallback.init(this, shape, xf, callDestructionListener);
     shape.computeAABB(temp, xf, 0);
     m_world.queryAABB(dpcallback, temp);
@@ -275,6 +302,7 @@ public class ParticleSystem {
   private final ParticleDef tempParticleDef = new ParticleDef();
 
   public ParticleGroup createParticleGroup(ParticleGroupDef groupDef) {
+    pullVectors();
     float stride = getParticleStride();
     final Transform identity = tempTransform;
     identity.setIdentity();
@@ -367,7 +395,9 @@ public class ParticleSystem {
           pair.indexB = b;
           pair.flags = contact.flags;
           pair.strength = groupDef.strength;
-          pair.distance = MathUtils.distance(m_positionBuffer.data[a], m_positionBuffer.data[b]);
+          final float dx = m_positionBuffer.x[a] - m_positionBuffer.x[b];
+          final float dy = m_positionBuffer.y[a] - m_positionBuffer.y[b];
+          pair.distance = MathUtils.sqrt(dx * dx + dy * dy);
           m_pairCount++;
         }
       }
@@ -375,7 +405,7 @@ public class ParticleSystem {
     if ((groupDef.flags & k_triadFlags) != 0) {
       VoronoiDiagram diagram = new VoronoiDiagram(lastIndex - firstIndex);
       for (int i = firstIndex; i < lastIndex; i++) {
-        diagram.addGenerator(m_positionBuffer.data[i], i);
+        diagram.addGenerator(m_positionBuffer.x[i], m_positionBuffer.y[i], i);
       }
       diagram.generate(stride / 2);
       createParticleGroupCallback.system = this;
@@ -392,6 +422,7 @@ public class ParticleSystem {
 
   public void joinParticleGroups(ParticleGroup groupA, ParticleGroup groupB) {
     assert (groupA != groupB);
+    pullVectors();
     RotateBuffer(groupB.m_firstIndex, groupB.m_lastIndex, m_count);
     assert (groupB.m_lastIndex == m_count);
     RotateBuffer(groupA.m_firstIndex, groupA.m_lastIndex, groupB.m_firstIndex);
@@ -428,7 +459,9 @@ public class ParticleSystem {
           pair.indexB = b;
           pair.flags = contact.flags;
           pair.strength = MathUtils.min(groupA.m_strength, groupB.m_strength);
-          pair.distance = MathUtils.distance(m_positionBuffer.data[a], m_positionBuffer.data[b]);
+          final float dx = m_positionBuffer.x[a] - m_positionBuffer.x[b];
+          final float dy = m_positionBuffer.y[a] - m_positionBuffer.y[b];
+          pair.distance = MathUtils.sqrt(dx * dx + dy * dy);
           m_pairCount++;
         }
       }
@@ -437,7 +470,7 @@ public class ParticleSystem {
       VoronoiDiagram diagram = new VoronoiDiagram(groupB.m_lastIndex - groupA.m_firstIndex);
       for (int i = groupA.m_firstIndex; i < groupB.m_lastIndex; i++) {
         if ((m_flagsBuffer.data[i] & ParticleType.b2_zombieParticle) == 0) {
-          diagram.addGenerator(m_positionBuffer.data[i], i);
+          diagram.addGenerator(m_positionBuffer.x[i], m_positionBuffer.y[i], i);
         }
       }
       diagram.generate(getParticleStride() / 2);
@@ -456,6 +489,7 @@ public class ParticleSystem {
     groupA.m_lastIndex = groupB.m_lastIndex;
     groupB.m_firstIndex = groupB.m_lastIndex;
     destroyParticleGroup(groupB);
+    pushVectors();
 
     if ((groupFlags & ParticleGroupType.b2_solidParticleGroup) != 0) {
       computeDepthForGroup(groupA);
@@ -548,10 +582,10 @@ public class ParticleSystem {
 
   public void addContact(int a, int b) {
     assert(a != b);
-    Vec2 pa = m_positionBuffer.data[a];
-    Vec2 pb = m_positionBuffer.data[b];
-    float dx = pb.x - pa.x;
-    float dy = pb.y - pa.y;
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    float dx = posX[b] - posX[a];
+    float dy = posY[b] - posY[a];
     float d2 = dx * dx + dy * dy;
 //    assert(d2 != 0);
     if (d2 < m_squaredDiameter) {
@@ -577,40 +611,42 @@ public class ParticleSystem {
   }
 
   public void updateContacts(boolean exceptZombie) {
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    final int[] indices = m_proxyIndexBuffer;
+    final long[] tags = m_proxyTagBuffer;
     for (int p = 0; p < m_proxyCount; p++) {
-      Proxy proxy = m_proxyBuffer[p];
-      int i = proxy.index;
-      Vec2 pos = m_positionBuffer.data[i];
-      proxy.tag = computeTag(m_inverseDiameter * pos.x, m_inverseDiameter * pos.y);
+      int i = indices[p];
+      tags[p] = computeTag(m_inverseDiameter * posX[i], m_inverseDiameter * posY[i]);
     }
-    Arrays.sort(m_proxyBuffer, 0, m_proxyCount);
+    sortProxies();
+    final int[] sortedIndices = m_proxyIndexBuffer;
+    final long[] sortedTags = m_proxyTagBuffer;
     m_contactCount = 0;
     int c_index = 0;
     for (int i = 0; i < m_proxyCount; i++) {
-      Proxy a = m_proxyBuffer[i];
-      long rightTag = computeRelativeTag(a.tag, 1, 0);
+      final int a = sortedIndices[i];
+      final long aTag = sortedTags[i];
+      long rightTag = computeRelativeTag(aTag, 1, 0);
       for (int j = i + 1; j < m_proxyCount; j++) {
-        Proxy b = m_proxyBuffer[j];
-        if (rightTag < b.tag) {
+        if (rightTag < sortedTags[j]) {
           break;
         }
-        addContact(a.index, b.index);
+        addContact(a, sortedIndices[j]);
       }
-      long bottomLeftTag = computeRelativeTag(a.tag, -1, 1);
+      long bottomLeftTag = computeRelativeTag(aTag, -1, 1);
       for (; c_index < m_proxyCount; c_index++) {
-        Proxy c = m_proxyBuffer[c_index];
-        if (bottomLeftTag <= c.tag) {
+        if (bottomLeftTag <= sortedTags[c_index]) {
           break;
         }
       }
-      long bottomRightTag = computeRelativeTag(a.tag, 1, 1);
+      long bottomRightTag = computeRelativeTag(aTag, 1, 1);
 
       for (int b_index = c_index; b_index < m_proxyCount; b_index++) {
-        Proxy b = m_proxyBuffer[b_index];
-        if (bottomRightTag < b.tag) {
+        if (bottomRightTag < sortedTags[b_index]) {
           break;
         }
-        addContact(a.index, b.index);
+        addContact(a, sortedIndices[b_index]);
       }
     }
     if (exceptZombie) {
@@ -628,6 +664,93 @@ public class ParticleSystem {
     }
   }
 
+  /**
+   * Stable sort of the proxies by tag. Particles move little between two steps, so the order of the
+   * previous step is almost sorted and an insertion sort is linear; when it has to move too many
+   * proxies (new particles, teleports) the rest of the work is left to a radix sort. Both sorts are
+   * stable, the result is the one of a stable sort of the previous order.
+   */
+  void sortProxies() {
+    final int[] indices = m_proxyIndexBuffer;
+    final long[] tags = m_proxyTagBuffer;
+    final int maxMoves = k_maxProxySortMoves * m_proxyCount;
+    int moves = 0;
+    for (int i = 1; i < m_proxyCount; i++) {
+      final long tag = tags[i];
+      if (tags[i - 1] <= tag) {
+        continue;
+      }
+      final int index = indices[i];
+      int j = i;
+      do {
+        tags[j] = tags[j - 1];
+        indices[j] = indices[j - 1];
+        j--;
+      } while (j > 0 && tags[j - 1] > tag);
+      tags[j] = tag;
+      indices[j] = index;
+      moves += i - j;
+      if (moves > maxMoves) {
+        radixSortProxies();
+        return;
+      }
+    }
+  }
+
+  /** LSD radix sort on the tag bytes, skipping the bytes shared by all the proxies. */
+  void radixSortProxies() {
+    final int count = m_proxyCount;
+    if (m_proxyTagScratch == null) {
+      m_proxyIndexScratch = new int[m_proxyCapacity];
+      m_proxyTagScratch = new long[m_proxyCapacity];
+    }
+    final int[] counts = m_proxyRadixCounts;
+    Arrays.fill(counts, 0);
+    long[] tags = m_proxyTagBuffer;
+    int[] indices = m_proxyIndexBuffer;
+    for (int i = 0; i < count; i++) {
+      // flip the sign bit, so negative tags come first
+      final long key = tags[i] ^ Long.MIN_VALUE;
+      for (int digit = 0; digit < 8; digit++) {
+        counts[(digit << 8) + (int) ((key >>> (digit << 3)) & 0xff)]++;
+      }
+    }
+    long[] tagsOut = m_proxyTagScratch;
+    int[] indicesOut = m_proxyIndexScratch;
+    for (int digit = 0; digit < 8; digit++) {
+      final int base = digit << 8;
+      final int shift = digit << 3;
+      final long first = ((tags[0] ^ Long.MIN_VALUE) >>> shift) & 0xff;
+      if (counts[base + (int) first] == count) {
+        continue;
+      }
+      int offset = 0;
+      for (int b = 0; b < 256; b++) {
+        final int c = counts[base + b];
+        counts[base + b] = offset;
+        offset += c;
+      }
+      for (int i = 0; i < count; i++) {
+        final long tag = tags[i];
+        final int bucket = base + (int) (((tag ^ Long.MIN_VALUE) >>> shift) & 0xff);
+        final int target = counts[bucket]++;
+        tagsOut[target] = tag;
+        indicesOut[target] = indices[i];
+      }
+      long[] swapTags = tags;
+      tags = tagsOut;
+      tagsOut = swapTags;
+      int[] swapIndices = indices;
+      indices = indicesOut;
+      indicesOut = swapIndices;
+    }
+    // the scratch arrays may hold the result now, swap the roles instead of copying
+    m_proxyTagBuffer = tags;
+    m_proxyIndexBuffer = indices;
+    m_proxyTagScratch = tagsOut;
+    m_proxyIndexScratch = indicesOut;
+  }
+
   private final UpdateBodyContactsCallback ubccallback = new UpdateBodyContactsCallback();
 
   public void updateBodyContacts() {
@@ -636,10 +759,11 @@ public class ParticleSystem {
     aabb.lowerBoundY = Float.MAX_VALUE;
     aabb.upperBoundX = -Float.MAX_VALUE;
     aabb.upperBoundY = -Float.MAX_VALUE;
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
     for (int i = 0; i < m_count; i++) {
-      Vec2 p = m_positionBuffer.data[i];
-      Vec2.minToOut(aabb.lowerBoundX, aabb.lowerBoundY, p.x, p.y, aabb);
-      Vec2.maxToOut(aabb.upperBoundX, aabb.upperBoundY, p.x, p.y, aabb);
+      Vec2.minToOut(aabb.lowerBoundX, aabb.lowerBoundY, posX[i], posY[i], aabb);
+      Vec2.maxToOut(aabb.upperBoundX, aabb.upperBoundY, posX[i], posY[i], aabb);
     }
     aabb.lowerBoundX -= m_particleDiameter;
     aabb.lowerBoundY -= m_particleDiameter;
@@ -656,24 +780,19 @@ public class ParticleSystem {
   public void solveCollision(TimeStep step) {
     final AABB aabb = temp;
 
-    float lowerBoundX = aabb.lowerBoundX;
-    float lowerBoundY = aabb.lowerBoundY;
-    float upperBoundX = aabb.upperBoundX;
-    float upperBoundY = aabb.upperBoundY;
-
-    //final Vec2 lowerBound = aabb.lowerBound;
-    //final Vec2 upperBound = aabb.upperBound;
-    aabb.lowerBoundX = Float.MAX_VALUE;
-    aabb.lowerBoundY = Float.MAX_VALUE;
-    aabb.upperBoundX = -Float.MAX_VALUE;
-    aabb.upperBoundY = -Float.MAX_VALUE;
+    float lowerBoundX = Float.MAX_VALUE;
+    float lowerBoundY = Float.MAX_VALUE;
+    float upperBoundX = -Float.MAX_VALUE;
+    float upperBoundY = -Float.MAX_VALUE;
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
     for (int i = 0; i < m_count; i++) {
-      final Vec2 v = m_velocityBuffer.data[i];
-      final Vec2 p1 = m_positionBuffer.data[i];
-      final float p1x = p1.x;
-      final float p1y = p1.y;
-      final float p2x = p1x + step.dt * v.x;
-      final float p2y = p1y + step.dt * v.y;
+      final float p1x = posX[i];
+      final float p1y = posY[i];
+      final float p2x = p1x + step.dt * velX[i];
+      final float p2y = p1y + step.dt * velY[i];
       final float bx = p1x < p2x ? p1x : p2x;
       final float by = p1y < p2y ? p1y : p2y;
       lowerBoundX = lowerBoundX < bx ? lowerBoundX : bx;
@@ -683,12 +802,22 @@ public class ParticleSystem {
       upperBoundX = upperBoundX > b1x ? upperBoundX : b1x;
       upperBoundY = upperBoundY > b1y ? upperBoundY : b1y;
     }
+    aabb.lowerBoundX = lowerBoundX;
+    aabb.lowerBoundY = lowerBoundY;
+    aabb.upperBoundX = upperBoundX;
+    aabb.upperBoundY = upperBoundY;
     sccallback.step = step;
     sccallback.system = this;
     m_world.queryAABB(sccallback, aabb);
   }
 
   public void solve(TimeStep step) {
+    pullVectors();
+    solveParticles(step);
+    pushVectors();
+  }
+
+  private void solveParticles(TimeStep step) {
     ++m_timestamp;
     if (m_count == 0) {
       return;
@@ -710,16 +839,19 @@ public class ParticleSystem {
     final float gravityx = step.dt * m_gravityScale * m_world.getGravity().x;
     final float gravityy = step.dt * m_gravityScale * m_world.getGravity().y;
     float criticalVelocytySquared = getCriticalVelocitySquared(step);
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
     for (int i = 0; i < m_count; i++) {
-      Vec2 v = m_velocityBuffer.data[i];
-      v.x += gravityx;
-      v.y += gravityy;
-      float v2 = v.x * v.x + v.y * v.y;
+      float vx = velX[i] + gravityx;
+      float vy = velY[i] + gravityy;
+      float v2 = vx * vx + vy * vy;
       if (v2 > criticalVelocytySquared) {
         float a = v2 == 0 ? Float.MAX_VALUE : MathUtils.sqrt(criticalVelocytySquared / v2);
-        v.x *= a;
-        v.y *= a;
+        vx *= a;
+        vy *= a;
       }
+      velX[i] = vx;
+      velY[i] = vy;
     }
     solveCollision(step);
     if ((m_allGroupFlags & ParticleGroupType.b2_rigidParticleGroup) != 0) {
@@ -728,11 +860,11 @@ public class ParticleSystem {
     if ((m_allParticleFlags & ParticleType.b2_wallParticle) != 0) {
       solveWall(step);
     }
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
     for (int i = 0; i < m_count; i++) {
-      Vec2 pos = m_positionBuffer.data[i];
-      Vec2 vel = m_velocityBuffer.data[i];
-      pos.x += step.dt * vel.x;
-      pos.y += step.dt * vel.y;
+      posX[i] += step.dt * velX[i];
+      posY[i] += step.dt * velY[i];
     }
     updateBodyContacts();
     updateContacts(false);
@@ -761,7 +893,142 @@ public class ParticleSystem {
     solveDamping(step);
   }
 
+  boolean isParallel() {
+    return m_parallelSolver != null && m_parallelSolver.getRangeCount(m_contactCount) > 1;
+  }
+
+  /**
+   * Run a per-contact stage on the parallel solver. Each worker writes to its own scratch arrays,
+   * which are then added to the targets of the stage in worker order.
+   */
+  void runContactStage(int kind, float strength, float strengthB) {
+    final ParallelParticleSolver solver = m_parallelSolver;
+    final ContactStage stage = m_contactStage;
+    stage.kind = kind;
+    stage.strength = strength;
+    stage.strengthB = strengthB;
+    stage.requestScratch(solver.getWorkerCount(), m_internalAllocatedCapacity);
+    final ReduceStage reduce = m_reduceStage;
+    reduce.ranges = solver.run(stage, m_contactCount);
+    switch (kind) {
+      case ContactStage.PRESSURE_WEIGHT:
+        reduce.set(m_accumulationBuffer, null, null);
+        break;
+      case ContactStage.TENSILE_WEIGHT:
+        reduce.set(m_accumulationBuffer, m_accumulation2BufferX, m_accumulation2BufferY);
+        break;
+      default:
+        reduce.set(null, m_velocityBuffer.x, m_velocityBuffer.y);
+        break;
+    }
+    solver.run(reduce, m_count);
+    reduce.set(null, null, null);
+  }
+
+  /** A per-contact stage writing to the scratch arrays of a worker. */
+  class ContactStage implements ParallelParticleSolver.Task {
+    static final int PRESSURE_WEIGHT = 0;
+    static final int PRESSURE = 1;
+    static final int DAMPING = 2;
+    static final int VISCOUS = 3;
+    static final int POWDER = 4;
+    static final int TENSILE_WEIGHT = 5;
+    static final int TENSILE = 6;
+
+    int kind;
+    float strength;
+    float strengthB;
+    float[][] weights;
+    float[][] x;
+    float[][] y;
+
+    void requestScratch(int workerCount, int capacity) {
+      if (weights == null || weights.length < workerCount || weights[0].length < capacity) {
+        weights = new float[workerCount][capacity];
+        x = new float[workerCount][capacity];
+        y = new float[workerCount][capacity];
+      }
+    }
+
+    @Override
+    public void run(int worker, int begin, int end) {
+      final float[] w = weights[worker];
+      final float[] outX = x[worker];
+      final float[] outY = y[worker];
+      if (kind == PRESSURE_WEIGHT || kind == TENSILE_WEIGHT) {
+        Arrays.fill(w, 0, m_count, 0);
+      }
+      if (kind != PRESSURE_WEIGHT) {
+        Arrays.fill(outX, 0, m_count, 0);
+        Arrays.fill(outY, 0, m_count, 0);
+      }
+      switch (kind) {
+        case PRESSURE_WEIGHT:
+          accumulatePressureWeights(begin, end, w);
+          break;
+        case PRESSURE:
+          applyPressure(begin, end, strength, outX, outY);
+          break;
+        case DAMPING:
+          applyDamping(begin, end, strength, outX, outY);
+          break;
+        case VISCOUS:
+          applyViscous(begin, end, strength, outX, outY);
+          break;
+        case POWDER:
+          applyPowder(begin, end, strength, strengthB, outX, outY);
+          break;
+        case TENSILE_WEIGHT:
+          accumulateTensile(begin, end, w, outX, outY);
+          break;
+        case TENSILE:
+          applyTensile(begin, end, strength, strengthB, outX, outY);
+          break;
+        default:
+          break;
+      }
+    }
+  }
+
+  /** Adds the scratch arrays of the workers to the targets of a stage, over a range of particles. */
+  class ReduceStage implements ParallelParticleSolver.Task {
+    int ranges;
+    float[] targetWeights;
+    float[] targetX;
+    float[] targetY;
+
+    void set(float[] weights, float[] x, float[] y) {
+      targetWeights = weights;
+      targetX = x;
+      targetY = y;
+    }
+
+    @Override
+    public void run(int worker, int begin, int end) {
+      if (targetWeights != null) {
+        reduce(targetWeights, m_contactStage.weights, begin, end);
+      }
+      if (targetX != null) {
+        reduce(targetX, m_contactStage.x, begin, end);
+        reduce(targetY, m_contactStage.y, begin, end);
+      }
+    }
+
+    private void reduce(float[] target, float[][] scratch, int begin, int end) {
+      for (int i = begin; i < end; i++) {
+        float value = target[i];
+        for (int r = 0; r < ranges; r++) {
+          value += scratch[r][i];
+        }
+        target[i] = value;
+      }
+    }
+  }
+
   void solvePressure(TimeStep step) {
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
+    final boolean parallel = isParallel();
     // calculates the sum of contact-weights for each particle
     // that means dimensionless density
     for (int i = 0; i < m_count; i++) {
@@ -773,13 +1040,10 @@ public class ParticleSystem {
       float w = contact.weight;
       m_accumulationBuffer[a] += w;
     }
-    for (int k = 0; k < m_contactCount; k++) {
-      ParticleContact contact = m_contactBuffer[k];
-      int a = contact.indexA;
-      int b = contact.indexB;
-      float w = contact.weight;
-      m_accumulationBuffer[a] += w;
-      m_accumulationBuffer[b] += w;
+    if (parallel) {
+      runContactStage(ContactStage.PRESSURE_WEIGHT, 0, 0);
+    } else {
+      accumulatePressureWeights(0, m_contactCount, m_accumulationBuffer);
     }
     // ignores powder particles
     if ((m_allParticleFlags & k_noPressureFlags) != 0) {
@@ -808,19 +1072,39 @@ public class ParticleSystem {
       float w = contact.weight;
       float m = contact.mass;
       Vec2 n = contact.normal;
-      Vec2 p = m_positionBuffer.data[a];
+      final Vec2 p = tempVec2;
+      p.x = m_positionBuffer.x[a];
+      p.y = m_positionBuffer.y[a];
       float h = m_accumulationBuffer[a] + pressurePerWeight * w;
       final Vec2 f = tempVec;
       final float coef = velocityPerPressure * w * m * h;
       f.x = coef * n.x;
       f.y = coef * n.y;
-      final Vec2 velData = m_velocityBuffer.data[a];
       final float particleInvMass = getParticleInvMass();
-      velData.x -= particleInvMass * f.x;
-      velData.y -= particleInvMass * f.y;
+      velX[a] -= particleInvMass * f.x;
+      velY[a] -= particleInvMass * f.y;
       b.applyLinearImpulse(f, p, true);
     }
-    for (int k = 0; k < m_contactCount; k++) {
+    if (parallel) {
+      runContactStage(ContactStage.PRESSURE, velocityPerPressure, 0);
+    } else {
+      applyPressure(0, m_contactCount, velocityPerPressure, velX, velY);
+    }
+  }
+
+  void accumulatePressureWeights(int begin, int end, float[] weights) {
+    for (int k = begin; k < end; k++) {
+      ParticleContact contact = m_contactBuffer[k];
+      int a = contact.indexA;
+      int b = contact.indexB;
+      float w = contact.weight;
+      weights[a] += w;
+      weights[b] += w;
+    }
+  }
+
+  void applyPressure(int begin, int end, float velocityPerPressure, float[] outX, float[] outY) {
+    for (int k = begin; k < end; k++) {
       ParticleContact contact = m_contactBuffer[k];
       int a = contact.indexA;
       int b = contact.indexB;
@@ -829,16 +1113,16 @@ public class ParticleSystem {
       float h = m_accumulationBuffer[a] + m_accumulationBuffer[b];
       final float fx = velocityPerPressure * w * h * n.x;
       final float fy = velocityPerPressure * w * h * n.y;
-      final Vec2 velDataA = m_velocityBuffer.data[a];
-      final Vec2 velDataB = m_velocityBuffer.data[b];
-      velDataA.x -= fx;
-      velDataA.y -= fy;
-      velDataB.x += fx;
-      velDataB.y += fy;
+      outX[a] -= fx;
+      outY[a] -= fy;
+      outX[b] += fx;
+      outY[b] += fy;
     }
   }
 
   void solveDamping(TimeStep step) {
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
     // reduces normal velocity of each contact
     float damping = m_dampingStrength;
     for (int k = 0; k < m_bodyContactCount; k++) {
@@ -848,13 +1132,14 @@ public class ParticleSystem {
       float w = contact.weight;
       float m = contact.mass;
       Vec2 n = contact.normal;
-      Vec2 p = m_positionBuffer.data[a];
+      final Vec2 p = tempVec2;
+      p.x = m_positionBuffer.x[a];
+      p.y = m_positionBuffer.y[a];
       final float tempX = p.x - b.m_sweep.c.x;
       final float tempY = p.y - b.m_sweep.c.y;
-      final Vec2 velA = m_velocityBuffer.data[a];
       // getLinearVelocityFromWorldPointToOut, with -= velA
-      float vx = -b.m_angularVelocity * tempY + b.m_linearVelocity.x - velA.x;
-      float vy = b.m_angularVelocity * tempX + b.m_linearVelocity.y - velA.y;
+      float vx = -b.m_angularVelocity * tempY + b.m_linearVelocity.x - velX[a];
+      float vy = b.m_angularVelocity * tempX + b.m_linearVelocity.y - velY[a];
       // done
       float vn = vx * n.x + vy * n.y;
       if (vn < 0) {
@@ -862,31 +1147,43 @@ public class ParticleSystem {
         f.x = damping * w * m * vn * n.x;
         f.y = damping * w * m * vn * n.y;
         final float invMass = getParticleInvMass();
-        velA.x += invMass * f.x;
-        velA.y += invMass * f.y;
+        velX[a] += invMass * f.x;
+        velY[a] += invMass * f.y;
         f.x = -f.x;
         f.y = -f.y;
         b.applyLinearImpulse(f, p, true);
       }
     }
-    for (int k = 0; k < m_contactCount; k++) {
+    if (isParallel()) {
+      runContactStage(ContactStage.DAMPING, damping, 0);
+    } else {
+      applyDamping(0, m_contactCount, damping, velX, velY);
+    }
+  }
+
+  /**
+   * The relative velocities are read from the velocity buffer: when the output is the velocity
+   * buffer itself each contact sees the impulses of the previous ones.
+   */
+  void applyDamping(int begin, int end, float damping, float[] outX, float[] outY) {
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
+    for (int k = begin; k < end; k++) {
       final ParticleContact contact = m_contactBuffer[k];
       int a = contact.indexA;
       int b = contact.indexB;
       float w = contact.weight;
       Vec2 n = contact.normal;
-      final Vec2 velA = m_velocityBuffer.data[a];
-      final Vec2 velB = m_velocityBuffer.data[b];
-      final float vx = velB.x - velA.x;
-      final float vy = velB.y - velA.y;
+      final float vx = velX[b] - velX[a];
+      final float vy = velY[b] - velY[a];
       float vn = vx * n.x + vy * n.y;
       if (vn < 0) {
         float fx = damping * w * vn * n.x;
         float fy = damping * w * vn * n.y;
-        velA.x += fx;
-        velA.y += fy;
-        velB.x -= fx;
-        velB.y -= fy;
+        outX[a] += fx;
+        outY[a] += fy;
+        outX[b] -= fx;
+        outY[b] -= fy;
       }
     }
   }
@@ -894,9 +1191,8 @@ public class ParticleSystem {
   public void solveWall(TimeStep step) {
     for (int i = 0; i < m_count; i++) {
       if ((m_flagsBuffer.data[i] & ParticleType.b2_wallParticle) != 0) {
-        final Vec2 r = m_velocityBuffer.data[i];
-        r.x = 0.0f;
-        r.y = 0.0f;
+        m_velocityBuffer.x[i] = 0.0f;
+        m_velocityBuffer.y[i] = 0.0f;
       }
     }
   }
@@ -907,6 +1203,10 @@ public class ParticleSystem {
   private final Transform tempXf2 = new Transform();
 
   void solveRigid(final TimeStep step) {
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
     for (ParticleGroup group = m_groupList; group != null; group = group.getNext()) {
       if ((group.m_groupFlags & ParticleGroupType.b2_rigidParticleGroup) != 0) {
         group.updateStatistics();
@@ -924,15 +1224,26 @@ public class ParticleSystem {
         velocityTransform.p.y = step.inv_dt * tempXf.p.y;
         velocityTransform.q.s = step.inv_dt * tempXf.q.s;
         velocityTransform.q.c = step.inv_dt * (tempXf.q.c - 1);
+        final float c = velocityTransform.q.c;
+        final float s = velocityTransform.q.s;
+        final float tx = velocityTransform.p.x;
+        final float ty = velocityTransform.p.y;
         for (int i = group.m_firstIndex; i < group.m_lastIndex; i++) {
-          Transform.mulToOutUnsafe(velocityTransform, m_positionBuffer.data[i],
-              m_velocityBuffer.data[i]);
+          // Transform.mulToOutUnsafe(velocityTransform, pos, vel)
+          final float px = posX[i];
+          final float py = posY[i];
+          velX[i] = (c * px - s * py) + tx;
+          velY[i] = (s * px + c * py) + ty;
         }
       }
     }
   }
 
   void solveElastic(final TimeStep step) {
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
     float elasticStrength = step.inv_dt * m_elasticStrength;
     for (int k = 0; k < m_triadCount; k++) {
       final Triad triad = m_triadBuffer[k];
@@ -943,13 +1254,15 @@ public class ParticleSystem {
         final Vec2 oa = triad.pa;
         final Vec2 ob = triad.pb;
         final Vec2 oc = triad.pc;
-        final Vec2 pa = m_positionBuffer.data[a];
-        final Vec2 pb = m_positionBuffer.data[b];
-        final Vec2 pc = m_positionBuffer.data[c];
-        final float px = 1f / 3 * (pa.x + pb.x + pc.x);
-        final float py = 1f / 3 * (pa.y + pb.y + pc.y);
-        float rs = Vec2.cross(oa, pa) + Vec2.cross(ob, pb) + Vec2.cross(oc, pc);
-        float rc = Vec2.dot(oa, pa) + Vec2.dot(ob, pb) + Vec2.dot(oc, pc);
+        final float pax = posX[a], pay = posY[a];
+        final float pbx = posX[b], pby = posY[b];
+        final float pcx = posX[c], pcy = posY[c];
+        final float px = 1f / 3 * (pax + pbx + pcx);
+        final float py = 1f / 3 * (pay + pby + pcy);
+        float rs =
+            (oa.x * pay - oa.y * pax) + (ob.x * pby - ob.y * pbx) + (oc.x * pcy - oc.y * pcx);
+        float rc =
+            (oa.x * pax + oa.y * pay) + (ob.x * pbx + ob.y * pby) + (oc.x * pcx + oc.y * pcy);
         float r2 = rs * rs + rc * rc;
         float invR = r2 == 0 ? Float.MAX_VALUE : MathUtils.sqrt(1f / r2);
         rs *= invR;
@@ -961,98 +1274,116 @@ public class ParticleSystem {
         final float roby = rs * ob.x + rc * ob.y;
         final float rocx = rc * oc.x - rs * oc.y;
         final float rocy = rs * oc.x + rc * oc.y;
-        final Vec2 va = m_velocityBuffer.data[a];
-        final Vec2 vb = m_velocityBuffer.data[b];
-        final Vec2 vc = m_velocityBuffer.data[c];
-        va.x += strength * (roax - (pa.x - px));
-        va.y += strength * (roay - (pa.y - py));
-        vb.x += strength * (robx - (pb.x - px));
-        vb.y += strength * (roby - (pb.y - py));
-        vc.x += strength * (rocx - (pc.x - px));
-        vc.y += strength * (rocy - (pc.y - py));
+        velX[a] += strength * (roax - (pax - px));
+        velY[a] += strength * (roay - (pay - py));
+        velX[b] += strength * (robx - (pbx - px));
+        velY[b] += strength * (roby - (pby - py));
+        velX[c] += strength * (rocx - (pcx - px));
+        velY[c] += strength * (rocy - (pcy - py));
       }
     }
   }
 
   void solveSpring(final TimeStep step) {
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
     float springStrength = step.inv_dt * m_springStrength;
     for (int k = 0; k < m_pairCount; k++) {
       final Pair pair = m_pairBuffer[k];
       if ((pair.flags & ParticleType.b2_springParticle) != 0) {
         int a = pair.indexA;
         int b = pair.indexB;
-        final Vec2 pa = m_positionBuffer.data[a];
-        final Vec2 pb = m_positionBuffer.data[b];
-        final float dx = pb.x - pa.x;
-        final float dy = pb.y - pa.y;
+        final float dx = posX[b] - posX[a];
+        final float dy = posY[b] - posY[a];
         float r0 = pair.distance;
         float r1 = MathUtils.sqrt(dx * dx + dy * dy);
         if (r1 == 0) r1 = Float.MAX_VALUE;
         float strength = springStrength * pair.strength;
         final float fx = strength * (r0 - r1) / r1 * dx;
         final float fy = strength * (r0 - r1) / r1 * dy;
-        final Vec2 va = m_velocityBuffer.data[a];
-        final Vec2 vb = m_velocityBuffer.data[b];
-        va.x -= fx;
-        va.y -= fy;
-        vb.x += fx;
-        vb.y += fy;
+        velX[a] -= fx;
+        velY[a] -= fy;
+        velX[b] += fx;
+        velY[b] += fy;
       }
     }
   }
 
   void solveTensile(final TimeStep step) {
-    m_accumulation2Buffer = requestParticleBuffer(Vec2.class, m_accumulation2Buffer);
+    m_accumulation2BufferX = requestParticleBuffer(m_accumulation2BufferX);
+    m_accumulation2BufferY = requestParticleBuffer(m_accumulation2BufferY);
+    final float[] accX = m_accumulation2BufferX;
+    final float[] accY = m_accumulation2BufferY;
+    final boolean parallel = isParallel();
     for (int i = 0; i < m_count; i++) {
       m_accumulationBuffer[i] = 0;
-      m_accumulation2Buffer[i].setZero();
+      accX[i] = 0;
+      accY[i] = 0;
     }
-    for (int k = 0; k < m_contactCount; k++) {
+    if (parallel) {
+      runContactStage(ContactStage.TENSILE_WEIGHT, 0, 0);
+    } else {
+      accumulateTensile(0, m_contactCount, m_accumulationBuffer, accX, accY);
+    }
+    float strengthA = m_surfaceTensionStrengthA * getCriticalVelocity(step);
+    float strengthB = m_surfaceTensionStrengthB * getCriticalVelocity(step);
+    if (parallel) {
+      runContactStage(ContactStage.TENSILE, strengthA, strengthB);
+    } else {
+      applyTensile(0, m_contactCount, strengthA, strengthB, m_velocityBuffer.x,
+          m_velocityBuffer.y);
+    }
+  }
+
+  void accumulateTensile(int begin, int end, float[] weights, float[] outX, float[] outY) {
+    for (int k = begin; k < end; k++) {
       final ParticleContact contact = m_contactBuffer[k];
       if ((contact.flags & ParticleType.b2_tensileParticle) != 0) {
         int a = contact.indexA;
         int b = contact.indexB;
         float w = contact.weight;
         Vec2 n = contact.normal;
-        m_accumulationBuffer[a] += w;
-        m_accumulationBuffer[b] += w;
-        final Vec2 a2A = m_accumulation2Buffer[a];
-        final Vec2 a2B = m_accumulation2Buffer[b];
+        weights[a] += w;
+        weights[b] += w;
         final float inter = (1 - w) * w;
-        a2A.x -= inter * n.x;
-        a2A.y -= inter * n.y;
-        a2B.x += inter * n.x;
-        a2B.y += inter * n.y;
+        outX[a] -= inter * n.x;
+        outY[a] -= inter * n.y;
+        outX[b] += inter * n.x;
+        outY[b] += inter * n.y;
       }
     }
-    float strengthA = m_surfaceTensionStrengthA * getCriticalVelocity(step);
-    float strengthB = m_surfaceTensionStrengthB * getCriticalVelocity(step);
-    for (int k = 0; k < m_contactCount; k++) {
+  }
+
+  void applyTensile(int begin, int end, float strengthA, float strengthB, float[] outX,
+      float[] outY) {
+    final float[] accX = m_accumulation2BufferX;
+    final float[] accY = m_accumulation2BufferY;
+    for (int k = begin; k < end; k++) {
       final ParticleContact contact = m_contactBuffer[k];
       if ((contact.flags & ParticleType.b2_tensileParticle) != 0) {
         int a = contact.indexA;
         int b = contact.indexB;
         float w = contact.weight;
         Vec2 n = contact.normal;
-        final Vec2 a2A = m_accumulation2Buffer[a];
-        final Vec2 a2B = m_accumulation2Buffer[b];
         float h = m_accumulationBuffer[a] + m_accumulationBuffer[b];
-        final float sx = a2B.x - a2A.x;
-        final float sy = a2B.y - a2A.y;
+        final float sx = accX[b] - accX[a];
+        final float sy = accY[b] - accY[a];
         float fn = (strengthA * (h - 2) + strengthB * (sx * n.x + sy * n.y)) * w;
         final float fx = fn * n.x;
         final float fy = fn * n.y;
-        final Vec2 va = m_velocityBuffer.data[a];
-        final Vec2 vb = m_velocityBuffer.data[b];
-        va.x -= fx;
-        va.y -= fy;
-        vb.x += fx;
-        vb.y += fy;
+        outX[a] -= fx;
+        outY[a] -= fy;
+        outX[b] += fx;
+        outY[b] += fy;
       }
     }
   }
 
   void solveViscous(final TimeStep step) {
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
     float viscousStrength = m_viscousStrength;
     for (int k = 0; k < m_bodyContactCount; k++) {
       final ParticleBodyContact contact = m_bodyContactBuffer[k];
@@ -1061,44 +1392,56 @@ public class ParticleSystem {
         Body b = contact.body;
         float w = contact.weight;
         float m = contact.mass;
-        Vec2 p = m_positionBuffer.data[a];
-        final Vec2 va = m_velocityBuffer.data[a];
+        final Vec2 p = tempVec2;
+        p.x = m_positionBuffer.x[a];
+        p.y = m_positionBuffer.y[a];
         final float tempX = p.x - b.m_sweep.c.x;
         final float tempY = p.y - b.m_sweep.c.y;
-        final float vx = -b.m_angularVelocity * tempY + b.m_linearVelocity.x - va.x;
-        final float vy = b.m_angularVelocity * tempX + b.m_linearVelocity.y - va.y;
+        final float vx = -b.m_angularVelocity * tempY + b.m_linearVelocity.x - velX[a];
+        final float vy = b.m_angularVelocity * tempX + b.m_linearVelocity.y - velY[a];
         final Vec2 f = tempVec;
         final float pInvMass = getParticleInvMass();
         f.x = viscousStrength * m * w * vx;
         f.y = viscousStrength * m * w * vy;
-        va.x += pInvMass * f.x;
-        va.y += pInvMass * f.y;
+        velX[a] += pInvMass * f.x;
+        velY[a] += pInvMass * f.y;
         f.x = -f.x;
         f.y = -f.y;
         b.applyLinearImpulse(f, p, true);
       }
     }
-    for (int k = 0; k < m_contactCount; k++) {
+    if (isParallel()) {
+      runContactStage(ContactStage.VISCOUS, viscousStrength, 0);
+    } else {
+      applyViscous(0, m_contactCount, viscousStrength, velX, velY);
+    }
+  }
+
+  /** Reads the velocity buffer, like {@link #applyDamping(int, int, float, float[], float[])}. */
+  void applyViscous(int begin, int end, float viscousStrength, float[] outX, float[] outY) {
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
+    for (int k = begin; k < end; k++) {
       final ParticleContact contact = m_contactBuffer[k];
       if ((contact.flags & ParticleType.b2_viscousParticle) != 0) {
         int a = contact.indexA;
         int b = contact.indexB;
         float w = contact.weight;
-        final Vec2 va = m_velocityBuffer.data[a];
-        final Vec2 vb = m_velocityBuffer.data[b];
-        final float vx = vb.x - va.x;
-        final float vy = vb.y - va.y;
+        final float vx = velX[b] - velX[a];
+        final float vy = velY[b] - velY[a];
         final float fx = viscousStrength * w * vx;
         final float fy = viscousStrength * w * vy;
-        va.x += fx;
-        va.y += fy;
-        vb.x -= fx;
-        vb.y -= fy;
+        outX[a] += fx;
+        outY[a] += fy;
+        outX[b] -= fx;
+        outY[b] -= fy;
       }
     }
   }
 
   void solvePowder(final TimeStep step) {
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
     float powderStrength = m_powderStrength * getCriticalVelocity(step);
     float minWeight = 1.0f - Settings.particleStride;
     for (int k = 0; k < m_bodyContactCount; k++) {
@@ -1109,21 +1452,31 @@ public class ParticleSystem {
         if (w > minWeight) {
           Body b = contact.body;
           float m = contact.mass;
-          Vec2 p = m_positionBuffer.data[a];
+          final Vec2 p = tempVec2;
+          p.x = m_positionBuffer.x[a];
+          p.y = m_positionBuffer.y[a];
           Vec2 n = contact.normal;
           final Vec2 f = tempVec;
-          final Vec2 va = m_velocityBuffer.data[a];
           final float inter = powderStrength * m * (w - minWeight);
           final float pInvMass = getParticleInvMass();
           f.x = inter * n.x;
           f.y = inter * n.y;
-          va.x -= pInvMass * f.x;
-          va.y -= pInvMass * f.y;
+          velX[a] -= pInvMass * f.x;
+          velY[a] -= pInvMass * f.y;
           b.applyLinearImpulse(f, p, true);
         }
       }
     }
-    for (int k = 0; k < m_contactCount; k++) {
+    if (isParallel()) {
+      runContactStage(ContactStage.POWDER, powderStrength, minWeight);
+    } else {
+      applyPowder(0, m_contactCount, powderStrength, minWeight, velX, velY);
+    }
+  }
+
+  void applyPowder(int begin, int end, float powderStrength, float minWeight, float[] outX,
+      float[] outY) {
+    for (int k = begin; k < end; k++) {
       final ParticleContact contact = m_contactBuffer[k];
       if ((contact.flags & ParticleType.b2_powderParticle) != 0) {
         float w = contact.weight;
@@ -1131,21 +1484,21 @@ public class ParticleSystem {
           int a = contact.indexA;
           int b = contact.indexB;
           Vec2 n = contact.normal;
-          final Vec2 va = m_velocityBuffer.data[a];
-          final Vec2 vb = m_velocityBuffer.data[b];
           final float inter = powderStrength * (w - minWeight);
           final float fx = inter * n.x;
           final float fy = inter * n.y;
-          va.x -= fx;
-          va.y -= fy;
-          vb.x += fx;
-          vb.y += fy;
+          outX[a] -= fx;
+          outY[a] -= fy;
+          outX[b] += fx;
+          outY[b] += fy;
         }
       }
     }
   }
 
   void solveSolid(final TimeStep step) {
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
     // applies extra repulsive force from solid particle groups
     m_depthBuffer = requestParticleBuffer(m_depthBuffer);
     float ejectionStrength = step.inv_dt * m_ejectionStrength;
@@ -1157,15 +1510,13 @@ public class ParticleSystem {
         float w = contact.weight;
         Vec2 n = contact.normal;
         float h = m_depthBuffer[a] + m_depthBuffer[b];
-        final Vec2 va = m_velocityBuffer.data[a];
-        final Vec2 vb = m_velocityBuffer.data[b];
         final float inter = ejectionStrength * h * w;
         final float fx = inter * n.x;
         final float fy = inter * n.y;
-        va.x -= fx;
-        va.y -= fy;
-        vb.x += fx;
-        vb.y += fy;
+        velX[a] -= fx;
+        velY[a] -= fy;
+        velX[b] += fx;
+        velY[b] += fy;
       }
     }
   }
@@ -1213,8 +1564,10 @@ public class ParticleSystem {
         newIndices[i] = newCount;
         if (i != newCount) {
           m_flagsBuffer.data[newCount] = m_flagsBuffer.data[i];
-          m_positionBuffer.data[newCount].set(m_positionBuffer.data[i]);
-          m_velocityBuffer.data[newCount].set(m_velocityBuffer.data[i]);
+          m_positionBuffer.x[newCount] = m_positionBuffer.x[i];
+          m_positionBuffer.y[newCount] = m_positionBuffer.y[i];
+          m_velocityBuffer.x[newCount] = m_velocityBuffer.x[i];
+          m_velocityBuffer.y[newCount] = m_velocityBuffer.y[i];
           m_groupBuffer[newCount] = m_groupBuffer[i];
           if (m_depthBuffer != null) {
             m_depthBuffer[newCount] = m_depthBuffer[i];
@@ -1232,8 +1585,7 @@ public class ParticleSystem {
 
     // update proxies
     for (int k = 0; k < m_proxyCount; k++) {
-      Proxy proxy = m_proxyBuffer[k];
-      proxy.index = newIndices[proxy.index];
+      m_proxyIndexBuffer[k] = newIndices[m_proxyIndexBuffer[k]];
     }
 
     // Proxy lastProxy = std.remove_if(
@@ -1242,11 +1594,14 @@ public class ParticleSystem {
     // m_proxyCount = (int) (lastProxy - m_proxyBuffer);
     int j = m_proxyCount;
     for (int i = 0; i < j; i++) {
-      if (Test.IsProxyInvalid(m_proxyBuffer[i])) {
+      if (Test.IsProxyInvalid(m_proxyIndexBuffer[i])) {
         --j;
-        Proxy temp = m_proxyBuffer[j];
-        m_proxyBuffer[j] = m_proxyBuffer[i];
-        m_proxyBuffer[i] = temp;
+        int tempIndex = m_proxyIndexBuffer[j];
+        m_proxyIndexBuffer[j] = m_proxyIndexBuffer[i];
+        m_proxyIndexBuffer[i] = tempIndex;
+        long tempTag = m_proxyTagBuffer[j];
+        m_proxyTagBuffer[j] = m_proxyTagBuffer[i];
+        m_proxyTagBuffer[i] = tempTag;
         --i;
       }
     }
@@ -1413,8 +1768,10 @@ public class ParticleSystem {
     newIndices.end = end;
 
     BufferUtils.rotate(m_flagsBuffer.data, start, mid, end);
-    BufferUtils.rotate(m_positionBuffer.data, start, mid, end);
-    BufferUtils.rotate(m_velocityBuffer.data, start, mid, end);
+    BufferUtils.rotate(m_positionBuffer.x, start, mid, end);
+    BufferUtils.rotate(m_positionBuffer.y, start, mid, end);
+    BufferUtils.rotate(m_velocityBuffer.x, start, mid, end);
+    BufferUtils.rotate(m_velocityBuffer.y, start, mid, end);
     BufferUtils.rotate(m_groupBuffer, start, mid, end);
     if (m_depthBuffer != null) {
       BufferUtils.rotate(m_depthBuffer, start, mid, end);
@@ -1428,8 +1785,7 @@ public class ParticleSystem {
 
     // update proxies
     for (int k = 0; k < m_proxyCount; k++) {
-      Proxy proxy = m_proxyBuffer[k];
-      proxy.index = newIndices.getIndex(proxy.index);
+      m_proxyIndexBuffer[k] = newIndices.getIndex(m_proxyIndexBuffer[k]);
     }
 
     // update contacts
@@ -1498,6 +1854,21 @@ public class ParticleSystem {
     return m_dampingStrength;
   }
 
+  /**
+   * Solve the per-contact stages (pressure, damping, viscous, powder, tensile) on a parallel solver.
+   * Small systems keep using the single-threaded path. Pass null to go back to the single-threaded
+   * solver.
+   *
+   * @param solver
+   */
+  public void setParallelSolver(ParallelParticleSolver solver) {
+    m_parallelSolver = solver;
+  }
+
+  public ParallelParticleSolver getParallelSolver() {
+    return m_parallelSolver;
+  }
+
   public float getParticleRadius() {
     return m_particleDiameter / 2;
   }
@@ -1532,12 +1903,84 @@ public class ParticleSystem {
     return m_flagsBuffer.data;
   }
 
+  /**
+   * Get the particle positions as vectors. Positions are stored in two float arrays, and the
+   * returned vectors stay bound to them: writes to the vectors move the particles at the next step,
+   * query or change to the particle list, and the vectors follow the particles after each step. The
+   * same array is returned by every call; keeping it in sync costs a copy of the positions per step,
+   * only while the vectors are in use. Getting the float arrays with
+   * {@link #getParticlePositionBufferX()} or {@link #getParticlePositionBufferY()} applies the
+   * pending writes and unbinds the vectors.
+   */
   public Vec2[] getParticlePositionBuffer() {
-    return m_positionBuffer.data;
+    return m_positionBuffer.getVectors(m_internalAllocatedCapacity, m_count);
   }
 
+  /**
+   * Get the x coordinates of the particle positions. This is the storage used by the solver, no
+   * copy is made. Any vector view returned by {@link #getParticlePositionBuffer()} is unbound.
+   */
+  public float[] getParticlePositionBufferX() {
+    unbindVectors(m_positionBuffer);
+    return m_positionBuffer.x;
+  }
+
+  /** @see #getParticlePositionBufferX() */
+  public float[] getParticlePositionBufferY() {
+    unbindVectors(m_positionBuffer);
+    return m_positionBuffer.y;
+  }
+
+  /**
+   * Get the particle velocities as vectors, bound to the velocity arrays like
+   * {@link #getParticlePositionBuffer()}.
+   */
   public Vec2[] getParticleVelocityBuffer() {
-    return m_velocityBuffer.data;
+    return m_velocityBuffer.getVectors(m_internalAllocatedCapacity, m_count);
+  }
+
+  /** @see #getParticlePositionBufferX() */
+  public float[] getParticleVelocityBufferX() {
+    unbindVectors(m_velocityBuffer);
+    return m_velocityBuffer.x;
+  }
+
+  /** @see #getParticlePositionBufferX() */
+  public float[] getParticleVelocityBufferY() {
+    unbindVectors(m_velocityBuffer);
+    return m_velocityBuffer.y;
+  }
+
+  /**
+   * Draw the particles with the debug draw, from the float arrays. The vector views are left as
+   * they are.
+   */
+  public void drawParticles(DebugDraw debugDraw, boolean wireframe, ParticleColor[] colors) {
+    m_positionBuffer.pull(m_count);
+    if (wireframe) {
+      debugDraw.drawParticlesWireframe(m_positionBuffer.x, m_positionBuffer.y, m_particleDiameter
+          / 2, colors, m_count);
+    } else {
+      debugDraw.drawParticles(m_positionBuffer.x, m_positionBuffer.y, m_particleDiameter / 2,
+          colors, m_count);
+    }
+  }
+
+  private void unbindVectors(ParticleBufferVec2 buffer) {
+    buffer.pull(m_count);
+    buffer.vectors = null;
+  }
+
+  /** Apply the writes made through the vector views before the particles are read. */
+  private void pullVectors() {
+    m_positionBuffer.pull(m_count);
+    m_velocityBuffer.pull(m_count);
+  }
+
+  /** Refresh the vector views after the particles have changed. */
+  private void pushVectors() {
+    m_positionBuffer.push(0, m_count);
+    m_velocityBuffer.push(0, m_count);
   }
 
   public ParticleColor[] getParticleColorBuffer() {
@@ -1568,6 +2011,33 @@ public class ParticleSystem {
     buffer.userSuppliedCapacity = newCapacity;
   }
 
+  void setParticleBuffer(ParticleBufferVec2 buffer, float[] newDataX, float[] newDataY,
+      int newCapacity) {
+    assert ((newDataX != null && newDataY != null && newCapacity != 0) || (newDataX == null
+        && newDataY == null && newCapacity == 0));
+    buffer.x = newDataX;
+    buffer.y = newDataY;
+    buffer.vectors = null;
+    buffer.userSuppliedCapacity = newCapacity;
+  }
+
+  /** The vectors are copied into the float arrays and stay bound to them as the vector view. */
+  void setParticleBuffer(ParticleBufferVec2 buffer, Vec2[] newData, int newCapacity) {
+    assert ((newData != null && newCapacity != 0) || (newData == null && newCapacity == 0));
+    float[] x = null;
+    float[] y = null;
+    if (newData != null) {
+      x = new float[newCapacity];
+      y = new float[newCapacity];
+      for (int i = 0; i < newCapacity; i++) {
+        x[i] = newData[i].x;
+        y[i] = newData[i].y;
+      }
+    }
+    setParticleBuffer(buffer, x, y, newCapacity);
+    buffer.vectors = newData;
+  }
+
   <T> void setParticleBuffer(ParticleBuffer<T> buffer, T[] newData, int newCapacity) {
     assert ((newData != null && newCapacity != 0) || (newData == null && newCapacity == 0));
     if (buffer.userSuppliedCapacity != 0) {
@@ -1585,10 +2055,18 @@ public class ParticleSystem {
     setParticleBuffer(m_positionBuffer, buffer, capacity);
   }
 
+  public void setParticlePositionBuffer(float[] bufferX, float[] bufferY, int capacity) {
+    setParticleBuffer(m_positionBuffer, bufferX, bufferY, capacity);
+  }
+
   public void setParticleVelocityBuffer(Vec2[] buffer, int capacity) {
     setParticleBuffer(m_velocityBuffer, buffer, capacity);
   }
 
+  public void setParticleVelocityBuffer(float[] bufferX, float[] bufferY, int capacity) {
+    setParticleBuffer(m_velocityBuffer, bufferX, bufferY, capacity);
+  }
+
   public void setParticleColorBuffer(ParticleColor[] buffer, int capacity) {
     setParticleBuffer(m_colorBuffer, buffer, capacity);
   }
@@ -1613,13 +2091,13 @@ public class ParticleSystem {
     setParticleBuffer(m_userDataBuffer, buffer, capacity);
   }
 
-  private static final int lowerBound(Proxy[] ray, int length, long tag) {
+  private static final int lowerBound(long[] ray, int length, long tag) {
     int left = 0;
     int step, curr;
     while (length > 0) {
       step = length / 2;
       curr = left + step;
-      if (ray[curr].tag < tag) {
+      if (ray[curr] < tag) {
         left = curr + 1;
         length -= step + 1;
       } else {
@@ -1629,13 +2107,13 @@ public class ParticleSystem {
     return left;
   }
 
-  private static final int upperBound(Proxy[] ray, int length, long tag) {
+  private static final int upperBound(long[] ray, int length, long tag) {
     int left = 0;
     int step, curr;
     while (length > 0) {
       step = length / 2;
       curr = left + step;
-      if (ray[curr].tag <= tag) {
+      if (ray[curr] <= tag) {
         left = curr + 1;
         length -= step + 1;
       } else {
@@ -1646,6 +2124,7 @@ public class ParticleSystem {
   }
 
   public void queryAABB(ParticleQueryCallback callback, final AABB aabb) {
+    pullVectors();
     if (m_proxyCount == 0) {
       return;
     }
@@ -1655,15 +2134,16 @@ public class ParticleSystem {
     final float upperBoundX = aabb.upperBoundX;
     final float upperBoundY = aabb.upperBoundY;
     int firstProxy =
-        lowerBound(m_proxyBuffer, m_proxyCount,
+        lowerBound(m_proxyTagBuffer, m_proxyCount,
             computeTag(m_inverseDiameter * lowerBoundX, m_inverseDiameter * lowerBoundY));
     int lastProxy =
-        upperBound(m_proxyBuffer, m_proxyCount,
+        upperBound(m_proxyTagBuffer, m_proxyCount,
             computeTag(m_inverseDiameter * upperBoundX, m_inverseDiameter * upperBoundY));
     for (int proxy = firstProxy; proxy < lastProxy; ++proxy) {
-      int i = m_proxyBuffer[proxy].index;
-      final Vec2 p = m_positionBuffer.data[i];
-      if (lowerBoundX < p.x && p.x < upperBoundX && lowerBoundY < p.y && p.y < upperBoundY) {
+      int i = m_proxyIndexBuffer[proxy];
+      final float px = m_positionBuffer.x[i];
+      final float py = m_positionBuffer.y[i];
+      if (lowerBoundX < px && px < upperBoundX && lowerBoundY < py && py < upperBoundY) {
         if (!callback.reportParticle(i)) {
           break;
         }
@@ -1677,18 +2157,19 @@ public class ParticleSystem {
    * @param point2
    */
   public void raycast(ParticleRaycastCallback callback, final Vec2 point1, final Vec2 point2) {
+    pullVectors();
     if (m_proxyCount == 0) {
       return;
     }
     int firstProxy =
         lowerBound(
-            m_proxyBuffer,
+            m_proxyTagBuffer,
             m_proxyCount,
             computeTag(m_inverseDiameter * MathUtils.min(point1.x, point2.x) - 1, m_inverseDiameter
                 * MathUtils.min(point1.y, point2.y) - 1));
     int lastProxy =
         upperBound(
-            m_proxyBuffer,
+            m_proxyTagBuffer,
             m_proxyCount,
             computeTag(m_inverseDiameter * MathUtils.max(point1.x, point2.x) + 1, m_inverseDiameter
                 * MathUtils.max(point1.y, point2.y) + 1));
@@ -1701,10 +2182,9 @@ public class ParticleSystem {
     float v2 = vx * vx + vy * vy;
     if (v2 == 0) v2 = Float.MAX_VALUE;
     for (int proxy = firstProxy; proxy < lastProxy; ++proxy) {
-      int i = m_proxyBuffer[proxy].index;
-      final Vec2 posI = m_positionBuffer.data[i];
-      final float px = point1.x - posI.x;
-      final float py = point1.y - posI.y;
+      int i = m_proxyIndexBuffer[proxy];
+      final float px = point1.x - m_positionBuffer.x[i];
+      final float py = point1.y - m_positionBuffer.y[i];
       float pv = px * vx + py * vy;
       float p2 = px * px + py * py;
       float determinant = pv * pv - v2 * (p2 - m_squaredDiameter);
@@ -1738,16 +2218,15 @@ public class ParticleSystem {
   }
 
   public float computeParticleCollisionEnergy() {
+    pullVectors();
     float sum_v2 = 0;
     for (int k = 0; k < m_contactCount; k++) {
       final ParticleContact contact = m_contactBuffer[k];
       int a = contact.indexA;
       int b = contact.indexB;
       Vec2 n = contact.normal;
-      final Vec2 va = m_velocityBuffer.data[a];
-      final Vec2 vb = m_velocityBuffer.data[b];
-      final float vx = vb.x - va.x;
-      final float vy = vb.y - va.y;
+      final float vx = m_velocityBuffer.x[b] - m_velocityBuffer.x[a];
+      final float vy = m_velocityBuffer.y[b] - m_velocityBuffer.y[a];
       float vn = vx * n.x + vy * n.y;
       if (vn < 0) {
         sum_v2 += vn * vn;
@@ -1771,6 +2250,21 @@ public class ParticleSystem {
         newCapacity, deferred);
   }
 
+  static void reallocateBuffer(ParticleBufferVec2 buffer, int oldCapacity, int newCapacity) {
+    assert (newCapacity > oldCapacity);
+    buffer.x =
+        BufferUtils.reallocateBuffer(buffer.x, buffer.userSuppliedCapacity, oldCapacity,
+            newCapacity, false);
+    buffer.y =
+        BufferUtils.reallocateBuffer(buffer.y, buffer.userSuppliedCapacity, oldCapacity,
+            newCapacity, false);
+    if (buffer.vectors != null && buffer.vectors.length < newCapacity) {
+      buffer.vectors =
+          BufferUtils.reallocateBuffer(Vec2.class, buffer.vectors, buffer.vectors.length,
+              newCapacity);
+    }
+  }
+
   @SuppressWarnings("unchecked")
   <T> T[] requestParticleBuffer(Class<T> klass, T[] buffer) {
     if (buffer == null) {
@@ -1793,6 +2287,126 @@ public class ParticleSystem {
     return buffer;
   }
 
+  /**
+   * @return the size in bytes of what {@link #writeState(ByteBuffer)} writes.
+   */
+  public int getStateSize() {
+    int size = 4 * 4 + 1;
+    size += m_count * 5 * 4;
+    if (m_colorBuffer.data != null) {
+      size += m_count * 4;
+    }
+    size += m_proxyCount * (4 + 8);
+    size += m_groupCount * 13 * 4;
+    return size;
+  }
+
+  /**
+   * Write what the particles keep from a step to the next, for a world snapshot: flags, positions,
+   * velocities, colors, the proxies in their order, which is where the next sort starts from, with
+   * the tags the collision with the bodies searches before the sort, and the statistics of the
+   * groups. The particles, their pairs and triads and their groups must be the same when the state
+   * is read.
+   */
+  public void writeState(ByteBuffer buffer) {
+    pullVectors();
+    buffer.putInt(m_timestamp);
+    buffer.putInt(m_allParticleFlags);
+    buffer.putInt(m_allGroupFlags);
+    buffer.putInt(m_proxyCount);
+    final int[] flags = m_flagsBuffer.data;
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
+    for (int i = 0; i < m_count; i++) {
+      buffer.putInt(flags[i]);
+      buffer.putFloat(posX[i]);
+      buffer.putFloat(posY[i]);
+      buffer.putFloat(velX[i]);
+      buffer.putFloat(velY[i]);
+    }
+    final ParticleColor[] colors = m_colorBuffer.data;
+    buffer.put((byte) (colors != null ? 1 : 0));
+    if (colors != null) {
+      for (int i = 0; i < m_count; i++) {
+        final ParticleColor color = colors[i];
+        buffer.put(color.r);
+        buffer.put(color.g);
+        buffer.put(color.b);
+        buffer.put(color.a);
+      }
+    }
+    for (int p = 0; p < m_proxyCount; p++) {
+      buffer.putInt(m_proxyIndexBuffer[p]);
+      buffer.putLong(m_proxyTagBuffer[p]);
+    }
+    for (ParticleGroup group = m_groupList; group != null; group = group.getNext()) {
+      buffer.putInt(group.m_groupFlags);
+      buffer.putInt(group.m_timestamp);
+      buffer.putFloat(group.m_mass);
+      buffer.putFloat(group.m_inertia);
+      buffer.putFloat(group.m_center.x);
+      buffer.putFloat(group.m_center.y);
+      buffer.putFloat(group.m_linearVelocity.x);
+      buffer.putFloat(group.m_linearVelocity.y);
+      buffer.putFloat(group.m_angularVelocity);
+      buffer.putFloat(group.m_transform.p.x);
+      buffer.putFloat(group.m_transform.p.y);
+      buffer.putFloat(group.m_transform.q.s);
+      buffer.putFloat(group.m_transform.q.c);
+    }
+  }
+
+  /**
+   * Read what {@link #writeState(ByteBuffer)} wrote.
+   */
+  public void readState(ByteBuffer buffer) {
+    m_timestamp = buffer.getInt();
+    m_allParticleFlags = buffer.getInt();
+    m_allGroupFlags = buffer.getInt();
+    final int proxyCount = buffer.getInt();
+    assert (proxyCount == m_proxyCount);
+    final int[] flags = m_flagsBuffer.data;
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
+    for (int i = 0; i < m_count; i++) {
+      flags[i] = buffer.getInt();
+      posX[i] = buffer.getFloat();
+      posY[i] = buffer.getFloat();
+      velX[i] = buffer.getFloat();
+      velY[i] = buffer.getFloat();
+    }
+    if (buffer.get() != 0) {
+      final ParticleColor[] colors = getParticleColorBuffer();
+      for (int i = 0; i < m_count; i++) {
+        colors[i].set(buffer.get(), buffer.get(), buffer.get(), buffer.get());
+      }
+    }
+    for (int p = 0; p < m_proxyCount; p++) {
+      m_proxyIndexBuffer[p] = buffer.getInt();
+      m_proxyTagBuffer[p] = buffer.getLong();
+    }
+    for (ParticleGroup group = m_groupList; group != null; group = group.getNext()) {
+      group.m_groupFlags = buffer.getInt();
+      group.m_timestamp = buffer.getInt();
+      group.m_mass = buffer.getFloat();
+      group.m_inertia = buffer.getFloat();
+      group.m_center.x = buffer.getFloat();
+      group.m_center.y = buffer.getFloat();
+      group.m_linearVelocity.x = buffer.getFloat();
+      group.m_linearVelocity.y = buffer.getFloat();
+      group.m_angularVelocity = buffer.getFloat();
+      group.m_transform.p.x = buffer.getFloat();
+      group.m_transform.p.y = buffer.getFloat();
+      group.m_transform.q.s = buffer.getFloat();
+      group.m_transform.q.c = buffer.getFloat();
+    }
+    pushVectors();
+  }
+
   public static class ParticleBuffer<T> {
     public T[] data;
     final Class<T> dataClass;
@@ -1807,24 +2421,48 @@ public class ParticleSystem {
     int userSuppliedCapacity;
   }
 
-  /** Used for detecting particle contacts */
-  public static class Proxy implements Comparable<Proxy> {
-    int index;
-    long tag;
+  /** Vector data stored as two float arrays, the solver loops read them without a Vec2 per item */
+  /**
+   * Particle vectors stored as two float arrays. The Vec2[] view, when one has been requested or
+   * supplied, stays bound to the arrays: {@link #pull(int)} applies the writes made through it and
+   * {@link #push(int, int)} refreshes it after the arrays change.
+   */
+  static class ParticleBufferVec2 {
+    float[] x;
+    float[] y;
+    /** vectors bound to the arrays, null if no vector view is in use */
+    Vec2[] vectors;
+    int userSuppliedCapacity;
 
-    @Override
-    public int compareTo(Proxy o) {
-      return (tag - o.tag) < 0 ? -1 : (o.tag == tag ? 0 : 1);
+    Vec2[] getVectors(int capacity, int count) {
+      int oldCapacity = vectors != null ? vectors.length : 0;
+      if (capacity > oldCapacity) {
+        vectors = BufferUtils.reallocateBuffer(Vec2.class, vectors, oldCapacity, capacity);
+        push(0, count);
+      }
+      return vectors;
     }
 
-    @Override
-    public boolean equals(Object obj) {
-      if (this == obj) return true;
-      if (obj == null) return false;
-      if (getClass() != obj.getClass()) return false;
-      Proxy other = (Proxy) obj;
-      if (tag != other.tag) return false;
-      return true;
+    /** Copy the vectors into the arrays. */
+    void pull(int count) {
+      if (vectors == null) {
+        return;
+      }
+      for (int i = 0; i < count; i++) {
+        x[i] = vectors[i].x;
+        y[i] = vectors[i].y;
+      }
+    }
+
+    /** Copy the arrays into the vectors. */
+    void push(int begin, int end) {
+      if (vectors == null) {
+        return;
+      }
+      for (int i = begin; i < end; i++) {
+        vectors[i].x = x[i];
+        vectors[i].y = y[i];
+      }
     }
   }
 
@@ -1848,9 +2486,9 @@ public class ParticleSystem {
   // Callback used with VoronoiDiagram.
   static class CreateParticleGroupCallback implements VoronoiDiagramCallback {
     public void callback(int a, int b, int c) {
-      final Vec2 pa = system.m_positionBuffer.data[a];
-      final Vec2 pb = system.m_positionBuffer.data[b];
-      final Vec2 pc = system.m_positionBuffer.data[c];
+      final Vec2 pa = tempPa.set(system.m_positionBuffer.x[a], system.m_positionBuffer.y[a]);
+      final Vec2 pb = tempPb.set(system.m_positionBuffer.x[b], system.m_positionBuffer.y[b]);
+      final Vec2 pc = tempPc.set(system.m_positionBuffer.x[c], system.m_positionBuffer.y[c]);
       final float dabx = pa.x - pb.x;
       final float daby = pa.y - pb.y;
       final float dbcx = pb.x - pc.x;
@@ -1899,6 +2537,10 @@ public class ParticleSystem {
     ParticleSystem system;
     ParticleGroupDef def; // pointer
     int firstIndex;
+
+    private final Vec2 tempPa = new Vec2();
+    private final Vec2 tempPb = new Vec2();
+    private final Vec2 tempPc = new Vec2();
   }
 
   // Callback used with VoronoiDiagram.
@@ -1913,9 +2555,9 @@ public class ParticleSystem {
         int bf = system.m_flagsBuffer.data[b];
         int cf = system.m_flagsBuffer.data[c];
         if ((af & bf & cf & k_triadFlags) != 0) {
-          final Vec2 pa = system.m_positionBuffer.data[a];
-          final Vec2 pb = system.m_positionBuffer.data[b];
-          final Vec2 pc = system.m_positionBuffer.data[c];
+          final Vec2 pa = tempPa.set(system.m_positionBuffer.x[a], system.m_positionBuffer.y[a]);
+          final Vec2 pb = tempPb.set(system.m_positionBuffer.x[b], system.m_positionBuffer.y[b]);
+          final Vec2 pc = tempPc.set(system.m_positionBuffer.x[c], system.m_positionBuffer.y[c]);
           final float dabx = pa.x - pb.x;
           final float daby = pa.y - pb.y;
           final float dbcx = pb.x - pc.x;
@@ -1964,6 +2606,10 @@ public class ParticleSystem {
     ParticleSystem system;
     ParticleGroup groupA;
     ParticleGroup groupB;
+
+    private final Vec2 tempPa = new Vec2();
+    private final Vec2 tempPb = new Vec2();
+    private final Vec2 tempPc = new Vec2();
   };
 
   static class DestroyParticlesInShapeCallback implements ParticleQueryCallback {
@@ -1973,6 +2619,8 @@ public class ParticleSystem {
     boolean callDestructionListener;
     int destroyed;
 
+    private final Vec2 tempVec = new Vec2();
+
     public DestroyParticlesInShapeCallback() {
       // TODO Auto-generated constructor stub
     }
@@ -1989,7 +2637,10 @@ public class ParticleSystem {
     @Override
     public boolean reportParticle(int index) {
       assert (index >= 0 && index < system.m_count);
-      if (shape.testPoint(xf, system.m_positionBuffer.data[index])) {
+      final Vec2 p = tempVec;
+      p.x = system.m_positionBuffer.x[index];
+      p.y = system.m_positionBuffer.y[index];
+      if (shape.testPoint(xf, p)) {
         system.destroyParticle(index, callDestructionListener);
         destroyed++;
       }
@@ -2001,6 +2652,7 @@ public class ParticleSystem {
     ParticleSystem system;
 
     private final Vec2 tempVec = new Vec2();
+    private final Vec2 tempPos = new Vec2();
 
     @Override
     public boolean reportFixture(Fixture fixture) {
@@ -2023,20 +2675,20 @@ public class ParticleSystem {
         final float aabbupperBoundy = aabb.upperBoundY + system.m_particleDiameter;
         int firstProxy =
             lowerBound(
-                system.m_proxyBuffer,
+                system.m_proxyTagBuffer,
                 system.m_proxyCount,
                 computeTag(system.m_inverseDiameter * aabblowerBoundx, system.m_inverseDiameter
                     * aabblowerBoundy));
         int lastProxy =
             upperBound(
-                system.m_proxyBuffer,
+                system.m_proxyTagBuffer,
                 system.m_proxyCount,
                 computeTag(system.m_inverseDiameter * aabbupperBoundx, system.m_inverseDiameter
                     * aabbupperBoundy));
 
         for (int proxy = firstProxy; proxy != lastProxy; ++proxy) {
-          int a = system.m_proxyBuffer[proxy].index;
-          Vec2 ap = system.m_positionBuffer.data[a];
+          int a = system.m_proxyIndexBuffer[proxy];
+          Vec2 ap = tempPos.set(system.m_positionBuffer.x[a], system.m_positionBuffer.y[a]);
           if (aabblowerBoundx <= ap.x && ap.x <= aabbupperBoundx && aabblowerBoundy <= ap.y
               && ap.y <= aabbupperBoundy) {
             float d;
@@ -2084,6 +2736,7 @@ public class ParticleSystem {
     private final RayCastOutput output = new RayCastOutput();
     private final Vec2 tempVec = new Vec2();
     private final Vec2 tempVec2 = new Vec2();
+    private final Vec2 tempPos = new Vec2();
 
     @Override
     public boolean reportFixture(Fixture fixture) {
@@ -2101,28 +2754,29 @@ public class ParticleSystem {
         final float aabbupperBoundy = aabb.upperBoundY + system.m_particleDiameter;
         int firstProxy =
             lowerBound(
-                system.m_proxyBuffer,
+                system.m_proxyTagBuffer,
                 system.m_proxyCount,
                 computeTag(system.m_inverseDiameter * aabblowerBoundx, system.m_inverseDiameter
                     * aabblowerBoundy));
         int lastProxy =
             upperBound(
-                system.m_proxyBuffer,
+                system.m_proxyTagBuffer,
                 system.m_proxyCount,
                 computeTag(system.m_inverseDiameter * aabbupperBoundx, system.m_inverseDiameter
                     * aabbupperBoundy));
 
         for (int proxy = firstProxy; proxy != lastProxy; ++proxy) {
-          int a = system.m_proxyBuffer[proxy].index;
-          Vec2 ap = system.m_positionBuffer.data[a];
+          int a = system.m_proxyIndexBuffer[proxy];
+          Vec2 ap = tempPos.set(system.m_positionBuffer.x[a], system.m_positionBuffer.y[a]);
           if (aabblowerBoundx <= ap.x && ap.x <= aabbupperBoundx && aabblowerBoundy <= ap.y
               && ap.y <= aabbupperBoundy) {
-            Vec2 av = system.m_velocityBuffer.data[a];
+            final float[] velX = system.m_velocityBuffer.x;
+            final float[] velY = system.m_velocityBuffer.y;
             final Vec2 temp = tempVec;
             Transform.mulTransToOutUnsafe(body.m_xf0, ap, temp);
             Transform.mulToOutUnsafe(body.m_xf, temp, input.p1);
-            input.p2.x = ap.x + step.dt * av.x;
-            input.p2.y = ap.y + step.dt * av.y;
+            input.p2.x = ap.x + step.dt * velX[a];
+            input.p2.y = ap.y + step.dt * velY[a];
             input.maxFraction = 1;
             if (fixture.raycast(output, input, childIndex)) {
               final Vec2 p = tempVec;
@@ -2135,11 +2789,11 @@ public class ParticleSystem {
 
               final float vx = step.inv_dt * (p.x - ap.x);
               final float vy = step.inv_dt * (p.y - ap.y);
-              av.x = vx;
-              av.y = vy;
+              velX[a] = vx;
+              velY[a] = vy;
               final float particleMass = system.getParticleMass();
-              final float ax = particleMass * (av.x - vx);
-              final float ay = particleMass * (av.y - vy);
+              final float ax = particleMass * (velX[a] - vx);
+              final float ay = particleMass * (velY[a] - vy);
               Vec2 b = output.normal;
               final float fdn = ax * b.x + ay * b.y;
               final Vec2 f = tempVec2;
@@ -2155,8 +2809,8 @@ public class ParticleSystem {
   }
 
   static class Test {
-    static boolean IsProxyInvalid(final Proxy proxy) {
-      return proxy.index < 0;
+    static boolean IsProxyInvalid(final int proxyIndex) {
+      return proxyIndex < 0;
     }
 
     static boolean IsContactInvalid(final ParticleContact contact) {
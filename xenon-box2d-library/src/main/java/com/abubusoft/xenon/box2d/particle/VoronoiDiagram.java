@@ -73,9 +73,13 @@ public class VoronoiDiagram {
   }
 
   public void addGenerator(Vec2 center, int tag) {
+    addGenerator(center.x, center.y, tag);
+  }
+
+  public void addGenerator(float centerX, float centerY, int tag) {
     Generator g = m_generatorBuffer[m_generatorCount++];
-    g.center.x = center.x;
-    g.center.y = center.y;
+    g.center.x = centerX;
+    g.center.y = centerY;
     g.tag = tag;
   }
 
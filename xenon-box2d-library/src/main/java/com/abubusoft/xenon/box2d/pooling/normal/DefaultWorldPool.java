@@ -116,6 +116,8 @@ public class DefaultWorldPool implements IWorldPool {
   private final TimeOfImpact toi;
   private final Distance dist;
 
+  private int arrayMisses;
+
   public DefaultWorldPool(int argSize, int argContainerSize) {
     vecs = new OrderedStack<Vec2>(argSize, argContainerSize) {
       protected Vec2 newInstance() { return new Vec2(); }
@@ -237,6 +239,15 @@ public class DefaultWorldPool implements IWorldPool {
     rots.push(num);
   }
 
+  /**
+   * @return how many times an object or an array was not in the pool and had to be allocated.
+   */
+  public final long getMissCount() {
+    return (long) arrayMisses + pcstack.getMissCount() + ccstack.getMissCount()
+        + cpstack.getMissCount() + ecstack.getMissCount() + epstack.getMissCount()
+        + chcstack.getMissCount() + chpstack.getMissCount();
+  }
+
   public final Collision getCollision() {
     return collision;
   }
@@ -251,6 +262,7 @@ public class DefaultWorldPool implements IWorldPool {
 
   public final float[] getFloatArray(int argLength) {
     if (!afloats.containsKey(argLength)) {
+      arrayMisses++;
       afloats.put(argLength, new float[argLength]);
     }
 
@@ -260,6 +272,7 @@ public class DefaultWorldPool implements IWorldPool {
 
   public final int[] getIntArray(int argLength) {
     if (!aints.containsKey(argLength)) {
+      arrayMisses++;
       aints.put(argLength, new int[argLength]);
     }
 
@@ -269,6 +282,7 @@ public class DefaultWorldPool implements IWorldPool {
 
   public final Vec2[] getVec2Array(int argLength) {
     if (!avecs.containsKey(argLength)) {
+      arrayMisses++;
       Vec2[] ray = new Vec2[argLength];
       for (int i = 0; i < argLength; i++) {
         ray[i] = new Vec2();
@@ -0,0 +1,122 @@
+package com.abubusoft.xenon.box2d.pooling.normal;
+
+import com.abubusoft.xenon.box2d.pooling.IOrderedStack;
+
+/**
+ * An {@link OrderedStack} that grows when it runs out of objects, instead of failing an assert,
+ * and keeps its high-water marks.
+ */
+public abstract class GrowableStack<E> implements IOrderedStack<E> {
+
+  private E[] pool;
+  private int index;
+  private E[] container;
+
+  private int highWater;
+  private int containerHighWater;
+  private int misses;
+
+  public GrowableStack(int argStackSize, int argContainerSize) {
+    pool = newArray(0);
+    container = newArray(0);
+    reserve(argStackSize, argContainerSize);
+  }
+
+  public final E pop() {
+    if (index == pool.length) {
+      grow(index + 1);
+    }
+    E object = pool[index++];
+    if (index > highWater) {
+      highWater = index;
+    }
+    return object;
+  }
+
+  public final E[] pop(int argNum) {
+    if (index + argNum > pool.length) {
+      grow(index + argNum);
+    }
+    if (argNum > container.length) {
+      misses++;
+      container = newArray(Math.max(argNum, 2 * container.length));
+      extended(container.length, true);
+    }
+    System.arraycopy(pool, index, container, 0, argNum);
+    index += argNum;
+    if (index > highWater) {
+      highWater = index;
+    }
+    if (argNum > containerHighWater) {
+      containerHighWater = argNum;
+    }
+    return container;
+  }
+
+  public final void push(int argNum) {
+    index -= argNum;
+    assert (index >= 0) : "Beginning of stack reached, push/pops are unmatched";
+  }
+
+  /**
+   * Create the objects so that the given numbers can be popped without allocating.
+   *
+   * @param argStackSize objects popped at the same time.
+   * @param argContainerSize objects popped at once.
+   */
+  public final void reserve(int argStackSize, int argContainerSize) {
+    if (argStackSize > pool.length) {
+      extend(argStackSize);
+    }
+    if (argContainerSize > container.length) {
+      container = newArray(argContainerSize);
+    }
+  }
+
+  /**
+   * @return the largest number of objects popped at the same time.
+   */
+  public final int getHighWaterMark() {
+    return highWater;
+  }
+
+  /**
+   * @return the largest number of objects popped at once.
+   */
+  public final int getContainerHighWaterMark() {
+    return containerHighWater;
+  }
+
+  /**
+   * @return how many times the stack ran out of objects or container space and had to allocate.
+   */
+  public final int getMissCount() {
+    return misses;
+  }
+
+  private void grow(int argSize) {
+    misses++;
+    extend(Math.max(argSize, 2 * pool.length));
+    extended(pool.length, false);
+  }
+
+  private void extend(int argSize) {
+    E[] newPool = newArray(argSize);
+    System.arraycopy(pool, 0, newPool, 0, pool.length);
+    for (int i = pool.length; i < argSize; i++) {
+      newPool[i] = newInstance();
+    }
+    pool = newPool;
+  }
+
+  /**
+   * Called after the stack ran out of objects, or the container ran out of space, and grew to the
+   * given size.
+   */
+  protected void extended(int argSize, boolean argContainer) {}
+
+  /** Creates a new instance of the object contained by this stack. */
+  protected abstract E newInstance();
+
+  protected abstract E[] newArray(int size);
+}
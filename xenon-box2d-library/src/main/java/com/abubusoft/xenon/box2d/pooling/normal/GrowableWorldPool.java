@@ -0,0 +1,426 @@
+package com.abubusoft.xenon.box2d.pooling.normal;
+
+import com.abubusoft.xenon.box2d.collision.AABB;
+import com.abubusoft.xenon.box2d.collision.Collision;
+import com.abubusoft.xenon.box2d.collision.Distance;
+import com.abubusoft.xenon.box2d.collision.TimeOfImpact;
+import com.abubusoft.xenon.box2d.common.Mat22;
+import com.abubusoft.xenon.box2d.common.Mat33;
+import com.abubusoft.xenon.box2d.common.Rot;
+import com.abubusoft.xenon.box2d.common.Settings;
+import com.abubusoft.xenon.box2d.common.Vec2;
+import com.abubusoft.xenon.box2d.common.Vec3;
+import com.abubusoft.xenon.box2d.dynamics.contacts.ChainAndCircleContact;
+import com.abubusoft.xenon.box2d.dynamics.contacts.ChainAndPolygonContact;
+import com.abubusoft.xenon.box2d.dynamics.contacts.CircleContact;
+import com.abubusoft.xenon.box2d.dynamics.contacts.Contact;
+import com.abubusoft.xenon.box2d.dynamics.contacts.EdgeAndCircleContact;
+import com.abubusoft.xenon.box2d.dynamics.contacts.EdgeAndPolygonContact;
+import com.abubusoft.xenon.box2d.dynamics.contacts.PolygonAndCircleContact;
+import com.abubusoft.xenon.box2d.dynamics.contacts.PolygonContact;
+import com.abubusoft.xenon.box2d.pooling.IDynamicStack;
+import com.abubusoft.xenon.box2d.pooling.IWorldPool;
+import com.abubusoft.xenon.box2d.pooling.normal.WorldPoolProfile.Pool;
+
+/**
+ * A world pool that grows when it runs out of objects, where {@link DefaultWorldPool} fails an
+ * assert, and tells a listener when it does. Its high-water marks can be saved with
+ * {@link #getProfile()} and used to pre-warm the pool of the next session: once warmed, a step
+ * takes everything from the pool and allocates nothing.
+ *
+ * Like the default pool, it must be used by one thread.
+ */
+public class GrowableWorldPool implements IWorldPool {
+
+  /**
+   * Told when a pool runs out of objects and grows, what a pre-warmed pool should not do.
+   */
+  public interface Listener {
+
+    /**
+     * @param pool the pool that grew.
+     * @param size its new number of objects, or the length of the new array for the pools of
+     *        arrays.
+     */
+    void poolGrown(Pool pool, int size);
+  }
+
+  private static final Pool[] POOLS = Pool.values();
+
+  private Listener listener;
+  private int arrayMisses;
+
+  private final GrowableStack<Vec2> vecs;
+  private final GrowableStack<Vec3> vec3s;
+  private final GrowableStack<Mat22> mats;
+  private final GrowableStack<Mat33> mat33s;
+  private final GrowableStack<AABB> aabbs;
+  private final GrowableStack<Rot> rots;
+  // in the order of Pool
+  private final GrowableStack<?>[] orderedStacks;
+
+  // indexed by length, no boxing of the lengths as a map would do
+  private float[][] afloats = new float[0][];
+  private int[][] aints = new int[0][];
+  private Vec2[][] avecs = new Vec2[0][];
+
+  private final IWorldPool world = this;
+
+  private final MutableStack<Contact> pcstack;
+  private final MutableStack<Contact> ccstack;
+  private final MutableStack<Contact> cpstack;
+  private final MutableStack<Contact> ecstack;
+  private final MutableStack<Contact> epstack;
+  private final MutableStack<Contact> chcstack;
+  private final MutableStack<Contact> chpstack;
+  // in the order of Pool
+  private final MutableStack<?>[] contactStacks;
+
+  private final Collision collision;
+  private final TimeOfImpact toi;
+  private final Distance dist;
+
+  /**
+   * A pool sized as the default pool of a world, growing from there.
+   */
+  public GrowableWorldPool(int argSize, int argContainerSize) {
+    vecs = new GrowableStack<Vec2>(argSize, argContainerSize) {
+      protected Vec2 newInstance() { return new Vec2(); }
+      protected Vec2[] newArray(int size) { return new Vec2[size]; }
+      protected void extended(int size, boolean c) { grown(Pool.VEC2, size, c); }
+    };
+    vec3s = new GrowableStack<Vec3>(argSize, argContainerSize) {
+      protected Vec3 newInstance() { return new Vec3(); }
+      protected Vec3[] newArray(int size) { return new Vec3[size]; }
+      protected void extended(int size, boolean c) { grown(Pool.VEC3, size, c); }
+    };
+    mats = new GrowableStack<Mat22>(argSize, argContainerSize) {
+      protected Mat22 newInstance() { return new Mat22(); }
+      protected Mat22[] newArray(int size) { return new Mat22[size]; }
+      protected void extended(int size, boolean c) { grown(Pool.MAT22, size, c); }
+    };
+    mat33s = new GrowableStack<Mat33>(argSize, argContainerSize) {
+      protected Mat33 newInstance() { return new Mat33(); }
+      protected Mat33[] newArray(int size) { return new Mat33[size]; }
+      protected void extended(int size, boolean c) { grown(Pool.MAT33, size, c); }
+    };
+    aabbs = new GrowableStack<AABB>(argSize, argContainerSize) {
+      protected AABB newInstance() { return new AABB(); }
+      protected AABB[] newArray(int size) { return new AABB[size]; }
+      protected void extended(int size, boolean c) { grown(Pool.AABB, size, c); }
+    };
+    rots = new GrowableStack<Rot>(argSize, argContainerSize) {
+      protected Rot newInstance() { return new Rot(); }
+      protected Rot[] newArray(int size) { return new Rot[size]; }
+      protected void extended(int size, boolean c) { grown(Pool.ROT, size, c); }
+    };
+    orderedStacks = new GrowableStack<?>[] {vecs, vec3s, mats, mat33s, aabbs, rots};
+
+    final int contacts = Settings.CONTACT_STACK_INIT_SIZE;
+    pcstack = new MutableStack<Contact>(contacts) {
+      protected Contact newInstance() { return new PolygonContact(world); }
+      protected Contact[] newArray(int size) { return new PolygonContact[size]; }
+      protected void extended(int size) { grown(Pool.POLYGON_CONTACT, size, false); }
+    };
+    ccstack = new MutableStack<Contact>(contacts) {
+      protected Contact newInstance() { return new CircleContact(world); }
+      protected Contact[] newArray(int size) { return new CircleContact[size]; }
+      protected void extended(int size) { grown(Pool.CIRCLE_CONTACT, size, false); }
+    };
+    cpstack = new MutableStack<Contact>(contacts) {
+      protected Contact newInstance() { return new PolygonAndCircleContact(world); }
+      protected Contact[] newArray(int size) { return new PolygonAndCircleContact[size]; }
+      protected void extended(int size) { grown(Pool.POLYGON_CIRCLE_CONTACT, size, false); }
+    };
+    ecstack = new MutableStack<Contact>(contacts) {
+      protected Contact newInstance() { return new EdgeAndCircleContact(world); }
+      protected Contact[] newArray(int size) { return new EdgeAndCircleContact[size]; }
+      protected void extended(int size) { grown(Pool.EDGE_CIRCLE_CONTACT, size, false); }
+    };
+    epstack = new MutableStack<Contact>(contacts) {
+      protected Contact newInstance() { return new EdgeAndPolygonContact(world); }
+      protected Contact[] newArray(int size) { return new EdgeAndPolygonContact[size]; }
+      protected void extended(int size) { grown(Pool.EDGE_POLYGON_CONTACT, size, false); }
+    };
+    chcstack = new MutableStack<Contact>(contacts) {
+      protected Contact newInstance() { return new ChainAndCircleContact(world); }
+      protected Contact[] newArray(int size) { return new ChainAndCircleContact[size]; }
+      protected void extended(int size) { grown(Pool.CHAIN_CIRCLE_CONTACT, size, false); }
+    };
+    chpstack = new MutableStack<Contact>(contacts) {
+      protected Contact newInstance() { return new ChainAndPolygonContact(world); }
+      protected Contact[] newArray(int size) { return new ChainAndPolygonContact[size]; }
+      protected void extended(int size) { grown(Pool.CHAIN_POLYGON_CONTACT, size, false); }
+    };
+    contactStacks =
+        new MutableStack<?>[] {pcstack, ccstack, cpstack, ecstack, epstack, chcstack, chpstack};
+
+    dist = new Distance();
+    collision = new Collision(this);
+    toi = new TimeOfImpact(this);
+  }
+
+  /**
+   * A pool pre-warmed with the profile of a previous session.
+   */
+  public GrowableWorldPool(WorldPoolProfile argProfile) {
+    this(0, 0);
+    prewarm(argProfile);
+  }
+
+  /**
+   * Create the objects and the arrays the profile asks for, that the pool does not have yet.
+   */
+  public void prewarm(WorldPoolProfile argProfile) {
+    final int container = argProfile.getSize(Pool.CONTAINER);
+    for (int i = 0; i < orderedStacks.length; i++) {
+      orderedStacks[i].reserve(argProfile.getSize(POOLS[Pool.VEC2.ordinal() + i]), container);
+    }
+    for (int i = 0; i < contactStacks.length; i++) {
+      contactStacks[i].reserve(argProfile.getSize(POOLS[Pool.POLYGON_CONTACT.ordinal() + i]));
+    }
+    for (int length : argProfile.getLengths(Pool.FLOAT_ARRAY)) {
+      createFloatArray(length);
+    }
+    for (int length : argProfile.getLengths(Pool.INT_ARRAY)) {
+      createIntArray(length);
+    }
+    for (int length : argProfile.getLengths(Pool.VEC2_ARRAY)) {
+      createVec2Array(length);
+    }
+  }
+
+  /**
+   * @return the high-water marks of the stacks and the lengths of the arrays, to pre-warm the
+   *         pool of the next session.
+   */
+  public WorldPoolProfile getProfile() {
+    WorldPoolProfile profile = new WorldPoolProfile();
+    int container = 0;
+    for (int i = 0; i < orderedStacks.length; i++) {
+      profile.setSize(POOLS[Pool.VEC2.ordinal() + i], orderedStacks[i].getHighWaterMark());
+      container = Math.max(container, orderedStacks[i].getContainerHighWaterMark());
+    }
+    profile.setSize(Pool.CONTAINER, container);
+    for (int i = 0; i < contactStacks.length; i++) {
+      profile.setSize(POOLS[Pool.POLYGON_CONTACT.ordinal() + i],
+          contactStacks[i].getHighWaterMark());
+    }
+    for (int i = 0; i < afloats.length; i++) {
+      if (afloats[i] != null) {
+        profile.addLength(Pool.FLOAT_ARRAY, i);
+      }
+    }
+    for (int i = 0; i < aints.length; i++) {
+      if (aints[i] != null) {
+        profile.addLength(Pool.INT_ARRAY, i);
+      }
+    }
+    for (int i = 0; i < avecs.length; i++) {
+      if (avecs[i] != null) {
+        profile.addLength(Pool.VEC2_ARRAY, i);
+      }
+    }
+    return profile;
+  }
+
+  /**
+   * @return how many times the pool ran out of objects or arrays and had to allocate.
+   */
+  public long getMissCount() {
+    long misses = arrayMisses;
+    for (GrowableStack<?> stack : orderedStacks) {
+      misses += stack.getMissCount();
+    }
+    for (MutableStack<?> stack : contactStacks) {
+      misses += stack.getMissCount();
+    }
+    return misses;
+  }
+
+  public void setListener(Listener argListener) {
+    listener = argListener;
+  }
+
+  public Listener getListener() {
+    return listener;
+  }
+
+  private void grown(Pool pool, int size, boolean container) {
+    if (listener != null) {
+      listener.poolGrown(container ? Pool.CONTAINER : pool, size);
+    }
+  }
+
+  public final IDynamicStack<Contact> getPolyContactStack() {
+    return pcstack;
+  }
+
+  public final IDynamicStack<Contact> getCircleContactStack() {
+    return ccstack;
+  }
+
+  public final IDynamicStack<Contact> getPolyCircleContactStack() {
+    return cpstack;
+  }
+
+  @Override
+  public IDynamicStack<Contact> getEdgeCircleContactStack() {
+    return ecstack;
+  }
+
+  @Override
+  public IDynamicStack<Contact> getEdgePolyContactStack() {
+    return epstack;
+  }
+
+  @Override
+  public IDynamicStack<Contact> getChainCircleContactStack() {
+    return chcstack;
+  }
+
+  @Override
+  public IDynamicStack<Contact> getChainPolyContactStack() {
+    return chpstack;
+  }
+
+  public final Vec2 popVec2() {
+    return vecs.pop();
+  }
+
+  public final Vec2[] popVec2(int argNum) {
+    return vecs.pop(argNum);
+  }
+
+  public final void pushVec2(int argNum) {
+    vecs.push(argNum);
+  }
+
+  public final Vec3 popVec3() {
+    return vec3s.pop();
+  }
+
+  public final Vec3[] popVec3(int argNum) {
+    return vec3s.pop(argNum);
+  }
+
+  public final void pushVec3(int argNum) {
+    vec3s.push(argNum);
+  }
+
+  public final Mat22 popMat22() {
+    return mats.pop();
+  }
+
+  public final Mat22[] popMat22(int argNum) {
+    return mats.pop(argNum);
+  }
+
+  public final void pushMat22(int argNum) {
+    mats.push(argNum);
+  }
+
+  public final Mat33 popMat33() {
+    return mat33s.pop();
+  }
+
+  public final void pushMat33(int argNum) {
+    mat33s.push(argNum);
+  }
+
+  public final AABB popAABB() {
+    return aabbs.pop();
+  }
+
+  public final AABB[] popAABB(int argNum) {
+    return aabbs.pop(argNum);
+  }
+
+  public final void pushAABB(int argNum) {
+    aabbs.push(argNum);
+  }
+
+  public final Rot popRot() {
+    return rots.pop();
+  }
+
+  public final void pushRot(int num) {
+    rots.push(num);
+  }
+
+  public final Collision getCollision() {
+    return collision;
+  }
+
+  public final TimeOfImpact getTimeOfImpact() {
+    return toi;
+  }
+
+  public final Distance getDistance() {
+    return dist;
+  }
+
+  public final float[] getFloatArray(int argLength) {
+    if (argLength >= afloats.length || afloats[argLength] == null) {
+      arrayMisses++;
+      createFloatArray(argLength);
+      grown(Pool.FLOAT_ARRAY, argLength, false);
+    }
+    return afloats[argLength];
+  }
+
+  public final int[] getIntArray(int argLength) {
+    if (argLength >= aints.length || aints[argLength] == null) {
+      arrayMisses++;
+      createIntArray(argLength);
+      grown(Pool.INT_ARRAY, argLength, false);
+    }
+    return aints[argLength];
+  }
+
+  public final Vec2[] getVec2Array(int argLength) {
+    if (argLength >= avecs.length || avecs[argLength] == null) {
+      arrayMisses++;
+      createVec2Array(argLength);
+      grown(Pool.VEC2_ARRAY, argLength, false);
+    }
+    return avecs[argLength];
+  }
+
+  private void createFloatArray(int argLength) {
+    if (argLength >= afloats.length) {
+      float[][] old = afloats;
+      afloats = new float[argLength + 1][];
+      System.arraycopy(old, 0, afloats, 0, old.length);
+    }
+    if (afloats[argLength] == null) {
+      afloats[argLength] = new float[argLength];
+    }
+  }
+
+  private void createIntArray(int argLength) {
+    if (argLength >= aints.length) {
+      int[][] old = aints;
+      aints = new int[argLength + 1][];
+      System.arraycopy(old, 0, aints, 0, old.length);
+    }
+    if (aints[argLength] == null) {
+      aints[argLength] = new int[argLength];
+    }
+  }
+
+  private void createVec2Array(int argLength) {
+    if (argLength >= avecs.length) {
+      Vec2[][] old = avecs;
+      avecs = new Vec2[argLength + 1][];
+      System.arraycopy(old, 0, avecs, 0, old.length);
+    }
+    if (avecs[argLength] == null) {
+      Vec2[] ray = new Vec2[argLength];
+      for (int i = 0; i < argLength; i++) {
+        ray[i] = new Vec2();
+      }
+      avecs[argLength] = ray;
+    }
+  }
+}
@@ -30,6 +30,8 @@ public abstract class MutableStack<E> implements IDynamicStack<E> {
   private E[] stack;
   private int index;
   private int size;
+  private int misses;
+  private int highWater;
 
   public MutableStack(int argInitSize) {
     index = 0;
@@ -40,10 +42,12 @@ public abstract class MutableStack<E> implements IDynamicStack<E> {
 
   private void extendStack(int argSize) {
     E[] newStack = newArray(argSize);
+    int created = 0;
     if (stack != null) {
       System.arraycopy(stack, 0, newStack, 0, size);
+      created = size;
     }
-    for (int i = 0; i < newStack.length; i++) {
+    for (int i = created; i < newStack.length; i++) {
       newStack[i] = newInstance();
     }
     stack = newStack;
@@ -52,9 +56,45 @@ public abstract class MutableStack<E> implements IDynamicStack<E> {
 
   public final E pop() {
     if (index >= size) {
+      misses++;
       extendStack(size * 2);
+      extended(size);
     }
-    return stack[index++];
+    E object = stack[index++];
+    if (index > highWater) {
+      highWater = index;
+    }
+    return object;
+  }
+
+  /**
+   * Create the objects so that the given number can be popped without allocating.
+   */
+  public final void reserve(int argSize) {
+    if (argSize > size) {
+      extendStack(argSize);
+    }
+  }
+
+  /**
+   * @return how many times the stack was empty and had to allocate more objects.
+   */
+  public final int getMissCount() {
+    return misses;
+  }
+
+  /**
+   * @return the largest number of objects popped at the same time.
+   */
+  public final int getHighWaterMark() {
+    return highWater;
+  }
+
+  /**
+   * @return the number of objects created.
+   */
+  public final int getCapacity() {
+    return size;
   }
 
   public final void push(E argObject) {
@@ -62,6 +102,9 @@ public abstract class MutableStack<E> implements IDynamicStack<E> {
     stack[--index] = argObject;
   }
 
+  /** Called after the stack ran out of objects and grew to the given size. */
+  protected void extended(int argSize) {}
+
   /** Creates a new instance of the object contained by this stack. */
   protected abstract E newInstance();
   
@@ -0,0 +1,153 @@
+package com.abubusoft.xenon.box2d.pooling.normal;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * What a {@link GrowableWorldPool} needed: the high-water mark of each stack and the lengths of
+ * the arrays asked for. Saved at the end of a session with {@link #toString()} and read back with
+ * {@link #parse(String)}, it pre-warms the pool of the next session so that it does not allocate
+ * while stepping.
+ */
+public class WorldPoolProfile {
+
+  public enum Pool {
+    VEC2, VEC3, MAT22, MAT33, AABB, ROT,
+    /** The arrays returned when popping several objects at once, shared by the stacks above. */
+    CONTAINER,
+    POLYGON_CONTACT, CIRCLE_CONTACT, POLYGON_CIRCLE_CONTACT, EDGE_CIRCLE_CONTACT,
+    EDGE_POLYGON_CONTACT, CHAIN_CIRCLE_CONTACT, CHAIN_POLYGON_CONTACT,
+    /** Arrays pool, by length. */
+    FLOAT_ARRAY, INT_ARRAY, VEC2_ARRAY;
+
+    /**
+     * @return true for the pools of arrays, that have lengths instead of a size.
+     */
+    public boolean isArray() {
+      return this == FLOAT_ARRAY || this == INT_ARRAY || this == VEC2_ARRAY;
+    }
+  }
+
+  private static final Pool[] POOLS = Pool.values();
+  private static final int[] NO_LENGTHS = new int[0];
+
+  private final int[] sizes = new int[POOLS.length];
+  private final int[][] lengths = new int[POOLS.length][];
+
+  public WorldPoolProfile() {
+    Arrays.fill(lengths, NO_LENGTHS);
+  }
+
+  /**
+   * @return the number of objects of a stack, 0 for the pools of arrays.
+   */
+  public int getSize(Pool pool) {
+    return sizes[pool.ordinal()];
+  }
+
+  public void setSize(Pool pool, int size) {
+    assert (!pool.isArray());
+    sizes[pool.ordinal()] = size;
+  }
+
+  /**
+   * @return the lengths of the arrays of a pool of arrays, increasing. Empty for the stacks.
+   */
+  public int[] getLengths(Pool pool) {
+    return lengths[pool.ordinal()].clone();
+  }
+
+  public void addLength(Pool pool, int length) {
+    assert (pool.isArray());
+    int[] current = lengths[pool.ordinal()];
+    int i = Arrays.binarySearch(current, length);
+    if (i >= 0) {
+      return;
+    }
+    i = -i - 1;
+    int[] added = new int[current.length + 1];
+    System.arraycopy(current, 0, added, 0, i);
+    added[i] = length;
+    System.arraycopy(current, i, added, i + 1, current.length - i);
+    lengths[pool.ordinal()] = added;
+  }
+
+  /**
+   * Keep the largest sizes and all the lengths of the two profiles, to cover several sessions.
+   */
+  public void merge(WorldPoolProfile other) {
+    for (Pool pool : POOLS) {
+      int i = pool.ordinal();
+      sizes[i] = Math.max(sizes[i], other.sizes[i]);
+      for (int length : other.lengths[i]) {
+        addLength(pool, length);
+      }
+    }
+  }
+
+  /**
+   * Read a profile written by {@link #toString()}. Unknown pools are skipped, so a profile saved by
+   * another version still works.
+   *
+   * @throws IllegalArgumentException if the text is not a profile.
+   */
+  public static WorldPoolProfile parse(String text) {
+    WorldPoolProfile profile = new WorldPoolProfile();
+    if (text.trim().length() == 0) {
+      return profile;
+    }
+    for (String entry : text.split(";")) {
+      int equals = entry.indexOf('=');
+      if (equals < 0) {
+        throw new IllegalArgumentException("Not a pool profile entry: " + entry);
+      }
+      Pool pool;
+      try {
+        pool = Pool.valueOf(entry.substring(0, equals).trim().toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        continue;
+      }
+      String value = entry.substring(equals + 1).trim();
+      try {
+        if (pool.isArray()) {
+          if (value.length() > 0) {
+            for (String length : value.split(",")) {
+              profile.addLength(pool, Integer.parseInt(length.trim()));
+            }
+          }
+        } else {
+          profile.setSize(pool, Integer.parseInt(value));
+        }
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Not a pool profile entry: " + entry, e);
+      }
+    }
+    return profile;
+  }
+
+  /**
+   * @return the profile as text, for instance {@code vec2=24;...;float_array=3,8}.
+   */
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder();
+    for (Pool pool : POOLS) {
+      if (text.length() > 0) {
+        text.append(';');
+      }
+      text.append(pool.name().toLowerCase(Locale.ROOT)).append('=');
+      if (pool.isArray()) {
+        int[] values = lengths[pool.ordinal()];
+        for (int i = 0; i < values.length; i++) {
+          if (i > 0) {
+            text.append(',');
+          }
+          text.append(values[i]);
+        }
+      } else {
+        text.append(sizes[pool.ordinal()]);
+      }
+    }
+    return text.toString();
+  }
+}
@@ -0,0 +1,152 @@
+package com.abubusoft.xenon.box2d.dynamics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.abubusoft.xenon.box2d.collision.shapes.ChainShape;
+import com.abubusoft.xenon.box2d.collision.shapes.CircleShape;
+import com.abubusoft.xenon.box2d.collision.shapes.PolygonShape;
+import com.abubusoft.xenon.box2d.common.Settings;
+import com.abubusoft.xenon.box2d.common.Vec2;
+import com.abubusoft.xenon.box2d.dynamics.joints.RevoluteJointDef;
+
+/**
+ * Steps the same scene twice in deterministic mode and compares the checksums.
+ */
+public class WorldDeterminismTest {
+
+  private static final int STEPS = 10000;
+
+  private boolean m_deterministic;
+
+  @Before
+  public void setUp() {
+    m_deterministic = Settings.DETERMINISTIC;
+    Settings.DETERMINISTIC = true;
+  }
+
+  @After
+  public void tearDown() {
+    Settings.DETERMINISTIC = m_deterministic;
+  }
+
+  private static World createScene() {
+    World world = new World(new Vec2(0, -10));
+    populate(world);
+    return world;
+  }
+
+  /**
+   * Ground, a pyramid of boxes, balls dropped on it and a pendulum chain.
+   */
+  static void populate(World world) {
+    Vec2[] vertices = new Vec2[5];
+    vertices[0] = new Vec2(-40, 20);
+    vertices[1] = new Vec2(-40, 0);
+    vertices[2] = new Vec2(0, -2);
+    vertices[3] = new Vec2(40, 0);
+    vertices[4] = new Vec2(40, 20);
+    ChainShape ground = new ChainShape();
+    ground.createChain(vertices, vertices.length);
+    world.createBody(new BodyDef()).createFixture(ground, 0);
+
+    PolygonShape box = new PolygonShape();
+    box.setAsBox(0.5f, 0.5f);
+    for (int row = 0; row < 10; row++) {
+      for (int i = 0; i < 10 - row; i++) {
+        BodyDef bd = new BodyDef();
+        bd.type = BodyType.DYNAMIC;
+        bd.position.set(-5 + row * 0.5f + i * 1.05f, 0.5f + row * 1.0f);
+        world.createBody(bd).createFixture(box, 1);
+      }
+    }
+
+    CircleShape ball = new CircleShape();
+    ball.m_radius = 0.35f;
+    for (int i = 0; i < 30; i++) {
+      BodyDef bd = new BodyDef();
+      bd.type = BodyType.DYNAMIC;
+      bd.position.set(-8 + (i % 10) * 1.7f, 14 + (i / 10) * 2);
+      bd.angularVelocity = i * 0.3f;
+      Body body = world.createBody(bd);
+      FixtureDef fd = new FixtureDef();
+      fd.shape = ball;
+      fd.density = 1;
+      fd.friction = 0.4f;
+      fd.restitution = 0.3f;
+      body.createFixture(fd);
+    }
+
+    PolygonShape link = new PolygonShape();
+    link.setAsBox(0.6f, 0.125f);
+    Body previous = world.createBody(new BodyDef());
+    for (int i = 0; i < 12; i++) {
+      BodyDef bd = new BodyDef();
+      bd.type = BodyType.DYNAMIC;
+      bd.position.set(15.5f + i, 18);
+      Body body = world.createBody(bd);
+      body.createFixture(link, 20);
+      RevoluteJointDef jd = new RevoluteJointDef();
+      jd.initialize(previous, body, new Vec2(15 + i, 18));
+      world.createJoint(jd);
+      previous = body;
+    }
+  }
+
+  private static long run(World world, int steps) {
+    for (int i = 0; i < steps; i++) {
+      world.step(1 / 60f, 8, 3);
+    }
+    return world.checksum();
+  }
+
+  @Test
+  public void sameSceneSameChecksum() {
+    World first = createScene();
+    World second = createScene();
+    assertEquals(first.checksum(), second.checksum());
+
+    long initial = first.checksum();
+    long checksum = run(first, STEPS);
+    assertNotEquals(initial, checksum);
+    assertEquals(checksum, run(second, STEPS));
+  }
+
+  @Test
+  public void checksumDoesNotDependOnIslandWorkers() {
+    World serial = createScene();
+    World parallel = createScene();
+    ParallelIslandSolver solver = new ParallelIslandSolver(3);
+    try {
+      parallel.setIslandSolver(solver);
+      assertEquals(run(serial, 1000), run(parallel, 1000));
+    } finally {
+      solver.shutdown();
+    }
+  }
+
+  @Test
+  public void checksumDoesNotDependOnNarrowPhaseWorkers() {
+    World serial = createScene();
+    World parallel = createScene();
+    ParallelNarrowPhaseSolver solver = new ParallelNarrowPhaseSolver(3);
+    try {
+      parallel.setNarrowPhaseSolver(solver);
+      assertEquals(run(serial, 1000), run(parallel, 1000));
+    } finally {
+      solver.shutdown();
+    }
+  }
+
+  @Test
+  public void checksumDoesNotDependOnContactSolverLayout() {
+    World objects = createScene();
+    World flat = createScene();
+    flat.setFlatContactSolver(true);
+    assertEquals(run(objects, 1000), run(flat, 1000));
+  }
+}
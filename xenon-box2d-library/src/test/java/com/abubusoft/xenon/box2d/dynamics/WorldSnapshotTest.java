@@ -0,0 +1,164 @@
+package com.abubusoft.xenon.box2d.dynamics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.abubusoft.xenon.box2d.collision.broadphase.BroadPhaseStrategy;
+import com.abubusoft.xenon.box2d.collision.broadphase.DynamicTree;
+import com.abubusoft.xenon.box2d.collision.broadphase.SweepAndPrune;
+import com.abubusoft.xenon.box2d.collision.broadphase.UniformGrid;
+import com.abubusoft.xenon.box2d.collision.shapes.CircleShape;
+import com.abubusoft.xenon.box2d.collision.shapes.PolygonShape;
+import com.abubusoft.xenon.box2d.common.Settings;
+import com.abubusoft.xenon.box2d.common.Vec2;
+import com.abubusoft.xenon.box2d.particle.ParticleGroupDef;
+import com.abubusoft.xenon.box2d.pooling.normal.DefaultWorldPool;
+
+/**
+ * Rolls a world back to a snapshot, steps it again and compares with the first run.
+ */
+public class WorldSnapshotTest {
+
+  private boolean m_deterministic;
+
+  @Before
+  public void setUp() {
+    m_deterministic = Settings.DETERMINISTIC;
+    Settings.DETERMINISTIC = true;
+  }
+
+  @After
+  public void tearDown() {
+    Settings.DETERMINISTIC = m_deterministic;
+  }
+
+  private static World createScene(BroadPhaseStrategy strategy) {
+    World world = new World(new Vec2(0, -10), new DefaultWorldPool(100, 10), strategy);
+    WorldDeterminismTest.populate(world);
+
+    PolygonShape shape = new PolygonShape();
+    shape.setAsBox(2, 1);
+    ParticleGroupDef pd = new ParticleGroupDef();
+    pd.shape = shape;
+    pd.position.set(-20, 10);
+    world.setParticleRadius(0.15f);
+    world.createParticleGroup(pd);
+    return world;
+  }
+
+  private static void run(World world, int steps) {
+    for (int i = 0; i < steps; i++) {
+      world.step(1 / 60f, 8, 3);
+    }
+  }
+
+  private static ByteBuffer snapshot(World world) {
+    ByteBuffer buffer = ByteBuffer.allocate(world.getSnapshotSize());
+    world.snapshot(buffer);
+    assertEquals(0, buffer.remaining());
+    buffer.flip();
+    return buffer;
+  }
+
+  private static void assertRollback(BroadPhaseStrategy strategy) {
+    World world = createScene(strategy);
+    run(world, 120);
+    long checksum = world.checksum();
+    int contacts = world.getContactCount();
+    ByteBuffer buffer = snapshot(world);
+
+    run(world, 300);
+    long expected = world.checksum();
+    float[] particlesX = world.getParticlePositionBufferX().clone();
+    float[] particlesY = world.getParticlePositionBufferY().clone();
+    assertNotEquals(checksum, expected);
+
+    world.restore(buffer);
+    assertEquals(checksum, world.checksum());
+    assertEquals(contacts, world.getContactCount());
+
+    run(world, 300);
+    assertEquals(expected, world.checksum());
+    assertArrayEquals(particlesX, world.getParticlePositionBufferX(), 0);
+    assertArrayEquals(particlesY, world.getParticlePositionBufferY(), 0);
+  }
+
+  @Test
+  public void rollbackStepsTheSame() {
+    assertRollback(new DynamicTree());
+  }
+
+  @Test
+  public void rollbackStepsTheSameWithOtherBroadPhases() {
+    assertRollback(new SweepAndPrune());
+    assertRollback(new UniformGrid(4));
+  }
+
+  @Test
+  public void snapshotOfTheSameSceneRestoresInAnotherWorld() {
+    World first = createScene(new DynamicTree());
+    World second = createScene(new DynamicTree());
+    run(first, 200);
+    second.restore(snapshot(first));
+    run(first, 100);
+    run(second, 100);
+    assertEquals(first.checksum(), second.checksum());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void restoreRefusesAChangedWorld() {
+    World world = createScene(new DynamicTree());
+    ByteBuffer buffer = snapshot(world);
+    CircleShape ball = new CircleShape();
+    ball.m_radius = 0.5f;
+    BodyDef bd = new BodyDef();
+    bd.type = BodyType.DYNAMIC;
+    world.createBody(bd).createFixture(ball, 1);
+    world.restore(buffer);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void restoreRefusesAnExtraFixture() {
+    World world = createScene(new DynamicTree());
+    ByteBuffer buffer = snapshot(world);
+    Body body = world.getBodyList();
+    while (body.getType() != BodyType.DYNAMIC) {
+      body = body.getNext();
+    }
+    CircleShape ball = new CircleShape();
+    ball.m_radius = 0.5f;
+    body.createFixture(ball, 1);
+    world.restore(buffer);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void restoreRefusesARemovedJoint() {
+    World world = createScene(new DynamicTree());
+    ByteBuffer buffer = snapshot(world);
+    world.destroyJoint(world.getJointList());
+    world.restore(buffer);
+  }
+
+  @Test
+  public void refusedRestoreLeavesTheWorldAsItWas() {
+    World world = createScene(new DynamicTree());
+    ByteBuffer buffer = snapshot(world);
+    world.destroyJoint(world.getJointList());
+    run(world, 60);
+    long checksum = world.checksum();
+    try {
+      world.restore(buffer);
+      throw new AssertionError("restore accepted a snapshot of another world");
+    } catch (IllegalArgumentException e) {
+      assertEquals(0, buffer.position());
+    }
+    assertEquals(checksum, world.checksum());
+  }
+}
@@ -0,0 +1,62 @@
+package com.abubusoft.xenon.box2d.particle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.abubusoft.xenon.box2d.common.Vec2;
+import com.abubusoft.xenon.box2d.dynamics.World;
+
+/**
+ * Checks that the Vec2[] particle buffers stay bound to the float arrays used by the solver.
+ */
+public class ParticleBufferViewTest {
+
+  private static World createWorld() {
+    World world = new World(new Vec2(0, 0));
+    world.setParticleRadius(0.1f);
+    ParticleDef def = new ParticleDef();
+    for (int i = 0; i < 4; i++) {
+      def.position.set(i * 10, 0);
+      world.createParticle(def);
+    }
+    return world;
+  }
+
+  @Test
+  public void writesThroughTheVectorsReachTheSolver() {
+    World world = createWorld();
+    Vec2[] positions = world.getParticlePositionBuffer();
+    assertSame(positions, world.getParticlePositionBuffer());
+    assertEquals(20, positions[2].x, 0);
+
+    positions[2].set(5, 7);
+    Vec2[] velocities = world.getParticleVelocityBuffer();
+    velocities[2].set(6, 0);
+    world.step(1 / 60f, 8, 3);
+
+    assertEquals(5.1f, positions[2].x, 1e-4f);
+    assertEquals(7, positions[2].y, 1e-4f);
+    assertEquals(6, velocities[2].x, 1e-4f);
+    assertEquals(30, positions[3].x, 0);
+  }
+
+  @Test
+  public void floatArraysUnbindTheVectors() {
+    World world = createWorld();
+    Vec2[] positions = world.getParticlePositionBuffer();
+    positions[1].set(3, 4);
+
+    float[] x = world.getParticlePositionBufferX();
+    float[] y = world.getParticlePositionBufferY();
+    assertEquals(3, x[1], 0);
+    assertEquals(4, y[1], 0);
+
+    positions[1].set(100, 100);
+    world.step(1 / 60f, 8, 3);
+    assertEquals(3, x[1], 1e-4f);
+    assertNotSame(positions, world.getParticlePositionBuffer());
+  }
+}
@@ -0,0 +1,132 @@
+package com.abubusoft.xenon.box2d.pooling.normal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.abubusoft.xenon.box2d.collision.shapes.ChainShape;
+import com.abubusoft.xenon.box2d.collision.shapes.CircleShape;
+import com.abubusoft.xenon.box2d.collision.shapes.PolygonShape;
+import com.abubusoft.xenon.box2d.common.Vec2;
+import com.abubusoft.xenon.box2d.dynamics.Body;
+import com.abubusoft.xenon.box2d.dynamics.BodyDef;
+import com.abubusoft.xenon.box2d.dynamics.BodyType;
+import com.abubusoft.xenon.box2d.dynamics.FixtureDef;
+import com.abubusoft.xenon.box2d.dynamics.World;
+import com.abubusoft.xenon.box2d.pooling.normal.WorldPoolProfile.Pool;
+
+/**
+ * Records the pool of a session, pre-warms the next one with it and counts what a step allocates.
+ */
+public class GrowableWorldPoolTest {
+
+  private static final int STEPS = 1000;
+  /**
+   * Steps for the scene to reach its largest number of contacts, so that the world has grown its
+   * own arrays and loaded the classes of all the contact kinds.
+   */
+  private static final int WARM_UP_STEPS = 3000;
+
+  private static class GrowthCounter implements GrowableWorldPool.Listener {
+    int count;
+
+    @Override
+    public void poolGrown(Pool pool, int size) {
+      count++;
+    }
+  }
+
+  /**
+   * A bowl with boxes, and bouncing balls that never sleep so that contacts come and go.
+   */
+  private static World createScene(GrowableWorldPool pool) {
+    World world = new World(new Vec2(0, -10), pool);
+
+    Vec2[] vertices = new Vec2[4];
+    vertices[0] = new Vec2(-20, 20);
+    vertices[1] = new Vec2(-20, 0);
+    vertices[2] = new Vec2(20, 0);
+    vertices[3] = new Vec2(20, 20);
+    ChainShape ground = new ChainShape();
+    ground.createChain(vertices, vertices.length);
+    world.createBody(new BodyDef()).createFixture(ground, 0);
+
+    PolygonShape box = new PolygonShape();
+    box.setAsBox(0.5f, 0.5f);
+    for (int i = 0; i < 20; i++) {
+      BodyDef bd = new BodyDef();
+      bd.type = BodyType.DYNAMIC;
+      bd.position.set(-10 + i, 0.5f + (i % 3));
+      world.createBody(bd).createFixture(box, 1);
+    }
+
+    CircleShape ball = new CircleShape();
+    ball.m_radius = 0.4f;
+    for (int i = 0; i < 20; i++) {
+      BodyDef bd = new BodyDef();
+      bd.type = BodyType.DYNAMIC;
+      bd.allowSleep = false;
+      bd.bullet = i % 4 == 0;
+      bd.position.set(-15 + i * 1.5f, 10 + (i % 5));
+      bd.linearVelocity.set(i % 7 - 3, -5);
+      Body body = world.createBody(bd);
+      FixtureDef fd = new FixtureDef();
+      fd.shape = ball;
+      fd.density = 1;
+      fd.restitution = 0.9f;
+      body.createFixture(fd);
+    }
+    return world;
+  }
+
+  private static void run(World world, int steps) {
+    for (int i = 0; i < steps; i++) {
+      world.step(1 / 60f, 8, 3);
+    }
+  }
+
+  @Test
+  public void prewarmedPoolDoesNotGrow() {
+    GrowableWorldPool first = new GrowableWorldPool(4, 2);
+    GrowthCounter firstGrowth = new GrowthCounter();
+    first.setListener(firstGrowth);
+    run(createScene(first), STEPS);
+    assertTrue(firstGrowth.count > 0);
+
+    WorldPoolProfile profile = WorldPoolProfile.parse(first.getProfile().toString());
+    assertEquals(first.getProfile().toString(), profile.toString());
+
+    GrowableWorldPool second = new GrowableWorldPool(profile);
+    GrowthCounter secondGrowth = new GrowthCounter();
+    second.setListener(secondGrowth);
+    run(createScene(second), STEPS);
+    assertEquals(0, secondGrowth.count);
+    assertEquals(0, second.getMissCount());
+  }
+
+  @Test
+  public void stepDoesNotAllocateOnceWarmed() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+    Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported()
+        && allocations.isThreadAllocatedMemoryEnabled());
+
+    GrowableWorldPool pool = new GrowableWorldPool(4, 2);
+    World world = createScene(pool);
+    run(world, WARM_UP_STEPS);
+
+    final long thread = Thread.currentThread().getId();
+    long misses = pool.getMissCount();
+    long before = allocations.getThreadAllocatedBytes(thread);
+    run(world, STEPS);
+    long allocated = allocations.getThreadAllocatedBytes(thread) - before;
+    assertEquals(misses, pool.getMissCount());
+    assertEquals(0, allocated);
+  }
+}
@@ -0,0 +1,150 @@
+package com.abubusoft.xenon.game;
+
+import java.util.ArrayList;
+
+/**
+ * <p>
+ * Traccia il contorno delle celle piene di una griglia: restituisce i loop che separano le celle piene da quelle vuote, senza i
+ * vertici intermedi dei lati allineati.
+ * </p>
+ *
+ * <p>
+ * La griglia ha <code>columns x rows</code> celle, memorizzate per righe (<code>cell[row*columns+col]</code>), con la riga 0 in
+ * alto. I vertici sono gli angoli delle celle, <code>(columns+1) x (rows+1)</code>, e sono identificati da
+ * <code>row*(columns+1)+col</code>.
+ * </p>
+ *
+ * <p>
+ * Ogni loop ha le celle piene alla sua destra, guardando la griglia con la riga 0 in alto: i contorni esterni girano in senso
+ * orario, quelli dei buchi in senso antiorario. Due celle piene che si toccano solo in un angolo hanno loop distinti.
+ * </p>
+ */
+final class CellContourTracer {
+
+	private static final int EAST = 0;
+	private static final int SOUTH = 1;
+	private static final int WEST = 2;
+	private static final int NORTH = 3;
+
+	private CellContourTracer() {
+	}
+
+	/**
+	 * <p>
+	 * Traccia i loop.
+	 * </p>
+	 *
+	 * @param solid
+	 *            celle piene
+	 * @param columns
+	 *            colonne della griglia
+	 * @param rows
+	 *            righe della griglia
+	 * @return i loop, ognuno come elenco dei vertici negli angoli
+	 */
+	static ArrayList<int[]> trace(boolean[] solid, int columns, int rows) {
+		final int stride = columns + 1;
+
+		// lati di bordo uscenti da ogni vertice, un bit per direzione
+		byte[] out = new byte[stride * (rows + 1)];
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < columns; col++) {
+				if (!isSolid(solid, columns, rows, col, row)) {
+					continue;
+				}
+				int v = row * stride + col;
+				if (!isSolid(solid, columns, rows, col, row - 1)) {
+					out[v] |= 1 << EAST;
+				}
+				if (!isSolid(solid, columns, rows, col + 1, row)) {
+					out[v + 1] |= 1 << SOUTH;
+				}
+				if (!isSolid(solid, columns, rows, col, row + 1)) {
+					out[v + stride + 1] |= 1 << WEST;
+				}
+				if (!isSolid(solid, columns, rows, col - 1, row)) {
+					out[v + stride] |= 1 << NORTH;
+				}
+			}
+		}
+
+		ArrayList<int[]> loops = new ArrayList<int[]>();
+		int[] corners = new int[16];
+		for (int start = 0; start < out.length; start++) {
+			while (out[start] != 0) {
+				int startDirection = Integer.numberOfTrailingZeros(out[start]);
+				int count = 0;
+				int v = start;
+				int direction = startDirection;
+				int previous = -1;
+				do {
+					out[v] &= ~(1 << direction);
+					if (direction != previous) {
+						if (count == corners.length) {
+							int[] old = corners;
+							corners = new int[old.length * 2];
+							System.arraycopy(old, 0, corners, 0, count);
+						}
+						corners[count++] = v;
+					}
+					previous = direction;
+					v = next(v, direction, stride);
+					direction = turn(out[v], direction, v == start ? startDirection : -1);
+				} while (v != start || direction != startDirection);
+
+				// il loop riparte in linea retta: il primo vertice non è un angolo
+				int from = previous == startDirection ? 1 : 0;
+				int[] loop = new int[count - from];
+				System.arraycopy(corners, from, loop, 0, loop.length);
+				loops.add(loop);
+			}
+		}
+		return loops;
+	}
+
+	private static boolean isSolid(boolean[] solid, int columns, int rows, int col, int row) {
+		return col >= 0 && col < columns && row >= 0 && row < rows && solid[row * columns + col];
+	}
+
+	private static int next(int v, int direction, int stride) {
+		switch (direction) {
+		case EAST:
+			return v + 1;
+		case SOUTH:
+			return v + stride;
+		case WEST:
+			return v - 1;
+		default:
+			return v - stride;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Sceglie il lato uscente: prima a destra, restando attaccati alle celle piene del loop, poi dritto, poi a sinistra.
+	 * </p>
+	 *
+	 * @param mask
+	 *            lati uscenti ancora da percorrere
+	 * @param direction
+	 *            direzione di arrivo
+	 * @param startDirection
+	 *            direzione del primo lato del loop, già percorso, se il vertice è quello di partenza, altrimenti -1
+	 * @return direzione uscente
+	 */
+	private static int turn(int mask, int direction, int startDirection) {
+		if (startDirection != -1) {
+			mask |= 1 << startDirection;
+		}
+		int right = (direction + 1) & 3;
+		if ((mask & (1 << right)) != 0) {
+			return right;
+		}
+		if ((mask & (1 << direction)) != 0) {
+			return direction;
+		}
+		int left = (direction + 3) & 3;
+		assert (mask & (1 << left)) != 0;
+		return left;
+	}
+}
@@ -1,9 +1,12 @@
 package com.abubusoft.xenon.game;
 
 import com.abubusoft.xenon.android.XenonLogger;
+import com.abubusoft.xenon.box2d.callbacks.ContactEventBuffer;
 import com.abubusoft.xenon.box2d.callbacks.ContactImpulse;
 import com.abubusoft.xenon.box2d.callbacks.ContactListener;
 import com.abubusoft.xenon.box2d.collision.Manifold;
+import com.abubusoft.xenon.box2d.common.Vec2;
+import com.abubusoft.xenon.box2d.dynamics.Body;
 import com.abubusoft.xenon.box2d.dynamics.BodyType;
 import com.abubusoft.xenon.box2d.dynamics.Fixture;
 import com.abubusoft.xenon.box2d.dynamics.contacts.Contact;
@@ -15,33 +18,70 @@ public class GameContactListener implements ContactListener {
 
 	public GamePortalOperations operations;
 
+	private final Vec2 positionA = new Vec2();
+
+	private final Vec2 positionB = new Vec2();
+
+	/**
+	 * <p>
+	 * Gestisce gli eventi registrati durante lo step, quando il listener non e' registrato nel mondo ma viene usato un {@link ContactEventBuffer}. Gli eventi gestiti vengono rimossi dal buffer.
+	 * </p>
+	 * 
+	 * <p>
+	 * Body e posizioni sono quelli registrati con l'evento: una fixture distrutta dopo l'evento non ha piu' un body.
+	 * </p>
+	 * 
+	 * @param events
+	 */
+	public void dispatch(ContactEventBuffer events) {
+		int n = events.size();
+		for (int i = 0; i < n; i++) {
+			switch (events.getType(i)) {
+			case ContactEventBuffer.BEGIN_CONTACT:
+				beginContact(events.getFixtureA(i), events.getBodyA(i), events.getFixtureB(i), events.getBodyB(i));
+				break;
+			case ContactEventBuffer.END_CONTACT:
+				endContact(events.getFixtureA(i), events.getBodyA(i), events.getPositionA(i, positionA), events.getFixtureB(i), events.getBodyB(i), events.getPositionB(i, positionB));
+				break;
+			default:
+				break;
+			}
+		}
+		events.remove(n);
+	}
+
 	@Override
 	public void beginContact(Contact contact) {
-		ObjBase userData1 = (ObjBase) contact.getFixtureA().getUserData();
-		ObjBase userData2 = (ObjBase) contact.getFixtureB().getUserData();
+		beginContact(contact.getFixtureA(), contact.getFixtureA().getBody(), contact.getFixtureB(), contact.getFixtureB().getBody());
+	}
+
+	public void beginContact(Fixture fixtureA, Body bodyA, Fixture fixtureB, Body bodyB) {
+		// lo user data puo' non essere un ObjBase: null o impostato dall'applicazione
+		Object userData1 = fixtureA.getUserData();
+		Object userData2 = fixtureB.getUserData();
 		
-		if (userData1!=null && userData2!=null)
+		if (userData1 instanceof ObjBase && userData2 instanceof ObjBase)
 		{
-			XenonLogger.debug("Contact %s %s ", userData1.name, userData2.name);
+			XenonLogger.debug("Contact %s %s ", ((ObjBase) userData1).name, ((ObjBase) userData2).name);
 		} else
 		{
-			XenonLogger.error("Contact ERROR %s %s ");
+			XenonLogger.error("Contact ERROR %s %s ", userData1, userData2);
 		}
 		
 		
-		if (contact.getFixtureA().isSensor() || contact.getFixtureB().isSensor()) {
+		if (fixtureA.isSensor() || fixtureB.isSensor()) {
 			Fixture sensor;
 			Fixture object;
 
-			if (!contact.getFixtureA().isSensor()) {
-				object = contact.getFixtureA();
-				sensor = contact.getFixtureB();
+			if (!fixtureA.isSensor()) {
+				object = fixtureA;
+				sensor = fixtureB;
 			} else {
-				object = contact.getFixtureB();
-				sensor = contact.getFixtureA();
+				object = fixtureB;
+				sensor = fixtureA;
 			}
 
-			if (sensor.getUserData() != null) {
+			if (sensor.getUserData() instanceof ObjBase) {
 				ObjBase portalData = (ObjBase) sensor.getUserData();
 
 				if (portalData.name.startsWith("portal")) {
@@ -56,12 +96,12 @@ public class GameContactListener implements ContactListener {
 			Fixture object;
 			Fixture staticObject;
 						
-			if (contact.getFixtureA().getBody().getType() != BodyType.STATIC) {
-				object = contact.getFixtureA();
-				staticObject = contact.getFixtureB();
+			if (bodyA.getType() != BodyType.STATIC) {
+				object = fixtureA;
+				staticObject = fixtureB;
 			} else {
-				object = contact.getFixtureB();
-				staticObject = contact.getFixtureA();
+				object = fixtureB;
+				staticObject = fixtureA;
 			}
 
 			XenonLogger.debug("-----------------------------");
@@ -84,38 +124,69 @@ public class GameContactListener implements ContactListener {
 
 	@Override
 	public void endContact(Contact contact) {
+		Body bodyA = contact.getFixtureA().getBody();
+		Body bodyB = contact.getFixtureB().getBody();
+		endContact(contact.getFixtureA(), bodyA, bodyA.getPosition(), contact.getFixtureB(), bodyB, bodyB.getPosition());
+	}
+
+	/**
+	 * <p>
+	 * Fine di un contatto. I portali spostano il body in base alla posizione che aveva al momento del contatto.
+	 * </p>
+	 * 
+	 * @param fixtureA
+	 * @param bodyA
+	 *            body di fixtureA al momento del contatto
+	 * @param positionA
+	 *            posizione di bodyA al momento del contatto
+	 * @param fixtureB
+	 * @param bodyB
+	 *            body di fixtureB al momento del contatto
+	 * @param positionB
+	 *            posizione di bodyB al momento del contatto
+	 */
+	public void endContact(Fixture fixtureA, Body bodyA, Vec2 positionA, Fixture fixtureB, Body bodyB, Vec2 positionB) {
 
 		// gestione dei portali
-		if (contact.getFixtureA().isSensor() || contact.getFixtureB().isSensor()) {
+		if (fixtureA.isSensor() || fixtureB.isSensor()) {
 			Fixture body;
+			Body object;
+			Vec2 position;
 			Fixture sensor;
 
-			if (!contact.getFixtureA().isSensor()) {
-				body = contact.getFixtureA();
-				sensor = contact.getFixtureB();
+			if (!fixtureA.isSensor()) {
+				body = fixtureA;
+				object = bodyA;
+				position = positionA;
+				sensor = fixtureB;
 			} else {
-				body = contact.getFixtureB();
-				sensor = contact.getFixtureA();
+				body = fixtureB;
+				object = bodyB;
+				position = positionB;
+				sensor = fixtureA;
 			}
 
-			if (sensor.getUserData() != null) {
+			if (sensor.getUserData() instanceof ObjBase) {
 				ObjBase portalData = (ObjBase) sensor.getUserData();
 
 				// siamo innanzi ad un portale
 				if (portalData.name.startsWith("portal")) {
 
-					if (portalData.name.endsWith("Right") || portalData.name.endsWith("Left")) {
+					// una fixture distrutta dopo l'evento non va spostata
+					if (body.getBody() == null) {
+						XenonLogger.debug("IGNORE DESTROYED FIXTURE");
+					} else if (portalData.name.endsWith("Right") || portalData.name.endsWith("Left")) {
 
-						if (body.getBody().getPosition().x > Utils.pixelToBox2D(tiledMap.mapWidth / 2f)) {
+						if (position.x > Utils.pixelToBox2D(tiledMap.mapWidth / 2f)) {
 							XenonLogger.debug("-----------------------------");
 							XenonLogger.debug("MOVE TO THE LEFT");
 							XenonLogger.debug("-----------------------------");
-							operations.add(body.getBody(), body.getBody().getPosition().x - (Utils.pixelToBox2D(tiledMap.mapWidth)), body.getBody().getPosition().y);
-						} else if (body.getBody().getPosition().x < -Utils.pixelToBox2D(tiledMap.mapWidth / 2f)) {
+							operations.add(object, position.x - (Utils.pixelToBox2D(tiledMap.mapWidth)), position.y);
+						} else if (position.x < -Utils.pixelToBox2D(tiledMap.mapWidth / 2f)) {
 							XenonLogger.debug("-----------------------------");
 							XenonLogger.debug("MOVE TO THE RIGHT");
 							XenonLogger.debug("-----------------------------");
-							operations.add(body.getBody(), body.getBody().getPosition().x + (Utils.pixelToBox2D(tiledMap.mapWidth)), body.getBody().getPosition().y);
+							operations.add(object, position.x + (Utils.pixelToBox2D(tiledMap.mapWidth)), position.y);
 						} else {
 							XenonLogger.debug("-----------------------------");
 							XenonLogger.debug("IGNORE");
@@ -131,12 +202,12 @@ public class GameContactListener implements ContactListener {
 			Fixture object;
 			Fixture staticObject;
 
-			if (contact.getFixtureA().getBody().getType() != BodyType.STATIC) {
-				object = contact.getFixtureA();
-				staticObject = contact.getFixtureB();
+			if (bodyA.getType() != BodyType.STATIC) {
+				object = fixtureA;
+				staticObject = fixtureB;
 			} else {
-				object = contact.getFixtureB();
-				staticObject = contact.getFixtureA();
+				object = fixtureB;
+				staticObject = fixtureA;
 			}
 
 			XenonLogger.debug("-----------------------------");
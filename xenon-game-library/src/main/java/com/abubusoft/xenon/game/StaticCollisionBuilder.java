@@ -0,0 +1,397 @@
+package com.abubusoft.xenon.game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.abubusoft.xenon.box2d.collision.shapes.ChainShape;
+import com.abubusoft.xenon.box2d.common.MathUtils;
+import com.abubusoft.xenon.box2d.common.Settings;
+import com.abubusoft.xenon.box2d.common.Vec2;
+import com.abubusoft.xenon.box2d.dynamics.Body;
+import com.abubusoft.xenon.box2d.dynamics.BodyDef;
+import com.abubusoft.xenon.box2d.dynamics.BodyType;
+import com.abubusoft.xenon.box2d.dynamics.FixtureDef;
+import com.abubusoft.xenon.box2d.dynamics.World;
+import com.abubusoft.xenon.math.Point2;
+import com.abubusoft.xenon.mesh.tiledmaps.Layer;
+import com.abubusoft.xenon.mesh.tiledmaps.ObjBase;
+import com.abubusoft.xenon.mesh.tiledmaps.ObjDefinition;
+import com.abubusoft.xenon.mesh.tiledmaps.ObjectLayer;
+import com.abubusoft.xenon.mesh.tiledmaps.TiledLayer;
+import com.abubusoft.xenon.mesh.tiledmaps.TiledMap;
+import com.abubusoft.xenon.mesh.tiledmaps.orthogonal.OrthogonalHelper;
+import com.abubusoft.xenon.mesh.tiledmaps.tmx.loader.TMXPredefinedProperties;
+
+/**
+ * <p>
+ * Crea la parte statica del mondo fisico di una mappa con un solo body: le celle o gli oggetti adiacenti vengono fusi ed il loro
+ * contorno diventa un insieme di {@link ChainShape} chiuse.
+ * </p>
+ *
+ * <p>
+ * Rispetto ad un body con un box per ogni tile o oggetto, come fa {@link Utils#addObject(TiledMap, ObjDefinition)}, il broadphase
+ * ha molti meno proxy e non ci sono più i lati interni tra box vicini, su cui i corpi che scivolano si incastrano.
+ * </p>
+ *
+ * @see CellContourTracer
+ */
+public final class StaticCollisionBuilder {
+
+	private StaticCollisionBuilder() {
+	}
+
+	/**
+	 * <p>
+	 * Crea il body statico delle tile non vuote del layer.
+	 * </p>
+	 *
+	 * <p>
+	 * Per le mappe infinite il layer viene letto una fascia di {@link TiledLayer#getCellBandRows()} righe alla volta, senza
+	 * copiarlo tutto in memoria: i loop di ogni fascia finiscono nello stesso body, ma si spezzano sui bordi tra le fasce.
+	 * </p>
+	 *
+	 * @param tiledMap
+	 *            mappa
+	 * @param layer
+	 *            layer con le tile solide
+	 * @return body creato, o null se il layer non ha tile
+	 */
+	public static Body buildFromTiledLayer(TiledMap tiledMap, TiledLayer layer) {
+		int columns = layer.tileColumns;
+		int band = tiledMap.infinite ? layer.getCellBandRows() : layer.tileRows;
+		int[] cells = new int[columns * band];
+		boolean[] solid = new boolean[columns * band];
+
+		float[] xs = new float[columns + 1];
+		for (int i = 0; i < xs.length; i++) {
+			xs[i] = i * tiledMap.tileWidth;
+		}
+		float[] ys = new float[layer.tileRows + 1];
+		for (int i = 0; i < ys.length; i++) {
+			ys[i] = i * tiledMap.tileHeight;
+		}
+
+		// il punto (0, 0) della mappa nel sistema fisico, in pixel
+		Point2 origin = OrthogonalHelper.translateInPhysicCoords(tiledMap, 0, 0);
+		ObjDefinition userData = buildLayerDefinition(layer, xs, ys);
+
+		Body body = null;
+		for (int row0 = 0; row0 < layer.tileRows; row0 += band) {
+			int rows = Math.min(band, layer.tileRows - row0);
+			layer.getCells(0, row0, columns, rows, cells);
+			for (int i = 0; i < columns * rows; i++) {
+				solid[i] = !layer.isEmptyCell(cells[i]);
+			}
+
+			// i bordi delle righe della fascia, spostati all'inizio della fascia
+			float[] bandYs = Arrays.copyOfRange(ys, row0, row0 + rows + 1);
+			if (body == null) {
+				body = build(Utils.world, userData, solid, xs, bandYs, origin.x, origin.y);
+			} else {
+				addLoops(body, userData, solid, xs, bandYs, origin.x, origin.y);
+			}
+		}
+
+		return body;
+	}
+
+	/**
+	 * <p>
+	 * Come {@link #buildFromTiledLayer(TiledMap, TiledLayer)}, ma con un body per ogni blocco di <code>chunkColumns x chunkRows</code>
+	 * tile, da affidare ad un {@link WorldStreamer} con chunk della stessa dimensione. I loop non attraversano i bordi dei
+	 * blocchi: lì restano i lati interni tra due body.
+	 * </p>
+	 *
+	 * @param tiledMap
+	 *            mappa
+	 * @param layer
+	 *            layer con le tile solide
+	 * @param chunkColumns
+	 *            colonne di tile di un blocco
+	 * @param chunkRows
+	 *            righe di tile di un blocco
+	 * @return body creati, uno per ogni blocco con almeno una tile
+	 */
+	public static ArrayList<Body> buildFromTiledLayer(TiledMap tiledMap, TiledLayer layer, int chunkColumns, int chunkRows) {
+		ArrayList<Body> bodies = new ArrayList<Body>();
+		int[] cells = new int[chunkColumns * chunkRows];
+		for (int row0 = 0; row0 < layer.tileRows; row0 += chunkRows) {
+			int rows = Math.min(chunkRows, layer.tileRows - row0);
+			for (int col0 = 0; col0 < layer.tileColumns; col0 += chunkColumns) {
+				int columns = Math.min(chunkColumns, layer.tileColumns - col0);
+
+				// le celle del blocco vengono lette chunk per chunk
+				layer.getCells(col0, row0, columns, rows, cells);
+				boolean[] solid = new boolean[columns * rows];
+				for (int i = 0; i < solid.length; i++) {
+					solid[i] = !layer.isEmptyCell(cells[i]);
+				}
+
+				float[] xs = new float[columns + 1];
+				for (int i = 0; i < xs.length; i++) {
+					xs[i] = (col0 + i) * tiledMap.tileWidth;
+				}
+				float[] ys = new float[rows + 1];
+				for (int i = 0; i < ys.length; i++) {
+					ys[i] = (row0 + i) * tiledMap.tileHeight;
+				}
+
+				Body body = build(tiledMap, layer, solid, xs, ys);
+				if (body != null) {
+					bodies.add(body);
+				}
+			}
+		}
+		return bodies;
+	}
+
+	/**
+	 * <p>
+	 * Crea il body statico degli oggetti del layer. Gli oggetti che non sono statici o che sono sensori hanno ancora un body
+	 * ciascuno, creato con {@link Utils#addObject(TiledMap, ObjDefinition)}.
+	 * </p>
+	 *
+	 * <p>
+	 * Le fixture del body statico hanno come user data la definizione del layer, non i singoli oggetti: vedi
+	 * {@link #buildLayerDefinition(Layer, float[], float[])}.
+	 * </p>
+	 *
+	 * @param tiledMap
+	 *            mappa
+	 * @param layer
+	 *            layer degli oggetti
+	 * @return body creato, o null se nessun oggetto è stato fuso
+	 */
+	public static Body buildFromObjectLayer(TiledMap tiledMap, ObjectLayer layer) {
+		ArrayList<ObjDefinition> merged = new ArrayList<ObjDefinition>();
+		for (ObjDefinition obj : layer.objects) {
+			BodyType type = BodyType.valueOf(obj.getProperty("type", BodyType.STATIC.toString()));
+			if (type == BodyType.STATIC && !obj.getPropertyAsBool(TMXPredefinedProperties.SENSOR, false) && obj.width > 0 && obj.height > 0) {
+				merged.add(obj);
+			} else {
+				Utils.addObject(tiledMap, obj);
+			}
+		}
+
+		if (merged.size() == 0) {
+			return null;
+		}
+
+		// la griglia ha una riga ed una colonna per ogni coordinata distinta dei bordi degli oggetti
+		int n = merged.size();
+		float[] xs = new float[2 * n];
+		float[] ys = new float[2 * n];
+		for (int i = 0; i < n; i++) {
+			ObjDefinition obj = merged.get(i);
+			xs[2 * i] = obj.x;
+			xs[2 * i + 1] = obj.x + obj.width;
+			ys[2 * i] = obj.y;
+			ys[2 * i + 1] = obj.y + obj.height;
+		}
+		xs = distinct(xs);
+		ys = distinct(ys);
+
+		int columns = xs.length - 1;
+		boolean[] solid = new boolean[columns * (ys.length - 1)];
+		for (int i = 0; i < n; i++) {
+			ObjDefinition obj = merged.get(i);
+			int colEnd = Arrays.binarySearch(xs, obj.x + obj.width);
+			int rowEnd = Arrays.binarySearch(ys, obj.y + obj.height);
+			for (int row = Arrays.binarySearch(ys, obj.y); row < rowEnd; row++) {
+				for (int col = Arrays.binarySearch(xs, obj.x); col < colEnd; col++) {
+					solid[row * columns + col] = true;
+				}
+			}
+		}
+
+		return build(tiledMap, layer, solid, xs, ys);
+	}
+
+	/**
+	 * <p>
+	 * Valori ordinati e senza ripetizioni.
+	 * </p>
+	 */
+	private static float[] distinct(float[] values) {
+		Arrays.sort(values);
+		int count = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (count == 0 || values[i] != values[count - 1]) {
+				values[count++] = values[i];
+			}
+		}
+		return Arrays.copyOf(values, count);
+	}
+
+	/**
+	 * <p>
+	 * Crea il body con un loop per ogni contorno delle celle piene.
+	 * </p>
+	 *
+	 * @param tiledMap
+	 *            mappa
+	 * @param layer
+	 *            layer da cui ricavare lo user data
+	 * @param solid
+	 *            celle piene, per righe
+	 * @param xs
+	 *            coordinate nella mappa dei bordi delle colonne
+	 * @param ys
+	 *            coordinate nella mappa dei bordi delle righe
+	 * @return body creato, o null se non ci sono celle piene
+	 */
+	private static Body build(TiledMap tiledMap, Layer layer, boolean[] solid, float[] xs, float[] ys) {
+		// il punto (0, 0) della mappa nel sistema fisico, in pixel
+		Point2 origin = OrthogonalHelper.translateInPhysicCoords(tiledMap, 0, 0);
+
+		return build(Utils.world, buildLayerDefinition(layer, xs, ys), solid, xs, ys, origin.x, origin.y);
+	}
+
+	/**
+	 * <p>
+	 * Definizione sintetica che rappresenta il layer come user data di fixture e body: {@link GameContactListener} e gli altri
+	 * listener trattano lo user data delle fixture come un {@link ObjBase}. Ha il nome e le proprietà del layer ed il rettangolo
+	 * della griglia.
+	 * </p>
+	 *
+	 * @param layer
+	 *            layer fuso
+	 * @param xs
+	 *            coordinate nella mappa dei bordi delle colonne
+	 * @param ys
+	 *            coordinate nella mappa dei bordi delle righe
+	 * @return definizione del layer
+	 */
+	static ObjDefinition buildLayerDefinition(Layer layer, float[] xs, float[] ys) {
+		ObjDefinition definition = new ObjDefinition();
+		definition.name = layer.name;
+		definition.type = BodyType.STATIC.toString();
+		definition.visible = layer.visible;
+		definition.properties.putAll(layer.properties);
+		definition.x = xs[0];
+		definition.y = ys[0];
+		definition.width = xs[xs.length - 1] - xs[0];
+		definition.height = ys[ys.length - 1] - ys[0];
+		return definition;
+	}
+
+	/**
+	 * <p>
+	 * Crea il body con un loop per ogni contorno delle celle piene.
+	 * </p>
+	 *
+	 * @param world
+	 *            mondo fisico
+	 * @param userData
+	 *            user data di fixture e body
+	 * @param solid
+	 *            celle piene, per righe
+	 * @param xs
+	 *            coordinate nella mappa dei bordi delle colonne
+	 * @param ys
+	 *            coordinate nella mappa dei bordi delle righe
+	 * @param originX
+	 *            ascissa nel sistema fisico, in pixel, del punto (0, 0) della mappa
+	 * @param originY
+	 *            ordinata nel sistema fisico, in pixel, del punto (0, 0) della mappa
+	 * @return body creato, o null se non ci sono celle piene
+	 */
+	static Body build(World world, ObjBase userData, boolean[] solid, float[] xs, float[] ys, float originX, float originY) {
+		BodyDef bd = new BodyDef();
+		bd.type = BodyType.STATIC;
+
+		Body body = world.createBody(bd);
+		if (addLoops(body, userData, solid, xs, ys, originX, originY) == 0) {
+			world.destroyBody(body);
+			return null;
+		}
+
+		// salviamo lo user object
+		body.setUserData(userData);
+
+		return body;
+	}
+
+	/**
+	 * <p>
+	 * Aggiunge ad un body un loop per ogni contorno delle celle piene.
+	 * </p>
+	 *
+	 * @param body
+	 *            body statico
+	 * @param userData
+	 *            user data delle fixture
+	 * @param solid
+	 *            celle piene, per righe; possono essere più di quelle della griglia, che usa solo le prime
+	 * @param xs
+	 *            coordinate nella mappa dei bordi delle colonne
+	 * @param ys
+	 *            coordinate nella mappa dei bordi delle righe
+	 * @param originX
+	 *            ascissa nel sistema fisico, in pixel, del punto (0, 0) della mappa
+	 * @param originY
+	 *            ordinata nel sistema fisico, in pixel, del punto (0, 0) della mappa
+	 * @return numero di fixture create
+	 */
+	static int addLoops(Body body, ObjBase userData, boolean[] solid, float[] xs, float[] ys, float originX, float originY) {
+		final int stride = xs.length;
+		ArrayList<int[]> loops = CellContourTracer.trace(solid, xs.length - 1, ys.length - 1);
+
+		int created = 0;
+		for (int[] loop : loops) {
+			Vec2[] vertices = new Vec2[loop.length];
+			for (int i = 0; i < loop.length; i++) {
+				// come OrthogonalHelper.translateInPhysicCoords: l'asse y e' invertito
+				float x = originX + xs[loop[i] % stride];
+				float y = originY - ys[loop[i] / stride];
+				vertices[i] = new Vec2(Utils.pixelToBox2D(x), Utils.pixelToBox2D(y));
+			}
+
+			int count = removeCloseVertices(vertices, vertices.length);
+			if (count < 3) {
+				// contorno di un oggetto piu' sottile di linearSlop
+				continue;
+			}
+
+			ChainShape chain = new ChainShape();
+			chain.createLoop(vertices, count);
+
+			FixtureDef fd = new FixtureDef();
+			fd.shape = chain;
+			fd.setUserData(userData);
+
+			body.createFixture(fd);
+			created++;
+		}
+
+		return created;
+	}
+
+	/**
+	 * <p>
+	 * Toglie da un loop i vertici a meno di {@link Settings#linearSlop} dal vertice precedente, che {@link ChainShape} rifiuta. Capita
+	 * con gli oggetti i cui bordi distano una frazione di pixel: la griglia ha una colonna o una riga quasi vuota.
+	 * </p>
+	 *
+	 * @param vertices
+	 *            vertici del loop, compattati all'inizio dell'array
+	 * @param count
+	 *            numero di vertici
+	 * @return numero di vertici rimasti
+	 */
+	static int removeCloseVertices(Vec2[] vertices, int count) {
+		final float minDistance = Settings.linearSlop * Settings.linearSlop;
+		int n = 0;
+		for (int i = 0; i < count; i++) {
+			if (n == 0 || MathUtils.distanceSquared(vertices[n - 1], vertices[i]) >= minDistance) {
+				vertices[n++] = vertices[i];
+			}
+		}
+
+		// il loop si chiude tornando al primo vertice
+		while (n > 1 && MathUtils.distanceSquared(vertices[n - 1], vertices[0]) < minDistance) {
+			n--;
+		}
+		return n;
+	}
+}
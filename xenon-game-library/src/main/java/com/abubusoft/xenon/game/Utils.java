@@ -76,6 +76,7 @@ public class Utils {
 	 * 		mappa
 	 * @param obj
 	 * 		definizione dell'oggetto
+	 * @see StaticCollisionBuilder#buildFromObjectLayer(TiledMap, com.abubusoft.xenon.mesh.tiledmaps.ObjectLayer)
 	 */
 	public static void addObject(TiledMap tiledMap, ObjDefinition obj) {
 		PolygonShape ps = new PolygonShape();
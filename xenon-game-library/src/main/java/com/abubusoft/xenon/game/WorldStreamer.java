@@ -0,0 +1,436 @@
+package com.abubusoft.xenon.game;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import com.abubusoft.xenon.box2d.collision.AABB;
+import com.abubusoft.xenon.box2d.common.Vec2;
+import com.abubusoft.xenon.box2d.dynamics.Body;
+import com.abubusoft.xenon.box2d.dynamics.BodyType;
+import com.abubusoft.xenon.box2d.dynamics.Fixture;
+import com.abubusoft.xenon.box2d.dynamics.World;
+
+import android.util.LongSparseArray;
+
+/**
+ * <p>
+ * Tiene nel mondo fisico solo i body vicini alla camera. I body sono divisi in chunk, quadrati di lato {@link #getChunkSize()}:
+ * quelli dei chunk lontani dalla camera vengono disattivati con {@link Body#setActive(boolean)}, così non hanno proxy nel
+ * broadphase, contatti o tempo di simulazione, e vengono riattivati quando la camera si avvicina. I body disattivati conservano
+ * posizione e velocità, e ripartono da dove si erano fermati.
+ * </p>
+ *
+ * <p>
+ * I body dinamici sono attivi nei chunk entro {@link #getRadius()} chunk dalla camera, quelli statici entro un chunk in più,
+ * così un body dinamico al bordo della zona attiva ha sempre il terreno sotto. Un chunk viene disattivato solo quando la camera
+ * si è allontanata di un ulteriore chunk, per non attivare e disattivare di continuo i body quando la camera si muove avanti e
+ * indietro sul bordo di un chunk.
+ * </p>
+ *
+ * <p>
+ * I body statici stanno nel chunk del centro delle loro fixture, gli altri nel chunk del loro centro di massa, aggiornato ad ogni
+ * {@link #update(float, float)}: un body dinamico che entra in un chunk non attivo viene disattivato. Body statici più grandi di
+ * un chunk, come quelli di {@link StaticCollisionBuilder#buildFromTiledLayer(com.abubusoft.xenon.mesh.tiledmaps.TiledMap, com.abubusoft.xenon.mesh.tiledmaps.TiledLayer)}
+ * , vanno divisi con {@link StaticCollisionBuilder#buildFromTiledLayer(com.abubusoft.xenon.mesh.tiledmaps.TiledMap, com.abubusoft.xenon.mesh.tiledmaps.TiledLayer, int, int)}
+ * . I body uniti da joint dovrebbero stare nello stesso chunk: un joint con un body non attivo viene ignorato.
+ * </p>
+ *
+ * <p>
+ * I body non aggiunti, come quello del giocatore, restano sempre attivi. I body aggiunti vanno tolti con {@link #remove(Body)}
+ * prima di distruggerli.
+ * </p>
+ */
+public class WorldStreamer {
+
+	/**
+	 * <p>
+	 * Chunk non attivo.
+	 * </p>
+	 */
+	private static final int DEAD = 0;
+
+	/**
+	 * <p>
+	 * Chunk con i soli body statici attivi.
+	 * </p>
+	 */
+	private static final int STATIC_LIVE = 1;
+
+	/**
+	 * <p>
+	 * Chunk con tutti i body attivi.
+	 * </p>
+	 */
+	private static final int LIVE = 2;
+
+	private static class Chunk {
+		final int x;
+		final int y;
+		int level = DEAD;
+		final ArrayList<Body> staticBodies = new ArrayList<Body>();
+		final ArrayList<Body> bodies = new ArrayList<Body>();
+
+		Chunk(int x, int y) {
+			this.x = x;
+			this.y = y;
+		}
+	}
+
+	private final World world;
+
+	private final float chunkSize;
+
+	private final float invChunkSize;
+
+	private final int radius;
+
+	private final LongSparseArray<Chunk> chunks = new LongSparseArray<Chunk>();
+
+	/**
+	 * <p>
+	 * chunk non {@link #DEAD}
+	 * </p>
+	 */
+	private final ArrayList<Chunk> liveChunks = new ArrayList<Chunk>();
+
+	private final IdentityHashMap<Body, Chunk> bodyChunks = new IdentityHashMap<Body, Chunk>();
+
+	private final AABB aabb = new AABB();
+
+	private boolean started;
+
+	private int cameraX;
+
+	private int cameraY;
+
+	private int liveBodyCount;
+
+	private int activated;
+
+	private int deactivated;
+
+	/**
+	 * @param world
+	 *            mondo fisico
+	 * @param chunkSize
+	 *            lato di un chunk, in metri; circa metà dello schermo è un buon inizio
+	 * @param radius
+	 *            chunk attivi attorno a quello della camera, in ogni direzione
+	 */
+	public WorldStreamer(World world, float chunkSize, int radius) {
+		if (!(chunkSize > 0)) {
+			throw new IllegalArgumentException("chunkSize must be positive");
+		}
+		if (radius < 0) {
+			throw new IllegalArgumentException("radius can not be negative");
+		}
+		this.world = world;
+		this.chunkSize = chunkSize;
+		this.invChunkSize = 1f / chunkSize;
+		this.radius = radius;
+	}
+
+	public float getChunkSize() {
+		return chunkSize;
+	}
+
+	public int getRadius() {
+		return radius;
+	}
+
+	/**
+	 * <p>
+	 * Affida il body allo streamer. Se il suo chunk non è attivo, viene subito disattivato.
+	 * </p>
+	 *
+	 * @param body
+	 *            body del mondo
+	 */
+	public void add(Body body) {
+		if (bodyChunks.containsKey(body)) {
+			return;
+		}
+		Chunk chunk;
+		if (body.getType() == BodyType.STATIC) {
+			chunk = staticChunk(body);
+			chunk.staticBodies.add(body);
+		} else {
+			Vec2 center = body.getWorldCenter();
+			chunk = chunk(cell(center.x), cell(center.y));
+			chunk.bodies.add(body);
+		}
+		bodyChunks.put(body, chunk);
+
+		if (isLive(chunk, body)) {
+			if (!body.isActive()) {
+				body.setActive(true);
+			}
+			liveBodyCount++;
+		} else if (body.isActive()) {
+			body.setActive(false);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Restituisce il body al mondo, attivo. Da chiamare prima di distruggere un body aggiunto.
+	 * </p>
+	 *
+	 * @param body
+	 *            body aggiunto
+	 */
+	public void remove(Body body) {
+		Chunk chunk = bodyChunks.remove(body);
+		if (chunk == null) {
+			return;
+		}
+		if (body.getType() == BodyType.STATIC) {
+			chunk.staticBodies.remove(body);
+		} else {
+			chunk.bodies.remove(body);
+		}
+		if (body.isActive()) {
+			liveBodyCount--;
+		} else {
+			body.setActive(true);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Attiva e disattiva i chunk attorno alla camera e sposta i body dinamici nel loro chunk. Da chiamare ad ogni frame, prima o
+	 * dopo lo step, mai durante.
+	 * </p>
+	 *
+	 * @param x
+	 *            posizione della camera nel mondo fisico, in metri
+	 * @param y
+	 *            posizione della camera nel mondo fisico, in metri
+	 * @throws IllegalStateException
+	 *             durante lo step
+	 */
+	public void update(float x, float y) {
+		if (world.isLocked()) {
+			throw new IllegalStateException("The world is in the middle of a step");
+		}
+		activated = 0;
+		deactivated = 0;
+
+		int cx = cell(x);
+		int cy = cell(y);
+		if (!started || cx != cameraX || cy != cameraY) {
+			started = true;
+			cameraX = cx;
+			cameraY = cy;
+			moveCamera();
+		}
+
+		rebucket();
+	}
+
+	private void moveCamera() {
+		// prima si disattiva, poi si attiva: i body attivi non superano mai quelli della zona attiva
+		for (int i = liveChunks.size() - 1; i >= 0; i--) {
+			Chunk chunk = liveChunks.get(i);
+			int distance = distance(chunk);
+			if (chunk.level == LIVE && distance > radius + 1) {
+				setLevel(chunk, distance > radius + 2 ? DEAD : STATIC_LIVE);
+			} else if (chunk.level == STATIC_LIVE && distance > radius + 2) {
+				setLevel(chunk, DEAD);
+			}
+			if (chunk.level == DEAD) {
+				int last = liveChunks.size() - 1;
+				liveChunks.set(i, liveChunks.get(last));
+				liveChunks.remove(last);
+			}
+		}
+
+		final int range = radius + 1;
+		for (int j = cameraY - range; j <= cameraY + range; j++) {
+			for (int i = cameraX - range; i <= cameraX + range; i++) {
+				Chunk chunk = chunks.get(key(i, j));
+				if (chunk == null) {
+					continue;
+				}
+				int level = distance(chunk) <= radius ? LIVE : STATIC_LIVE;
+				if (chunk.level < level) {
+					if (chunk.level == DEAD) {
+						liveChunks.add(chunk);
+					}
+					setLevel(chunk, level);
+				}
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Sposta i body dinamici svegli dei chunk attivi nel chunk in cui si trovano ora.
+	 * </p>
+	 */
+	private void rebucket() {
+		for (int c = 0, n = liveChunks.size(); c < n; c++) {
+			Chunk chunk = liveChunks.get(c);
+			if (chunk.level != LIVE) {
+				continue;
+			}
+			ArrayList<Body> bodies = chunk.bodies;
+			for (int i = bodies.size() - 1; i >= 0; i--) {
+				Body body = bodies.get(i);
+				if (!body.isAwake()) {
+					continue;
+				}
+				Vec2 center = body.getWorldCenter();
+				int bx = cell(center.x);
+				int by = cell(center.y);
+				if (bx == chunk.x && by == chunk.y) {
+					continue;
+				}
+
+				int last = bodies.size() - 1;
+				bodies.set(i, bodies.get(last));
+				bodies.remove(last);
+
+				Chunk target = chunk(bx, by);
+				target.bodies.add(body);
+				bodyChunks.put(body, target);
+				if (target.level != LIVE) {
+					setActive(body, false);
+				}
+			}
+		}
+	}
+
+	private void setLevel(Chunk chunk, int level) {
+		boolean staticLive = level != DEAD;
+		if ((chunk.level != DEAD) != staticLive) {
+			setActive(chunk.staticBodies, staticLive);
+		}
+		boolean live = level == LIVE;
+		if ((chunk.level == LIVE) != live) {
+			setActive(chunk.bodies, live);
+		}
+		chunk.level = level;
+	}
+
+	private void setActive(ArrayList<Body> bodies, boolean flag) {
+		for (int i = 0, n = bodies.size(); i < n; i++) {
+			setActive(bodies.get(i), flag);
+		}
+	}
+
+	private void setActive(Body body, boolean flag) {
+		if (body.isActive() == flag) {
+			return;
+		}
+		body.setActive(flag);
+		if (flag) {
+			liveBodyCount++;
+			activated++;
+		} else {
+			liveBodyCount--;
+			deactivated++;
+		}
+	}
+
+	private boolean isLive(Chunk chunk, Body body) {
+		return body.getType() == BodyType.STATIC ? chunk.level != DEAD : chunk.level == LIVE;
+	}
+
+	/**
+	 * <p>
+	 * Chunk del centro delle fixture di un body statico.
+	 * </p>
+	 */
+	private Chunk staticChunk(Body body) {
+		boolean empty = true;
+		for (Fixture fixture = body.getFixtureList(); fixture != null; fixture = fixture.getNext()) {
+			// i body non attivi non hanno AABB
+			for (int i = 0; i < fixture.m_proxyCount; i++) {
+				if (empty) {
+					aabb.set(fixture.getAABB(i));
+					empty = false;
+				} else {
+					aabb.combine(fixture.getAABB(i));
+				}
+			}
+		}
+		if (empty) {
+			Vec2 position = body.getPosition();
+			return chunk(cell(position.x), cell(position.y));
+		}
+		return chunk(cell((aabb.lowerBoundX + aabb.upperBoundX) * 0.5f), cell((aabb.lowerBoundY + aabb.upperBoundY) * 0.5f));
+	}
+
+	private Chunk chunk(int x, int y) {
+		long key = key(x, y);
+		Chunk chunk = chunks.get(key);
+		if (chunk == null) {
+			chunk = new Chunk(x, y);
+			chunks.put(key, chunk);
+			if (started) {
+				// ancora vuoto, basta il livello
+				int distance = distance(chunk);
+				chunk.level = distance <= radius ? LIVE : (distance <= radius + 1 ? STATIC_LIVE : DEAD);
+				if (chunk.level != DEAD) {
+					liveChunks.add(chunk);
+				}
+			}
+		}
+		return chunk;
+	}
+
+	private int distance(Chunk chunk) {
+		return Math.max(Math.abs(chunk.x - cameraX), Math.abs(chunk.y - cameraY));
+	}
+
+	private int cell(float value) {
+		return (int) Math.floor(value * invChunkSize);
+	}
+
+	private static long key(int x, int y) {
+		return ((long) x << 32) | (y & 0xffffffffL);
+	}
+
+	/**
+	 * @return chunk con almeno i body statici attivi
+	 */
+	public int getLiveChunkCount() {
+		return liveChunks.size();
+	}
+
+	/**
+	 * @return chunk creati, anche vuoti
+	 */
+	public int getChunkCount() {
+		return chunks.size();
+	}
+
+	/**
+	 * @return body affidati allo streamer
+	 */
+	public int getBodyCount() {
+		return bodyChunks.size();
+	}
+
+	/**
+	 * @return body affidati allo streamer ed attivi
+	 */
+	public int getLiveBodyCount() {
+		return liveBodyCount;
+	}
+
+	/**
+	 * @return body attivati dall'ultimo {@link #update(float, float)}
+	 */
+	public int getActivatedCount() {
+		return activated;
+	}
+
+	/**
+	 * @return body disattivati dall'ultimo {@link #update(float, float)}
+	 */
+	public int getDeactivatedCount() {
+		return deactivated;
+	}
+}
@@ -0,0 +1,140 @@
+package com.abubusoft.xenon.game;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.abubusoft.xenon.box2d.callbacks.ContactEventBuffer;
+import com.abubusoft.xenon.box2d.collision.shapes.PolygonShape;
+import com.abubusoft.xenon.box2d.common.Vec2;
+import com.abubusoft.xenon.box2d.dynamics.Body;
+import com.abubusoft.xenon.box2d.dynamics.BodyDef;
+import com.abubusoft.xenon.box2d.dynamics.BodyType;
+import com.abubusoft.xenon.box2d.dynamics.Fixture;
+import com.abubusoft.xenon.box2d.dynamics.World;
+import com.abubusoft.xenon.mesh.tiledmaps.ObjDefinition;
+
+/**
+ * <p>
+ * Gestione degli eventi di un {@link ContactEventBuffer} dopo lo step.
+ * </p>
+ */
+public class GameContactListenerTest {
+
+	/**
+	 * <p>
+	 * Conta i contatti con gli oggetti statici.
+	 * </p>
+	 */
+	static class CountingListener extends GameContactListener {
+		int begin;
+
+		int end;
+
+		Fixture endObject;
+
+		Fixture beginStaticObject;
+
+		@Override
+		public void beginContactWithStatic(Fixture object, Fixture staticObject) {
+			begin++;
+			beginStaticObject = staticObject;
+		}
+
+		@Override
+		public void endContactWithStatic(Fixture object, Fixture staticObject) {
+			end++;
+			endObject = object;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Una fixture distrutta mentre tocca il terreno genera un end contact. Quando viene gestito, la fixture non ha piu' un body: si
+	 * usano body e posizione registrati con l'evento.
+	 * </p>
+	 */
+	@Test
+	public void dispatchAfterDestroyFixture() {
+		World world = new World(new Vec2(0, -10));
+		ContactEventBuffer events = new ContactEventBuffer();
+		events.setEventMask(ContactEventBuffer.BEGIN_CONTACT | ContactEventBuffer.END_CONTACT);
+		world.setContactListener(events);
+
+		PolygonShape shape = new PolygonShape();
+		shape.setAsBox(10, 1);
+		world.createBody(new BodyDef()).createFixture(shape, 0);
+
+		BodyDef def = new BodyDef();
+		def.type = BodyType.DYNAMIC;
+		def.position.set(0, 1.5f);
+		Body box = world.createBody(def);
+		shape.setAsBox(0.5f, 0.5f);
+		Fixture fixture = box.createFixture(shape, 1);
+
+		world.step(1 / 60f, 8, 3);
+		assertEquals(1, events.size());
+		assertEquals(ContactEventBuffer.BEGIN_CONTACT, events.getType(0));
+
+		Vec2 position = box.getPosition().clone();
+		box.destroyFixture(fixture);
+		assertNull(fixture.getBody());
+
+		// il body continua a cadere, l'evento tiene la posizione del momento in cui e' stato registrato
+		world.step(1 / 60f, 8, 3);
+		assertEquals(2, events.size());
+		assertEquals(ContactEventBuffer.END_CONTACT, events.getType(1));
+		boolean boxIsA = events.getFixtureA(1) == fixture;
+		assertSame(box, boxIsA ? events.getBodyA(1) : events.getBodyB(1));
+		Vec2 recorded = boxIsA ? events.getPositionA(1, new Vec2()) : events.getPositionB(1, new Vec2());
+		assertEquals(position, recorded);
+		assertTrue(box.getPosition().y < position.y);
+
+		CountingListener listener = new CountingListener();
+		listener.dispatch(events);
+		assertEquals(1, listener.begin);
+		assertEquals(1, listener.end);
+		assertSame(fixture, listener.endObject);
+		assertTrue(events.isEmpty());
+	}
+
+	/**
+	 * <p>
+	 * Un corpo che cade su un layer costruito da {@link StaticCollisionBuilder} genera un begin contact con lo user data del layer,
+	 * con il listener registrato nel mondo.
+	 * </p>
+	 */
+	@Test
+	public void beginContactWithBuiltLayer() {
+		World world = new World(new Vec2(0, -10));
+		CountingListener listener = new CountingListener();
+		world.setContactListener(listener);
+
+		// 4 x 1 tile da 128 pixel, centrate nell'origine: da -2 a 2 metri in x, da -0.5 a 0.5 in y
+		ObjDefinition layer = new ObjDefinition();
+		layer.name = "ground";
+		float[] xs = { 0, 128, 256, 384, 512 };
+		float[] ys = { 0, 128 };
+		Body ground = StaticCollisionBuilder.build(world, layer, new boolean[] { true, true, true, true }, xs, ys, -256, 64);
+		assertSame(layer, ground.getFixtureList().getUserData());
+
+		BodyDef def = new BodyDef();
+		def.type = BodyType.DYNAMIC;
+		def.position.set(0, 1.5f);
+		Body box = world.createBody(def);
+		PolygonShape shape = new PolygonShape();
+		shape.setAsBox(0.25f, 0.25f);
+		box.createFixture(shape, 1);
+
+		for (int i = 0; i < 60; i++) {
+			world.step(1 / 60f, 8, 3);
+		}
+
+		assertEquals(1, listener.begin);
+		assertSame(layer, listener.beginStaticObject.getUserData());
+		assertEquals(0.75f, box.getPosition().y, 0.05f);
+	}
+}